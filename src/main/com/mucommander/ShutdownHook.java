@@ -20,6 +20,8 @@ package com.mucommander;
 
 import com.mucommander.auth.CredentialsManager;
 import com.mucommander.bookmark.BookmarkManager;
+import com.mucommander.cache.DirectorySizeCache;
+import com.mucommander.cache.FileNameIndex;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.shell.ShellHistoryManager;
 import com.mucommander.ui.action.ActionKeymapIO;
@@ -100,6 +102,20 @@ public class ShutdownHook extends Thread {
             getLogger().warn("Failed to save configuration", e);
         }
 
+        // Save file name index, only if changes were made
+        try {
+            FileNameIndex.shutdown();
+        } catch(Exception e) {
+            getLogger().warn("Failed to save file name index", e);
+        }
+
+        // Save calculated folder sizes, only if changes were made
+        try {
+            DirectorySizeCache.shutdown();
+        } catch(Exception e) {
+            getLogger().warn("Failed to save folder sizes", e);
+        }
+
         // Save shell history
         try {
             ShellHistoryManager.writeHistory();
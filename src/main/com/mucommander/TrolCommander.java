@@ -23,9 +23,12 @@ import com.mucommander.bookmark.file.BookmarkProtocolProvider;
 import com.mucommander.command.Command;
 import com.mucommander.command.CommandManager;
 import com.mucommander.command.CommandType;
+import com.mucommander.commons.file.ArchiveEntryCache;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.connection.ConnectionPool;
 import com.mucommander.commons.file.icon.impl.SwingFileIconProvider;
 import com.mucommander.commons.file.impl.ftp.FTPProtocolProvider;
+import com.mucommander.commons.file.impl.s3.S3ProtocolProvider;
 import com.mucommander.commons.file.impl.smb.SMBProtocolProvider;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.conf.MuConfigurations;
@@ -58,6 +61,7 @@ import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 import java.awt.GraphicsEnvironment;
 import java.awt.event.KeyEvent;
+import java.io.File;
 import java.lang.reflect.Constructor;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -396,6 +400,28 @@ public class TrolCommander {
         }
     }
 
+    private static class StartFileNameIndexTask extends LauncherTask {
+        StartFileNameIndexTask(LauncherCmdHelper helper, LauncherTask... depends) {
+            super("file_name_index", helper, depends);
+        }
+
+        @Override
+        void run() throws Exception {
+            com.mucommander.cache.FileNameIndex.start();
+        }
+    }
+
+    private static class LoadFolderSizesTask extends LauncherTask {
+        LoadFolderSizesTask(LauncherCmdHelper helper, LauncherTask... depends) {
+            super("folder_sizes", helper, depends);
+        }
+
+        @Override
+        void run() throws Exception {
+            com.mucommander.cache.DirectorySizeCache.start();
+        }
+    }
+
     private static class InitDesktopTask extends LauncherTask {
         InitDesktopTask(LauncherCmdHelper helper, LauncherTask... depends) {
             super("desktop", helper, depends);
@@ -499,6 +525,9 @@ public class TrolCommander {
     }
 
     private static class ConfigureFsTask extends LauncherTask {
+        /** Name of the folder in the preferences folder where archive listings are cached */
+        private static final String ARCHIVE_ENTRY_CACHE_FOLDER = "archive_entries";
+
         ConfigureFsTask(LauncherCmdHelper helper, LauncherTask... depends) {
             super("configure_fs", helper, depends);
         }
@@ -516,6 +545,18 @@ public class TrolCommander {
             // the servers to decide whether to show them.
             FTPProtocolProvider.setForceHiddenFilesListing(MuConfigurations.getPreferences().getVariable(MuPreference.LIST_HIDDEN_FILES, MuPreferences.DEFAULT_LIST_HIDDEN_FILES));
 
+            // Size of the parts in which S3 objects are transferred, and how many of them are transferred concurrently
+            S3ProtocolProvider.setPartSize(MuConfigurations.getPreferences().getVariable(MuPreference.S3_PART_SIZE, MuPreferences.DEFAULT_S3_PART_SIZE) * 1024L * 1024L);
+            S3ProtocolProvider.setTransferThreads(MuConfigurations.getPreferences().getVariable(MuPreference.S3_TRANSFER_THREADS, MuPreferences.DEFAULT_S3_TRANSFER_THREADS));
+
+            // Number of connections that parallel jobs can open to the same server
+            ConnectionPool.setMaxConnectionsPerRealm(Math.max(ConnectionPool.MIN_CONNECTIONS_PER_REALM,
+                    MuConfigurations.getPreferences().getVariable(MuPreference.MAX_CONNECTIONS_PER_SERVER, MuPreferences.DEFAULT_MAX_CONNECTIONS_PER_SERVER)));
+
+            // Listings of read-only archives are cached so that they can be browsed again without being read
+            ArchiveEntryCache.setCacheFolder(new File((File)PlatformManager.getPreferencesFolder().getUnderlyingFileObject(), ARCHIVE_ENTRY_CACHE_FOLDER));
+            ArchiveEntryCache.setMaxSize(MuConfigurations.getPreferences().getVariable(MuPreference.ARCHIVE_ENTRY_CACHE_SIZE, MuPreferences.DEFAULT_ARCHIVE_ENTRY_CACHE_SIZE) * 1024L * 1024L);
+
 //            FileFactory.registerProtocolFile();
             // Use CredentialsManager for file URL authentication
             FileFactory.setDefaultAuthenticator(CredentialsManager.getAuthenticator());
@@ -813,6 +854,8 @@ public class TrolCommander {
             LauncherTask taskLoadIcons = new LoadIconsTask(helper);
             LauncherTask taskInitBars = new InitBarsTask(helper, taskRegisterActions);
             LauncherTask taskStartBonjour = new StartBonjourTask(helper);
+            LauncherTask taskStartFileNameIndex = new StartFileNameIndexTask(helper, taskLoadConfigs);
+            LauncherTask taskLoadFolderSizes = new LoadFolderSizesTask(helper, taskLoadConfigs);
             LauncherTask enableNotificationsTask = new EnableNotificationsTask(helper, taskRegisterActions);
             LauncherTask taskCreateWindow = new CreateWindowTask(helper, taskStart, taskLoadTheme, taskShowSplash, taskInitBars, taskRegisterActions, taskLoadCustomCommands);
             LauncherTask taskShowSetupWindow = new ShowSetupWindowTask(helper, taskLoadConfigs);
@@ -841,6 +884,8 @@ public class TrolCommander {
             tasks.add(taskLoadShellHistory);
             tasks.add(taskInitCustomDataFormat);
             tasks.add(taskStartBonjour);
+            tasks.add(taskStartFileNameIndex);
+            tasks.add(taskLoadFolderSizes);
             tasks.add(taskInitBars);
             tasks.add(taskCreateWindow);
             tasks.add(enableNotificationsTask);
@@ -0,0 +1,256 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.cache;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the calculated sizes of folders, shared by all file panels.
+ *
+ * <p>A size is keyed by the folder path and is only returned while the folder date is the one it had when the size
+ * was calculated. Changes in sub-folders don't update the dates of their parents, so a folder and its parents are
+ * also invalidated as soon as the file panels notice a change in it (see {@link #folderChanged(AbstractFile)}).</p>
+ *
+ * <p>If the {@link MuPreferences#PERSISTENT_FOLDER_SIZE_CACHE} preference is enabled, the cache is saved to
+ * the preferences folder on shutdown and read back on startup.</p>
+ */
+public class DirectorySizeCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectorySizeCache.class);
+
+    /** Name of the cache file in the preferences folder */
+    private static final String CACHE_FILE_NAME = "folder_sizes.cache";
+
+    private static final int MAGIC = 0x4d434453;
+    private static final int VERSION = 1;
+
+    /** Maximum number of cached folders */
+    private static final int MAX_ENTRIES = 100000;
+
+    /** Longer paths are not saved, they may not fit in the modified UTF-8 format of the cache file */
+    private static final int MAX_SAVED_PATH_LENGTH = 20000;
+
+    private static final DirectorySizeCache instance = new DirectorySizeCache();
+
+    /** Folder path -> date and size */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** <code>true</code> if entries have changed since the cache was loaded or saved */
+    private volatile boolean modified;
+
+
+    private static class Entry {
+        final long date;
+        final long size;
+
+        Entry(long date, long size) {
+            this.date = date;
+            this.size = size;
+        }
+    }
+
+
+    private DirectorySizeCache() {
+    }
+
+    public static DirectorySizeCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Loads the saved sizes, if the cache is persistent. This method is called once on startup.
+     */
+    public static void start() {
+        if (isPersistent()) {
+            instance.load();
+        }
+    }
+
+    /**
+     * Saves the cache if it is persistent and has been modified. This method is called on shutdown.
+     */
+    public static void shutdown() {
+        if (isPersistent()) {
+            instance.save();
+        } else {
+            getCacheFile().delete();
+        }
+    }
+
+    /**
+     * Invalidates the size of the given folder and of its parents. This method is called when the folder has been
+     * refreshed after a change was noticed.
+     *
+     * @param folder a folder whose contents have changed
+     */
+    public static void folderChanged(AbstractFile folder) {
+        if (instance.entries.isEmpty()) {
+            return;
+        }
+        for (AbstractFile file = folder; file != null; file = file.getParent()) {
+            if (instance.entries.remove(getKey(file)) != null) {
+                instance.modified = true;
+            }
+        }
+    }
+
+    private static boolean isPersistent() {
+        return MuConfigurations.getPreferences().getVariable(MuPreference.PERSISTENT_FOLDER_SIZE_CACHE, MuPreferences.DEFAULT_PERSISTENT_FOLDER_SIZE_CACHE);
+    }
+
+    private static String getKey(AbstractFile folder) {
+        return folder.getAbsolutePath(false);
+    }
+
+    /**
+     * Returns the cached size of the given folder, <code>null</code> if it isn't cached or if the folder has been
+     * modified since its size was calculated.
+     *
+     * @param folder a folder
+     * @return the size of the folder, <code>null</code> if unknown
+     */
+    public Long get(AbstractFile folder) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        String key = getKey(folder);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.date != folder.getLastModifiedDate()) {
+            entries.remove(key, entry);
+            modified = true;
+            return null;
+        }
+        return entry.size;
+    }
+
+    /**
+     * Stores the calculated size of the given folder. Folders whose date is unknown are not cached.
+     *
+     * @param folder a folder
+     * @param size the total size of the files located under the folder
+     */
+    public void put(AbstractFile folder, long size) {
+        long date = folder.getLastModifiedDate();
+        if (date <= 0) {
+            return;
+        }
+        if (entries.size() >= MAX_ENTRIES) {
+            // Makes room by dropping arbitrary entries, they're only an optimization
+            Iterator<String> iterator = entries.keySet().iterator();
+            for (int i = 0; i < MAX_ENTRIES / 10 && iterator.hasNext(); i++) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        entries.put(getKey(folder), new Entry(date, size));
+        modified = true;
+    }
+
+    /**
+     * Returns <code>true</code> if no folder size is cached.
+     *
+     * @return <code>true</code> if no folder size is cached
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+
+    /////////////////
+    // Persistence //
+    /////////////////
+
+    private static File getCacheFile() {
+        return new File(((File)PlatformManager.getPreferencesFolder().getUnderlyingFileObject()), CACHE_FILE_NAME);
+    }
+
+    private void load() {
+        File file = getCacheFile();
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long date = in.readLong();
+                long size = in.readLong();
+                entries.putIfAbsent(path, new Entry(date, size));
+            }
+            LOGGER.info("Loaded {} folder sizes", count);
+        } catch (IOException e) {
+            LOGGER.info("Could not load folder sizes", e);
+        }
+    }
+
+    private void save() {
+        if (!modified) {
+            return;
+        }
+        File file = getCacheFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+            Map<String, Entry> snapshot = new HashMap<>(entries);
+            snapshot.keySet().removeIf(path -> path.length() > MAX_SAVED_PATH_LENGTH);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().date);
+                out.writeLong(entry.getValue().size);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not save folder sizes", e);
+            tempFile.delete();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (IOException e) {
+            LOGGER.warn("Could not save folder sizes", e);
+        }
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.cache;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Persistent index of the names, sizes and dates of the files located under a set of local folders, which lets
+ * file searches by name be answered without listing folders.
+ *
+ * <p>The indexed folders are set by the {@link MuPreferences#FIND_FILE_INDEX_ROOTS} preference, the index is disabled
+ * when it is empty. The index is rebuilt by a background thread when it is older than {@link #RESCAN_PERIOD}, and
+ * folders are updated as soon as their changes are noticed by the file panels (see {@link #folderChanged(AbstractFile)}).
+ * It is saved to the preferences folder on shutdown, and read back through a memory-mapped buffer on startup.</p>
+ *
+ * <p>Entries are stored in flat arrays rather than in a tree of objects to keep millions of them cheap. An entry
+ * always comes after its parent folder, so that selecting the entries located under a folder takes a single pass.</p>
+ */
+public class FileNameIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileNameIndex.class);
+
+    /** Name of the index file in the preferences folder */
+    private static final String INDEX_FILE_NAME = "filename.index";
+
+    private static final int MAGIC = 0x4d434649;
+    private static final int VERSION = 1;
+
+    /** Age after which the index is rebuilt from scratch */
+    private static final long RESCAN_PERIOD = TimeUnit.HOURS.toMillis(24);
+
+    /** Time given on shutdown to the background thread to stop scanning before the index is saved, in milliseconds */
+    private static final long SHUTDOWN_TIMEOUT = 2000;
+
+    private static final boolean IS_WINDOWS = OsFamily.WINDOWS.isCurrent();
+    private static final Class<? extends BasicFileAttributes> ATTRIBUTES_CLASS = IS_WINDOWS ? DosFileAttributes.class : BasicFileAttributes.class;
+
+    private static final byte FLAG_DIRECTORY = 1;
+    private static final byte FLAG_HIDDEN = 2;
+    private static final byte FLAG_REMOVED = 4;
+
+    private static FileNameIndex instance;
+
+    /** Absolute paths of the indexed folders */
+    private final List<String> roots;
+
+    /** Runs scans, updates and saves one at a time, at a low priority */
+    private final ScheduledThreadPoolExecutor executor;
+
+    /** The indexed entries, replaced as a whole once a full scan is complete. Guarded by this. */
+    private Entries entries;
+
+    /** <code>true</code> if entries have changed since the index was loaded or saved. Guarded by this. */
+    private boolean modified;
+
+
+    private FileNameIndex(List<String> roots) {
+        this.roots = roots;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, FileNameIndex.class.getSimpleName());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the index and starts maintaining it in the background, if folders to index are configured.
+     * This method is called once on startup.
+     */
+    public static synchronized void start() {
+        if (instance != null) {
+            return;
+        }
+        String rootsPreference = MuConfigurations.getPreferences().getVariable(MuPreference.FIND_FILE_INDEX_ROOTS, MuPreferences.DEFAULT_FIND_FILE_INDEX_ROOTS);
+        List<String> roots = new ArrayList<>();
+        for (String root : rootsPreference.split(File.pathSeparator)) {
+            if (!root.trim().isEmpty()) {
+                roots.add(normalize(new File(root.trim()).getAbsolutePath()));
+            }
+        }
+        if (roots.isEmpty()) {
+            return;
+        }
+        instance = new FileNameIndex(roots);
+        instance.executor.execute(instance::load);
+        instance.executor.scheduleWithFixedDelay(instance::rescanIfOutdated, 0, RESCAN_PERIOD / 24, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the index, <code>null</code> if no folder is indexed.
+     *
+     * @return the index, <code>null</code> if no folder is indexed
+     */
+    public static synchronized FileNameIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * Saves the index if it has been modified. This method is called on shutdown.
+     */
+    public static void shutdown() {
+        FileNameIndex index = getInstance();
+        if (index != null) {
+            index.executor.shutdownNow();
+            try {
+                // Let an update that was cut short discard its new entries before they are saved
+                index.executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            index.save();
+        }
+    }
+
+    /**
+     * Updates the entries of the given folder in the background, if it is indexed. This method is called when the
+     * folder has been refreshed after a change was noticed.
+     *
+     * @param folder a folder whose contents have changed
+     */
+    public static void folderChanged(AbstractFile folder) {
+        FileNameIndex index = getInstance();
+        if (index == null || !(folder.getUnderlyingFileObject() instanceof File)) {
+            return;
+        }
+        String path = normalize(((File)folder.getUnderlyingFileObject()).getAbsolutePath());
+        index.executor.execute(() -> index.updateFolder(path));
+    }
+
+    /**
+     * Returns the absolute paths of the indexed files located under the given folder, whose name is accepted by
+     * the given matcher. The folder itself is not part of the results. <code>null</code> is returned if the folder is
+     * not indexed or if the index is not ready yet.
+     *
+     * @param folder the folder to search
+     * @param nameMatcher accepts the names of the files to return
+     * @param recursive <code>true</code> to search subfolders
+     * @param ignoreHidden <code>true</code> to ignore hidden files and the contents of hidden folders
+     * @return the paths of the matching files, <code>null</code> if the folder is not indexed
+     */
+    public synchronized List<String> find(AbstractFile folder, Predicate<String> nameMatcher, boolean recursive, boolean ignoreHidden) {
+        if (entries == null || !(folder.getUnderlyingFileObject() instanceof File)) {
+            return null;
+        }
+        Integer folderId = entries.folderIds.get(normalize(((File)folder.getUnderlyingFileObject()).getAbsolutePath()));
+        if (folderId == null) {
+            return null;
+        }
+        return entries.find(folderId, nameMatcher, recursive, ignoreHidden);
+    }
+
+    private static String normalize(String path) {
+        if (path.length() > 1 && path.endsWith(File.separator) && !path.endsWith(":" + File.separator)) {
+            return path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+
+    ///////////////////////////
+    // Scanning and updating //
+    ///////////////////////////
+
+    private void rescanIfOutdated() {
+        Entries current;
+        synchronized (this) {
+            current = entries;
+        }
+        if (current != null && System.currentTimeMillis() - current.scanTime < RESCAN_PERIOD) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        Entries scanned = new Entries(time);
+        for (String root : roots) {
+            Path rootPath = Paths.get(root);
+            BasicFileAttributes attributes = readAttributes(rootPath);
+            if (attributes != null && attributes.isDirectory()) {
+                int id = scanned.add(-1, root, attributes, false);
+                scanFolder(scanned, id, rootPath);
+            }
+        }
+        if (executor.isShutdown()) {
+            // The scan was cut short on shutdown, a truncated index must not be saved
+            LOGGER.info("Discarded an incomplete scan of {} files", scanned.count);
+            return;
+        }
+        synchronized (this) {
+            entries = scanned;
+            modified = true;
+        }
+        LOGGER.info("Indexed {} files in {} ms", scanned.count, System.currentTimeMillis() - time);
+        save();
+    }
+
+    /**
+     * Adds the contents of a folder and of its subfolders to the given entries. Symbolic links are not followed.
+     *
+     * @return <code>false</code> if the scan was cut short on shutdown
+     */
+    private boolean scanFolder(Entries target, int folderId, Path folder) {
+        Deque<Integer> folderIds = new ArrayDeque<>();
+        Deque<Path> folders = new ArrayDeque<>();
+        folderIds.push(folderId);
+        folders.push(folder);
+        while (!folders.isEmpty()) {
+            if (executor.isShutdown()) {
+                return false;
+            }
+            int parentId = folderIds.pop();
+            Path parent = folders.pop();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(parent)) {
+                for (Path child : stream) {
+                    BasicFileAttributes attributes = readAttributes(child);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    String name = child.getFileName().toString();
+                    int id;
+                    synchronized (this) {
+                        id = target.add(parentId, name, attributes, isHidden(name, attributes));
+                    }
+                    if (attributes.isDirectory()) {
+                        folderIds.push(id);
+                        folders.push(child);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Folder can't be read, e.g. for lack of permissions
+                LOGGER.debug("Could not index " + parent, e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Synchronizes the entries of the given folder with its current contents: new files are added (along with
+     * the contents of new folders), removed files are marked as such and the others are updated.
+     */
+    private void updateFolder(String path) {
+        Entries current;
+        Integer folderId;
+        synchronized (this) {
+            current = entries;
+            folderId = current == null ? null : current.folderIds.get(path);
+        }
+        if (folderId == null) {
+            return;
+        }
+
+        Map<String, BasicFileAttributes> children = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(path))) {
+            for (Path child : stream) {
+                BasicFileAttributes attributes = readAttributes(child);
+                if (attributes != null) {
+                    children.put(child.getFileName().toString(), attributes);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Could not update index of " + path, e);
+            return;
+        }
+
+        List<String> newFolders = new ArrayList<>();
+        List<Integer> newFolderIds = new ArrayList<>();
+        synchronized (this) {
+            if (entries != current) {
+                // Replaced by a full scan meanwhile
+                return;
+            }
+            Map<String, Integer> indexed = current.getChildren(folderId);
+            for (Map.Entry<String, Integer> child : indexed.entrySet()) {
+                BasicFileAttributes attributes = children.get(child.getKey());
+                int id = child.getValue();
+                if (attributes == null || attributes.isDirectory() != current.isDirectory(id)) {
+                    current.remove(id);
+                } else {
+                    current.update(id, attributes);
+                    children.remove(child.getKey());
+                }
+            }
+            for (Map.Entry<String, BasicFileAttributes> child : children.entrySet()) {
+                BasicFileAttributes attributes = child.getValue();
+                int id = current.add(folderId, child.getKey(), attributes, isHidden(child.getKey(), attributes));
+                if (attributes.isDirectory()) {
+                    newFolders.add(current.getPath(id));
+                    newFolderIds.add(id);
+                }
+            }
+            modified = true;
+        }
+        for (int i = 0; i < newFolders.size(); i++) {
+            if (!scanFolder(current, newFolderIds.get(i), Paths.get(newFolders.get(i)))) {
+                // The new folders were cut short on shutdown, their truncated contents must not be saved: they are
+                // indexed again when their parent changes or on the next full scan
+                synchronized (this) {
+                    for (int j = i; j < newFolderIds.size(); j++) {
+                        current.remove(newFolderIds.get(j));
+                    }
+                }
+                LOGGER.info("Discarded an incomplete update of {}", path);
+                return;
+            }
+        }
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, ATTRIBUTES_CLASS, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isHidden(String name, BasicFileAttributes attributes) {
+        return IS_WINDOWS ? ((DosFileAttributes)attributes).isHidden() : name.startsWith(".");
+    }
+
+
+    /////////////////
+    // Persistence //
+    /////////////////
+
+    private static File getIndexFile() {
+        return new File(((File)PlatformManager.getPreferencesFolder().getUnderlyingFileObject()), INDEX_FILE_NAME);
+    }
+
+    private void load() {
+        File file = getIndexFile();
+        if (!file.exists()) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return;
+            }
+            long scanTime = buffer.getLong();
+            int nbRoots = buffer.getInt();
+            List<String> indexedRoots = new ArrayList<>();
+            for (int i = 0; i < nbRoots; i++) {
+                indexedRoots.add(readString(buffer));
+            }
+            if (!indexedRoots.equals(roots)) {
+                // Roots have changed, the index will be rebuilt
+                return;
+            }
+            int count = buffer.getInt();
+            Entries loaded = new Entries(scanTime);
+            loaded.ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                int parent = buffer.getInt();
+                byte flags = buffer.get();
+                long size = buffer.getLong();
+                long date = buffer.getLong();
+                loaded.add(parent, readString(buffer), size, date, flags);
+            }
+            synchronized (this) {
+                if (entries == null) {
+                    entries = loaded;
+                }
+            }
+            LOGGER.info("Loaded {} indexed files in {} ms", count, System.currentTimeMillis() - time);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            LOGGER.info("Could not load file name index, it will be rebuilt", e);
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private synchronized void save() {
+        if (!modified || entries == null) {
+            return;
+        }
+        entries = entries.compact();
+        File file = getIndexFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(entries.scanTime);
+            out.writeInt(roots.size());
+            for (String root : roots) {
+                writeString(out, root);
+            }
+            out.writeInt(entries.count);
+            for (int i = 0; i < entries.count; i++) {
+                out.writeInt(entries.parents[i]);
+                out.writeByte(entries.flags[i]);
+                out.writeLong(entries.sizes[i]);
+                out.writeLong(entries.dates[i]);
+                writeString(out, entries.names[i]);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not save file name index", e);
+            tempFile.delete();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (IOException e) {
+            LOGGER.warn("Could not save file name index", e);
+        }
+    }
+
+
+    /**
+     * Indexed entries, stored in parallel arrays. Entry <code>i</code> has its parent folder at index
+     * <code>parents[i] &lt; i</code>, or <code>-1</code> for the roots, whose name is their absolute path.
+     * Removed entries are kept until the next {@link #compact()}.
+     */
+    private static class Entries {
+        private final long scanTime;
+        private int count;
+        private int[] parents = new int[1024];
+        private String[] names = new String[1024];
+        private long[] sizes = new long[1024];
+        private long[] dates = new long[1024];
+        private byte[] flags = new byte[1024];
+        private int removedCount;
+
+        /** Ids of the folders, by absolute path */
+        private final Map<String, Integer> folderIds = new HashMap<>();
+
+        Entries(long scanTime) {
+            this.scanTime = scanTime;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > parents.length) {
+                parents = Arrays.copyOf(parents, capacity);
+                names = Arrays.copyOf(names, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                dates = Arrays.copyOf(dates, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+            }
+        }
+
+        int add(int parent, String name, BasicFileAttributes attributes, boolean hidden) {
+            byte entryFlags = (byte)((attributes.isDirectory() ? FLAG_DIRECTORY : 0) | (hidden ? FLAG_HIDDEN : 0));
+            return add(parent, name, attributes.size(), attributes.lastModifiedTime().toMillis(), entryFlags);
+        }
+
+        int add(int parent, String name, long size, long date, byte entryFlags) {
+            if (count == parents.length) {
+                ensureCapacity(count * 2);
+            }
+            int id = count++;
+            parents[id] = parent;
+            names[id] = name;
+            sizes[id] = size;
+            dates[id] = date;
+            flags[id] = entryFlags;
+            if ((entryFlags & FLAG_DIRECTORY) != 0 && (entryFlags & FLAG_REMOVED) == 0) {
+                folderIds.put(getPath(id), id);
+            }
+            return id;
+        }
+
+        void update(int id, BasicFileAttributes attributes) {
+            sizes[id] = attributes.size();
+            dates[id] = attributes.lastModifiedTime().toMillis();
+        }
+
+        boolean isDirectory(int id) {
+            return (flags[id] & FLAG_DIRECTORY) != 0;
+        }
+
+        /**
+         * Marks an entry as removed, along with the contents of the folder it may be.
+         */
+        void remove(int id) {
+            markRemoved(id);
+            if (isDirectory(id)) {
+                // Descendants always come after their parent
+                for (int i = id + 1; i < count; i++) {
+                    if ((flags[i] & FLAG_REMOVED) == 0 && (flags[parents[i]] & FLAG_REMOVED) != 0) {
+                        markRemoved(i);
+                    }
+                }
+            }
+        }
+
+        private void markRemoved(int id) {
+            if (isDirectory(id)) {
+                folderIds.remove(getPath(id));
+            }
+            flags[id] |= FLAG_REMOVED;
+            removedCount++;
+        }
+
+        String getPath(int id) {
+            if (parents[id] < 0) {
+                return names[id];
+            }
+            String parentPath = getPath(parents[id]);
+            return parentPath.endsWith(File.separator) ? parentPath + names[id] : parentPath + File.separator + names[id];
+        }
+
+        /**
+         * Returns the ids of the entries located directly in the given folder, by name.
+         */
+        Map<String, Integer> getChildren(int folderId) {
+            Map<String, Integer> children = new HashMap<>();
+            for (int i = folderId + 1; i < count; i++) {
+                if (parents[i] == folderId && (flags[i] & FLAG_REMOVED) == 0) {
+                    children.put(names[i], i);
+                }
+            }
+            return children;
+        }
+
+        List<String> find(int folderId, Predicate<String> nameMatcher, boolean recursive, boolean ignoreHidden) {
+            List<String> results = new ArrayList<>();
+            // Entries located under the folder, computed in a single pass since parents come before their children
+            boolean[] inFolder = new boolean[count];
+            inFolder[folderId] = true;
+            byte excluded = (byte)(FLAG_REMOVED | (ignoreHidden ? FLAG_HIDDEN : 0));
+            for (int i = folderId + 1; i < count; i++) {
+                int parent = parents[i];
+                if (parent < folderId || !inFolder[parent] || (flags[i] & excluded) != 0) {
+                    continue;
+                }
+                if (recursive) {
+                    inFolder[i] = true;
+                } else if (parent != folderId) {
+                    continue;
+                }
+                if (nameMatcher.test(names[i])) {
+                    results.add(getPath(i));
+                }
+            }
+            return results;
+        }
+
+        /**
+         * Returns a copy of these entries without the removed ones, or these entries if none has been removed.
+         */
+        Entries compact() {
+            if (removedCount == 0) {
+                return this;
+            }
+            Entries compacted = new Entries(scanTime);
+            compacted.ensureCapacity(count - removedCount);
+            int[] newIds = new int[count];
+            for (int i = 0; i < count; i++) {
+                if ((flags[i] & FLAG_REMOVED) != 0) {
+                    continue;
+                }
+                int parent = parents[i] < 0 ? -1 : newIds[parents[i]];
+                newIds[i] = compacted.add(parent, names[i], sizes[i], dates[i], flags[i]);
+            }
+            return compacted;
+        }
+    }
+}
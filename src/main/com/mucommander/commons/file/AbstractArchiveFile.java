@@ -25,10 +25,10 @@ import com.mucommander.commons.file.impl.ProxyFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
 import java.util.WeakHashMap;
@@ -57,6 +57,8 @@ import java.util.WeakHashMap;
  * a tree to map the structure of the archive and list the content of any particular directory within the archive.
  * This tree is recreated (<code>getEntryIterator()</code> is called again) only if the archive file has changed, i.e.
  * if its date has changed since the tree was created.
+ * If the {@link ArchiveEntryCache} is enabled, the entries of read-only archives are stored in it and the tree of an
+ * archive that hasn't changed is recreated from the cache, without reading the archive.
  *
  * <p>Files returned by the <code>ls()</code> are {@link AbstractArchiveEntryFile} instances which use an {@link ArchiveEntry}
  * object to retrieve the entry's attributes. In turn, these <code>AbstractArchiveEntryFile</code> instances query the
@@ -87,6 +89,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * need to be reloaded */
     private long entryTreeDate;
 
+    /** <code>true</code> if the entries tree was loaded from the {@link ArchiveEntryCache} and its entries have no
+     * entry object */
+    private boolean entryTreeFromCache;
+
     /** Caches {@link AbstractArchiveEntryFile} instances so that there is only one AbstractArchiveEntryFile
      * corresponding to the same entry at any given time, to avoid attribute inconsistencies. The key is the
      * corresponding ArchiveEntry. */
@@ -111,20 +117,56 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     private void createEntriesTree() throws IOException {
         // TODO: this method is not thread-safe and needs to be synchronized
-        ArchiveEntryTree treeRoot = new ArchiveEntryTree();
         archiveEntryFiles = new WeakHashMap<>();
 
+        if (isEntryCacheSupported()) {
+            long start = System.currentTimeMillis();
+            List<ArchiveEntry> cachedEntries = ArchiveEntryCache.get(this);
+            if (cachedEntries != null) {
+                ArchiveEntryTree treeRoot = new ArchiveEntryTree();
+                for (ArchiveEntry entry : cachedEntries) {
+                    treeRoot.addArchiveEntry(entry);
+                }
+
+                getLogger().info("entries tree loaded from cache in "+(System.currentTimeMillis()-start)+" ms");
+
+                this.entryTreeRoot = treeRoot;
+                this.entryTreeFromCache = true;
+                declareEntriesTreeUpToDate();
+                return;
+            }
+        }
+
+        readEntriesTree();
+    }
+
+    /**
+     * Creates the entries tree from the entries returned by {@link #getEntryIterator()}, and stores them in the
+     * {@link ArchiveEntryCache} if this archive supports it.
+     *
+     * @throws IOException if an error occured while retrieving this archive's entries
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    private void readEntriesTree() throws IOException {
+        ArchiveEntryTree treeRoot = new ArchiveEntryTree();
+        List<ArchiveEntry> entryList = isEntryCacheSupported() ? new ArrayList<>() : null;
+
         long start = System.currentTimeMillis();
         ArchiveEntryIterator entries = getEntryIterator();
         try {
             ArchiveEntry entry;
             while ((entry = entries.nextEntry()) != null) {
                 treeRoot.addArchiveEntry(entry);
+                if (entryList != null) {
+                    entryList.add(entry);
+                }
             }
 
             getLogger().info("entries tree created in "+(System.currentTimeMillis()-start)+" ms");
 
             this.entryTreeRoot = treeRoot;
+            this.entryTreeFromCache = false;
             declareEntriesTreeUpToDate();
         }
         finally {
@@ -134,6 +176,45 @@ public abstract class AbstractArchiveFile extends ProxyFile {
                 // Not much we can do about it
             }
         }
+
+        if (entryList != null) {
+            ArchiveEntryCache.put(this, entryList);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the entries of this archive can be stored in the {@link ArchiveEntryCache}, that is
+     * if the cache is enabled and the archive is not writable: writable archives modify the entries of their tree.
+     *
+     * @return <code>true</code> if the entries of this archive can be cached
+     */
+    protected boolean isEntryCacheSupported() {
+        return ArchiveEntryCache.isEnabled() && !isWritable();
+    }
+
+    /**
+     * Returns the entry returned by {@link #getEntryIterator()} that corresponds to the given entry of the tree.
+     * Entries loaded from the {@link ArchiveEntryCache} have no entry object and can't be passed to
+     * {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}, so the tree is recreated from the archive the
+     * first time one of them is read.
+     *
+     * @param entry an entry of the tree
+     * @return the corresponding entry read from the archive, the given entry if it wasn't loaded from the cache
+     * @throws IOException if an error occurred while reading the archive's entries
+     */
+    ArchiveEntry resolveEntry(ArchiveEntry entry) throws IOException {
+        if (!(entry instanceof ArchiveEntryCache.CachedEntry)) {
+            return entry;
+        }
+
+        checkEntriesTree();
+        if (entryTreeFromCache) {
+            // Entry files keep their cached entry, archiveEntryFiles compares entries by path
+            readEntriesTree();
+        }
+
+        ArchiveEntryNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
+        return entryNode == null ? entry : entryNode.getEntry();
     }
 
     /**
@@ -185,10 +266,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     protected void removeFromEntriesTree(ArchiveEntry entry) throws IOException {
         checkEntriesTree();
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
+        ArchiveEntryNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
 
         if(entryNode!=null) {
-            DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
+            ArchiveEntryNode parentNode = entryNode.getParent();
             parentNode.remove(entryNode);
         }
     }
@@ -217,7 +298,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             throw new IOException();
         }
 
-        DefaultMutableTreeNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
+        ArchiveEntryNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
         if (matchNode == null) {
             throw new IOException();
         }
@@ -231,7 +312,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    private AbstractFile[] ls(DefaultMutableTreeNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
+    private AbstractFile[] ls(ArchiveEntryNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
         AbstractFile files[];
         int nbChildren = treeNode.getChildCount();
 
@@ -240,14 +321,14 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             files = new AbstractFile[nbChildren];
 
             for(int c=0; c<nbChildren; c++) {
-                files[c] = getArchiveEntryFile((ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject()), parentFile);
+                files[c] = getArchiveEntryFile(treeNode.getChildAt(c).getEntry(), parentFile);
             }
         }
         // Use provided FilenameFilter and temporarily store created entry files that match the filter in a Vector
         else {
             List<AbstractFile> filesV = new Vector<>();
             for(int c=0; c<nbChildren; c++) {
-                ArchiveEntry entry = (ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject());
+                ArchiveEntry entry = treeNode.getChildAt(c).getEntry();
                 if(!filenameFilter.accept(entry.getName()))
                     continue;
 
@@ -345,7 +426,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         entryPath = entryPath.replace(File.separatorChar, ArchiveEntry.SEPARATOR_CHAR);
 
         // Find the entry node corresponding to the given path
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entryPath);
+        ArchiveEntryNode entryNode = entryTreeRoot.findEntryNode(entryPath);
 
         if(entryNode==null) {
             int depth = ArchiveEntry.getDepth(entryPath);
@@ -378,10 +459,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @param entryNode tree node corresponding to the entry for which to return a file
      * @return an {@link AbstractFile} instance corresponding to the given entry node
      */
-    private AbstractFile getArchiveEntryFile(DefaultMutableTreeNode entryNode) throws IOException {
-        DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
+    private AbstractFile getArchiveEntryFile(ArchiveEntryNode entryNode) throws IOException {
+        ArchiveEntryNode parentNode = entryNode.getParent();
         return getArchiveEntryFile(
-                (ArchiveEntry)entryNode.getUserObject(),
+                entryNode.getEntry(),
                 parentNode==entryTreeRoot
                     ?this
                     :getArchiveEntryFile(parentNode)
@@ -426,6 +507,21 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     public abstract InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException;
 
+    /**
+     * Returns <code>true</code> if the streams returned by {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}
+     * when no iterator is specified read the archive independently of each other, so that several entries can be read
+     * concurrently by different threads. This is typically the case of formats with a central directory that are
+     * accessed randomly, each stream reading the archive through its own {@link com.mucommander.commons.io.RandomAccessInputStream}.
+     *
+     * <p>This implementation returns <code>false</code>, it should be overridden by archive formats that support
+     * concurrent reads.</p>
+     *
+     * @return <code>true</code> if several entries of this archive can be read concurrently
+     */
+    public boolean isConcurrentEntryReadSupported() {
+        return false;
+    }
+
     /**
      * Returns <code>true</code> if this archive file is writable, i.e. is capable of adding and deleting entries from
      * the underlying archive file.
@@ -0,0 +1,302 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.io.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk-backed cache of the entries listed by {@link AbstractArchiveFile#getEntryIterator()}, so that archives that are
+ * expensive to list (compressed tar, 7z, rar, remote archives...) can be browsed again without being read.
+ *
+ * <p>The listing of an archive is stored in a file of its own, keyed by the archive's URL, and is only returned while
+ * the archive has the size and date it had when it was listed. The cache is disabled until a folder and a maximum
+ * size are set. When the cached listings take more than the maximum size, the least recently used ones are deleted.</p>
+ *
+ * <p>Entries returned by the cache only carry attributes, they have no entry object. They can be listed but have to be
+ * replaced by the archive's own entries before their contents can be read, see
+ * {@link AbstractArchiveFile#resolveEntry(ArchiveEntry)}.</p>
+ */
+public class ArchiveEntryCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveEntryCache.class);
+
+    private static final int MAGIC = 0x4d414543;
+    private static final int VERSION = 1;
+
+    /** Extension of the files holding the listings */
+    private static final String FILE_EXTENSION = ".entries";
+
+    private static final int FLAG_DIRECTORY = 1;
+    private static final int FLAG_OWNER = 2;
+    private static final int FLAG_GROUP = 4;
+
+    /** Folder where listings are stored, <code>null</code> if the cache is disabled */
+    private static volatile File cacheFolder;
+
+    /** Maximum total size of the cached listings in bytes, 0 if the cache is disabled */
+    private static volatile long maxSize;
+
+
+    /**
+     * Entry read from the cache, which has no entry object.
+     */
+    static class CachedEntry extends ArchiveEntry {
+        CachedEntry(String path, boolean directory, long date, long size) {
+            super(path, directory, date, size, true);
+        }
+    }
+
+
+    private ArchiveEntryCache() {
+    }
+
+    /**
+     * Sets the folder where archive listings are stored, <code>null</code> to disable the cache.
+     *
+     * @param folder the cache folder, <code>null</code> to disable the cache
+     */
+    public static void setCacheFolder(File folder) {
+        cacheFolder = folder;
+    }
+
+    /**
+     * Sets the maximum total size of the cached listings, 0 to disable the cache. If the listings currently take more
+     * space, the least recently used ones are deleted.
+     *
+     * @param size the maximum size of the cache in bytes, 0 to disable it
+     */
+    public static void setMaxSize(long size) {
+        maxSize = Math.max(0, size);
+        File folder = cacheFolder;
+        if (folder != null) {
+            synchronized (ArchiveEntryCache.class) {
+                evict(folder, maxSize);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if both a cache folder and a maximum size have been set.
+     *
+     * @return <code>true</code> if the cache is enabled
+     */
+    public static boolean isEnabled() {
+        return cacheFolder != null && maxSize > 0;
+    }
+
+    /**
+     * Returns the cached entries of the given archive, <code>null</code> if they aren't cached or if the archive has
+     * changed since it was listed.
+     *
+     * @param archive an archive file
+     * @return the entries of the archive, <code>null</code> if unknown
+     */
+    static List<ArchiveEntry> get(AbstractFile archive) {
+        File folder = cacheFolder;
+        if (folder == null || maxSize <= 0) {
+            return null;
+        }
+        long date = archive.getLastModifiedDate();
+        long size = archive.getSize();
+        if (date <= 0 || size < 0) {
+            return null;
+        }
+        String key = getKey(archive);
+        File file = new File(folder, getFileName(key));
+        if (!file.exists()) {
+            return null;
+        }
+        List<ArchiveEntry> entries;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)
+                    || in.readLong() != size || in.readLong() != date) {
+                return null;
+            }
+            int count = in.readInt();
+            entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(readEntry(in));
+            }
+        } catch (IOException e) {
+            // The file may have been evicted in the meantime
+            LOGGER.info("Could not read the cached entries of " + key, e);
+            return null;
+        }
+        // The date of the file is the time it was last used
+        file.setLastModified(System.currentTimeMillis());
+        return entries;
+    }
+
+    /**
+     * Stores the entries of the given archive, evicting the least recently used listings if the cache becomes too
+     * large. Archives whose size or date is unknown are not cached.
+     *
+     * @param archive an archive file
+     * @param entries all the entries returned by the archive's {@link AbstractArchiveFile#getEntryIterator()}
+     */
+    static synchronized void put(AbstractFile archive, List<ArchiveEntry> entries) {
+        File folder = cacheFolder;
+        long max = maxSize;
+        if (folder == null || max <= 0) {
+            return;
+        }
+        long date = archive.getLastModifiedDate();
+        long size = archive.getSize();
+        if (date <= 0 || size < 0) {
+            return;
+        }
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            return;
+        }
+        String key = getKey(archive);
+        File file = new File(folder, getFileName(key));
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeLong(size);
+            out.writeLong(date);
+            out.writeInt(entries.size());
+            for (ArchiveEntry entry : entries) {
+                writeEntry(out, entry);
+            }
+        } catch (IOException e) {
+            LOGGER.info("Could not cache the entries of " + key, e);
+            tempFile.delete();
+            return;
+        }
+        if (tempFile.length() > max) {
+            // Would evict everything else
+            tempFile.delete();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.info("Could not cache the entries of " + key, e);
+            tempFile.delete();
+            return;
+        }
+        evict(folder, max);
+    }
+
+    /**
+     * Deletes the least recently used listings until the cached listings take no more than the given size.
+     */
+    private static void evict(File folder, long max) {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        // Dates are read once, they change when a listing is used
+        Map<File, Long> lastUsed = new HashMap<>();
+        for (File file : files) {
+            total += file.length();
+            lastUsed.put(file, file.lastModified());
+        }
+        if (total <= max) {
+            return;
+        }
+        List<File> sortedFiles = new ArrayList<>(lastUsed.keySet());
+        sortedFiles.sort((f1, f2) -> Long.compare(lastUsed.get(f1), lastUsed.get(f2)));
+        for (File file : sortedFiles) {
+            if (total <= max) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static String getKey(AbstractFile archive) {
+        // Credentials are not written to disk
+        return archive.getURL().toString(false);
+    }
+
+    private static String getFileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return ByteUtils.toHexString(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + FILE_EXTENSION;
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is supported by all Java platforms
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, ArchiveEntry entry) throws IOException {
+        String owner = entry.getOwner();
+        String group = entry.getGroup();
+        int flags = (entry.isDirectory() ? FLAG_DIRECTORY : 0) | (owner != null ? FLAG_OWNER : 0) | (group != null ? FLAG_GROUP : 0);
+        FilePermissions permissions = entry.getPermissions();
+
+        out.writeUTF(entry.getPath());
+        out.writeByte(flags);
+        out.writeLong(entry.getLastModifiedDate());
+        out.writeLong(entry.getSize());
+        out.writeShort(permissions.getIntValue());
+        out.writeShort(permissions.getMask().getIntValue());
+        if (owner != null) {
+            out.writeUTF(owner);
+        }
+        if (group != null) {
+            out.writeUTF(group);
+        }
+    }
+
+    private static ArchiveEntry readEntry(DataInputStream in) throws IOException {
+        String path = in.readUTF();
+        int flags = in.readByte();
+        long date = in.readLong();
+        long size = in.readLong();
+        int permissions = in.readUnsignedShort();
+        int mask = in.readUnsignedShort();
+
+        ArchiveEntry entry = new CachedEntry(path, (flags & FLAG_DIRECTORY) != 0, date, size);
+        entry.setPermissions(new SimpleFilePermissions(permissions, mask));
+        if ((flags & FLAG_OWNER) != 0) {
+            entry.setOwner(in.readUTF());
+        }
+        if ((flags & FLAG_GROUP) != 0) {
+            entry.setGroup(in.readUTF());
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A node of an {@link ArchiveEntryTree}, holding an {@link ArchiveEntry} and the nodes of the entries it contains.
+ *
+ * <p>Children are kept in an array, in the order they were added. Once a node has more than
+ * {@link #INDEX_THRESHOLD} children, they are also indexed by path so that looking one up doesn't require scanning
+ * the whole array: this keeps the tree creation linear for archives with huge folders.</p>
+ *
+ * <p>Children are looked up by path, in a 'trailing slash insensitive' way: the path <code>temp</code> matches
+ * the entry <code>temp/</code>.</p>
+ */
+class ArchiveEntryNode {
+
+    /** Number of children above which they are indexed by path */
+    private static final int INDEX_THRESHOLD = 8;
+
+    private static final ArchiveEntryNode[] NO_CHILDREN = new ArchiveEntryNode[0];
+
+    /** The entry, null for the root node */
+    private ArchiveEntry entry;
+
+    private ArchiveEntryNode parent;
+
+    private ArchiveEntryNode[] children = NO_CHILDREN;
+
+    private int nbChildren;
+
+    /** Children indexed by path (without trailing slash), null until there are more than INDEX_THRESHOLD children */
+    private Map<String, ArchiveEntryNode> childrenIndex;
+
+
+    ArchiveEntryNode(ArchiveEntry entry) {
+        this.entry = entry;
+    }
+
+    ArchiveEntry getEntry() {
+        return entry;
+    }
+
+    void setEntry(ArchiveEntry entry) {
+        this.entry = entry;
+    }
+
+    ArchiveEntryNode getParent() {
+        return parent;
+    }
+
+    int getChildCount() {
+        return nbChildren;
+    }
+
+    ArchiveEntryNode getChildAt(int index) {
+        if (index >= nbChildren) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return children[index];
+    }
+
+    /**
+     * Adds the given node at the end of the children of this node.
+     *
+     * @param child the node to add
+     */
+    void add(ArchiveEntryNode child) {
+        if (nbChildren == children.length) {
+            ArchiveEntryNode[] newChildren = new ArchiveEntryNode[Math.max(4, nbChildren + (nbChildren >> 1))];
+            System.arraycopy(children, 0, newChildren, 0, nbChildren);
+            children = newChildren;
+        }
+        children[nbChildren++] = child;
+        child.parent = this;
+
+        if (childrenIndex != null) {
+            // Keep the first node when several entries have the same path, as a sequential lookup would
+            childrenIndex.putIfAbsent(getKey(child), child);
+        } else if (nbChildren > INDEX_THRESHOLD) {
+            childrenIndex = new HashMap<>(nbChildren * 2);
+            for (int i = 0; i < nbChildren; i++) {
+                childrenIndex.putIfAbsent(getKey(children[i]), children[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes the given node from the children of this node. Does nothing if it isn't a child of this node.
+     *
+     * @param child the node to remove
+     */
+    void remove(ArchiveEntryNode child) {
+        int index = -1;
+        for (int i = 0; i < nbChildren; i++) {
+            if (children[i] == child) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1) {
+            return;
+        }
+        System.arraycopy(children, index + 1, children, index, nbChildren - index - 1);
+        children[--nbChildren] = null;
+        child.parent = null;
+
+        if (childrenIndex != null) {
+            String key = getKey(child);
+            if (childrenIndex.get(key) == child) {
+                childrenIndex.remove(key);
+                // Another child may have the same path
+                ArchiveEntryNode sameKeyNode = findChildSequentially(key);
+                if (sameKeyNode != null) {
+                    childrenIndex.put(key, sameKeyNode);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first child of this node whose entry path matches the given one, <code>null</code> if there is none.
+     *
+     * @param path the path of the entry, relative to the archive's root and with or without trailing slash
+     * @return the matching child node, <code>null</code> if there is none
+     */
+    ArchiveEntryNode findChild(String path) {
+        String key = stripTrailingSlash(path);
+        if (childrenIndex != null) {
+            return childrenIndex.get(key);
+        }
+        return findChildSequentially(key);
+    }
+
+    private ArchiveEntryNode findChildSequentially(String key) {
+        for (int i = 0; i < nbChildren; i++) {
+            if (pathMatches(children[i].entry.getPath(), key)) {
+                return children[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns <code>true</code> if the given path is equal to the key, ignoring the path's trailing slash.
+     */
+    private static boolean pathMatches(String path, String key) {
+        int keyLength = key.length();
+        int pathLength = path.length();
+        if (pathLength == keyLength + 1) {
+            return path.charAt(keyLength) == ArchiveEntry.SEPARATOR_CHAR && path.startsWith(key);
+        }
+        return pathLength == keyLength && path.equals(key);
+    }
+
+    private static String getKey(ArchiveEntryNode node) {
+        return stripTrailingSlash(node.entry.getPath());
+    }
+
+    private static String stripTrailingSlash(String path) {
+        int length = path.length();
+        return length > 0 && path.charAt(length - 1) == ArchiveEntry.SEPARATOR_CHAR ? path.substring(0, length - 1) : path;
+    }
+
+    @Override
+    public String toString() {
+        return entry == null ? "root" : entry.getPath();
+    }
+}
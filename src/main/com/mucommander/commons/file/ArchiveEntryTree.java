@@ -19,26 +19,28 @@
 
 package com.mucommander.commons.file;
 
-import com.mucommander.commons.file.util.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
-
 /**
  * Stores archive entries and organizes them in a tree structure that maps entries in the way they are organized
  * inside the archive. An instance of <code>ArchiveEntryTree</code> also acts as the root node: all entry nodes
  * are children of it (direct or indirect).
  *
+ * <p>Nodes index their children by path once they have more than a few of them (see {@link ArchiveEntryNode}), so
+ * adding an entry or looking one up costs a lookup per path level, regardless of the number of entries in each
+ * folder.</p>
+ *
  * @author Maxence Bernard
  */
-class ArchiveEntryTree extends DefaultMutableTreeNode {
-    private static Logger logger = LoggerFactory.getLogger(ArchiveEntryTree.class);
+class ArchiveEntryTree extends ArchiveEntryNode {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveEntryTree.class);
 
     /**
      * Creates a new empty tree.
      */
     ArchiveEntryTree() {
+        super(null);
     }
 
     /**
@@ -50,48 +52,36 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
         String entryPath = entry.getPath();
         int entryDepth = entry.getDepth();
         int slashPos = 0;
-        DefaultMutableTreeNode node = this;
-        for(int d=1; d<=entryDepth; d++) {
-            if(d==entryDepth && !entry.isDirectory()) {
+        ArchiveEntryNode node = this;
+        for (int d = 1; d <= entryDepth; d++) {
+            if (d == entryDepth && !entry.isDirectory()) {
                 // create a leaf node for the entry
                 entry.setExists(true);      // the entry has to exist
-                node.add(new DefaultMutableTreeNode(entry, true));
+                node.add(new ArchiveEntryNode(entry));
                 break;
             }
 
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
+            String subPath = d == entryDepth ? entryPath : entryPath.substring(0, (slashPos = entryPath.indexOf('/', slashPos) + 1));
 
-            int nbChildren = node.getChildCount();
-            DefaultMutableTreeNode childNode = null;
-            boolean matchFound = false;
-            for(int c=0; c<nbChildren; c++) {
-                childNode = (DefaultMutableTreeNode)node.getChildAt(c);
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found a match
-                    matchFound = true;
-                    break;
-                }
-            }
+            // Path comparison is 'trailing slash insensitive'
+            ArchiveEntryNode childNode = node.findChild(subPath);
 
-            if (matchFound) {
+            if (childNode != null) {
                 if (d == entryDepth) {
-                    getLogger().trace("Replacing entry for node "+childNode);
+                    LOGGER.trace("Replacing entry for node {}", childNode);
                     // Replace existing entry
-                    childNode.setUserObject(entry);
-                }
-                else {
+                    childNode.setEntry(entry);
+                } else {
                     node = childNode;
                 }
-            }
-            else {
+            } else {
                 if (d == entryDepth) {
                     // create a leaf node for the entry
                     entry.setExists(true);      // the entry has to exist
-                    node.add(new DefaultMutableTreeNode(entry, true));
+                    node.add(new ArchiveEntryNode(entry));
                 } else {
-                    getLogger().trace("Creating node for "+subPath);
-                    childNode = new DefaultMutableTreeNode(new ArchiveEntry(subPath, true, entry.getLastModifiedDate(), 0, true), true);
+                    LOGGER.trace("Creating node for {}", subPath);
+                    childNode = new ArchiveEntryNode(new ArchiveEntry(subPath, true, entry.getLastModifiedDate(), 0, true));
                     node.add(childNode);
                     node = childNode;
                 }
@@ -111,40 +101,19 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
      * @param entryPath the path to the entry to look up in this tree
      * @return the node that corresponds to the specified entry path
      */
-    DefaultMutableTreeNode findEntryNode(String entryPath) {
+    ArchiveEntryNode findEntryNode(String entryPath) {
         int entryDepth = ArchiveEntry.getDepth(entryPath);
         int slashPos = 0;
-        DefaultMutableTreeNode currentNode = this;
-        for(int d=1; d<=entryDepth; d++) {
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = currentNode.getChildCount();
-            DefaultMutableTreeNode matchNode = null;
-            for (int c=0; c<nbChildren; c++) {
-                DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currentNode.getChildAt(c);
+        ArchiveEntryNode currentNode = this;
+        for (int d = 1; d <= entryDepth; d++) {
+            String subPath = d == entryDepth ? entryPath : entryPath.substring(0, (slashPos = entryPath.indexOf('/', slashPos) + 1));
 
-                // Path comparison is 'trailing slash insensitive'
-                if (PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found the node, let's return it
-                    matchNode = childNode;
-                    break;
-                }
-            }
-
-            if (matchNode == null) {
+            currentNode = currentNode.findChild(subPath);
+            if (currentNode == null) {
                 return null;    // No node maching the provided path, return null
             }
-
-            currentNode = matchNode;
         }
 
         return currentNode;
     }
-
-    private static Logger getLogger() {
-        if (logger == null) {
-            logger = LoggerFactory.getLogger(AbstractArchiveFile.class);
-        }
-        return logger;
-    }
 }
@@ -23,6 +23,7 @@ import com.mucommander.commons.file.FileAttributes;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.io.BufferedRandomOutputStream;
+import com.mucommander.commons.io.ParallelGZIPOutputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
 
@@ -168,6 +169,25 @@ public abstract class Archiver {
      * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
      */
     public static Archiver getArchiver(AbstractFile file, ArchiveFormat format) throws IOException, UnsupportedFileOperationException {
+        return getArchiver(file, format, 1);
+    }
+
+    /**
+     * Returns an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to,
+     * compressing data with up to the specified number of threads. Only the Zip, Gzip and Tar/Gzip formats can be
+     * compressed with several threads, other formats always use a single one.
+     * <code>null</code> is returned if the specified format is not valid.
+     *
+     * @param file the AbstractFile which the returned Archiver will write entries to
+     * @param format an archive format
+     * @param nbThreads maximum number of threads compressing data, <code>1</code> for sequential compression
+     * @return an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to ;
+     * null if the specified format is not valid.
+     * @throws IOException if the file cannot be opened for write, or if an error occurred while intializing the archiver
+     * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
+     * @see #supportsParallelCompression(ArchiveFormat)
+     */
+    public static Archiver getArchiver(AbstractFile file, ArchiveFormat format, int nbThreads) throws IOException, UnsupportedFileOperationException {
 //        switch(format) {
 //            case ISO:
 //                return new ISOArchiver(file);
@@ -191,7 +211,7 @@ public abstract class Archiver {
             out = new BufferedOutputStream(file.getOutputStream());
         }
 
-        return getArchiver(out, format);
+        return getArchiver(out, format, nbThreads);
     }
 
 
@@ -202,19 +222,20 @@ public abstract class Archiver {
      *
      * @param out the OutputStream which the returned Archiver will write entries to
      * @param format an archive format
+     * @param nbThreads maximum number of threads compressing data
      * @return an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to ;
      * null if the specified format is not valid.
      * @throws IOException if an error occurred while initializing the archiver
      */
-    private static Archiver getArchiver(OutputStream out, ArchiveFormat format) throws IOException {
+    private static Archiver getArchiver(OutputStream out, ArchiveFormat format, int nbThreads) throws IOException {
         Archiver archiver;
 
         switch (format) {
             case ZIP:
-                archiver = new ZipArchiver(out);
+                archiver = new ZipArchiver(out, nbThreads);
                 break;
             case GZ:
-                archiver = new SingleFileArchiver(new GZIPOutputStream(out));
+                archiver = new SingleFileArchiver(createGzipOutputStream(out, nbThreads));
                 break;
             case BZ2:
                 archiver = new SingleFileArchiver(createBzip2OutputStream(out));
@@ -223,7 +244,7 @@ public abstract class Archiver {
                 archiver = new TarArchiver(out);
                 break;
             case TAR_GZ:
-                archiver = new TarArchiver(new GZIPOutputStream(out));
+                archiver = new TarArchiver(createGzipOutputStream(out, nbThreads));
                 break;
             case TAR_BZ2:
                 archiver = new TarArchiver(createBzip2OutputStream(out));
@@ -240,6 +261,19 @@ public abstract class Archiver {
         return archiver;
     }
 
+    /**
+     * Creates and returns a Gzip <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
+     * stream, which compresses data in blocks with several threads if <code>nbThreads</code> is greater than 1.
+     *
+     * @param out the underlying stream
+     * @param nbThreads maximum number of threads compressing data
+     * @return a Gzip OutputStream
+     * @throws IOException if an error occurred while writing the Gzip header
+     */
+    private static OutputStream createGzipOutputStream(OutputStream out, int nbThreads) throws IOException {
+        return nbThreads > 1 ? new ParallelGZIPOutputStream(out, nbThreads) : new GZIPOutputStream(out);
+    }
+
     /**
      * Creates and returns a Bzip2 <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
      * stream.
@@ -297,6 +331,16 @@ public abstract class Archiver {
     public static boolean formatSupportsComment(ArchiveFormat format) {
         return format == ArchiveFormat.ZIP;
     }
+
+    /**
+     * Returns true if the specified archive format can be compressed with several threads.
+     *
+     * @param format an archive format
+     * @return true if the specified archive format can be compressed with several threads
+     */
+    public static boolean supportsParallelCompression(ArchiveFormat format) {
+        return format == ArchiveFormat.ZIP || format == ArchiveFormat.GZ || format == ArchiveFormat.TAR_GZ;
+    }
 	
 	
     //////////////////////
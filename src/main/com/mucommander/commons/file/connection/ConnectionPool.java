@@ -4,6 +4,15 @@ import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,110 +22,145 @@ import com.mucommander.commons.file.FileURL;
 
 
 /**
+ * Pools the {@link ConnectionHandler} instances used by remote file implementations, so that connections to a server
+ * are shared between files and kept open between operations.
+ *
+ * <p>Each realm/credentials combo has a pool of its own, holding at most {@link #getMaxConnectionsPerRealm()}
+ * connections: threads that need a connection to different servers never wait on one another. When all the
+ * connections of a realm are locked, threads wait for one to be released in the order in which they asked for it,
+ * and give up after {@link #WAIT_TIMEOUT} milliseconds so that threads locking several connections at once can't wait
+ * on one another forever.
+ *
+ * <p>Connections are kept alive and closed after a period of inactivity, as specified by their
+ * {@link ConnectionHandler#getKeepAlivePeriod() keep alive} and
+ * {@link ConnectionHandler#getCloseOnInactivityPeriod() close on inactivity} periods. Each connection is checked when
+ * its next deadline is due rather than polled.
+ *
  * @see com.mucommander.commons.file.connection.ConnectionHandler
  * @author Maxence Bernard
  */
-public class ConnectionPool implements Runnable {
+public class ConnectionPool {
     private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
 
-    /** Singleton instance */
-    private static ConnectionPool instance = new ConnectionPool();
+    /** Default maximum number of simultaneous connections per realm/credentials combo */
+    public final static int DEFAULT_MAX_CONNECTIONS_PER_REALM = 8;
 
-    /** List of registered ConnectionHandler */
-    private final static List<ConnectionHandler> connectionHandlers = new ArrayList<>();
+    /** Maximum number of simultaneous connections per realm/credentials combo */
+    private static volatile int maxConnectionsPerRealm = DEFAULT_MAX_CONNECTIONS_PER_REALM;
 
-    /** The thread that monitors connections, null if there currently is no registered ConnectionHandler */
-    private static Thread monitorThread;
+    /** Pools of ConnectionHandler, by realm/credentials combo */
+    private final static Map<RealmKey, RealmPool> pools = new ConcurrentHashMap<>();
 
-    /** Controls how of often the thread monitor checks connections */
-    private final static int MONITOR_SLEEP_PERIOD = 1000;
+    /** Delay between two checks of a connection that is neither kept alive nor closed on inactivity, to remove it
+     * from the pool once it has been disconnected */
+    private final static long DISCONNECTION_CHECK_PERIOD = 60000;
 
-    /** Maximum number of simultaneous connections per realm/credentials combo */
-    private final static int MAX_CONNECTIONS_PER_REALM = 4;
+    /** Maximum delay a thread waits for a connection to be released, in milliseconds */
+    public final static long WAIT_TIMEOUT = 5000;
+
+    /** Minimum number of connections per realm, a copy within a server locks two of them */
+    public final static int MIN_CONNECTIONS_PER_REALM = 2;
+
+    /** Schedules connection checks */
+    private final static ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ConnectionPool monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Keeps alive and closes connections, as these may block */
+    private final static ExecutorService worker = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ConnectionPool worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    /**
+     * Sets the maximum number of simultaneous connections to a realm with the same credentials. This applies to the
+     * realms that are connected to after this method has been called.
+     *
+     * <p>Callers that lock several connections to the same realm at once, such as a copy within a server, should not
+     * run more than <code>max / 2</code> such operations concurrently: the others would fail once they have waited
+     * {@link #WAIT_TIMEOUT} milliseconds for a connection.</p>
+     *
+     * @param max maximum number of connections per realm/credentials combo
+     * @throws IllegalArgumentException if max is lower than {@link #MIN_CONNECTIONS_PER_REALM}
+     */
+    public static void setMaxConnectionsPerRealm(int max) {
+        if (max < MIN_CONNECTIONS_PER_REALM) {
+            throw new IllegalArgumentException("At least " + MIN_CONNECTIONS_PER_REALM + " connections per realm are required: " + max);
+        }
+        maxConnectionsPerRealm = max;
+    }
 
+    /**
+     * Returns the maximum number of simultaneous connections to a realm with the same credentials.
+     *
+     * @return maximum number of connections per realm/credentials combo
+     */
+    public static int getMaxConnectionsPerRealm() {
+        return maxConnectionsPerRealm;
+    }
 
     public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
         FileURL realm = url.getRealm();
-
-        while(true) {
-            synchronized(connectionHandlers) {      // Ensures that monitor thread is not currently changing the list while we access it
-                Credentials urlCredentials = url.getCredentials();
-                int matchingConnHandlers = 0;
-
-                // Try and find an appropriate existing ConnectionHandler
-                //for (ConnectionHandler connHandler : connectionHandlers) {
-                for (Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext(); ) {
-                    ConnectionHandler connHandler = it.next();
-                	// ConnectionHandler must match the realm and credentials and must not be locked
-                	if (connHandler.equals(realm, urlCredentials)) {
-                		matchingConnHandlers++;
-                		synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
-                			if (!connHandler.isLocked()) {
-                				// Try to acquire lock if a lock was requested
-                				if (!acquireLock || connHandler.acquireLock()) {
-                					LOGGER.info("returning ConnectionHandler {}, realm = {}", connHandler, realm);
-
-                					// Update last activity timestamp to now
-                					connHandler.updateLastActivityTimestamp();
-
-                					return connHandler;
-                				}
-                			}
-                		}
-                	}
-                    
-                    if (matchingConnHandlers == MAX_CONNECTIONS_PER_REALM) {
-                        LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
-                        try {
-                            // Wait for a ConnectionHandler to be released or removed from the pool
-                            final int timeout = 5000;
-                            long t0 = System.currentTimeMillis();
-                            connectionHandlers.wait(timeout);      // relinquishes the lock on connectionHandlers
-                            if (System.currentTimeMillis() - t0 > timeout) {
-                                connHandler.closeConnection();
-                                it.remove();
-                                throw new InterruptedIOException();
+        RealmPool pool = pools.computeIfAbsent(new RealmKey(realm, url.getCredentials()), RealmPool::new);
+
+        long t0 = System.nanoTime();
+        // A permit is held for as long as the returned ConnectionHandler is locked, and is released by
+        // notifyConnectionHandlerLockReleased()
+        pool.acquirePermit(url);
+
+        ConnectionHandler connHandler = null;
+        try {
+            synchronized(pool) {
+                // Try and find an existing ConnectionHandler that is not locked
+                for (ConnectionHandler handler : pool.connectionHandlers) {
+                    synchronized(handler) {     // Ensures that lock remains unchanged while we access/update it
+                        if (!handler.isLocked()) {
+                            // Acquire lock if a lock was requested
+                            if (acquireLock) {
+                                handler.acquireLock();
                             }
+                            connHandler = handler;
                             break;
-                        } catch(InterruptedException e) {
-                            LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
-                            connHandler.closeConnection();
-                            it.remove();
-
-                            throw new InterruptedIOException();
                         }
                     }
                 }
 
-                if (matchingConnHandlers == MAX_CONNECTIONS_PER_REALM) {
-                    continue;
-                }
-
-                // No suitable ConnectionHandler found, create a new one
-                ConnectionHandler connHandler = connectionHandlerFactory.createConnectionHandler(url);
+                if (connHandler != null) {
+                    LOGGER.debug("returning ConnectionHandler {}, realm = {}", connHandler, realm);
+                } else {
+                    // No suitable ConnectionHandler found, create a new one. The permit guarantees that there is room
+                    // for it in the pool.
+                    connHandler = connectionHandlerFactory.createConnectionHandler(url);
 
-                // Acquire lock if a lock was requested
-                if (acquireLock) {
-                    connHandler.acquireLock();
-                }
-
-                LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
+                    // Acquire lock if a lock was requested
+                    if (acquireLock) {
+                        connHandler.acquireLock();
+                    }
 
-                // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
-                connectionHandlers.add(0, connHandler);// insertElementAt(connHandler, 0);
+                    LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
 
-                // Start monitor thread if it is not currently running (if there previously was no registered ConnectionHandler)
-                if (monitorThread == null) {
-                    LOGGER.info("starting monitor thread");
-                    monitorThread = new Thread(instance);
-                    monitorThread.start();
+                    // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
+                    pool.connectionHandlers.add(0, connHandler);
+                    pool.created.increment();
+                    scheduleCheck(pool, connHandler, getNextCheckDelay(connHandler, System.currentTimeMillis()));
                 }
+            }
 
-                // Update last activity timestamp to now
-                connHandler.updateLastActivityTimestamp();
+            // Update last activity timestamp to now
+            connHandler.updateLastActivityTimestamp();
 
-                return connHandler;
+            return connHandler;
+        } finally {
+            // The permit is only kept along with a lock
+            if (!acquireLock || connHandler == null) {
+                pool.permits.release();
             }
+            pool.acquires.increment();
+            pool.acquireTime.add(System.nanoTime() - t0);
         }
     }
 
@@ -129,163 +173,355 @@ public class ConnectionPool implements Runnable {
      * @return a list of registered ConnectionHandler instances
      */
     public static List<ConnectionHandler> getConnectionHandlersSnapshot() {
-        synchronized (connectionHandlers) {
-            connectionHandlers.removeIf(connectionHandler -> !connectionHandler.isConnected());
-            return new ArrayList<>(connectionHandlers);
+        List<ConnectionHandler> snapshot = new ArrayList<>();
+        for (RealmPool pool : pools.values()) {
+            synchronized (pool) {
+                pool.removeDisconnected();
+                snapshot.addAll(pool.connectionHandlers);
+            }
         }
+        return snapshot;
     }
-    
-//    /**
-//     * Returns the ConnectionHandler instance located at the given position in the list.
-//     */
-//    private static ConnectionHandler getConnectionHandlerAt(int i) {
-//        return connectionHandlers.get(i);
-//    }
 
     /**
-     * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionHandler</code> that a
-     * <code>ConnectionHandler</code> has been released.
+     * Returns the statistics of the realms that have been connected to.
+     *
+     * @return the statistics of each realm/credentials combo
      */
-    static void notifyConnectionHandlerLockReleased() {
-        synchronized (connectionHandlers) {
-            // Notify any thread waiting for a ConnectionHandler to be released
-            connectionHandlers.notify();
+    public static List<RealmStatistics> getStatistics() {
+        List<RealmStatistics> statistics = new ArrayList<>();
+        for (RealmPool pool : pools.values()) {
+            statistics.add(new RealmStatistics(pool));
         }
+        return statistics;
     }
 
     /**
-     * Monitors connections and periodically:
-     * <ul>
-     *   <li>keeps connections alive
-     *   <li>closes and removes connections that have expired
-     * </ul>
+     * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionPool</code> that a
+     * <code>ConnectionHandler</code> has been released.
+     *
+     * @param connHandler the ConnectionHandler that has been released
      */
-    public void run() {
-
-        while (monitorThread != null) {        // Thread will be interrupted by CloseConnectionThread if there are no more ConnectionHandler
-            long now = System.currentTimeMillis();
+    static void notifyConnectionHandlerLockReleased(ConnectionHandler connHandler) {
+        RealmPool pool = pools.get(new RealmKey(connHandler.getRealm(), connHandler.getCredentials()));
+        if (pool != null) {
+            // Let the next waiting thread, if any, have a connection
+            pool.permits.release();
+        }
+    }
 
-            synchronized(connectionHandlers) {      // Ensures that getConnectionHandler is not currently changing the list while we access it
-                for (Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext();) {
-                    final ConnectionHandler connHandler = it.next();
+    /**
+     * Schedules a check of the given ConnectionHandler.
+     */
+    private static void scheduleCheck(RealmPool pool, ConnectionHandler connHandler, long delay) {
+        scheduler.schedule(() -> checkConnection(pool, connHandler), delay, TimeUnit.MILLISECONDS);
+    }
 
-                    synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it
-                        // Do not touch ConnectionHandler if it is currently locked
-                        if (connHandler.isLocked()) {
-                            continue;
-                        }
+    /**
+     * Returns the number of milliseconds after which the given ConnectionHandler has to be kept alive or closed.
+     */
+    private static long getNextCheckDelay(ConnectionHandler connHandler, long now) {
+        long delay = DISCONNECTION_CHECK_PERIOD;
 
-                        // Remove ConnectionHandler instance from the list of registered ConnectionHandler
-                        // if it is not connected
-                        if (!connHandler.isConnected()) {
-                            LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
+        long closePeriod = connHandler.getCloseOnInactivityPeriod();
+        if (closePeriod != -1) {
+            delay = Math.min(delay, connHandler.getLastActivityTimestamp() + closePeriod*1000 - now);
+        }
 
-                            it.remove();
-                            // Notify any thread waiting for a ConnectionHandler to be released
-                            connectionHandlers.notify();
+        long keepAlivePeriod = connHandler.getKeepAlivePeriod();
+        if (keepAlivePeriod != -1) {
+            long lastAlive = Math.max(connHandler.getLastActivityTimestamp(), connHandler.getLastKeepAliveTimestamp());
+            delay = Math.min(delay, lastAlive + keepAlivePeriod*1000 - now);
+        }
 
-                            continue;       // Skips close on inactivity and keep alive checks
-                        }
+        // The timestamps may be slightly ahead of 'now' if the connection has just been used
+        return Math.max(delay, 100);
+    }
 
-                        long lastUsed = connHandler.getLastActivityTimestamp();
+    /**
+     * Keeps the given ConnectionHandler's connection alive, or closes it and removes it from the pool, if its keep
+     * alive or close on inactivity period has elapsed. Schedules the next check unless the ConnectionHandler has been
+     * removed.
+     */
+    private static void checkConnection(RealmPool pool, ConnectionHandler connHandler) {
+        long now = System.currentTimeMillis();
 
-                        // If time-to-live has been reached without any connection activity, remove ConnectionHandler
-                        // from the list of registered ConnectionHandler and close the connection in a separate thread
-                        long closePeriod = connHandler.getCloseOnInactivityPeriod();
-                        if (closePeriod != -1 && now - lastUsed > closePeriod*1000) {
-                            LOGGER.info("Removing timed-out ConnectionHandler {}",connHandler);
+        synchronized(pool) {
+            if (!pool.connectionHandlers.contains(connHandler)) {
+                return;
+            }
 
-                            it.remove();
-                            // Notify any thread waiting for a ConnectionHandler to be released
-                            connectionHandlers.notify();
+            synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it
+                // Do not touch ConnectionHandler if it is currently locked, its activity timestamp will be updated
+                // the next time it is acquired
+                if (!connHandler.isLocked()) {
+                    // Remove ConnectionHandler if it is not connected
+                    if (!connHandler.isConnected()) {
+                        LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
+                        pool.remove(connHandler);
+                        return;
+                    }
 
-                            // Close connection in a separate thread as it could lock this thread
-                            new CloseConnectionThread(connHandler).start();
+                    // If time-to-live has been reached without any connection activity, remove ConnectionHandler
+                    // from the pool and close the connection in a separate thread
+                    long closePeriod = connHandler.getCloseOnInactivityPeriod();
+                    if (closePeriod != -1 && now - connHandler.getLastActivityTimestamp() >= closePeriod*1000) {
+                        LOGGER.info("Removing timed-out ConnectionHandler {}", connHandler);
+                        pool.remove(connHandler);
 
-                            continue;       // Skips keep alive check
-                        }
+                        // Close connection in a separate thread as it could lock this thread
+                        worker.execute(() -> closeConnection(connHandler));
+                        return;
+                    }
 
-                        // If keep-alive period has been reached without any connection activity or a keep alive,
-                        // keep connection alive in a separate thread
-                        long keepAlivePeriod = connHandler.getKeepAlivePeriod();
-                        if (keepAlivePeriod != -1 && now-Math.max(lastUsed, connHandler.getLastKeepAliveTimestamp()) > keepAlivePeriod*1000) {
-                            // Update last keep alive timestamp to now
-                            connHandler.updateLastKeepAliveTimestamp();
+                    // If keep-alive period has been reached without any connection activity or a keep alive,
+                    // keep connection alive in a separate thread
+                    long keepAlivePeriod = connHandler.getKeepAlivePeriod();
+                    if (keepAlivePeriod != -1 && now - Math.max(connHandler.getLastActivityTimestamp(), connHandler.getLastKeepAliveTimestamp()) >= keepAlivePeriod*1000) {
+                        // Update last keep alive timestamp to now
+                        connHandler.updateLastKeepAliveTimestamp();
 
-                            // Keep connection alive in a separate thread as it could lock this thread
-                            new KeepAliveConnectionThread(connHandler).start();
-                        }
+                        // Keep connection alive in a separate thread as it could lock this thread
+                        worker.execute(() -> keepAlive(connHandler));
                     }
                 }
+            }
+        }
 
-                // Stop monitor thread if there are no more ConnectionHandler
-                if (connectionHandlers.isEmpty()) {
-                    LOGGER.info("No more ConnectionHandler, stopping monitor thread");
-                    monitorThread = null;
-                }
+        scheduleCheck(pool, connHandler, getNextCheckDelay(connHandler, now));
+    }
+
+    /**
+     * Closes a specified ConnectionHandler's connection, which has been removed from its pool.
+     */
+    private static void closeConnection(ConnectionHandler connHandler) {
+        // Try to close connection, only if it is connected
+        if (connHandler.isConnected()) {
+            LOGGER.info("Closing connection held by {}", connHandler);
+            connHandler.closeConnection();
+        }
+    }
+
+    /**
+     * Keeps alive a specified ConnectionHandler's connection. If the connection is not currently
+     * active, {@link com.mucommander.commons.file.connection.ConnectionHandler#keepAlive()} will not be called.
+     */
+    private static void keepAlive(ConnectionHandler connHandler) {
+        LOGGER.info("keeping connection alive: {}", connHandler);
+
+        synchronized(connHandler) {
+            // Ensures that lock was not grabbed in the meantime
+            if (connHandler.isLocked()) {
+                return;
             }
 
-            // Sleep for MONITOR_SLEEP_PERIOD milliseconds, minus the processing time of this loop
-            try {
-                Thread.sleep(Math.max(0, MONITOR_SLEEP_PERIOD-(System.currentTimeMillis()-now)));
-            } catch (InterruptedException e) {
-                // Will loop again
+            // Keep alive connection, only if it is connected
+            if (connHandler.isConnected()) {
+                connHandler.keepAlive();
             }
         }
     }
 
 
     /**
-     * Closes a specified ConnectionHandler's connection in a separate thread and removes the ConnectionHandler from
-     * the list of registered ConnectionHandler instances.
+     * Identifies a realm/credentials combo. Two keys are equal if a {@link ConnectionHandler} created for one
+     * {@link ConnectionHandler#equals(FileURL, Credentials) matches} the other.
      */
-    private static class CloseConnectionThread extends Thread {
+    private static class RealmKey {
+        private final FileURL realm;
+        private final Credentials credentials;
 
-        private ConnectionHandler connHandler;
+        private RealmKey(FileURL realm, Credentials credentials) {
+            this.realm = realm;
+            this.credentials = credentials;
+        }
 
-        private CloseConnectionThread(ConnectionHandler connHandler) {
-            this.connHandler = connHandler;
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RealmKey)) {
+                return false;
+            }
+            RealmKey key = (RealmKey)o;
+            // Same comparison as ConnectionHandler#equals(FileURL, Credentials)
+            return realm.equals(key.realm, false, true)
+                && ((credentials == null && key.credentials == null)
+                    || (credentials != null && credentials.equals(key.credentials, true))
+                    || (key.credentials != null && key.credentials.equals(credentials, true)));
         }
 
         @Override
-        public void run() {
-            // Try to close connection, only if it is connected
-            if (connHandler.isConnected()) {
-                LOGGER.info("Closing connection held by {}", connHandler);
-                connHandler.closeConnection();
+        public int hashCode() {
+            // Only use what is compared the same way by equals: the port may be implicit and empty credentials
+            // are equal to null
+            String host = realm.getHost();
+            int h = realm.getScheme().toLowerCase().hashCode();
+            h = 31 * h + (host == null ? 0 : host.toLowerCase().hashCode());
+            if (credentials != null && !credentials.isEmpty()) {
+                h = 31 * h + credentials.hashCode();
             }
+            return h;
         }
     }
 
-
     /**
-     * Keeps alive a specified ConnectionHandler's connection in a separate thread. If the connection is not currently
-     * active, {@link com.mucommander.commons.file.connection.ConnectionHandler#keepAlive()} will not be called.
+     * The ConnectionHandler instances of a realm/credentials combo. The list of handlers is guarded by the instance's
+     * monitor.
      */
-    private static class KeepAliveConnectionThread extends Thread {
+    private static class RealmPool {
+        private final FileURL realm;
+        private final int maxConnections;
+
+        /** ConnectionHandler instances of the realm, most recently created first */
+        private final List<ConnectionHandler> connectionHandlers = new ArrayList<>();
+
+        /** One permit per connection that is not locked or that can still be created. The semaphore is fair so that
+         * waiting threads are served in order. */
+        private final Semaphore permits;
+
+        private final LongAdder acquires = new LongAdder();
+        private final LongAdder acquireTime = new LongAdder();
+        private final LongAdder waits = new LongAdder();
+        private final LongAdder created = new LongAdder();
+        private final AtomicLong closed = new AtomicLong();
+
+        private RealmPool(RealmKey key) {
+            this.realm = key.realm;
+            this.maxConnections = maxConnectionsPerRealm;
+            this.permits = new Semaphore(maxConnections, true);
+        }
 
-        private final ConnectionHandler connHandler;
+        private void acquirePermit(FileURL url) throws InterruptedIOException {
+            try {
+                if (permits.tryAcquire()) {
+                    return;
+                }
 
-        private KeepAliveConnectionThread(ConnectionHandler connHandler) {
-            this.connHandler = connHandler;
+                waits.increment();
+                LOGGER.info("Maximum number of connection per realm reached, waiting for one to be released...");
+                if (!permits.tryAcquire(WAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    LOGGER.info("Timed out waiting on a connection for {}", url);
+                    throw new InterruptedIOException();
+                }
+            } catch (InterruptedException e) {
+                LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
+                throw new InterruptedIOException();
+            }
         }
 
-        @Override
-        public void run() {
-            LOGGER.info("keeping connection alive: {}", connHandler);
+        /**
+         * Removes the given ConnectionHandler, must be called with this instance's monitor held.
+         */
+        private void remove(ConnectionHandler connHandler) {
+            connectionHandlers.remove(connHandler);
+            closed.incrementAndGet();
+        }
 
-            synchronized(connHandler) {
-                // Ensures that lock was not grabbed in the meantime
-                if (connHandler.isLocked()) {
-                    return;
+        /**
+         * Removes the ConnectionHandler instances that are not connected, must be called with this instance's monitor held.
+         */
+        private void removeDisconnected() {
+            for (Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext(); ) {
+                if (!it.next().isConnected()) {
+                    it.remove();
+                    closed.incrementAndGet();
                 }
+            }
+        }
+    }
 
-                // Keep alive connection, only if it is connected
-                if (connHandler.isConnected()) {
-                    connHandler.keepAlive();
+    /**
+     * A snapshot of the counters of a realm/credentials combo.
+     */
+    public static class RealmStatistics {
+        private final FileURL realm;
+        private final int connections;
+        private final int lockedConnections;
+        private final long acquires;
+        private final long acquireTime;
+        private final long waits;
+        private final long created;
+        private final long closed;
+
+        private RealmStatistics(RealmPool pool) {
+            int locked = 0;
+            synchronized (pool) {
+                connections = pool.connectionHandlers.size();
+                for (ConnectionHandler connHandler : pool.connectionHandlers) {
+                    if (connHandler.isLocked()) {
+                        locked++;
+                    }
                 }
             }
+            this.realm = pool.realm;
+            this.lockedConnections = locked;
+            this.acquires = pool.acquires.sum();
+            this.acquireTime = pool.acquireTime.sum();
+            this.waits = pool.waits.sum();
+            this.created = pool.created.sum();
+            this.closed = pool.closed.get();
+        }
+
+        /**
+         * @return the realm the connections are made to, without credentials
+         */
+        public FileURL getRealm() {
+            return realm;
+        }
+
+        /**
+         * @return the number of connections in the pool
+         */
+        public int getConnections() {
+            return connections;
+        }
+
+        /**
+         * @return the number of connections that are currently locked
+         */
+        public int getLockedConnections() {
+            return lockedConnections;
         }
-    }
 
+        /**
+         * @return the number of connections that have been requested
+         */
+        public long getAcquireCount() {
+            return acquires;
+        }
+
+        /**
+         * @return the average time it took to get a connection, in milliseconds
+         */
+        public double getAverageAcquireTime() {
+            return acquires == 0 ? 0 : acquireTime / 1000000d / acquires;
+        }
+
+        /**
+         * @return the number of requests that had to wait for a connection to be released
+         */
+        public long getWaitCount() {
+            return waits;
+        }
+
+        /**
+         * @return the number of connections that have been created
+         */
+        public long getCreatedCount() {
+            return created;
+        }
+
+        /**
+         * @return the number of connections that have been closed or dropped and removed from the pool
+         */
+        public long getClosedCount() {
+            return closed;
+        }
+
+        @Override
+        public String toString() {
+            return realm + ": " + connections + " connections (" + lockedConnections + " locked), " + acquires
+                    + " acquired in " + String.format("%.2f", getAverageAcquireTime()) + "ms on average, " + waits
+                    + " waits, " + created + " created, " + closed + " closed";
+        }
+    }
 }
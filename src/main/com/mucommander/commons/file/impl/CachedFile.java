@@ -7,6 +7,7 @@ import com.mucommander.commons.file.FileProtocols;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.file.impl.local.LocalFileAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,6 +15,8 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * CachedFile is a ProxyFile that caches the return values of most {@link AbstractFile} getter methods. This allows
@@ -30,6 +33,10 @@ import java.lang.reflect.Method;
  * the changes will not be reflected by this CachedFile. Thus, this class should only be used when a 'real-time' view
  * of the file is not required, or when the file instance is used only for a small amount of time.
  *
+ * <p>When the children of a local folder are listed by a recursive CachedFile (or by {@link #ls(AbstractFile, FileFilter)}),
+ * the most common attributes of each child are read in the same pass as the listing and the returned CachedFile
+ * instances are pre-populated with them, see {@link #setLocalAttributesPrefetch(boolean)}.
+ *
  * @author Maxence Bernard
  */
 public class CachedFile extends ProxyFile {
@@ -78,7 +85,14 @@ public class CachedFile extends ProxyFile {
 
     // others
     /** If true, AbstractFile instances returned by this class will be wrapped into CachedFile instances */
-    private static final int RECURSE_INSTANCES_MASK = 1 << 29;
+    private static final int RECURSE_INSTANCES_MASK = 1 << 31;
+
+    /** Mask of the values set by {@link #setAttributes(LocalFileAttributes)} */
+    private static final int LOCAL_ATTRIBUTES_SET_MASK = SIZE_SET_MASK | LAST_MODIFICATION_SET_MASK | CREATION_DATE_SET_MASK
+            | LAST_ACCESS_SET_MASK | SYMLINK_SET_MASK | DIRECTORY_SET_MASK | HIDDEN_SET_MASK | EXISTS_SET_MASK;
+
+    /** True if the attributes of local files are read while listing their folder */
+    private static boolean localAttributesPrefetch = true;
 
     /**
      * All boolean values stored here as bits
@@ -191,10 +205,97 @@ public class CachedFile extends ProxyFile {
     }
 
 
+    /**
+     * Lists the children of the given folder, filtering out files that do not match the specified filter, and returns
+     * them as recursive CachedFile instances. The filter is applied to the CachedFile instances, so that the
+     * attributes it needs are cached as well.
+     *
+     * @param folder the folder to list
+     * @param filter the filter to apply, may be <code>null</code>
+     * @return the children of the folder as CachedFile instances
+     * @throws IOException if the folder could not be listed
+     */
+    public static AbstractFile[] ls(AbstractFile folder, FileFilter filter) throws IOException {
+        if (folder instanceof CachedFile) {
+            folder = ((CachedFile)folder).file;
+        }
+        if (localAttributesPrefetch && folder instanceof LocalFile) {
+            AbstractFile files[] = lsCached(folder, null);
+            return filter == null ? files : filter.filter(files);
+        }
+        return createCachedFiles(folder.ls(filter));
+    }
+
+    /**
+     * Enables or disables reading the attributes of local files while listing their folder.
+     * This is enabled by default.
+     *
+     * @param enabled <code>true</code> to read attributes while listing local folders, <code>false</code> to read
+     *                them on demand
+     */
+    public static void setLocalAttributesPrefetch(boolean enabled) {
+        localAttributesPrefetch = enabled;
+    }
+
+    /**
+     * Returns <code>true</code> if the attributes of local files are read while listing their folder.
+     *
+     * @return <code>true</code> if the attributes of local files are read while listing their folder
+     */
+    public static boolean isLocalAttributesPrefetch() {
+        return localAttributesPrefetch;
+    }
+
+    /**
+     * Lists the children of the given folder as recursive CachedFile instances, pre-populated with their attributes
+     * if the folder is a local one.
+     */
+    private static AbstractFile[] lsCached(AbstractFile folder, FilenameFilter filter) throws IOException {
+        if (localAttributesPrefetch && folder instanceof LocalFile) {
+            List<LocalFileAttributes> attributes = new ArrayList<>();
+            AbstractFile files[] = ((LocalFile)folder).lsWithAttributes(filter, attributes);
+            for (int i = 0; i < files.length; i++) {
+                CachedFile cachedFile = new CachedFile(files[i], true);
+                LocalFileAttributes fileAttributes = attributes.get(i);
+                if (fileAttributes != null) {
+                    cachedFile.setAttributes(fileAttributes);
+                }
+                files[i] = cachedFile;
+            }
+            return files;
+        }
+        return createCachedFiles(filter == null ? folder.ls() : folder.ls(filter));
+    }
+
+    /**
+     * Sets the values of the cached attributes that have been read while listing the parent folder.
+     */
+    private void setAttributes(LocalFileAttributes attributes) {
+        getSize = attributes.getSize();
+        getLastModified = attributes.getLastModifiedDate();
+        getCreationDate = attributes.getCreationDate();
+        getLastAccessDate = attributes.getLastAccessDate();
+        int values = 0;
+        if (attributes.isSymlink()) {
+            values |= SYMLINK_VALUE_MASK;
+        }
+        if (attributes.isDirectory()) {
+            values |= DIRECTORY_VALUE_MASK;
+        }
+        if (attributes.isHidden()) {
+            values |= HIDDEN_VALUE_MASK;
+        }
+        if (attributes.exists()) {
+            values |= EXISTS_VALUE_MASK;
+        }
+        bitmask = (bitmask & ~(SYMLINK_VALUE_MASK | DIRECTORY_VALUE_MASK | HIDDEN_VALUE_MASK | EXISTS_VALUE_MASK))
+                | values | LOCAL_ATTRIBUTES_SET_MASK;
+    }
+
     /**
      * Creates a CachedFile instance for each of the AbstractFile instances in the given array.
      */
-    private AbstractFile[] createCachedFiles(AbstractFile files[]) {
+    private static AbstractFile[] createCachedFiles(AbstractFile files[]) {
         int nbFiles = files.length;
         for (int i = 0; i < nbFiles; i++) {
             files[i] = new CachedFile(files[i], true);
@@ -543,37 +644,31 @@ public class CachedFile extends ProxyFile {
     @Override
     public AbstractFile[] ls() throws IOException {
         // Don't cache ls() result but create a CachedFile instance around each of the files if recursion is enabled
-        AbstractFile files[] = file.ls();
-
         if ((bitmask & RECURSE_INSTANCES_MASK) != 0) {
-            return createCachedFiles(files);
+            return lsCached(file, null);
         }
 
-        return files;
+        return file.ls();
     }
 
     @Override
     public AbstractFile[] ls(FileFilter filter) throws IOException {
         // Don't cache ls() result but create a CachedFile instance around each of the files if recursion is enabled
-        AbstractFile files[] = file.ls(filter);
-
         if ((bitmask & RECURSE_INSTANCES_MASK) != 0) {
-            return createCachedFiles(files);
+            return ls(file, filter);
         }
 
-        return files;
+        return file.ls(filter);
     }
 
     @Override
     public AbstractFile[] ls(FilenameFilter filter) throws IOException {
         // Don't cache ls() result but create a CachedFile instance around each of the files if recursion is enabled
-        AbstractFile files[] = file.ls(filter);
-
         if ((bitmask & RECURSE_INSTANCES_MASK) != 0) {
-            return createCachedFiles(files);
+            return lsCached(file, filter);
         }
 
-        return files;
+        return file.ls(filter);
     }
 
 
@@ -48,12 +48,21 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
 
     private IInArchive openInArchive() throws IOException, SevenZipException {
         if (inArchive == null) {
-            SignatureCheckedRandomAccessFile in = new SignatureCheckedRandomAccessFile(file, formatSignature);
-            inArchive = SevenZip.openInArchive(sevenZipJBindingFormat, in);
+            inArchive = createInArchive();
         }
         return inArchive;
     }
 
+    /**
+     * Opens the archive through a new stream, independent of {@link #inArchive}.
+     *
+     * @return the opened archive, to be closed by the caller
+     */
+    private IInArchive createInArchive() throws IOException, SevenZipException {
+        SignatureCheckedRandomAccessFile in = new SignatureCheckedRandomAccessFile(file, formatSignature);
+        return SevenZip.openInArchive(sevenZipJBindingFormat, in);
+    }
+
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
         try {
@@ -83,27 +92,26 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
         final int[] in = new int[1];
         in[0] = (Integer)entry.getEntryObject();
         final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
+        // Each entry is extracted from its own instance of the archive, so that entries can be read concurrently
         new Thread(() -> {
-            synchronized (SevenZipJBindingROArchiveFile.this) {
-                try {
-                    final IInArchive sevenZipFile = openInArchive();
-                    sevenZipFile.extract(in, false, new ExtractCallback(inArchive, cbb.getOutputStream()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } finally {
-                    if (inArchive != null) {
-                        try {
-                            inArchive.close();
-                        } catch (SevenZipException e) {
-                            e.printStackTrace();
-                        }
-                    }
+            IInArchive entryArchive = null;
+            try {
+                entryArchive = createInArchive();
+                entryArchive.extract(in, false, new ExtractCallback(entryArchive, cbb.getOutputStream()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                if (entryArchive != null) {
                     try {
-                        cbb.getOutputStream().close();
-                    } catch (IOException e) {
+                        entryArchive.close();
+                    } catch (SevenZipException e) {
                         e.printStackTrace();
                     }
-                    inArchive = null;
+                }
+                try {
+                    cbb.getOutputStream().close();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
         }).start();
@@ -1,11 +1,9 @@
 package com.mucommander.commons.file.impl.bzip2;
 
 import com.mucommander.commons.file.*;
-import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -58,7 +56,7 @@ public class Bzip2ArchiveFile extends AbstractROArchiveFile {
         try {
             InputStream in = getInputStream();
 
-            // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
+            // Skips the 2 magic bytes 'BZ', as required by ParallelBzip2InputStream and CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
             // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
             // stream to be the first one after the magic.  Thus callers have to skip the first two bytes. Otherwise
             // this constructor will throw an exception."
@@ -67,14 +65,12 @@ public class Bzip2ArchiveFile extends AbstractROArchiveFile {
             in.read();
             in.read();
 
-            // Quoted from CBZip2InputStream's Javadoc:
-            // "CBZip2InputStream reads bytes from the compressed source stream via the single byte {@link java.io.InputStream#read()
-            // read()} method exclusively. Thus you should consider to use a buffered source stream."
-            return new CBZip2InputStream(new BufferedInputStream(in));
+            // Blocks are decompressed by several threads
+            return new ParallelBzip2InputStream(in, null);
         } catch(Exception e) {
             // CBZip2InputStream is known to throw NullPointerException if file is not properly Bzip2-encoded
             // so we need to catch those and throw them as IOException
-            LOGGER.info("Exception caught while creating CBZip2InputStream, throwing IOException", e);
+            LOGGER.info("Exception caught while creating ParallelBzip2InputStream, throwing IOException", e);
 
             throw new IOException();
         }
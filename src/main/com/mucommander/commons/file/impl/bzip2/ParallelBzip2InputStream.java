@@ -0,0 +1,384 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.bzip2;
+
+import com.mucommander.commons.io.BufferPool;
+import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decompresses a Bzip2 stream with several threads.
+ *
+ * <p>Bzip2 compresses data in blocks of up to 900 KB that are independent from each other and start with a 48-bit
+ * magic number, at any bit offset. This stream scans the compressed data for block and end-of-stream magic numbers,
+ * wraps each block into a standalone single-block Bzip2 stream and hands it over to a worker thread. Decompressed
+ * blocks are returned in order, and the block CRCs are verified by the decoder.</p>
+ *
+ * <p>The stream may start anywhere before a block, so decompression can be resumed in the middle of a file.
+ * Concatenated Bzip2 streams, such as the ones created by parallel compressors, are handled as well. Like
+ * {@link CBZip2InputStream}, this stream expects the 'BZ' magic bytes of the first stream to have been skipped.</p>
+ *
+ * <p>Magic numbers are not escaped in the compressed data, so a block could in theory contain one by chance
+ * (a 2<sup>-48</sup> probability at each bit). Such a block fails to decode and is reported as an I/O error.</p>
+ */
+public class ParallelBzip2InputStream extends InputStream {
+
+    /** Magic number at the start of every block: BCD-encoded pi */
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+
+    /** Magic number at the end of a stream: BCD-encoded sqrt(pi) */
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+    private static final long MAGIC_MASK = 0xFFFFFFFFFFFFL;
+
+    private static final int MAGIC_BITS = 48;
+
+    /** Header of the standalone streams blocks are wrapped into, without the 'BZ' magic bytes and at maximum level
+     * so that blocks of any size can be decoded */
+    private static final byte[] STREAM_HEADER = {'h', '9'};
+
+    /** Size of the buffer the compressed stream is read into */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ParallelBzip2Decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Notified each time the reading of a block starts, which is where decompression can later be resumed from.
+     */
+    public interface BlockListener {
+        /**
+         * Called when the first byte of a block is about to be returned.
+         *
+         * @param compressedOffset offset in the compressed stream, not including the 'BZ' magic bytes, of the byte
+         * that contains the first bit of the block's magic number
+         * @param uncompressedOffset number of bytes returned by the stream before this block
+         */
+        void blockStarted(long compressedOffset, long uncompressedOffset);
+    }
+
+    /** The compressed stream */
+    private final InputStream in;
+
+    /** Maximum number of blocks being decompressed at the same time */
+    private final int nbThreads;
+
+    /** Notified of block boundaries, may be <code>null</code> */
+    private final BlockListener listener;
+
+    /** Blocks being decompressed, in order */
+    private final Deque<Future<byte[]>> blocks = new ArrayDeque<>();
+
+    /** Compressed offsets of the blocks being decompressed, in the same order */
+    private final Deque<Long> blockOffsets = new ArrayDeque<>();
+
+    /** Buffer the compressed stream is read into */
+    private byte[] readBuffer = BufferPool.getByteArray(READ_BUFFER_SIZE);
+    private int readBufferPos;
+    private int readBufferLen;
+
+    /** Number of compressed bytes consumed so far */
+    private long compressedPos;
+
+    /** Last compressed byte consumed */
+    private int currentByte;
+
+    /** Number of bits of {@link #currentByte} that have not been scanned yet */
+    private int bitsLeft;
+
+    /** Last bits read from the compressed stream, the most recent one being the least significant */
+    private long bitWindow;
+
+    /** Number of bits in {@link #bitWindow} that have not been handed over to {@link #blockWriter} */
+    private int windowBits;
+
+    /** Writes the standalone stream of the block being scanned, <code>null</code> when not inside a block */
+    private BitWriter blockWriter;
+
+    /** Compressed offset of the block being scanned */
+    private long blockOffset;
+
+    /** <code>true</code> once the end of the compressed stream has been reached */
+    private boolean eof;
+
+    /** Decompressed block being returned */
+    private byte[] block = new byte[0];
+    private int blockPos;
+
+    /** Number of decompressed bytes returned so far */
+    private long uncompressedPos;
+
+    private boolean closed;
+
+
+    /**
+     * Creates a new <code>ParallelBzip2InputStream</code> that decompresses as many blocks at the same time as
+     * there are processors.
+     *
+     * @param in the compressed stream, positioned after the 'BZ' magic bytes or anywhere before a block
+     * @param listener notified of block boundaries, <code>null</code> if not needed
+     */
+    public ParallelBzip2InputStream(InputStream in, BlockListener listener) {
+        this(in, Runtime.getRuntime().availableProcessors(), listener);
+    }
+
+    /**
+     * Creates a new <code>ParallelBzip2InputStream</code>.
+     *
+     * @param in the compressed stream, positioned after the 'BZ' magic bytes or anywhere before a block
+     * @param nbThreads maximum number of blocks decompressed at the same time
+     * @param listener notified of block boundaries, <code>null</code> if not needed
+     */
+    public ParallelBzip2InputStream(InputStream in, int nbThreads, BlockListener listener) {
+        this.in = in;
+        this.nbThreads = Math.max(nbThreads, 1);
+        this.listener = listener;
+    }
+
+    /**
+     * Makes the next decompressed block current, scanning the compressed stream to keep the worker threads busy.
+     *
+     * @return <code>false</code> if there is no more block
+     */
+    private boolean nextBlock() throws IOException {
+        while (blocks.size() < nbThreads + 1 && scanBlock()) {
+        }
+
+        Future<byte[]> next = blocks.poll();
+        if (next == null) {
+            return false;
+        }
+        long offset = blockOffsets.poll();
+        try {
+            block = next.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException("Invalid Bzip2 block at offset " + offset, e.getCause());
+        }
+        blockPos = 0;
+
+        if (listener != null) {
+            listener.blockStarted(offset, uncompressedPos);
+        }
+
+        return true;
+    }
+
+    /**
+     * Scans the compressed stream until the end of the next block and submits it to a worker thread.
+     *
+     * @return <code>false</code> if the end of the compressed stream has been reached without finding a block
+     */
+    private boolean scanBlock() throws IOException {
+        while (!eof) {
+            if (bitsLeft == 0) {
+                if (readBufferPos == readBufferLen && !fillReadBuffer()) {
+                    eof = true;
+                    // A stream that ends without an end-of-stream magic number is truncated, the decoder reports it
+                    return blockWriter != null && submitBlock();
+                }
+                currentByte = readBuffer[readBufferPos++];
+                compressedPos++;
+                bitsLeft = 8;
+            }
+
+            bitsLeft--;
+            bitWindow = (bitWindow << 1) | ((currentByte >> bitsLeft) & 1);
+            if (windowBits == MAGIC_BITS) {
+                // The oldest bit of the window can't be part of a magic number anymore
+                if (blockWriter != null) {
+                    blockWriter.writeBit((int)(bitWindow >>> MAGIC_BITS) & 1);
+                }
+            } else {
+                windowBits++;
+            }
+
+            if (windowBits == MAGIC_BITS) {
+                long magic = bitWindow & MAGIC_MASK;
+                if (magic == BLOCK_MAGIC || magic == END_OF_STREAM_MAGIC) {
+                    boolean submitted = blockWriter != null && submitBlock();
+                    if (magic == BLOCK_MAGIC) {
+                        // Position of the first bit of the magic number
+                        long magicBitPos = compressedPos * 8 - bitsLeft - MAGIC_BITS;
+                        blockOffset = magicBitPos / 8;
+                        blockWriter = new BitWriter();
+                        blockWriter.writeBytes(STREAM_HEADER);
+                        blockWriter.writeBits(BLOCK_MAGIC, MAGIC_BITS);
+                    }
+                    windowBits = 0;
+                    if (submitted) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Terminates the standalone stream of the block that has just been scanned and submits it to a worker thread.
+     */
+    private boolean submitBlock() {
+        BitWriter writer = blockWriter;
+        blockWriter = null;
+
+        byte[] data = writer.getBytes();
+        // The combined CRC of a single-block stream is the CRC of the block, which follows the block magic number
+        long crc = data.length < 12 ? 0 : ((data[8] & 0xFFL) << 24) | ((data[9] & 0xFFL) << 16) | ((data[10] & 0xFFL) << 8) | (data[11] & 0xFFL);
+        writer.writeBits(END_OF_STREAM_MAGIC, MAGIC_BITS);
+        writer.writeBits(crc, 32);
+        final byte[] stream = writer.getBytes();
+
+        blocks.add(EXECUTOR.submit(() -> decompress(stream)));
+        blockOffsets.add(blockOffset);
+        return true;
+    }
+
+    private boolean fillReadBuffer() throws IOException {
+        int n = in.read(readBuffer, 0, readBuffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        readBufferPos = 0;
+        readBufferLen = n;
+        return true;
+    }
+
+    /**
+     * Decompresses a standalone single-block stream.
+     */
+    private static byte[] decompress(byte[] stream) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(stream.length * 4);
+        try (InputStream bzIn = new CBZip2InputStream(new ByteArrayInputStream(stream))) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = bzIn.read(buf, 0, buf.length)) > 0) {
+                bout.write(buf, 0, n);
+            }
+        } catch (RuntimeException e) {
+            // CBZip2InputStream is known to throw unchecked exceptions if the block is not properly Bzip2-encoded
+            throw new IOException(e);
+        }
+        return bout.toByteArray();
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        while (blockPos == block.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        uncompressedPos++;
+        return block[blockPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (blockPos == block.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, block.length - blockPos);
+        System.arraycopy(block, blockPos, b, off, n);
+        blockPos += n;
+        uncompressedPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - blockPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Future<byte[]> future : blocks) {
+            future.cancel(true);
+        }
+        blocks.clear();
+        BufferPool.releaseByteArray(readBuffer);
+        in.close();
+    }
+
+
+    /**
+     * Accumulates bits, most significant bit first, into a growing byte array.
+     */
+    private static class BitWriter {
+        private byte[] buf = new byte[256 * 1024];
+        private long nbBits;
+
+        void writeBit(int bit) {
+            int index = (int)(nbBits >>> 3);
+            if (index == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            if (bit != 0) {
+                buf[index] |= 0x80 >>> (int)(nbBits & 7);
+            }
+            nbBits++;
+        }
+
+        void writeBits(long value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                writeBit((int)(value >>> i) & 1);
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            for (byte b : bytes) {
+                writeBits(b, 8);
+            }
+        }
+
+        /** Returns the bits written so far, padded with zeros to a byte boundary */
+        byte[] getBytes() {
+            return Arrays.copyOf(buf, (int)((nbBits + 7) >>> 3));
+        }
+    }
+}
@@ -21,6 +21,8 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 /**
@@ -467,20 +469,15 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     }
 
     /**
-     * Always throws an {@link UnsupportedFileOperationException}: random read access is not available.
-     *
-     * @throws UnsupportedFileOperationException always
+     * Returns a <code>RandomAccessInputStream</code> that retrieves the ranges it needs with <code>REST</code> commands
+     * and caches them, so that only the parts of the file that are actually read are transferred.
+     * The server must support resuming transfers (<code>REST</code> in stream mode).
      */
     @Override
-    @UnsupportedFileOperation
-    public RandomAccessInputStream getRandomAccessInputStream() throws UnsupportedFileOperationException {
-        throw new UnsupportedFileOperationException(FileOperation.RANDOM_READ_FILE);
+    public RandomAccessInputStream getRandomAccessInputStream() throws IOException {
+        return new FTPRandomAccessInputStream();
     }
 
-//    public RandomAccessInputStream getRandomAccessInputStream() throws IOException {
-//        return new FTPRandomAccessInputStream();
-//    }
-
     /**
      * Always throws an {@link UnsupportedFileOperationException}: random write access is not available.
      *
@@ -981,60 +978,191 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     }
 
 
-    // This class works but because of the bug in FTPInputStream#close() which fails to interrupt an ongoing transfer
-    // gracefully, seek() will re-establish the FTP connection each time it is called, which is definitely not acceptable.
-    // Therefore, this class cannot be used at the moment.
+    /**
+     * Random read access to the file, implemented by issuing <code>REST</code>+<code>RETR</code> commands that start
+     * the transfer at the requested offset and abort it once the needed bytes have been received. Retrieved data is
+     * kept in a bounded LRU cache of {@link #CACHE_BLOCK_SIZE} blocks so that going back and forth over the same
+     * region (e.g. a zip central directory and the local headers it points to) does not hit the server again.
+     *
+     * <p>The connection is taken from the {@link ConnectionPool} for the duration of a single range retrieval only,
+     * and consecutive misses on adjacent blocks double the read-ahead (up to {@link #MAX_READ_AHEAD_BLOCKS}) so that
+     * sequential reads are not penalized by a round trip per block.</p>
+     *
+     * <p>Reads are served directly from the cached blocks and seeking does not retrieve anything, so that a read only
+     * retrieves the blocks it overlaps.</p>
+     */
     private class FTPRandomAccessInputStream extends RandomAccessInputStream {
 
-        private FTPInputStream in;
+        /** Size of the blocks the file is retrieved and cached by */
+        private final static int CACHE_BLOCK_SIZE = 64 * 1024;
+
+        /** Maximum number of blocks kept in the cache */
+        private final static int MAX_CACHED_BLOCKS = 32;
+
+        /** Maximum number of blocks retrieved in a single transfer when reading sequentially */
+        private final static int MAX_READ_AHEAD_BLOCKS = 16;
+
+        /** Cached blocks, indexed by block number and ordered from the least to the most recently accessed */
+        private final Map<Long, byte[]> cache = new LinkedHashMap<Long, byte[]>(MAX_CACHED_BLOCKS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > MAX_CACHED_BLOCKS;
+            }
+        };
+
+        /** Number of the block following the last retrieved one, used to detect sequential reads */
+        private long nextBlock = -1;
+
+        /** Number of blocks to retrieve on the next sequential miss */
+        private int readAhead = 1;
+
+        /** Current offset in the file */
         private long offset;
 
-        private FTPRandomAccessInputStream() throws IOException {
-            this.in = new FTPInputStream(0);
+        private FTPRandomAccessInputStream() {
         }
 
         @Override
         public int read() throws IOException {
-            int read = in.read();
-
-            if (read != -1) {
-                offset += 1;
+            if (offset >= getLength()) {
+                return -1;
             }
-
-            return read;
+            byte[] data = getCacheBlock(offset / CACHE_BLOCK_SIZE);
+            int blockOff = (int)(offset % CACHE_BLOCK_SIZE);
+            if (blockOff >= data.length) {
+                // The file is shorter than expected
+                return -1;
+            }
+            offset++;
+            return data[blockOff] & 0xFF;
         }
 
         @Override
-        public int read(byte b[], int off, int len) throws IOException {
-            int nbRead = in.read(b, off, len);
-
-            if (nbRead != -1) {
-                offset += nbRead;
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
             }
-
-            return nbRead;
+            if (offset >= getLength()) {
+                return -1;
+            }
+            byte[] data = getCacheBlock(offset / CACHE_BLOCK_SIZE);
+            int blockOff = (int)(offset % CACHE_BLOCK_SIZE);
+            if (blockOff >= data.length) {
+                // The file is shorter than expected
+                return -1;
+            }
+            int nbBytes = Math.min(len, data.length - blockOff);
+            System.arraycopy(data, blockOff, b, off, nbBytes);
+            offset += nbBytes;
+            return nbBytes;
         }
 
-        public long getOffset() throws IOException {
+        public long getOffset() {
             return offset;
         }
 
-        public long getLength() throws IOException {
-            return FTPFile.this.getSize();
+        public void seek(long offset) {
+            this.offset = offset;
         }
 
-        public void seek(final long offset) throws IOException {
+        /**
+         * Returns the given block, retrieving it and the read-ahead blocks that follow it from the server if it is not
+         * in the cache. The returned array is shorter than {@link #CACHE_BLOCK_SIZE} for the last block of the file.
+         */
+        private byte[] getCacheBlock(long blockNumber) throws IOException {
+            byte[] data = cache.get(blockNumber);
+            if (data != null) {
+                return data;
+            }
+
+            readAhead = blockNumber == nextBlock ? Math.min(readAhead * 2, MAX_READ_AHEAD_BLOCKS) : 1;
+            int nbBlocks = 1;
+            while (nbBlocks < readAhead && !cache.containsKey(blockNumber + nbBlocks)) {
+                nbBlocks++;
+            }
+
+            long start = blockNumber * CACHE_BLOCK_SIZE;
+            long length = Math.max(0, Math.min((long)nbBlocks * CACHE_BLOCK_SIZE, getLength() - start));
+            byte[] range = retrieveRange(start, (int)length);
+
+            for (int i = 0; i < nbBlocks; i++) {
+                int off = i * CACHE_BLOCK_SIZE;
+                if (i > 0 && off >= range.length) {
+                    break;
+                }
+                int len = Math.min(CACHE_BLOCK_SIZE, range.length - off);
+                byte[] b = new byte[len];
+                System.arraycopy(range, off, b, 0, len);
+                cache.put(blockNumber + i, b);
+                if (i == 0) {
+                    data = b;
+                }
+            }
+            nextBlock = blockNumber + nbBlocks;
+
+            return data;
+        }
+
+        /**
+         * Retrieves up to <code>length</code> bytes starting at <code>offset</code> using a pooled connection, and
+         * aborts the transfer as soon as the requested bytes have been received. Returns less bytes than requested
+         * only if the end of the file was reached.
+         */
+        private byte[] retrieveRange(long offset, int length) throws IOException {
+            LOGGER.trace("retrieving {} bytes at offset {}", length, offset);
+
+            FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(FTPFile.this, fileURL, true);
             try {
-                in.close();
-            } catch(IOException ignore) {}
+                // Makes sure the connection is started, if not starts it
+                connHandler.checkConnection();
 
-            in = new FTPInputStream(offset);
-            this.offset = offset;
+                // The restart offset is reset by FTPClient once the transfer is started, or if the server refused it
+                connHandler.ftpClient.setRestartOffset(offset);
+                InputStream in = connHandler.ftpClient.retrieveFileStream(absPath);
+                if (in == null) {
+                    connHandler.ftpClient.setRestartOffset(0);
+                    throw new IOException(connHandler.ftpClient.getReplyString());
+                }
+
+                byte[] data = new byte[length];
+                int read = 0;
+                try {
+                    int n;
+                    while (read < length && (n = in.read(data, read, length - read)) != -1) {
+                        read += n;
+                    }
+                } finally {
+                    // Closing the data connection before the end of the file makes the server reply with a transfer
+                    // aborted (426) or completed (226) reply, both leave the control connection in a usable state
+                    in.close();
+                    connHandler.ftpClient.completePendingCommand();
+                }
+
+                if (read < length) {
+                    byte[] b = new byte[read];
+                    System.arraycopy(data, 0, b, 0, read);
+                    data = b;
+                }
+
+                return data;
+            } catch(IOException e) {
+                // Checks if the IOException corresponds to a socket error and in that case, closes the connection
+                connHandler.checkSocketException(e);
+
+                throw e;
+            } finally {
+                // Release the lock on the ConnectionHandler
+                connHandler.releaseLock();
+            }
+        }
+
+        public long getLength() throws IOException {
+            return FTPFile.this.getSize();
         }
 
         @Override
-        public void close() throws IOException {
-            in.close();
+        public void close() {
+            cache.clear();
         }
     }
 
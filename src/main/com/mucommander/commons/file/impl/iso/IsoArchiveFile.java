@@ -52,4 +52,15 @@ public class IsoArchiveFile extends AbstractROArchiveFile {
 
         return new IsoEntryInputStream(rais, isoEntry);
     }
+
+    /**
+     * Returns <code>true</code> if the proxied archive file has random read access: when no iterator is specified,
+     * each entry stream reads the image through its own {@link RandomAccessInputStream}.
+     *
+     * @return true if the proxied archive file has random read access
+     */
+    @Override
+    public boolean isConcurrentEntryReadSupported() {
+        return file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+    }
 }
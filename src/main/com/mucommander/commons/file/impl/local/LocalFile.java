@@ -48,6 +48,8 @@ import com.mucommander.commons.file.util.Kernel32;
 import com.mucommander.commons.file.util.Kernel32API;
 import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ChannelTransferInputStream;
+import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.FilteredOutputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
@@ -895,6 +897,49 @@ public class LocalFile extends ProtocolFile {
         return new LocalRandomAccessOutputStream(new RandomAccessFile(file, "rw").getChannel());
     }
 
+    /**
+     * Returns a stream that copies this file to the given local file as it is consumed, see
+     * {@link ChannelTransferInputStream}. Skipping the returned stream lets the operating system copy the bytes from
+     * one file to the other without bringing them to user space.
+     *
+     * <p>If <code>append</code> is <code>true</code>, the transfer resumes where the destination file ends: the
+     * source is positioned at the destination's size.</p>
+     *
+     * @param destFile the file to copy this file to
+     * @param append true to append to the destination file (resume), false to overwrite it
+     * @return a stream copying this file to the destination as it is skipped or read
+     * @throws FileTransferException with a reason of {@link FileTransferException#OPENING_SOURCE} or
+     * {@link FileTransferException#OPENING_DESTINATION} if one of the files could not be opened
+     */
+    public ChannelTransferInputStream getTransferInputStream(LocalFile destFile, boolean append) throws FileTransferException {
+        FileChannel source;
+        try {
+            source = new FileInputStream(file).getChannel();
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.OPENING_SOURCE, e);
+        }
+
+        FileChannel destination = null;
+        try {
+            destination = new FileOutputStream(destFile.absPath, append).getChannel();
+            if (append) {
+                source.position(destination.size());
+            }
+        } catch (IOException e) {
+            try {
+                source.close();
+                if (destination != null) {
+                    destination.close();
+                }
+            } catch (IOException e2) {
+                // Report the original error
+            }
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION, e);
+        }
+
+        return new ChannelTransferInputStream(source, destination);
+    }
+
     @Override
     public void delete() throws IOException {
         boolean ret = file.delete();
@@ -1123,6 +1168,47 @@ public class LocalFile extends ProtocolFile {
         return children;
     }
 
+    /**
+     * Lists the children of this folder like {@link #ls(FilenameFilter)} does, and reads the attributes of each child
+     * in the same pass. Attributes are added to the given list, in the same order as the returned children, or as
+     * <code>null</code> for a child whose attributes could not be read.
+     *
+     * <p>Listing a folder and then querying the size, date, type... of every child costs several system calls per
+     * child; this method makes only one in most cases.</p>
+     *
+     * @param filenameFilter the FilenameFilter to be used to filter out files from the list, may be <code>null</code>
+     * @param attributes the list to add the attributes of the children to
+     * @return the children files that this file contains
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred
+     */
+    public AbstractFile[] lsWithAttributes(FilenameFilter filenameFilter, List<LocalFileAttributes> attributes) throws IOException {
+        List<AbstractFile> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.toPath())) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (filenameFilter != null && !filenameFilter.accept(name)) {
+                    continue;
+                }
+                FileURL childURL = (FileURL)fileURL.clone();
+                childURL.setPath(absPath+SEPARATOR+name);
+                children.add(FileFactory.getFile(childURL, this, path.toFile()));
+
+                LocalFileAttributes childAttributes;
+                try {
+                    childAttributes = LocalFileAttributes.read(path);
+                } catch (IOException e) {
+                    // The file has probably been deleted meanwhile, its attributes will be fetched on demand
+                    childAttributes = null;
+                }
+                attributes.add(childAttributes);
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+
+        return children.toArray(new AbstractFile[children.size()]);
+    }
+
     @Override
     public boolean isHidden() {
         return file.isHidden();
@@ -0,0 +1,139 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.local;
+
+import com.mucommander.commons.runtime.OsFamily;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+
+/**
+ * A snapshot of the attributes of a local file, read in a single pass while listing a directory
+ * (see {@link LocalFile#lsWithAttributes(com.mucommander.commons.file.filter.FilenameFilter, java.util.List)}).
+ *
+ * <p>Values are consistent with those returned by the corresponding {@link LocalFile} methods: symbolic links are
+ * followed except for {@link #isSymlink()}, a broken link does not exist and has a zero size and date.</p>
+ *
+ * <p>Owner and group are not part of the snapshot: <code>PosixFileAttributes</code> resolves their names for every
+ * file, which costs more than the stat calls saved.</p>
+ */
+public class LocalFileAttributes {
+
+    private static final boolean IS_WINDOWS = OsFamily.WINDOWS.isCurrent();
+
+    /** Attributes class to read, DOS attributes providing the 'hidden' flag under Windows */
+    private static final Class<? extends BasicFileAttributes> ATTRIBUTES_CLASS = IS_WINDOWS ? DosFileAttributes.class : BasicFileAttributes.class;
+
+    private final long size;
+    private final long lastModifiedDate;
+    private final long creationDate;
+    private final long lastAccessDate;
+    private final boolean directory;
+    private final boolean symlink;
+    private final boolean hidden;
+    private final boolean exists;
+
+
+    private LocalFileAttributes(BasicFileAttributes attrs, boolean symlink, boolean hidden) {
+        this.symlink = symlink;
+        this.hidden = hidden;
+        if (attrs == null) {
+            // Broken symbolic link
+            size = 0;
+            lastModifiedDate = 0;
+            creationDate = 0;
+            lastAccessDate = 0;
+            directory = false;
+            exists = false;
+            return;
+        }
+        size = attrs.size();
+        lastModifiedDate = attrs.lastModifiedTime().toMillis();
+        creationDate = attrs.creationTime().toMillis();
+        lastAccessDate = attrs.lastAccessTime().toMillis();
+        directory = attrs.isDirectory();
+        exists = true;
+    }
+
+    /**
+     * Reads the attributes of the given file. Only one system call is made, unless the file is a symbolic link
+     * in which case its target is read as well.
+     *
+     * @param path the file
+     * @return the attributes of the file
+     * @throws IOException if the attributes could not be read, e.g. if the file doesn't exist anymore
+     */
+    static LocalFileAttributes read(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, ATTRIBUTES_CLASS, LinkOption.NOFOLLOW_LINKS);
+        boolean symlink = attrs.isSymbolicLink();
+        boolean hidden;
+        if (IS_WINDOWS) {
+            hidden = ((DosFileAttributes)attrs).isHidden();
+            // Symlinks are not reported by LocalFile under Windows
+            symlink = false;
+        } else {
+            Path fileName = path.getFileName();
+            hidden = fileName != null && fileName.toString().startsWith(".");
+        }
+        if (attrs.isSymbolicLink()) {
+            try {
+                attrs = Files.readAttributes(path, ATTRIBUTES_CLASS);
+            } catch (IOException e) {
+                attrs = null;
+            }
+        }
+        return new LocalFileAttributes(attrs, symlink, hidden);
+    }
+
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModifiedDate() {
+        return lastModifiedDate;
+    }
+
+    public long getCreationDate() {
+        return creationDate;
+    }
+
+    public long getLastAccessDate() {
+        return lastAccessDate;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public boolean isSymlink() {
+        return symlink;
+    }
+
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    public boolean exists() {
+        return exists;
+    }
+}
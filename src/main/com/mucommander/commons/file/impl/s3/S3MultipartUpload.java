@@ -0,0 +1,300 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.s3;
+
+import com.mucommander.commons.io.StreamUtils;
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.S3Service;
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.security.AWSCredentials;
+import org.jets3t.service.utils.RestUtils;
+import org.jets3t.service.utils.ServiceUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Issues the requests of an S3 multipart upload: 'Initiate Multipart Upload', 'Upload Part', 'Upload Part - Copy',
+ * 'Complete Multipart Upload' and 'Abort Multipart Upload'.
+ *
+ * <p>JetS3t 0.7.2 predates the multipart API and leaves the <code>uploads</code>, <code>uploadId</code> and
+ * <code>partNumber</code> sub-resources out of the string it signs, so the requests are built and signed here,
+ * against the endpoint, ports and bucket addressing style configured in the service's JetS3t properties.
+ * An instance is safe to use from several threads once {@link #initiate()} has returned.
+ */
+class S3MultipartUpload {
+
+    /** Minimum size of every part but the last one (5MB) */
+    static final long MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /** Maximum number of parts of a multipart upload */
+    static final int MAX_PARTS = 10000;
+
+    private final S3Service service;
+    private final String bucketName;
+    private final String objectKey;
+
+    private String uploadId;
+
+    S3MultipartUpload(S3Service service, String bucketName, String objectKey) {
+        this.service = service;
+        this.bucketName = bucketName;
+        this.objectKey = objectKey;
+    }
+
+    /**
+     * Starts the upload, this must be called before any part is sent.
+     *
+     * @throws IOException if the request failed
+     */
+    void initiate() throws IOException {
+        HttpURLConnection conn = execute("POST", "uploads", null, "binary/octet-stream", new byte[0], 0);
+        uploadId = getElement(readResponse(conn), "UploadId");
+        if (uploadId == null) {
+            throw new IOException("Missing UploadId in response");
+        }
+    }
+
+    /**
+     * Uploads the given bytes as the part with the specified number.
+     *
+     * @param partNumber number of the part, starting at 1
+     * @param data the part's data
+     * @param len number of bytes of <code>data</code> to upload
+     * @return the part's ETag, to be passed to {@link #complete(List)}
+     * @throws IOException if the request failed
+     */
+    String uploadPart(int partNumber, byte[] data, int len) throws IOException {
+        HttpURLConnection conn = execute("PUT", getPartQuery(partNumber), null, "binary/octet-stream", data, len);
+        readResponse(conn);
+        String etag = conn.getHeaderField("ETag");
+        if (etag == null) {
+            throw new IOException("Missing ETag in response");
+        }
+        return etag;
+    }
+
+    /**
+     * Copies a range of the object that is currently stored under this upload's key as the part with the specified
+     * number, without transferring the data.
+     *
+     * @param partNumber number of the part, starting at 1
+     * @param start offset of the first byte to copy
+     * @param end offset of the last byte to copy, inclusive
+     * @return the part's ETag, to be passed to {@link #complete(List)}
+     * @throws IOException if the request failed
+     */
+    String copyPart(int partNumber, long start, long end) throws IOException {
+        Map<String, String> headers = new TreeMap<>();
+        headers.put("x-amz-copy-source", "/" + bucketName + "/" + encodeKey());
+        headers.put("x-amz-copy-source-range", "bytes=" + start + "-" + end);
+        String response = readResponse(execute("PUT", getPartQuery(partNumber), headers, null, new byte[0], 0));
+        checkError(response);
+        String etag = getElement(response, "ETag");
+        if (etag == null) {
+            throw new IOException("Missing ETag in response");
+        }
+        return etag;
+    }
+
+    /**
+     * Assembles the given parts into the object, replacing any object previously stored under the same key.
+     *
+     * @param etags ETags of parts 1 to <code>etags.size()</code>, in order
+     * @throws IOException if the request failed
+     */
+    void complete(List<String> etags) throws IOException {
+        StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            xml.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(etags.get(i).replace("\"", "&quot;")).append("</ETag></Part>");
+        }
+        xml.append("</CompleteMultipartUpload>");
+        byte[] body = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+        // S3 may report a failure in the body of a '200 OK' response, once it has started sending whitespace
+        checkError(readResponse(execute("POST", "uploadId=" + uploadId, null, "application/xml", body, body.length)));
+    }
+
+    /**
+     * Discards the upload and the parts uploaded so far.
+     *
+     * @throws IOException if the request failed
+     */
+    void abort() throws IOException {
+        readResponse(execute("DELETE", "uploadId=" + uploadId, null, null, null, 0));
+    }
+
+    private String getPartQuery(int partNumber) {
+        // Sub-resources are signed in lexicographical order
+        return "partNumber=" + partNumber + "&uploadId=" + uploadId;
+    }
+
+    private String encodeKey() throws IOException {
+        try {
+            return RestUtils.encodeUrlPath(objectKey, "/");
+        } catch (S3ServiceException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Sends a signed request and returns the connection, once the response headers have been received.
+     *
+     * @param method HTTP method
+     * @param query sub-resources of the request, in the order in which they must be signed
+     * @param amzHeaders <code>x-amz-</code> headers to send, sorted by name, may be <code>null</code>
+     * @param contentType content type of the body, <code>null</code> if there is no body
+     * @param body the request's body, may be <code>null</code>
+     * @param len number of bytes of <code>body</code> to send
+     * @return the connection
+     * @throws IOException if the request could not be sent
+     */
+    private HttpURLConnection execute(String method, String query, Map<String, String> amzHeaders, String contentType,
+                                      byte[] body, int len) throws IOException {
+        Jets3tProperties props = service.getJetS3tProperties();
+        boolean https = service.isHttpsOnly();
+        String endpoint = props.getStringProperty("s3service.s3-endpoint", "s3.amazonaws.com");
+        int port = https ? props.getIntProperty("s3service.s3-endpoint-https-port", 443)
+                : props.getIntProperty("s3service.s3-endpoint-http-port", 80);
+        boolean virtualHost = !props.getBoolProperty("s3service.disable-dns-buckets", false)
+                && S3Service.isBucketNameValidDNSName(bucketName);
+
+        String resource = "/" + bucketName + "/" + encodeKey();
+        String host = virtualHost ? bucketName + "." + endpoint : endpoint;
+        String path = virtualHost ? "/" + encodeKey() : resource;
+        URL url = new URL(https ? "https" : "http", host, port, path + "?" + encodeQuery(query));
+
+        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+        conn.setRequestMethod(method);
+        conn.setUseCaches(false);
+        conn.setConnectTimeout(props.getIntProperty("httpclient.connection-timeout-ms", 60000));
+        conn.setReadTimeout(props.getIntProperty("httpclient.socket-timeout-ms", 60000));
+
+        String date = ServiceUtils.formatRfc822Date(new Date());
+        StringBuilder toSign = new StringBuilder(method).append("\n\n");
+        if (contentType != null) {
+            toSign.append(contentType);
+            conn.setRequestProperty("Content-Type", contentType);
+        }
+        toSign.append('\n').append(date).append('\n');
+        conn.setRequestProperty("Date", date);
+        if (amzHeaders != null) {
+            for (Map.Entry<String, String> header : amzHeaders.entrySet()) {
+                toSign.append(header.getKey()).append(':').append(header.getValue()).append('\n');
+                conn.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        toSign.append(resource).append('?').append(query);
+
+        AWSCredentials credentials = service.getAWSCredentials();
+        try {
+            conn.setRequestProperty("Authorization", "AWS " + credentials.getAccessKey() + ":"
+                    + ServiceUtils.signWithHmacSha1(credentials.getSecretKey(), toSign.toString()));
+        } catch (S3ServiceException e) {
+            throw new IOException(e);
+        }
+
+        if (body != null) {
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(len);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body, 0, len);
+            }
+        }
+
+        return conn;
+    }
+
+    /**
+     * Reads the body of the response to a request sent by {@link #execute}, throwing an <code>IOException</code> that
+     * carries S3's error code and message if the request failed.
+     *
+     * @param conn the connection
+     * @return the response's body
+     * @throws IOException if the request failed
+     */
+    private static String readResponse(HttpURLConnection conn) throws IOException {
+        int code = conn.getResponseCode();
+        InputStream in = code < 300 ? conn.getInputStream() : conn.getErrorStream();
+        String response = "";
+        if (in != null) {
+            try {
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                StreamUtils.copyStream(in, bout);
+                response = new String(bout.toByteArray(), StandardCharsets.UTF_8);
+            } finally {
+                in.close();
+            }
+        }
+        if (code >= 300) {
+            checkError(response);
+            throw new IOException("HTTP " + code + " " + conn.getResponseMessage());
+        }
+        return response;
+    }
+
+    private static void checkError(String response) throws IOException {
+        if (response.contains("<Error>")) {
+            throw new IOException(getElement(response, "Code") + ": " + getElement(response, "Message"));
+        }
+    }
+
+    private static String encodeQuery(String query) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String param : query.split("&")) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            int eq = param.indexOf('=');
+            if (eq < 0) {
+                sb.append(param);
+            } else {
+                sb.append(param, 0, eq + 1).append(URLEncoder.encode(param.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the text of the first element with the given name in an XML response, <code>null</code> if there is none.
+     * The responses handled here are flat enough for this not to require a parser.
+     */
+    private static String getElement(String xml, String name) {
+        int start = xml.indexOf("<" + name + ">");
+        if (start < 0) {
+            return null;
+        }
+        start += name.length() + 2;
+        int end = xml.indexOf("</" + name + ">", start);
+        if (end < 0) {
+            return null;
+        }
+        return xml.substring(start, end).replace("&quot;", "\"").replace("&amp;", "&");
+    }
+}
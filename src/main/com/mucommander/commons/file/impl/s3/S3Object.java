@@ -11,9 +11,18 @@ import org.jets3t.service.model.S3Owner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * <code>S3Object</code> represents an Amazon S3 object.
@@ -29,6 +38,9 @@ public class S3Object extends S3File {
     /** Maximum size of an S3 object (5GB) */
     private final static long MAX_OBJECT_SIZE = 5368709120l;
 
+    /** Maximum size of the parts copied server-side when appending to an object (1GB) */
+    private final static long MAX_COPY_PART_SIZE = 1024 * 1024 * 1024;
+
     // TODO: add support for ACL ? (would cost an extra request per object)
     /** Default permissions for S3 objects */
     private final static FilePermissions DEFAULT_PERMISSIONS = new SimpleFilePermissions(384);   // rw-------
@@ -209,6 +221,14 @@ public class S3Object extends S3File {
 
     @Override
     public InputStream getInputStream(long offset) throws IOException {
+        // Large objects are fetched range by range with concurrent GET requests, which is much faster than a single
+        // connection on high-latency links
+        long partSize = S3ProtocolProvider.getPartSize();
+        int threads = S3ProtocolProvider.getTransferThreads();
+        long length = getSize();
+        if(threads>1 && length-offset>=2*partSize)
+            return new S3ParallelInputStream(service, bucketName, getObjectKey(false), offset, length, (int)partSize, threads);
+
         try {
             // Note: do *not* use S3ObjectRandomAccessInputStream if the object is to be read sequentially, as it would
             // add unnecessary billing overhead since it reads the object chunk by chunk, each in a separate GET request.
@@ -310,62 +330,120 @@ public class S3Object extends S3File {
 
     @Override
     public void copyStream(InputStream in, boolean append, long length) throws FileTransferException {
-        if (append) {
-//            throw new UnsupportedFileOperationException(FileOperation.APPEND_FILE);
-            throw new FileTransferException(FileTransferException.READING_SOURCE);
-        }
-
         // TODO: compute md5 ?
 
-        // If the length is known, we can upload the object directly without having to go through the tedious process
-        // of copying the stream to a temporary file.
-        if(length>=0) {
+        long existingLength = append && exists() ? getSize() : 0;
+        long partSize = S3ProtocolProvider.getPartSize();
+
+        // If the length is known and fits in a single part, we can upload the object directly with a 'PUT Object'
+        // request.
+        if(existingLength==0 && length>=0 && length<=partSize) {
             putObject(in, length);
+            return;
         }
-        else {
-            // Copy the stream to a temporary file so that we can know the object's length, which has to be declared
-            // in the PUT request's headers (that is before the transfer is started).
-            final AbstractFile tempFile;
-            final OutputStream tempOut;
+
+        // Use larger parts if the object would not fit in the maximum number of parts otherwise
+        if(length>=0)
+            partSize = Math.max(partSize, (existingLength+length+S3MultipartUpload.MAX_PARTS-1)/S3MultipartUpload.MAX_PARTS);
+
+        try {
+            uploadParts(in, existingLength, (int)Math.min(partSize, Integer.MAX_VALUE));
+        }
+        finally {
+            // Close the InputStream, no matter what
             try {
-                tempFile = FileFactory.getTemporaryFile(false);
-                tempOut = tempFile.getOutputStream();
-            } catch (IOException e) {
-                throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+                in.close();
+            }
+            catch(IOException e) {
+                // Do not re-throw the exception to prevent exceptions caught in the catch block from being replaced
             }
+        }
+    }
 
-            try {
-                // Copy the stream to the temporary file
-                try {
-                    StreamUtils.copyStream(in, tempOut, IO_BUFFER_SIZE);
-                }
-                finally {
-                    // Close the stream even if copyStream() threw an IOException
-                    try {
-                        tempOut.close();
-                    } catch(IOException e) {
-                        // Do not re-throw the exception to prevent swallowing the exception thrown in the try block
-                    }
-                }
+    /**
+     * Uploads the given stream in parts of the given size, several of which are sent concurrently. The first part is
+     * read before anything is sent: if the stream ends within it, the object is uploaded with a single 'PUT Object'
+     * request, which spares spooling streams of unknown length.
+     *
+     * <p>If <code>existingLength</code> is not zero, the stream is appended to the current object: an object smaller
+     * than the minimum part size is read and prepended to the first part, a larger one is copied server-side as the
+     * leading parts. If the transfer fails, the parts that were uploaded before the failure are kept when they extend
+     * the current object, so that the transfer can be resumed.
+     *
+     * @param in the stream to upload
+     * @param existingLength length of the current object if the stream is to be appended to it, <code>0</code> otherwise
+     * @param partSize size of the parts
+     * @throws FileTransferException if an error occurred during the transfer
+     */
+    private void uploadParts(InputStream in, long existingLength, int partSize) throws FileTransferException {
+        int copyParts = existingLength>=S3MultipartUpload.MIN_PART_SIZE
+                ? (int)((existingLength+MAX_COPY_PART_SIZE-1)/MAX_COPY_PART_SIZE)
+                : 0;
+
+        // Parts are too large for the BufferPool, PartUploads recycles them instead
+        byte[] buffer = new byte[partSize];
+        int filled = 0;
+        if(existingLength>0 && copyParts==0)
+            filled = readObject(buffer, (int)existingLength);
+        filled += readSource(in, buffer, filled, partSize-filled);
+
+        if(copyParts==0 && filled<partSize) {
+            putObject(new ByteArrayInputStream(buffer, 0, filled), filled);
+            return;
+        }
 
-                InputStream tempIn;
-                try {
-                    tempIn = tempFile.getInputStream();
-                } catch(IOException e) {
-                    throw new FileTransferException(FileTransferException.OPENING_SOURCE);
-                }
+        S3MultipartUpload upload = new S3MultipartUpload(service, bucketName, getObjectKey(false));
+        try {
+            upload.initiate();
+        }
+        catch(IOException e) {
+            LOGGER.info("Failed to initiate multipart upload", e);
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+        }
 
-                putObject(tempIn, tempFile.getSize());
-            }
-            finally {
-                // Delete the temporary file, no matter what.
-                try {
-                    tempFile.delete();
-                } catch(IOException e) {
-                    // Do not re-throw the exception to prevent exceptions caught in the catch block from being replaced
-                }
+        PartUploads parts = new PartUploads(upload, copyParts);
+        try {
+            // Split the current object evenly, so that no part is smaller than the minimum part size
+            for(int i=0; i<copyParts; i++)
+                parts.copy(existingLength*i/copyParts, existingLength*(i+1)/copyParts-1);
+
+            while(filled>0) {
+                parts.upload(buffer, filled);
+                if(filled<partSize)
+                    break;
+
+                buffer = parts.getBuffer(partSize);
+                filled = readSource(in, buffer, 0, partSize);
             }
         }
+        catch(FileTransferException e) {
+            parts.finish(false);
+            throw e;
+        }
+        parts.finish(true);
+    }
+
+    /**
+     * Reads the first <code>len</code> bytes of the current object into the given buffer.
+     */
+    private int readObject(byte[] buffer, int len) throws FileTransferException {
+        try(InputStream objectIn = service.getObject(bucketName, getObjectKey(false), null, null, null, null, null, null).getDataInputStream()) {
+            StreamUtils.readFully(objectIn, buffer, 0, len);
+            return len;
+        }
+        catch(S3ServiceException | IOException e) {
+            LOGGER.info("Failed to read object", e);
+            throw new FileTransferException(FileTransferException.READING_DESTINATION);
+        }
+    }
+
+    private static int readSource(InputStream in, byte[] buffer, int off, int len) throws FileTransferException {
+        try {
+            return StreamUtils.readUpTo(in, buffer, off, len);
+        }
+        catch(IOException e) {
+            throw new FileTransferException(FileTransferException.READING_SOURCE);
+        }
     }
 
     ///////////////////
@@ -573,6 +651,148 @@ public class S3Object extends S3File {
 //    }
 
 
+    /**
+     * Schedules the parts of a multipart upload on {@link S3ProtocolProvider#TRANSFER_EXECUTOR}, with at most
+     * {@link S3ProtocolProvider#getTransferThreads()} of them being sent at once, and completes or aborts the upload.
+     */
+    private class PartUploads {
+
+        private final S3MultipartUpload upload;
+
+        /** Number of leading parts copied from the current object */
+        private final int copyParts;
+
+        private final Semaphore permits = new Semaphore(S3ProtocolProvider.getTransferThreads());
+
+        /** ETags of the parts, in order */
+        private final List<Future<String>> etags = new ArrayList<>();
+
+        /** Buffers of the parts that have been sent, to be reused for the next ones */
+        private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+
+        private volatile boolean failed;
+
+        private PartUploads(S3MultipartUpload upload, int copyParts) {
+            this.upload = upload;
+            this.copyParts = copyParts;
+        }
+
+        private void copy(long start, long end) throws FileTransferException {
+            int partNumber = etags.size()+1;
+            submit(() -> upload.copyPart(partNumber, start, end));
+        }
+
+        /**
+         * Returns the buffer of a part that has been sent, or a new one if there is none.
+         */
+        private byte[] getBuffer(int size) {
+            byte[] buffer = freeBuffers.poll();
+            return buffer==null ? new byte[size] : buffer;
+        }
+
+        /**
+         * Schedules the upload of the given buffer, which is recycled by {@link #getBuffer(int)} once it has been sent.
+         */
+        private void upload(byte[] buffer, int len) throws FileTransferException {
+            int partNumber = etags.size()+1;
+            try {
+                if(partNumber>S3MultipartUpload.MAX_PARTS)
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+
+                submit(() -> {
+                    try {
+                        return upload.uploadPart(partNumber, buffer, len);
+                    }
+                    finally {
+                        freeBuffers.add(buffer);
+                    }
+                });
+            }
+            catch(FileTransferException e) {
+                freeBuffers.add(buffer);
+                throw e;
+            }
+        }
+
+        /**
+         * Waits for a permit and schedules the given part. Throws an exception without scheduling it if a previous
+         * part has failed, so that the caller stops reading its source.
+         */
+        private void submit(Callable<String> part) throws FileTransferException {
+            try {
+                permits.acquire();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+            }
+
+            if(failed) {
+                permits.release();
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+            }
+
+            etags.add(S3ProtocolProvider.TRANSFER_EXECUTOR.submit(() -> {
+                try {
+                    return part.call();
+                }
+                catch(Exception e) {
+                    failed = true;
+                    throw e;
+                }
+                finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        /**
+         * Waits for the scheduled parts and completes the upload. If not all parts could be sent, or if
+         * <code>complete</code> is <code>false</code>, only the parts preceding the first failure are kept, provided
+         * they extend the current object; the upload is aborted otherwise.
+         *
+         * @param complete <code>true</code> if all the parts of the object have been scheduled
+         * @throws FileTransferException if a part could not be uploaded or the upload could not be completed
+         */
+        private void finish(boolean complete) throws FileTransferException {
+            List<String> uploaded = new ArrayList<>();
+            boolean contiguous = true;
+            for(Future<String> etag : etags) {
+                try {
+                    String value = etag.get();
+                    if(contiguous)
+                        uploaded.add(value);
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    contiguous = false;
+                }
+                catch(ExecutionException e) {
+                    LOGGER.info("Failed to upload part", e.getCause());
+                    contiguous = false;
+                }
+            }
+
+            try {
+                if((complete && contiguous) || uploaded.size()>copyParts)
+                    upload.complete(uploaded);
+                else
+                    upload.abort();
+            }
+            catch(IOException e) {
+                LOGGER.info("Failed to complete multipart upload", e);
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+            }
+            finally {
+                atts.updateAttributes();
+                atts.updateExpirationDate();
+            }
+
+            if(complete && !contiguous)
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+        }
+    }
+
     /**
      * S3ObjectFileAttributes provides getters and setters for S3 object attributes. By extending
      * <code>SyncedFileAttributes</code>, this class caches attributes for a certain amount of time
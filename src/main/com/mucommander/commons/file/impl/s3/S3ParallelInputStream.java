@@ -0,0 +1,216 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.s3;
+
+import com.mucommander.commons.io.StreamUtils;
+import org.jets3t.service.S3Service;
+import org.jets3t.service.S3ServiceException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a portion of an S3 object by fetching consecutive ranges of it with concurrent 'GET Object' requests, and
+ * returning them in order. At most a given number of ranges are being fetched, or waiting to be read, at any time,
+ * which bounds the amount of memory used by the stream.
+ */
+class S3ParallelInputStream extends InputStream {
+
+    private final S3Service service;
+    private final String bucketName;
+    private final String objectKey;
+    private final int rangeSize;
+    private final int maxRanges;
+
+    /** Offset of the next range to fetch */
+    private long nextOffset;
+    /** Offset of the end of the portion to read, exclusive */
+    private final long endOffset;
+
+    /** Ranges being fetched, in order */
+    private final ArrayDeque<Future<Range>> ranges = new ArrayDeque<>();
+
+    /** Buffers of the ranges that have been read, to be reused for the next ones. Ranges are too large for the
+     * BufferPool. */
+    private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    /** Range being read, <code>null</code> if none */
+    private Range current;
+    private int pos;
+
+    private boolean closed;
+
+    /**
+     * Creates a stream reading an object from <code>offset</code> to <code>length</code>.
+     *
+     * @param service the service to issue requests with
+     * @param bucketName the object's bucket
+     * @param objectKey the object's key
+     * @param offset offset of the first byte to read
+     * @param length length of the object
+     * @param rangeSize size of the ranges to fetch
+     * @param maxRanges maximum number of ranges fetched ahead
+     */
+    S3ParallelInputStream(S3Service service, String bucketName, String objectKey, long offset, long length,
+                          int rangeSize, int maxRanges) {
+        this.service = service;
+        this.bucketName = bucketName;
+        this.objectKey = objectKey;
+        this.nextOffset = offset;
+        this.endOffset = length;
+        this.rangeSize = rangeSize;
+        this.maxRanges = maxRanges;
+        fetchRanges();
+    }
+
+    /**
+     * Schedules the fetching of ranges until <code>maxRanges</code> are in flight or the end of the object is reached.
+     */
+    private void fetchRanges() {
+        while (ranges.size() < maxRanges && nextOffset < endOffset) {
+            final long start = nextOffset;
+            final int len = (int)Math.min(rangeSize, endOffset - start);
+            nextOffset += len;
+            ranges.add(S3ProtocolProvider.TRANSFER_EXECUTOR.submit(() -> fetchRange(start, len)));
+        }
+    }
+
+    private Range fetchRange(long start, int len) throws IOException {
+        byte[] buffer = freeBuffers.poll();
+        if (buffer == null) {
+            buffer = new byte[rangeSize];
+        }
+        try (InputStream in = service.getObject(bucketName, objectKey, null, null, null, null, start, start + len - 1)
+                .getDataInputStream()) {
+            StreamUtils.readFully(in, buffer, 0, len);
+            return new Range(buffer, len);
+        } catch (S3ServiceException e) {
+            freeBuffers.add(buffer);
+            throw new IOException(e);
+        } catch (IOException | RuntimeException e) {
+            freeBuffers.add(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes sure that {@link #current} has bytes left to read, moving to the next range if needed.
+     *
+     * @return <code>false</code> if the end of the stream has been reached
+     * @throws IOException if the next range could not be fetched
+     */
+    private boolean nextRange() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current != null && pos < current.length) {
+            return true;
+        }
+        if (current != null) {
+            freeBuffers.add(current.buffer);
+            current = null;
+        }
+        Future<Range> future = ranges.poll();
+        if (future == null) {
+            return false;
+        }
+        fetchRanges();
+        try {
+            current = future.get();
+            pos = 0;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextRange()) {
+            return -1;
+        }
+        return current.buffer[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextRange()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.buffer, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && nextRange()) {
+            int step = (int)Math.min(n - skipped, current.length - pos);
+            pos += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null || closed ? 0 : current.length - pos;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current = null;
+        for (Future<Range> future : ranges) {
+            future.cancel(true);
+        }
+        ranges.clear();
+        freeBuffers.clear();
+    }
+
+    /**
+     * A fetched range of the object.
+     */
+    private static class Range {
+        private final byte[] buffer;
+        private final int length;
+
+        private Range(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+}
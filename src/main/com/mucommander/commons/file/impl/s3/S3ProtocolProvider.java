@@ -9,6 +9,8 @@ import org.jets3t.service.security.AWSCredentials;
 
 import java.io.IOException;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A file protocol provider for the Amazon S3 protocol.
@@ -16,6 +18,61 @@ import java.util.StringTokenizer;
  * @author Maxence Bernard
  */
 public class S3ProtocolProvider implements ProtocolProvider {
+
+    /** Default size of multipart upload parts and of parallel download ranges (8MB) */
+    public final static long DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+
+    /** Default number of parts or ranges transferred concurrently for a single object */
+    public final static int DEFAULT_TRANSFER_THREADS = 4;
+
+    private static volatile long partSize = DEFAULT_PART_SIZE;
+    private static volatile int transferThreads = DEFAULT_TRANSFER_THREADS;
+
+    /** Runs the part uploads and ranged downloads of all S3 objects */
+    static final ExecutorService TRANSFER_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "S3 transfer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Sets the size of the parts in which objects are uploaded, and of the ranges in which large objects are
+     * downloaded. Values lower than the 5MB minimum imposed by S3 for multipart uploads are raised to it.
+     *
+     * @param size part size in bytes
+     */
+    public static void setPartSize(long size) {
+        partSize = Math.min(Math.max(size, S3MultipartUpload.MIN_PART_SIZE), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the size of the parts in which objects are uploaded and downloaded.
+     *
+     * @return part size in bytes
+     */
+    public static long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Sets the number of parts that are uploaded, or ranges that are downloaded, concurrently for a single object.
+     * A value of <code>1</code> uploads parts one after the other and downloads objects with a single GET request.
+     *
+     * @param threads number of concurrent transfers per object
+     */
+    public static void setTransferThreads(int threads) {
+        transferThreads = Math.max(threads, 1);
+    }
+
+    /**
+     * Returns the number of parts or ranges that are transferred concurrently for a single object.
+     *
+     * @return number of concurrent transfers per object
+     */
+    public static int getTransferThreads() {
+        return transferThreads;
+    }
+
     public AbstractFile getFile(FileURL url, Object... instantiationParams) throws IOException {
         Credentials credentials = url.getCredentials();
         if(credentials==null || credentials.getLogin().equals("") || credentials.getPassword().equals(""))
@@ -52,6 +52,16 @@ public class SevenZipArchiveFile extends SevenZipJBindingROArchiveFile {
 
     }
 
+    /**
+     * Returns <code>true</code>: each entry is extracted from its own instance of the archive.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isConcurrentEntryReadSupported() {
+        return true;
+    }
+
     private static class ArchiveOpenVolumeCallback implements IArchiveOpenVolumeCallback {
 
         /**
@@ -0,0 +1,68 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.bzip2.ParallelBzip2InputStream;
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Seek-point index of a Bzip2 stream. Bzip2 compresses data in independent blocks, so decompression can be resumed
+ * at any block boundary: a checkpoint is simply the compressed offset of a block and the uncompressed offset of its
+ * first byte. The index is filled by a {@link ParallelBzip2InputStream} while the archive is being listed.
+ */
+class Bzip2SeekPointIndex extends SeekPointIndex<Bzip2SeekPointIndex.Bzip2Checkpoint> implements ParallelBzip2InputStream.BlockListener {
+
+    static class Bzip2Checkpoint extends SeekPointIndex.Checkpoint {
+        /** Offset in the compressed file from where the next block magic number is looked for */
+        final long compressedOffset;
+
+        Bzip2Checkpoint(long compressedOffset, long uncompressedOffset) {
+            super(uncompressedOffset);
+            this.compressedOffset = compressedOffset;
+        }
+    }
+
+    /**
+     * Records the start of a block, the first one excepted as decompression can always start at the beginning.
+     *
+     * @param compressedOffset offset of the block in the compressed stream, not including the 2 'BZ' magic bytes
+     * @param uncompressedOffset number of bytes decompressed so far
+     */
+    @Override
+    public void blockStarted(long compressedOffset, long uncompressedOffset) {
+        if (uncompressedOffset > 0) {
+            addCheckpoint(new Bzip2Checkpoint(compressedOffset + 2, uncompressedOffset));
+        }
+    }
+
+    @Override
+    protected InputStream openStream(AbstractFile file, Bzip2Checkpoint checkpoint) throws IOException {
+        InputStream in = file.getInputStream();
+        try {
+            StreamUtils.skipFully(in, checkpoint.compressedOffset);
+            return new ParallelBzip2InputStream(in, null);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+}
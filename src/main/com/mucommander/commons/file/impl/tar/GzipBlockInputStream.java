@@ -0,0 +1,585 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a Gzip stream block by block, either recording checkpoints into a {@link GzipSeekPointIndex} or
+ * resuming decompression from one of them.
+ *
+ * <p>{@link java.util.zip.Inflater} doesn't tell where deflate blocks start, gives no access to its window and can't
+ * start in the middle of a byte, so this class implements the inflate algorithm (RFC 1951) and the Gzip format
+ * (RFC 1952) by itself. It is slower than the native inflater and is therefore only used for the first pass over
+ * large archives, and to resume from checkpoints that are not byte-aligned. A checkpoint is recorded at the start
+ * of a block whenever <code>span</code> compressed bytes have been read since the previous one.</p>
+ *
+ * <p>Streams made of several Gzip members are decompressed entirely, but only the first member can be indexed:
+ * the index is cleared if another member follows.</p>
+ */
+class GzipBlockInputStream extends InputStream {
+
+    /** Maximum distance of a back-reference */
+    private static final int WINDOW_SIZE = 32768;
+    /** Size of the output ring buffer, which holds the window and the data that has not been read yet */
+    private static final int RING_SIZE = 2 * WINDOW_SIZE;
+    private static final int RING_MASK = RING_SIZE - 1;
+    /** Maximum length of a back-reference */
+    private static final int MAX_MATCH = 258;
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073,
+            4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    /** Order in which code length code lengths are stored in a dynamic block header */
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final HuffmanTable FIXED_LITERALS;
+    private static final HuffmanTable FIXED_DISTANCES;
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        int[] distances = new int[30];
+        Arrays.fill(distances, 5);
+        try {
+            FIXED_LITERALS = new HuffmanTable(lengths, 0, lengths.length);
+            FIXED_DISTANCES = new HuffmanTable(distances, 0, distances.length);
+        } catch (ZipException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final int HEADER = 0;
+    private static final int BLOCK = 1;
+    private static final int STORED = 2;
+    private static final int HUFFMAN = 3;
+    private static final int TRAILER = 4;
+    private static final int DONE = 5;
+
+    private final InputStream in;
+    private final byte[] inBuffer = new byte[65536];
+    private int inPos;
+    private int inLen;
+    /** Offset in the compressed stream of the first byte of inBuffer */
+    private long inOffset;
+    private long bitBuffer;
+    private int bitCount;
+
+    private final byte[] ring = new byte[RING_SIZE];
+    /** Number of bytes decompressed so far */
+    private long produced;
+    /** Number of bytes returned to the reader so far */
+    private long consumed;
+    /** Value of {@link #produced} when the current member started */
+    private long memberStart;
+    private int memberCount;
+
+    private int state = HEADER;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private HuffmanTable literals;
+    private HuffmanTable distances;
+
+    /** CRC of the data returned to the reader since the start of the current member */
+    private final CRC32 crc = new CRC32();
+    /** <code>true</code> when the trailer of a member has been read but the member has not been fully read yet */
+    private boolean crcCheckPending;
+    private long crcCheckOffset;
+    private long expectedCrc;
+
+    /** Index that is filled while reading the stream, <code>null</code> when resuming from a checkpoint */
+    private final GzipSeekPointIndex index;
+    private final long spanBits;
+    private long lastCheckpointBits;
+    private Deflater windowDeflater;
+
+    /**
+     * Creates a new GzipBlockInputStream that decompresses a whole Gzip stream and indexes it.
+     *
+     * @param in the Gzip-compressed stream
+     * @param index the index to fill with checkpoints
+     * @param span minimum number of compressed bytes between two checkpoints
+     */
+    GzipBlockInputStream(InputStream in, GzipSeekPointIndex index, long span) {
+        this.in = in;
+        this.index = index;
+        this.spanBits = span * 8;
+    }
+
+    /**
+     * Creates a new GzipBlockInputStream that resumes decompression at a block boundary. The data that follows the
+     * last block of the member is ignored, and the member's CRC can't be verified.
+     *
+     * @param in the compressed stream, positioned at the byte that contains the first bit of the block
+     * @param bitShift number of bits of the first byte that precede the block
+     * @param window the data decompressed before the block, up to 32 KB
+     * @throws IOException if an error occurred while reading the compressed stream
+     */
+    GzipBlockInputStream(InputStream in, int bitShift, byte[] window) throws IOException {
+        this.in = in;
+        this.index = null;
+        this.spanBits = 0;
+        System.arraycopy(window, 0, ring, 0, window.length);
+        produced = consumed = window.length;
+        memberCount = 1;
+        state = BLOCK;
+        bits(bitShift);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (produced == consumed) {
+            fill();
+            if (produced == consumed) {
+                return -1;
+            }
+        }
+        long available = crcCheckPending ? crcCheckOffset - consumed : produced - consumed;
+        int n = (int)Math.min(len, available);
+        int start = (int)consumed & RING_MASK;
+        int first = Math.min(n, RING_SIZE - start);
+        System.arraycopy(ring, start, b, off, first);
+        System.arraycopy(ring, 0, b, off + first, n - first);
+        if (index != null) {
+            crc.update(b, off, n);
+        }
+        consumed += n;
+        if (crcCheckPending && consumed == crcCheckOffset) {
+            checkCrc();
+        }
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)(produced - consumed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (windowDeflater != null) {
+            windowDeflater.end();
+            windowDeflater = null;
+        }
+        in.close();
+    }
+
+    /**
+     * Decompresses data until the ring buffer is full or the end of the stream is reached.
+     */
+    private void fill() throws IOException {
+        while (state != DONE && produced - consumed <= RING_SIZE - MAX_MATCH) {
+            switch (state) {
+                case HEADER:
+                    readHeader();
+                    break;
+                case BLOCK:
+                    readBlockHeader();
+                    break;
+                case STORED:
+                    inflateStored();
+                    break;
+                case HUFFMAN:
+                    inflateHuffman();
+                    break;
+                case TRAILER:
+                    if (crcCheckPending) {
+                        // The previous member has to be read entirely before its CRC can be checked
+                        return;
+                    }
+                    readTrailer();
+                    break;
+            }
+        }
+    }
+
+    private void readHeader() throws IOException {
+        if (bits(16) != 0x8b1f) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (bits(8) != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = bits(8);
+        // Modification time, extra flags and OS
+        for (int i = 0; i < 6; i++) {
+            bits(8);
+        }
+        // FEXTRA
+        if ((flags & 4) != 0) {
+            int extraLength = bits(16);
+            for (int i = 0; i < extraLength; i++) {
+                bits(8);
+            }
+        }
+        // FNAME and FCOMMENT, zero-terminated
+        if ((flags & 8) != 0) {
+            while (bits(8) != 0) { }
+        }
+        if ((flags & 16) != 0) {
+            while (bits(8) != 0) { }
+        }
+        // FHCRC
+        if ((flags & 2) != 0) {
+            bits(16);
+        }
+
+        memberCount++;
+        memberStart = produced;
+        if (memberCount > 1) {
+            // Checkpoints can't describe the end of one member and the start of the next one
+            index.clear();
+        }
+        state = BLOCK;
+    }
+
+    private void readBlockHeader() throws IOException {
+        if (index != null && memberCount == 1 && produced > memberStart) {
+            long bitOffset = (inOffset + inPos) * 8 - bitCount;
+            if (bitOffset - lastCheckpointBits >= spanBits) {
+                addCheckpoint(bitOffset);
+                lastCheckpointBits = bitOffset;
+            }
+        }
+
+        lastBlock = bits(1) == 1;
+        int type = bits(2);
+        switch (type) {
+            case 0:
+                alignToByte();
+                int length = bits(16);
+                if ((length ^ 0xFFFF) != bits(16)) {
+                    throw new ZipException("Invalid stored block lengths");
+                }
+                storedRemaining = length;
+                state = STORED;
+                break;
+            case 1:
+                literals = FIXED_LITERALS;
+                distances = FIXED_DISTANCES;
+                state = HUFFMAN;
+                break;
+            case 2:
+                readDynamicTables();
+                state = HUFFMAN;
+                break;
+            default:
+                throw new ZipException("Invalid block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        int literalCount = bits(5) + 257;
+        int distanceCount = bits(5) + 1;
+        int codeLengthCount = bits(4) + 4;
+
+        int[] codeLengthLengths = new int[19];
+        for (int i = 0; i < codeLengthCount; i++) {
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        HuffmanTable codeLengths = new HuffmanTable(codeLengthLengths, 0, 19);
+
+        int[] lengths = new int[literalCount + distanceCount];
+        int i = 0;
+        while (i < lengths.length) {
+            int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+            int value = 0;
+            int repeat;
+            if (symbol == 16) {
+                if (i == 0) {
+                    throw new ZipException("Invalid bit length repeat");
+                }
+                value = lengths[i - 1];
+                repeat = 3 + bits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + bits(3);
+            } else {
+                repeat = 11 + bits(7);
+            }
+            if (i + repeat > lengths.length) {
+                throw new ZipException("Invalid bit length repeat");
+            }
+            Arrays.fill(lengths, i, i + repeat, value);
+            i += repeat;
+        }
+        if (lengths[256] == 0) {
+            throw new ZipException("Missing end-of-block code");
+        }
+
+        literals = new HuffmanTable(lengths, 0, literalCount);
+        distances = new HuffmanTable(lengths, literalCount, distanceCount);
+    }
+
+    private void inflateStored() throws IOException {
+        while (storedRemaining > 0 && produced - consumed < RING_SIZE) {
+            ring[(int)produced & RING_MASK] = (byte)bits(8);
+            produced++;
+            storedRemaining--;
+        }
+        if (storedRemaining == 0) {
+            state = lastBlock ? endOfMemberState() : BLOCK;
+        }
+    }
+
+    private void inflateHuffman() throws IOException {
+        byte[] ring = this.ring;
+        long limit = consumed + RING_SIZE - MAX_MATCH;
+        while (produced <= limit) {
+            int symbol = decode(literals);
+            if (symbol < 256) {
+                ring[(int)produced & RING_MASK] = (byte)symbol;
+                produced++;
+            } else if (symbol == 256) {
+                state = lastBlock ? endOfMemberState() : BLOCK;
+                return;
+            } else {
+                symbol -= 257;
+                if (symbol >= LENGTH_BASE.length) {
+                    throw new ZipException("Invalid literal/length code");
+                }
+                int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+                int distanceSymbol = decode(distances);
+                if (distanceSymbol >= DIST_BASE.length) {
+                    throw new ZipException("Invalid distance code");
+                }
+                int distance = DIST_BASE[distanceSymbol] + bits(DIST_EXTRA[distanceSymbol]);
+                if (distance > produced - memberStart) {
+                    throw new ZipException("Invalid distance too far back");
+                }
+                long from = produced - distance;
+                for (int i = 0; i < length; i++) {
+                    ring[(int)(produced + i) & RING_MASK] = ring[(int)(from + i) & RING_MASK];
+                }
+                produced += length;
+            }
+        }
+    }
+
+    private int endOfMemberState() {
+        return index == null ? DONE : TRAILER;
+    }
+
+    private void readTrailer() throws IOException {
+        alignToByte();
+        long memberCrc = bits(16) | ((long)bits(16) << 16);
+        long memberSize = bits(16) | ((long)bits(16) << 16);
+        if (memberSize != ((produced - memberStart) & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        expectedCrc = memberCrc;
+        crcCheckOffset = produced;
+        crcCheckPending = true;
+        if (consumed == crcCheckOffset) {
+            checkCrc();
+        }
+
+        // Like GZIPInputStream, ignore anything that follows the last member and that is not another member
+        if (peekBits(16) == 0x8b1f) {
+            state = HEADER;
+        } else {
+            state = DONE;
+        }
+    }
+
+    private void checkCrc() throws IOException {
+        crcCheckPending = false;
+        if (crc.getValue() != expectedCrc) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        crc.reset();
+    }
+
+    /**
+     * Records a checkpoint at the given bit offset, saving the last 32 KB of decompressed data.
+     */
+    private void addCheckpoint(long bitOffset) {
+        int windowLength = (int)Math.min(WINDOW_SIZE, produced - memberStart);
+        byte[] window = new byte[windowLength];
+        int start = (int)(produced - windowLength) & RING_MASK;
+        int first = Math.min(windowLength, RING_SIZE - start);
+        System.arraycopy(ring, start, window, 0, first);
+        System.arraycopy(ring, 0, window, first, windowLength - first);
+
+        if (windowDeflater == null) {
+            windowDeflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        windowDeflater.reset();
+        windowDeflater.setInput(window);
+        windowDeflater.finish();
+        byte[] deflated = new byte[windowLength / 2 + 64];
+        int deflatedLength = 0;
+        while (!windowDeflater.finished()) {
+            if (deflatedLength == deflated.length) {
+                deflated = Arrays.copyOf(deflated, deflated.length * 2);
+            }
+            deflatedLength += windowDeflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength);
+        }
+
+        index.addCheckpoint(new GzipSeekPointIndex.GzipCheckpoint(bitOffset, produced,
+                Arrays.copyOf(deflated, deflatedLength), windowLength));
+    }
+
+
+    ////////////////////
+    // Bit operations //
+    ////////////////////
+
+    private boolean refill() throws IOException {
+        inOffset += inLen;
+        inPos = 0;
+        int n;
+        do {
+            n = in.read(inBuffer);
+        } while (n == 0);
+        inLen = Math.max(n, 0);
+        return n > 0;
+    }
+
+    private void need(int n) throws IOException {
+        while (bitCount < n) {
+            if (inPos == inLen && !refill()) {
+                throw new EOFException("Unexpected end of GZIP stream");
+            }
+            bitBuffer |= (long)(inBuffer[inPos++] & 0xFF) << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private int bits(int n) throws IOException {
+        need(n);
+        int value = (int)(bitBuffer & ((1L << n) - 1));
+        bitBuffer >>>= n;
+        bitCount -= n;
+        return value;
+    }
+
+    /**
+     * Returns the next <code>n</code> bits without consuming them, <code>-1</code> if the stream ends before.
+     */
+    private int peekBits(int n) throws IOException {
+        try {
+            need(n);
+        } catch (EOFException e) {
+            return -1;
+        }
+        return (int)(bitBuffer & ((1L << n) - 1));
+    }
+
+    private void alignToByte() {
+        int drop = bitCount & 7;
+        bitBuffer >>>= drop;
+        bitCount -= drop;
+    }
+
+    private int decode(HuffmanTable table) throws IOException {
+        int maxLength = table.maxLength;
+        if (bitCount < maxLength) {
+            // Near the end of the stream, the code may be shorter than the longest one
+            try {
+                need(maxLength);
+            } catch (EOFException e) {
+                if (bitCount == 0) {
+                    throw e;
+                }
+            }
+        }
+        int entry = table.entries[(int)bitBuffer & ((1 << maxLength) - 1)];
+        int length = entry & 15;
+        if (length == 0 || length > bitCount) {
+            throw new ZipException("Invalid Huffman code");
+        }
+        bitBuffer >>>= length;
+        bitCount -= length;
+        return entry >>> 4;
+    }
+
+
+    /**
+     * Lookup table of a canonical Huffman code, indexed by the next <code>maxLength</code> bits of the stream.
+     * Each entry holds a symbol in its upper bits and the length of its code in its 4 lower bits, a length of
+     * <code>0</code> denoting an invalid code.
+     */
+    private static class HuffmanTable {
+        final int[] entries;
+        final int maxLength;
+
+        HuffmanTable(int[] lengths, int offset, int count) throws ZipException {
+            int[] lengthCounts = new int[16];
+            int maxLength = 0;
+            for (int i = 0; i < count; i++) {
+                int length = lengths[offset + i];
+                lengthCounts[length]++;
+                maxLength = Math.max(maxLength, length);
+            }
+            lengthCounts[0] = 0;
+
+            int left = 1;
+            int[] nextCode = new int[16];
+            int code = 0;
+            for (int length = 1; length < 16; length++) {
+                left = (left << 1) - lengthCounts[length];
+                if (left < 0) {
+                    throw new ZipException("Over-subscribed Huffman code");
+                }
+                code = (code + lengthCounts[length - 1]) << 1;
+                nextCode[length] = code;
+            }
+
+            this.maxLength = Math.max(maxLength, 1);
+            this.entries = new int[1 << this.maxLength];
+            for (int symbol = 0; symbol < count; symbol++) {
+                int length = lengths[offset + symbol];
+                if (length == 0) {
+                    continue;
+                }
+                int reversed = Integer.reverse(nextCode[length]++) >>> (32 - length);
+                int entry = (symbol << 4) | length;
+                for (int i = reversed; i < entries.length; i += 1 << length) {
+                    entries[i] = entry;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Seek-point index of a Gzip stream. Deflate blocks may refer to the 32 KB of data that precede them, so a
+ * checkpoint holds the bit offset of a block in the compressed file along with a (compressed) snapshot of the
+ * window at that point. Decompression is resumed by a raw {@link Inflater} primed with that window if the block
+ * starts on a byte boundary, by a {@link GzipBlockInputStream} otherwise.
+ * The index is filled by a {@link GzipBlockInputStream} while the archive is being listed.
+ */
+class GzipSeekPointIndex extends SeekPointIndex<GzipSeekPointIndex.GzipCheckpoint> {
+
+    static class GzipCheckpoint extends SeekPointIndex.Checkpoint {
+        /** Offset in bits of the block's header in the compressed file */
+        final long bitOffset;
+        /** The data that precedes the checkpoint, deflated */
+        final byte[] window;
+        /** Length of the window once inflated */
+        final int windowLength;
+
+        GzipCheckpoint(long bitOffset, long uncompressedOffset, byte[] window, int windowLength) {
+            super(uncompressedOffset);
+            this.bitOffset = bitOffset;
+            this.window = window;
+            this.windowLength = windowLength;
+        }
+    }
+
+    @Override
+    protected InputStream openStream(AbstractFile file, GzipCheckpoint checkpoint) throws IOException {
+        byte[] window = inflateWindow(checkpoint);
+
+        InputStream in = file.getInputStream();
+        int shift = (int)(checkpoint.bitOffset & 7);
+        try {
+            StreamUtils.skipFully(in, checkpoint.bitOffset >>> 3);
+            if (shift != 0) {
+                // Inflater can only be fed whole bytes
+                return new GzipBlockInputStream(in, shift, window);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+
+        final Inflater inflater = new Inflater(true);
+        inflater.setDictionary(window);
+        return new InflaterInputStream(new BufferedInputStream(in), inflater, 65536) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private static byte[] inflateWindow(GzipCheckpoint checkpoint) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(checkpoint.window);
+            byte[] window = new byte[checkpoint.windowLength];
+            int len = 0;
+            while (len < window.length) {
+                int n = inflater.inflate(window, len, window.length - len);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new ZipException("Corrupted checkpoint window");
+                }
+                len += n;
+            }
+            return window;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
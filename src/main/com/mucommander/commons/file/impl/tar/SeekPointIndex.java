@@ -0,0 +1,136 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the points in a compressed stream where decompression can be resumed without decompressing everything
+ * that precedes them. An index is filled by an indexing stream while the archive is being listed, and then used by
+ * {@link TarArchiveFile} to open entries located far into the archive.
+ *
+ * @param <C> type of checkpoints held by this index
+ */
+abstract class SeekPointIndex<C extends SeekPointIndex.Checkpoint> {
+
+    /** Checkpoints, sorted by increasing uncompressed offset */
+    private final List<C> checkpoints = new ArrayList<>();
+
+    /**
+     * A position in the compressed stream from where decompression can be resumed.
+     */
+    static class Checkpoint {
+        /** Offset in the uncompressed data where decompression resumes */
+        final long uncompressedOffset;
+
+        Checkpoint(long uncompressedOffset) {
+            this.uncompressedOffset = uncompressedOffset;
+        }
+    }
+
+    /**
+     * Adds a checkpoint to this index. Checkpoints must be added in increasing order of uncompressed offset.
+     *
+     * @param checkpoint the checkpoint to add
+     */
+    synchronized void addCheckpoint(C checkpoint) {
+        checkpoints.add(checkpoint);
+    }
+
+    /**
+     * Removes all the checkpoints of this index, making it useless. This is called when the compressed stream turns
+     * out to have a layout that the index can't describe.
+     */
+    synchronized void clear() {
+        checkpoints.clear();
+    }
+
+    /**
+     * Returns the number of checkpoints in this index.
+     *
+     * @return the number of checkpoints in this index
+     */
+    synchronized int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Returns the checkpoint with the greatest uncompressed offset that is lower or equal to the specified one,
+     * <code>null</code> if there is none.
+     *
+     * @param offset an offset in the uncompressed data
+     * @return the closest checkpoint that precedes the given offset, <code>null</code> if there is none
+     */
+    synchronized C findCheckpoint(long offset) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        C found = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            C checkpoint = checkpoints.get(mid);
+            if (checkpoint.uncompressedOffset <= offset) {
+                found = checkpoint;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns a stream that reads the uncompressed data starting at the given offset, using the closest checkpoint
+     * that precedes it. <code>null</code> is returned if this index has no such checkpoint, in which case the caller
+     * has to decompress the stream from the beginning.
+     *
+     * @param file the compressed file that was indexed
+     * @param offset offset in the uncompressed data where the returned stream starts
+     * @return a stream positioned at the given offset, <code>null</code> if no checkpoint precedes it
+     * @throws IOException if an error occurred while opening the stream
+     */
+    InputStream openStream(AbstractFile file, long offset) throws IOException {
+        C checkpoint = findCheckpoint(offset);
+        if (checkpoint == null) {
+            return null;
+        }
+        InputStream in = openStream(file, checkpoint);
+        try {
+            StreamUtils.skipFully(in, offset - checkpoint.uncompressedOffset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * Returns a stream that reads the uncompressed data starting at the given checkpoint.
+     *
+     * @param file the compressed file that was indexed
+     * @param checkpoint the checkpoint from where to resume decompression
+     * @return a stream positioned at the checkpoint's uncompressed offset
+     * @throws IOException if an error occurred while opening the stream
+     */
+    protected abstract InputStream openStream(AbstractFile file, C checkpoint) throws IOException;
+}
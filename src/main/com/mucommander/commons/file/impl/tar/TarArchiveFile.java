@@ -20,15 +20,14 @@
 package com.mucommander.commons.file.impl.tar;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.impl.bzip2.ParallelBzip2InputStream;
 import com.mucommander.commons.file.impl.tar.provider.TarEntry;
 import com.mucommander.commons.file.impl.tar.provider.TarInputStream;
 import com.mucommander.commons.io.StreamUtils;
 import com.mucommander.commons.util.StringUtils;
-import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -47,6 +46,21 @@ import java.util.zip.GZIPInputStream;
 public class TarArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarArchiveFile.class);
 
+    /** Compressed archives at least this large get a seek-point index the first time their entries are listed */
+    private static final long SEEK_INDEX_MIN_SIZE = 16 * 1024 * 1024;
+
+    /** Minimum number of compressed bytes between two checkpoints of a Gzip index */
+    private static final long GZIP_MIN_CHECKPOINT_SPAN = 1024 * 1024;
+
+    /** Maximum number of checkpoints of a Gzip index, each of them holding a compressed 32 KB window */
+    private static final int GZIP_MAX_CHECKPOINTS = 1024;
+
+    /** Seek-point index of the compressed archive, null if the archive hasn't been indexed */
+    private SeekPointIndex<?> seekIndex;
+
+    /** Date of the archive file when the seek-point index was created */
+    private long seekIndexDate;
+
     /**
      * Creates a TarArchiveFile on of the given file.
      *
@@ -62,38 +76,50 @@ public class TarArchiveFile extends AbstractROArchiveFile {
      *
      * @param entryOffset offset from the start of the archive to an entry. Must be a multiple of recordSize, or
      * <code>0</code> to start at the first entry.
+     * @param buildIndex <code>true</code> to build a seek-point index of the compressed archive while it is read
      * @return a TarInputStream which can be used to read TAR entries
      * @throws IOException if an error occurred while create the stream
      * @throws UnsupportedFileOperationException if this operation is not supported by the underlying filesystem,
      * or is not implemented.
      */
-    private TarInputStream createTarStream(long entryOffset) throws IOException, UnsupportedFileOperationException {
+    private TarInputStream createTarStream(long entryOffset, boolean buildIndex) throws IOException, UnsupportedFileOperationException {
         InputStream in = file.getInputStream();
 
-        String name = getName();
             // Gzip-compressed file
-        if (StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz"))
+        if (isGzipCompressed()) {
+            if (buildIndex) {
+                GzipSeekPointIndex index = new GzipSeekPointIndex();
+                long span = Math.max(GZIP_MIN_CHECKPOINT_SPAN, file.getSize() / GZIP_MAX_CHECKPOINTS);
+                in = new GzipBlockInputStream(in, index, span);
+                setSeekIndex(index);
+            } else {
                 // Note: this will fail for gz/tgz entries inside a tar file (IOException: Not in GZIP format),
                 // why is a complete mystery: the gz/tgz entry can be extracted and then properly browsed
-            in = new GZIPInputStream(in);
+                in = new GZIPInputStream(in);
+            }
+        }
 
         // Bzip2-compressed file
-        else if (StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2")) {
+        else if (isBzip2Compressed()) {
             try {
-                // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
+                // Skips the 2 magic bytes 'BZ', as required by ParallelBzip2InputStream and CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
                 // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
                 // stream to be the first one after the magic.  Thus callers have to skip the first two bytes. Otherwise
                 // this constructor will throw an exception."
                 StreamUtils.skipFully(in, 2);
 
-                // Quoted from CBZip2InputStream's Javadoc:
-                // "CBZip2InputStream reads bytes from the compressed source stream via the single byte {@link java.io.InputStream#read()
-                // read()} method exclusively. Thus you should consider to use a buffered source stream."
-                in = new CBZip2InputStream(new BufferedInputStream(in));
+                if (buildIndex) {
+                    // The start of each block is where decompression can later be resumed
+                    Bzip2SeekPointIndex index = new Bzip2SeekPointIndex();
+                    in = new ParallelBzip2InputStream(in, index);
+                    setSeekIndex(index);
+                } else {
+                    in = new ParallelBzip2InputStream(in, null);
+                }
             } catch (Exception e) {
                 // CBZip2InputStream is known to throw NullPointerException if file is not properly Bzip2-encoded
                 // so we need to catch those and throw them as IOException
-                LOGGER.info("Exception caught while creating CBZip2InputStream, throwing IOException", e);
+                LOGGER.info("Exception caught while creating ParallelBzip2InputStream, throwing IOException", e);
 
                 throw new IOException();
             }
@@ -102,6 +128,62 @@ public class TarArchiveFile extends AbstractROArchiveFile {
         return new TarInputStream(in, entryOffset);
     }
 
+    private boolean isGzipCompressed() {
+        String name = getName();
+        return StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz");
+    }
+
+    private boolean isBzip2Compressed() {
+        String name = getName();
+        return StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2");
+    }
+
+    /**
+     * Returns <code>true</code> if the archive is compressed, large enough to be worth indexing and doesn't already
+     * have an up-to-date seek-point index.
+     */
+    private boolean needsSeekIndex() throws IOException {
+        return (isGzipCompressed() || isBzip2Compressed()) && getSeekIndex() == null
+                && file.getSize() >= SEEK_INDEX_MIN_SIZE;
+    }
+
+    /**
+     * Returns the seek-point index of the archive, <code>null</code> if it hasn't been indexed or if the archive has
+     * been modified since.
+     */
+    private synchronized SeekPointIndex<?> getSeekIndex() {
+        if (seekIndex != null && seekIndexDate != getLastModifiedDate()) {
+            seekIndex = null;
+        }
+        return seekIndex;
+    }
+
+    /**
+     * Sets the seek-point index of the archive. The index is installed before it is filled: checkpoints can be used
+     * as soon as they have been recorded.
+     */
+    private synchronized void setSeekIndex(SeekPointIndex<?> index) {
+        this.seekIndex = index;
+        this.seekIndexDate = getLastModifiedDate();
+    }
+
+    /**
+     * Returns a TarInputStream positioned at the given entry offset, that resumes decompression from the closest
+     * checkpoint of the seek-point index instead of the start of the archive.
+     *
+     * @param entryOffset offset from the start of the uncompressed archive to an entry
+     * @return a TarInputStream positioned at the entry, <code>null</code> if no checkpoint precedes it
+     * @throws IOException if an error occurred while creating the stream
+     */
+    private TarInputStream createIndexedTarStream(long entryOffset) throws IOException {
+        SeekPointIndex<?> index = getSeekIndex();
+        if (index == null) {
+            return null;
+        }
+        InputStream in = index.openStream(file, entryOffset);
+        return in == null ? null : new TarInputStream(in);
+    }
+
 
     ////////////////////////////////////////
     // AbstractArchiveFile implementation //
@@ -109,7 +191,7 @@ public class TarArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
-        return new TarEntryIterator(createTarStream(0));
+        return new TarEntryIterator(createTarStream(0, needsSeekIndex()));
     }
 
 
@@ -138,10 +220,14 @@ public class TarArchiveFile extends AbstractROArchiveFile {
             // This is not the one, look for the entry from the beginning of the archive
         }
 
-        // Iterate through the archive until we've found the entry
+        // Iterate through the archive until we've found the entry, starting from the closest checkpoint if the
+        // compressed archive has been indexed
         TarEntry tarEntry = (TarEntry)entry.getEntryObject();
         if (tarEntry != null) {
-            TarInputStream tin = createTarStream(tarEntry.getOffset());
+            TarInputStream tin = createIndexedTarStream(tarEntry.getOffset());
+            if (tin == null) {
+                tin = createTarStream(tarEntry.getOffset(), false);
+            }
             tin.getNextEntry();
 
             return tin;
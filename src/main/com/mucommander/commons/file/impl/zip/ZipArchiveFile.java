@@ -336,6 +336,17 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
             && file.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE);
     }
 
+    /**
+     * Returns <code>true</code> if the proxied archive file has random read access: each entry stream then reads the
+     * zip file through its own {@link com.mucommander.commons.io.RandomAccessInputStream}.
+     *
+     * @return true if the proxied archive file has random read access
+     */
+    @Override
+    public boolean isConcurrentEntryReadSupported() {
+        return file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+    }
+
     /**
      * Creates an empty, valid Zip file. The resulting file is 22 bytes long.
      */
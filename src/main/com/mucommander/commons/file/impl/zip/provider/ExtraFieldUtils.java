@@ -43,6 +43,7 @@ public class ExtraFieldUtils {
     static {
         register(AsiExtraField.class);
         register(JarMarker.class);
+        register(Zip64ExtendedInformationExtraField.class);
     }
 
     /**
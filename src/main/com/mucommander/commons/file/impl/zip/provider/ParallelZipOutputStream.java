@@ -0,0 +1,219 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.zip.provider;
+
+import com.mucommander.commons.io.ParallelDeflaterOutputStream;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link ZipOutputStream} that deflates entries with several threads.
+ *
+ * <p>Entry data goes through a {@link ParallelDeflaterOutputStream}: large entries are split into blocks that are
+ * deflated concurrently, and small entries do not wait for the previous ones to be deflated, as local file headers,
+ * data descriptors and the central directory are queued behind the entry data and written in order. The resulting
+ * archive is a regular Zip file.</p>
+ *
+ * <p>If the underlying stream is a {@link RandomAccessOutputStream}, local file headers are updated with the CRC and
+ * sizes once the entry data has been written, otherwise data descriptors are used. ZIP64 structures are written as
+ * needed, like {@link ZipOutputStream} does.</p>
+ */
+public class ParallelZipOutputStream extends ZipOutputStream {
+
+    /** Maximum number of blocks deflated at the same time */
+    private final int nbThreads;
+
+    /** Created when the first entry is added, so that {@link #setLevel(int)} can be called before */
+    private ParallelDeflaterOutputStream pdos;
+
+    /** Entries added so far */
+    private final List<ZipEntry> entries = new ArrayList<>();
+
+    /** Current entry */
+    private ZipEntry entry;
+
+    /** Checksum of the current entry if it is STORED */
+    private final CRC32 storedCrc = new CRC32();
+
+    /** Size of the current entry if it is STORED */
+    private long storedSize;
+
+    /** Used by the chunks, which are all written by the calling thread */
+    private final ZipBuffer zipBuffer = new ZipBuffer();
+
+
+    /**
+     * Creates a new <code>ParallelZipOutputStream</code> that writes Zip-compressed data to the given
+     * <code>OutputStream</code>.
+     *
+     * @param out the underlying OutputStream stream where compressed data is written to
+     * @param nbThreads maximum number of blocks deflated at the same time
+     */
+    public ParallelZipOutputStream(OutputStream out, int nbThreads) {
+        super(out);
+        this.nbThreads = nbThreads;
+    }
+
+    private ParallelDeflaterOutputStream getDeflater() {
+        if (pdos == null) {
+            pdos = new ParallelDeflaterOutputStream(out, level, nbThreads);
+        }
+        return pdos;
+    }
+
+    /**
+     * Queues a copy of the given bytes, to be written as-is after the data queued so far.
+     */
+    private void queueBytes(byte[] b, int off, int len) throws IOException {
+        final byte[] copy = Arrays.copyOfRange(b, off, off + len);
+        getDeflater().queue(output -> {
+            output.write(copy);
+            return copy.length;
+        });
+    }
+
+
+    ////////////////////////////////////////
+    // ZipOutputStream overridden methods //
+    ////////////////////////////////////////
+
+    @Override
+    public void putNextEntry(final ZipEntry ze) throws IOException {
+        closeEntry();
+
+        final ParallelDeflaterOutputStream pdos = getDeflater();
+        final ZipEntryInfo entryInfo = new ZipEntryInfo();
+        ze.setEntryInfo(entryInfo);
+        entries.add(ze);
+
+        if (ze.getMethod() == -1) {
+            // method not specified in the entry, use the one set in this ZipOutputStream
+            ze.setMethod(method);
+        }
+
+        if (ze.getTime() == -1) {
+            // date not specified in the entry, set it to now
+            ze.setTime(System.currentTimeMillis());
+        }
+
+        final String encoding = getEncoding();
+        final boolean useDataDescriptor = !isSeekable();
+        pdos.queue(output -> {
+            entryInfo.headerOffset = pdos.getBytesWritten();
+            long length = writeLocalFileHeader(ze, output, encoding, useDataDescriptor, zipBuffer);
+            entryInfo.dataOffset = entryInfo.headerOffset + length;
+            return length;
+        });
+
+        entry = ze;
+        storedCrc.reset();
+        storedSize = 0;
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        if (entry == null) {
+            return;
+        }
+
+        final ZipEntry ze = entry;
+        entry = null;
+
+        if (ze.getMethod() == DEFLATED) {
+            ze.setCrc(pdos.getCrc());
+            ze.setSize(pdos.getTotalIn());
+            pdos.finishDeflate();
+        } else {
+            ze.setCrc(storedCrc.getValue());
+            ze.setSize(storedSize);
+        }
+
+        final boolean useDataDescriptor = !isSeekable();
+        pdos.queue(output -> {
+            ze.setCompressedSize(pdos.getBytesWritten() - ze.getEntryInfo().dataOffset);
+            if (useDataDescriptor) {
+                return writeDataDescriptor(ze, output, zipBuffer);
+            }
+            updateLocalFileHeader(ze, (RandomAccessOutputStream)output, zipBuffer);
+            return 0;
+        });
+    }
+
+    @Override
+    public void finish() throws IOException {
+        closeEntry();
+
+        final ParallelDeflaterOutputStream pdos = getDeflater();
+        final List<ZipEntry> cdEntries = new ArrayList<>(entries);
+        entries.clear();
+
+        final String encoding = getEncoding();
+        final boolean useDataDescriptor = !isSeekable();
+        pdos.queue(output -> {
+            long cdOffset = pdos.getBytesWritten();
+            long cdLength = 0;
+            for (ZipEntry ze : cdEntries) {
+                cdLength += writeCentralFileHeader(ze, output, encoding, ze.getEntryInfo().headerOffset, useDataDescriptor, zipBuffer);
+            }
+            return cdLength + writeCentralDirectoryEnd(output, cdEntries.size(), cdLength, cdOffset, comment, encoding, zipBuffer);
+        });
+        pdos.finish();
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+        if (entry == null) {
+            queueBytes(b, offset, length);
+        } else if (entry.getMethod() == DEFLATED) {
+            pdos.write(b, offset, length);
+        } else {
+            storedCrc.update(b, offset, length);
+            storedSize += length;
+            queueBytes(b, offset, length);
+        }
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    /**
+     * Writes the data that is ready and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        getDeflater().flush();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.zip.provider;
+
+import java.util.zip.ZipException;
+
+/**
+ * The ZIP64 extended information extra field (header id <code>0x0001</code>), which holds the sizes and local file
+ * header offset of an entry when they do not fit in the 32-bit fields of the Zip headers.
+ *
+ * <p>In a local file header, the field always holds both the uncompressed and compressed sizes. In a central file
+ * header, it only holds the values whose 32-bit field is set to <code>0xFFFFFFFF</code>, in the following order:
+ * uncompressed size, compressed size, local file header offset. As the layout of the central directory data depends
+ * on the header fields, the values are read by {@link #parseCentralDirectoryData(boolean, boolean, boolean)} once
+ * the central file header has been read.</p>
+ *
+ * <p>Values that are not present in the field are <code>-1</code>.</p>
+ */
+public final class Zip64ExtendedInformationExtraField implements ZipExtraField {
+
+    /** Header id of the ZIP64 extended information extra field */
+    public static final ZipShort HEADER_ID = new ZipShort(0x0001);
+
+    /** Length of the field in a local file header: uncompressed and compressed sizes */
+    private static final int LOCAL_LENGTH = 16;
+
+    /** Uncompressed size of the entry, -1 if not present */
+    private long size = -1;
+
+    /** Compressed size of the entry, -1 if not present */
+    private long compressedSize = -1;
+
+    /** Offset of the entry's local file header, -1 if not present */
+    private long headerOffset = -1;
+
+    /** Raw data, kept until the values it contains are known */
+    private byte[] rawData;
+
+
+    /** No-arg constructor */
+    public Zip64ExtendedInformationExtraField() {
+    }
+
+    /**
+     * Creates a field holding the given values, <code>-1</code> for values that must not be part of the field.
+     *
+     * @param size the uncompressed size of the entry
+     * @param compressedSize the compressed size of the entry
+     * @param headerOffset the offset of the entry's local file header
+     */
+    public Zip64ExtendedInformationExtraField(long size, long compressedSize, long headerOffset) {
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.headerOffset = headerOffset;
+    }
+
+    /**
+     * Returns the uncompressed size of the entry, <code>-1</code> if not present.
+     *
+     * @return the uncompressed size of the entry
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the compressed size of the entry, <code>-1</code> if not present.
+     *
+     * @return the compressed size of the entry
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * Returns the offset of the entry's local file header, <code>-1</code> if not present.
+     *
+     * @return the offset of the entry's local file header
+     */
+    public long getHeaderOffset() {
+        return headerOffset;
+    }
+
+    /**
+     * Reads the values of the field as found in a central file header.
+     * Each value is present only if the corresponding central file header field is set to <code>0xFFFFFFFF</code>.
+     *
+     * @param hasSize <code>true</code> if the uncompressed size is present
+     * @param hasCompressedSize <code>true</code> if the compressed size is present
+     * @param hasHeaderOffset <code>true</code> if the local file header offset is present
+     * @throws ZipException if the field is too short to hold the values
+     */
+    public void parseCentralDirectoryData(boolean hasSize, boolean hasCompressedSize, boolean hasHeaderOffset) throws ZipException {
+        int expectedLength = (hasSize ? 8 : 0) + (hasCompressedSize ? 8 : 0) + (hasHeaderOffset ? 8 : 0);
+        if (rawData == null || rawData.length < expectedLength) {
+            throw new ZipException("ZIP64 extended information extra field is too short");
+        }
+
+        int off = 0;
+        size = -1;
+        compressedSize = -1;
+        headerOffset = -1;
+        if (hasSize) {
+            size = ZipEightByteInteger.getValue(rawData, off);
+            off += 8;
+        }
+        if (hasCompressedSize) {
+            compressedSize = ZipEightByteInteger.getValue(rawData, off);
+            off += 8;
+        }
+        if (hasHeaderOffset) {
+            headerOffset = ZipEightByteInteger.getValue(rawData, off);
+        }
+    }
+
+
+    //////////////////////////////////
+    // ZipExtraField implementation //
+    //////////////////////////////////
+
+    public ZipShort getHeaderId() {
+        return HEADER_ID;
+    }
+
+    public ZipShort getLocalFileDataLength() {
+        return new ZipShort(LOCAL_LENGTH);
+    }
+
+    public ZipShort getCentralDirectoryLength() {
+        return new ZipShort((size >= 0 ? 8 : 0) + (compressedSize >= 0 ? 8 : 0) + (headerOffset >= 0 ? 8 : 0));
+    }
+
+    /**
+     * Returns the uncompressed and compressed sizes, <code>0</code> for a size that is not known yet.
+     *
+     * @return the data
+     */
+    public byte[] getLocalFileDataData() {
+        byte[] data = new byte[LOCAL_LENGTH];
+        ZipEightByteInteger.getBytes(Math.max(size, 0), data, 0);
+        ZipEightByteInteger.getBytes(Math.max(compressedSize, 0), data, 8);
+        return data;
+    }
+
+    /**
+     * Returns the values that are present in the field.
+     *
+     * @return the data
+     */
+    public byte[] getCentralDirectoryData() {
+        byte[] data = new byte[getCentralDirectoryLength().getValue()];
+        int off = 0;
+        if (size >= 0) {
+            ZipEightByteInteger.getBytes(size, data, off);
+            off += 8;
+        }
+        if (compressedSize >= 0) {
+            ZipEightByteInteger.getBytes(compressedSize, data, off);
+            off += 8;
+        }
+        if (headerOffset >= 0) {
+            ZipEightByteInteger.getBytes(headerOffset, data, off);
+        }
+        return data;
+    }
+
+    /**
+     * Populates the field as if it was found in a local file header. The data is also kept so that the values can be
+     * read again by {@link #parseCentralDirectoryData(boolean, boolean, boolean)}.
+     *
+     * @param data an array of bytes
+     * @param offset the start offset
+     * @param length the number of bytes in the array from offset
+     */
+    public void parseFromLocalFileData(byte[] data, int offset, int length) {
+        rawData = new byte[length];
+        System.arraycopy(data, offset, rawData, 0, length);
+
+        size = length >= 8 ? ZipEightByteInteger.getValue(data, offset) : -1;
+        compressedSize = length >= LOCAL_LENGTH ? ZipEightByteInteger.getValue(data, offset + 8) : -1;
+        headerOffset = length >= 24 ? ZipEightByteInteger.getValue(data, offset + 16) : -1;
+    }
+}
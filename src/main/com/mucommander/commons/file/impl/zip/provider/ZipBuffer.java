@@ -15,4 +15,7 @@ public class ZipBuffer {
 
     /**  2-byte buffer that can hold a Zip long value */
     byte[] longBuffer = new byte[4];
+
+    /**  8-byte buffer that can hold a ZIP64 value */
+    byte[] eightByteBuffer = new byte[8];
 }
@@ -35,6 +35,17 @@ public interface ZipConstants {
      * */
     long MAX_ZIP32_SIZE = 4294967295l;
 
+    /**
+     * Value of a 32-bit header field whose actual value is stored in the ZIP64 extended information extra field
+     * or in the ZIP64 end of central directory record.
+     */
+    long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * Value of a 16-bit number of entries whose actual value is stored in the ZIP64 end of central directory record.
+     */
+    int ZIP64_MAGIC_SHORT = 0xFFFF;
+
     /**
      * Size of write buffers
      */
@@ -64,4 +75,14 @@ public interface ZipConstants {
      * End of central dir signature
      */
     byte[] EOCD_SIG = ZipLong.getBytes(0X06054B50L);
+
+    /**
+     * ZIP64 end of central dir signature
+     */
+    byte[] ZIP64_EOCD_SIG = ZipLong.getBytes(0X06064B50L);
+
+    /**
+     * ZIP64 end of central dir locator signature
+     */
+    byte[] ZIP64_EOCD_LOC_SIG = ZipLong.getBytes(0X07064B50L);
 }
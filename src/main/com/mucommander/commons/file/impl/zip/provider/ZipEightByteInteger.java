@@ -0,0 +1,73 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.zip.provider;
+
+/**
+ * Utility class that converts eight byte integers, as used by ZIP64 structures, from and to the little endian byte
+ * order of Zip files.
+ *
+ * <p>Values are handled as signed Java longs, which is enough for any file size or offset.</p>
+ */
+public final class ZipEightByteInteger {
+
+    private ZipEightByteInteger() {
+    }
+
+    /**
+     * Converts the given value as eight bytes in little endian byte order. The specified byte array is used to store
+     * the result, starting at the given offset. The returned byte array is the same as the given one.
+     *
+     * @param value the value to convert
+     * @param result the byte array in which to store the value in little endian byte order
+     * @param off offset at which to start writing the result in the array
+     * @return the converted value as a byte array in little endian byte order
+     */
+    public static byte[] getBytes(long value, byte[] result, int off) {
+        for (int i = 0; i < 8; i++) {
+            result[off + i] = (byte)(value >>> (i * 8));
+        }
+        return result;
+    }
+
+    /**
+     * Converts the given value as eight bytes in little endian byte order. The specified byte array is used to store
+     * the result, starting at offset 0. The returned byte array is the same as the given one.
+     *
+     * @param value the value to convert
+     * @param result the byte array in which to store the value in little endian byte order
+     * @return the converted value as a byte array in little endian byte order
+     */
+    public static byte[] getBytes(long value, byte[] result) {
+        return getBytes(value, result, 0);
+    }
+
+    /**
+     * Helper method to get the value as a Java long from eight bytes starting at given array offset.
+     *
+     * @param bytes the array of bytes
+     * @param offset the offset to start
+     * @return the corresponding Java long value
+     */
+    public static long getValue(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
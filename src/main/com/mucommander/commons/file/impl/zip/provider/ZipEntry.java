@@ -297,6 +297,24 @@ public class ZipEntry implements Cloneable {
         return false;
     }
 
+    /**
+     * Returns the extra field corresponding to the given type, <code>null</code> if this entry has none.
+     *
+     * @param type the type of extra field to look for
+     * @return the extra field corresponding to the given type, <code>null</code> if this entry has none
+     */
+    public ZipExtraField getExtraField(ZipShort type) {
+        if (extraFields == null)
+            return null;
+
+        for (ZipExtraField field : extraFields) {
+            if (field.getHeaderId().equals(type))
+                return field;
+        }
+
+        return null;
+    }
+
     /**
      * Returns the data of the local file extra fields. The returned byte array may be empty but never
      * <code>null</code>.
@@ -375,11 +393,13 @@ public class ZipEntry implements Cloneable {
     /**
      * Sets the uncompressed size of the entry data.
      *
+     * Sizes greater than 0xFFFFFFFF bytes are stored in ZIP64 extra fields.
+     *
      * @param size the uncompressed size in bytes
-     * @throws IllegalArgumentException if the specified size is less than 0 or greater than 0xFFFFFFFF bytes
+     * @throws IllegalArgumentException if the specified size is less than 0
      */
     public void setSize(long size) {
-        if(!isValidUnsignedInt(size))
+        if(size<0)
 	        throw new IllegalArgumentException("Invalid entry size");
 
 	    this.size = size;
@@ -398,10 +418,13 @@ public class ZipEntry implements Cloneable {
     /**
      * Sets the size of the compressed entry data.
      *
+     * Sizes greater than 0xFFFFFFFF bytes are stored in ZIP64 extra fields.
+     *
      * @param csize the compressed size to set to
+     * @throws IllegalArgumentException if the specified size is less than 0
      */
     public void setCompressedSize(long csize) {
-        if(!isValidUnsignedInt(csize))
+        if(csize<0)
 	        throw new IllegalArgumentException("Invalid entry size");
 
         this.compressedSize = csize;
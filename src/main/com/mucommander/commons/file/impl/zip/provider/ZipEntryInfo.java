@@ -20,6 +20,12 @@ final class ZipEntryInfo {
     /** Offset to the start of file data */
     long dataOffset = -1;
 
+    /**
+     * Offset of the ZIP64 sizes in the local file header, relative to the start of the header,
+     * <code>-1</code> if the local file header has no ZIP64 extended information extra field
+     */
+    int localZip64Offset = -1;
+
     /** <code>true</code> if this entry has a data descriptor in the Zip file */
     boolean hasDataDescriptor;
 
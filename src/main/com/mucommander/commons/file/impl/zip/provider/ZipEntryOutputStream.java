@@ -99,12 +99,12 @@ public abstract class ZipEntryOutputStream extends OutputStream {
      *
      * @return the uncompressed size of the data written so far
      */
-    public abstract int getTotalIn();
+    public abstract long getTotalIn();
 
     /**
      * Returns the compressed size of the data written so far.
      *
      * @return the compressed size of the data written so far
      */
-    public abstract int getTotalOut();
+    public abstract long getTotalOut();
 }
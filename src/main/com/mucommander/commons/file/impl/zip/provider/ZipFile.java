@@ -43,6 +43,8 @@ import java.util.zip.ZipException;
  * Alternatively, the encoding used for parsing entries can be specified if it is known in advance. For new entries
  * added with {@link #addEntry(ZipEntry)}, UTF-8 is always used and declared as such in the Zip headers.
  *  <li>Loads the internal/external file attributes and extra fields instead of ignoring them
+ *  <li>Supports ZIP64 archives: entries larger than 4 GB, archives larger than 4 GB and with more than 65,535
+ * entries, both when reading and when adding or deleting entries
  * </ul>
  *
  * <p>This class doesn't extend <code>java.util.zip.ZipFile</code> as it would have to reimplement all methods anyway.
@@ -457,11 +459,12 @@ public class ZipFile implements ZipConstants {
             final ZipEntryInfo entryInfo = new ZipEntryInfo();
             entryInfo.encoding = UTF_8;   // Always use UTF-8 for new entries
             entryInfo.headerOffset = centralDirectoryStart;
+            // The entry info must be set before writing the header, which records where ZIP64 sizes go
+            entry.setEntryInfo(entryInfo);
             entryInfo.dataOffset = entryInfo.headerOffset +
                                      ZipOutputStream.writeLocalFileHeader(entry, raos, entryInfo.encoding, false, zipBuffer);
 
             // Add the new entry to the internal lists
-            entry.setEntryInfo(entryInfo);
             entries.add(entry);
             nameMap.put(entry.getName(), entry);
 
@@ -637,7 +640,7 @@ public class ZipFile implements ZipConstants {
                 long previousCompressedSize = previousEntry.getCompressedSize();
                 long previousEntryEnd = previousEntryInfo.dataOffset+previousCompressedSize;
                 if(previousEntryInfo.hasDataDescriptor)
-                    previousEntryEnd += 16;
+                    previousEntryEnd += ZipOutputStream.getDataDescriptorLength(previousEntry);
 
                 // Tests if there is some unused space between the 2 entries
                 if(previousEntryEnd < currentEntryInfo.headerOffset) {
@@ -822,10 +825,11 @@ public class ZipFile implements ZipConstants {
             ze.setCrc(ZipLong.getValue(cfh, 12));
             // off += 4;
 
-            ze.setCompressedSize(ZipLong.getValue(cfh, 16));
+            // Sizes are set once the extra fields have been read, in case they are stored in ZIP64 format
+            long compressedSize = ZipLong.getValue(cfh, 16);
             // off += 4;
 
-            ze.setSize(ZipLong.getValue(cfh, 20));
+            long size = ZipLong.getValue(cfh, 20);
             // off += 4;
 
             int fileNameLen = ZipShort.getValue(cfh, 24);
@@ -862,7 +866,7 @@ public class ZipFile implements ZipConstants {
             }
 
             // Offset to local file header
-            entryInfo.headerOffset = ZipLong.getValue(cfh, 38);
+            long headerOffset = ZipLong.getValue(cfh, 38);
             // data offset will be filled later
 
             // Read and set extra bytes
@@ -870,6 +874,28 @@ public class ZipFile implements ZipConstants {
             rais.readFully(extra);
             ze.setExtra(extra);
 
+            // Values that do not fit in 32 bits are stored in the ZIP64 extended information extra field
+            boolean zip64Size = size == ZIP64_MAGIC;
+            boolean zip64CompressedSize = compressedSize == ZIP64_MAGIC;
+            boolean zip64Offset = headerOffset == ZIP64_MAGIC;
+            if (zip64Size || zip64CompressedSize || zip64Offset) {
+                Zip64ExtendedInformationExtraField zip64 = (Zip64ExtendedInformationExtraField)ze.getExtraField(Zip64ExtendedInformationExtraField.HEADER_ID);
+                if (zip64 == null)
+                    throw new ZipException("Missing ZIP64 extended information extra field");
+
+                zip64.parseCentralDirectoryData(zip64Size, zip64CompressedSize, zip64Offset);
+                if (zip64Size)
+                    size = zip64.getSize();
+                if (zip64CompressedSize)
+                    compressedSize = zip64.getCompressedSize();
+                if (zip64Offset)
+                    headerOffset = zip64.getHeaderOffset();
+            }
+
+            ze.setCompressedSize(compressedSize);
+            ze.setSize(size);
+            entryInfo.headerOffset = headerOffset;
+
             // Read comment bytes
             byte[] comment = new byte[commentLen];
             rais.readFully(comment);
@@ -993,6 +1019,31 @@ public class ZipFile implements ZipConstants {
         /* zipfile comment length          */ + 2
         /* zipfile comment                 */ + 65535;
 
+    /** Size of the ZIP64 end of central directory locator, which precedes the end of central directory record */
+    private static final int ZIP64_EOCD_LOC_SIZE =
+        /* zip64 end of central dir locator signature */ 4
+        /* number of the disk with the start of       */
+        /* the zip64 end of central directory         */ + 4
+        /* relative offset of the zip64 end of        */
+        /* central directory record                   */ + 8
+        /* total number of disks                      */ + 4;
+
+    /** Offset of the central directory start in the ZIP64 end of central directory record */
+    private static final int ZIP64_EOCD_CD_OFFSET =
+        /* zip64 end of central dir signature         */ 4
+        /* size of zip64 end of central directory     */
+        /* record                                     */ + 8
+        /* version made by                            */ + 2
+        /* version needed to extract                  */ + 2
+        /* number of this disk                        */ + 4
+        /* number of the disk with the start of       */
+        /* the central directory                      */ + 4
+        /* total number of entries in the central     */
+        /* directory on this disk                     */ + 8
+        /* total number of entries in the central     */
+        /* directory                                  */ + 8
+        /* size of the central directory              */ + 8;
+
     private static final int CFD_LOCATOR_OFFSET =
         /* end of central dir signature    */ 4
         /* number of this disk             */ + 2
@@ -1051,6 +1102,23 @@ public class ZipFile implements ZipConstants {
                 throw new ZipException("Invalid Zip stream (EOCD signature not found)");
             }
 
+            // The ZIP64 EOCD locator, if any, is located right before the EOCD
+            long zip64EocdOffset = -1;
+            long eocdOffset = length - bufLen + off;
+            if (eocdOffset >= ZIP64_EOCD_LOC_SIZE) {
+                byte[] locator = new byte[ZIP64_EOCD_LOC_SIZE];
+                if (off >= ZIP64_EOCD_LOC_SIZE) {
+                    System.arraycopy(buf, off - ZIP64_EOCD_LOC_SIZE, locator, 0, ZIP64_EOCD_LOC_SIZE);
+                }
+                else {
+                    rais.seek(eocdOffset - ZIP64_EOCD_LOC_SIZE);
+                    rais.readFully(locator);
+                }
+
+                if (ZipLong.getValue(locator, 0) == ZipLong.getValue(ZIP64_EOCD_LOC_SIG))
+                    zip64EocdOffset = ZipEightByteInteger.getValue(locator, 8);
+            }
+
             // Parse the offset to the central directory start
             off += CFD_LOCATOR_OFFSET;
             byte[] cdStart = new byte[4];
@@ -1071,8 +1139,18 @@ public class ZipFile implements ZipConstants {
             // like bit 11 in GPBF.
             comment = getString(commentBytes, defaultEncoding!=null?defaultEncoding:EncodingDetector.detectEncoding(commentBytes));
 
-            // Seek to the start of the central directory
-            rais.seek(ZipLong.getValue(cdStart));
+            // Seek to the start of the central directory, whose offset is found in the ZIP64 EOCD record if there is one
+            long cdStartOffset = ZipLong.getValue(cdStart);
+            if (zip64EocdOffset != -1) {
+                byte[] zip64Eocd = new byte[ZIP64_EOCD_CD_OFFSET + 8];
+                rais.seek(zip64EocdOffset);
+                rais.readFully(zip64Eocd);
+                if (ZipLong.getValue(zip64Eocd, 0) != ZipLong.getValue(ZIP64_EOCD_SIG))
+                    throw new ZipException("Invalid Zip stream (ZIP64 EOCD signature not found)");
+
+                cdStartOffset = ZipEightByteInteger.getValue(zip64Eocd, ZIP64_EOCD_CD_OFFSET);
+            }
+            rais.seek(cdStartOffset);
         }
         finally {
             BufferPool.releaseByteArray(buf);
@@ -24,6 +24,8 @@ import com.mucommander.commons.io.RandomAccessOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 import java.util.zip.Deflater;
 import java.util.zip.ZipException;
@@ -33,6 +35,12 @@ import java.util.zip.ZipException;
  * functionality of this package, especially internal/external file attributes and extra fields with different layouts
  * for local file data and central directory entries.
  *
+ * <p>ZIP64 structures are written as needed: for entries whose sizes or local file header offset do not fit in 32 bits,
+ * and for archives with more than 65,534 entries or whose central directory lies beyond 4 GB. With a
+ * {@link RandomAccessOutputStream}, the local file header of an entry whose size is not known in advance reserves room
+ * for the ZIP64 sizes, so that they can be filled in once the entry has been written. Otherwise, the data descriptor
+ * holds 64-bit sizes when they do not fit in 32 bits.
+ *
  * <p>--------------------------------------------------------------------------------------------------------------<br>
  * <br>
  * This class is based off the <code>org.apache.tools.zip</code> package of the <i>Apache Ant</i> project. The Ant
@@ -53,13 +61,13 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     private ZipEntryInfo entryInfo;
 
     /** The global zip file comment */
-    private String comment = "";
+    protected String comment = "";
 
     /** Compression level for zip entries */
-    private int level = DEFAULT_DEFLATER_COMPRESSION;
+    protected int level = DEFAULT_DEFLATER_COMPRESSION;
 
     /** Compression method zip entries */
-    private int method = DEFLATED;
+    protected int method = DEFLATED;
 
     /** Deflater instance that is used to compress DEFLATED entries */
     protected Deflater deflater = new Deflater(level, true);
@@ -97,6 +105,9 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /** 20 as ZipShort */
     private static final byte[] SHORT_20 = ZipShort.getBytes(20);
 
+    /** 45 as ZipShort, version needed to extract entries that use ZIP64 */
+    private static final byte[] SHORT_45 = ZipShort.getBytes(45);
+
     /** 2048 as ZipShort */
     private static final byte[] SHORT_2048 = ZipShort.getBytes(2048);
 
@@ -190,7 +201,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             written += writeCentralFileHeader(ze, out, encoding, ze.getEntryInfo().headerOffset, !hasRandomAccess, zipBuffer);
         }
         long cdLength = written - cdOffset;
-        writeCentralDirectoryEnd(out, nbEntries, cdLength, cdOffset, comment, encoding, zipBuffer);
+        written += writeCentralDirectoryEnd(out, nbEntries, cdLength, cdOffset, comment, encoding, zipBuffer);
         entries.removeAllElements();
     }
 
@@ -238,9 +249,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         if (entry.getMethod() == DEFLATED) {
             ((DeflatedOutputStream)zeos).finishDeflate();
 
-            entry.setSize(adjustToLong(zeos.getTotalIn()));
-            long compressedSize = adjustToLong(zeos.getTotalOut());
-            entry.setCompressedSize(compressedSize);
+            entry.setSize(zeos.getTotalIn());
+            entry.setCompressedSize(zeos.getTotalOut());
             entry.setCrc(crc);
         }
         else {      // Method is STORED
@@ -254,16 +264,86 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // If random access output, write the local file header containing
         // the correct CRC and compressed/uncompressed sizes
         if (!useDataDescriptor) {
-            RandomAccessOutputStream raos = (RandomAccessOutputStream)out;
+            updateLocalFileHeader(entry, (RandomAccessOutputStream)out, zipBuffer);
+        }
+    }
+
+    /**
+     * Writes the CRC and sizes of the given entry in its local file header, which has been written with zeros in place
+     * of these values. If the local file header has a ZIP64 extended information extra field, the sizes are written
+     * there as well. The offset of the stream is left unchanged.
+     *
+     * @param entry the entry, with its CRC, sizes and header offset set
+     * @param raos the stream the entry has been written to
+     * @param zipBuffer a ZipBuffer instance used to convert integer values to Zip variants
+     * @throws IOException if an I/O error occurred
+     * @throws ZipException if the sizes do not fit in 32 bits and no room was reserved for ZIP64 sizes
+     */
+    protected static void updateLocalFileHeader(ZipEntry entry, RandomAccessOutputStream raos, ZipBuffer zipBuffer) throws IOException {
+        ZipEntryInfo entryInfo = entry.getEntryInfo();
+        boolean zip64 = requiresZip64(entry);
+        if (zip64 && entryInfo.localZip64Offset == -1)
+            throw new ZipException("Entry too large for a local file header without ZIP64 sizes: "+entry.getName());
+
+        long save = raos.getOffset();
+
+        raos.seek(entryInfo.headerOffset + 14);
+        raos.write(ZipLong.getBytes(entry.getCrc(), zipBuffer.longBuffer));
+        // Sizes that do not fit in 32 bits are only found in the ZIP64 extra field
+        raos.write(ZipLong.getBytes(zip64 ? ZIP64_MAGIC : entry.getCompressedSize(), zipBuffer.longBuffer));
+        raos.write(ZipLong.getBytes(zip64 ? ZIP64_MAGIC : entry.getSize(), zipBuffer.longBuffer));
+
+        if (entryInfo.localZip64Offset != -1) {
+            raos.seek(entryInfo.headerOffset + entryInfo.localZip64Offset);
+            raos.write(ZipEightByteInteger.getBytes(entry.getSize(), zipBuffer.eightByteBuffer));
+            raos.write(ZipEightByteInteger.getBytes(entry.getCompressedSize(), zipBuffer.eightByteBuffer));
+        }
+        raos.seek(save);
+    }
+
+    /**
+     * Returns <code>true</code> if the uncompressed or compressed size of the given entry does not fit in the 32-bit
+     * fields of the Zip headers.
+     *
+     * @param ze the entry, with its sizes set
+     * @return <code>true</code> if the sizes of the entry must be stored in ZIP64 format
+     */
+    protected static boolean requiresZip64(ZipEntry ze) {
+        return ze.getSize() >= ZIP64_MAGIC || ze.getCompressedSize() >= ZIP64_MAGIC;
+    }
 
-            long save = raos.getOffset();
+    /**
+     * Returns <code>true</code> if the sizes of the given entry may not fit in 32 bits once the entry has been
+     * written: its size is not known yet or is close to 4 GB, deflating incompressible data expanding it slightly.
+     *
+     * @param ze the entry about to be written
+     * @return <code>true</code> if room must be reserved for ZIP64 sizes
+     */
+    private static boolean mayRequireZip64(ZipEntry ze) {
+        long size = ze.getSize();
+        return size < 0 || size + (size >> 8) >= ZIP64_MAGIC;
+    }
 
-            raos.seek(entry.getEntryInfo().headerOffset + 14);
-            raos.write(ZipLong.getBytes(entry.getCrc(), zipBuffer.longBuffer));
-            raos.write(ZipLong.getBytes(entry.getCompressedSize(), zipBuffer.longBuffer));
-            raos.write(ZipLong.getBytes(entry.getSize(), zipBuffer.longBuffer));
-            raos.seek(save);
+    /**
+     * Returns the extra field data of the given entry, with the given ZIP64 extended information extra field first,
+     * in place of the entry's own one if it has any.
+     *
+     * @param ze the entry
+     * @param zip64 the ZIP64 extended information extra field to write, <code>null</code> for none
+     * @param local <code>true</code> for the local file header data, <code>false</code> for the central directory data
+     * @return the extra field data
+     */
+    private static byte[] getExtraData(ZipEntry ze, Zip64ExtendedInformationExtraField zip64, boolean local) {
+        List<ZipExtraField> fields = new ArrayList<>();
+        if (zip64 != null)
+            fields.add(zip64);
+        for (ZipExtraField field : ze.getExtraFields()) {
+            if (!field.getHeaderId().equals(Zip64ExtendedInformationExtraField.HEADER_ID))
+                fields.add(field);
         }
+
+        ZipExtraField[] fieldArray = fields.toArray(new ZipExtraField[fields.size()]);
+        return local ? ExtraFieldUtils.mergeLocalExtraFields(fieldArray) : ExtraFieldUtils.mergeCentralExtraFields(fieldArray);
     }
 
     /**
@@ -364,9 +444,13 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         int zipMethod = ze.getMethod();
 
+        // Reserve room for ZIP64 sizes if they may be needed. Not needed with a data descriptor, as it holds 64-bit
+        // sizes when they do not fit in 32 bits.
+        boolean zip64 = !useDataDescriptor && mayRequireZip64(ze);
+
         // version needed to extract
         // general purpose bit flag
-        writeVersionAndGPBF(out, encoding, useDataDescriptor);
+        writeVersionAndGPBF(out, encoding, useDataDescriptor, zip64);
         // nbWritten += 4;
 
         // compression method
@@ -392,13 +476,18 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // written += 2;
 
         // extra field length
-        byte[] extra = ze.getLocalFileDataExtra();
+        // The ZIP64 extra field comes first, its sizes are filled in once the entry has been written
+        byte[] extra = getExtraData(ze, zip64 ? new Zip64ExtendedInformationExtraField() : null, true);
         out.write(ZipShort.getBytes(extra.length, zipBuffer.shortBuffer));
         // written += 2;
 
         // Number of bytes written by this method so far
         long written = 30;
 
+        ZipEntryInfo entryInfo = ze.getEntryInfo();
+        if (entryInfo != null)
+            entryInfo.localZip64Offset = zip64 ? (int)written + name.length + 4 : -1;
+
         // file name
         out.write(name);
         written += name.length;
@@ -412,22 +501,39 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
     /**
      * Writes the data descriptor, using the CRC, compressed and uncompressed size attributes contained in the
-     * given ZipEntry.
-     * The length of the field is returned, it is always 16 bytes.
+     * given ZipEntry. Sizes are written as 8-byte values if they do not fit in 32 bits.
+     * The length of the field is returned, see {@link #getDataDescriptorLength(ZipEntry)}.
      *
      * @param ze the entry for which to write the data descriptor
      * @param out the OutputStream where to write the data descriptor to
      * @param zipBuffer a ZipBuffer instance used to convert integer values to Zip variants
-     * @return the number of bytes that were written, i.e. the size of the data descriptor (16 bytes)
+     * @return the number of bytes that were written, i.e. the size of the data descriptor (16 or 24 bytes)
      * @throws IOException if an I/O error occurred
      */
     protected static long writeDataDescriptor(ZipEntry ze, OutputStream out, ZipBuffer zipBuffer) throws IOException {
         out.write(DD_SIG);
         out.write(ZipLong.getBytes(ze.getCrc(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
+        if (requiresZip64(ze)) {
+            out.write(ZipEightByteInteger.getBytes(ze.getCompressedSize(), zipBuffer.eightByteBuffer));
+            out.write(ZipEightByteInteger.getBytes(ze.getSize(), zipBuffer.eightByteBuffer));
+        }
+        else {
+            out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
+            out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
+        }
+
+        return getDataDescriptorLength(ze);
+    }
 
-        return 16;
+    /**
+     * Returns the length of the data descriptor of the given entry: 24 bytes if its sizes do not fit in 32 bits,
+     * 16 bytes otherwise.
+     *
+     * @param ze the entry, with its sizes set
+     * @return the length of the data descriptor of the given entry
+     */
+    protected static long getDataDescriptorLength(ZipEntry ze) {
+        return requiresZip64(ze) ? 24 : 16;
     }
 
     /**
@@ -459,6 +565,16 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      * @return the number of bytes that were written, i.e. the size of the central file header 
      */
     protected static long writeCentralFileHeader(ZipEntry ze, OutputStream out, String encoding, long localFileHeaderOffset, boolean useDataDescriptor, ZipBuffer zipBuffer) throws IOException {
+        // Values that do not fit in 32 bits are stored in a ZIP64 extended information extra field
+        long size = ze.getSize();
+        long compressedSize = ze.getCompressedSize();
+        boolean zip64Size = size >= ZIP64_MAGIC;
+        boolean zip64CompressedSize = compressedSize >= ZIP64_MAGIC;
+        boolean zip64Offset = localFileHeaderOffset >= ZIP64_MAGIC;
+        Zip64ExtendedInformationExtraField zip64 = zip64Size || zip64CompressedSize || zip64Offset
+                ? new Zip64ExtendedInformationExtraField(zip64Size ? size : -1, zip64CompressedSize ? compressedSize : -1, zip64Offset ? localFileHeaderOffset : -1)
+                : null;
+
         out.write(CFH_SIG);
         // nbWritten += 4;
 
@@ -468,7 +584,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         // version needed to extract
         // general purpose bit flag
-        writeVersionAndGPBF(out, encoding, useDataDescriptor);
+        writeVersionAndGPBF(out, encoding, useDataDescriptor, zip64 != null);
         // nbWritten += 4;
 
         // compression method
@@ -483,8 +599,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // compressed length
         // uncompressed length
         out.write(ZipLong.getBytes(ze.getCrc(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
+        out.write(ZipLong.getBytes(zip64CompressedSize ? ZIP64_MAGIC : compressedSize, zipBuffer.longBuffer));
+        out.write(ZipLong.getBytes(zip64Size ? ZIP64_MAGIC : size, zipBuffer.longBuffer));
         // nbWritten += 12;
 
         // file name length
@@ -493,7 +609,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // nbWritten += 2;
 
         // extra field length
-        byte[] extra = ze.getCentralDirectoryExtra();
+        byte[] extra = getExtraData(ze, zip64, false);
         out.write(ZipShort.getBytes(extra.length, zipBuffer.shortBuffer));
         // nbWritten += 2;
 
@@ -519,7 +635,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // nbWritten += 4;
 
         // relative offset of LFH
-        out.write(ZipLong.getBytes(localFileHeaderOffset, zipBuffer.longBuffer));
+        out.write(ZipLong.getBytes(zip64Offset ? ZIP64_MAGIC : localFileHeaderOffset, zipBuffer.longBuffer));
         // nbWritten += 4;
 
         long nbWritten = 46;
@@ -546,10 +662,11 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      * @param out the OutputStream to write the fields to
      * @param encoding the encoding used for writing the filename and optional comment
      * @param useDataDescriptor true if a data descriptor is used for the entry
+     * @param zip64 true if the header has a ZIP64 extended information extra field
      * @return the number of bytes that were written, i.e. 4
      * @throws IOException if an I/O error occurred
      */
-    protected static long writeVersionAndGPBF(OutputStream out, String encoding, boolean useDataDescriptor) throws IOException {
+    protected static long writeVersionAndGPBF(OutputStream out, String encoding, boolean useDataDescriptor, boolean zip64) throws IOException {
         boolean isUTF8 = isUTF8(encoding);
 
         // General purpose bit flag :
@@ -557,8 +674,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // Bit 3 signals a data descriptor is used
 
         if (useDataDescriptor) {
-            // requires version 2 as we are going to store length info in the data descriptor
-            out.write(SHORT_20);
+            // requires version 2 as we are going to store length info in the data descriptor, 4.5 for ZIP64
+            out.write(zip64?SHORT_45:SHORT_20);
 
             // General purpose bit flag
             out.write(isUTF8?
@@ -567,8 +684,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             );
         }
         else {
-            // Version
-            out.write(SHORT_10);
+            // Version, 4.5 for ZIP64
+            out.write(zip64?SHORT_45:SHORT_10);
 
             // General purpose bit flag
             out.write(isUTF8?
@@ -582,7 +699,9 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
 
     /**
-     * Writes the end of the central directory record.
+     * Writes the end of the central directory record. It is preceded by the ZIP64 end of central directory record and
+     * locator if the number of entries, the length or the offset of the central directory do not fit in the
+     * end of central directory record. The central directory end must be written right after the central directory.
      *
      * @param out the OutputStream to write the end of the central directory record to
      * @param nbEntries number of entries the Zip file contains
@@ -591,29 +710,82 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      * @param comment the optional Zip file comment
      * @param encoding the encoding to use for writing the optional Zip comment
      * @param zipBuffer a ZipBuffer instance used to convert integer values to Zip variants
+     * @return the number of bytes that were written
      * @throws IOException if an I/O error occurred
      */
-    protected static void writeCentralDirectoryEnd(OutputStream out, int nbEntries, long cdLength, long cdOffset, String comment, String encoding, ZipBuffer zipBuffer)
+    protected static long writeCentralDirectoryEnd(OutputStream out, int nbEntries, long cdLength, long cdOffset, String comment, String encoding, ZipBuffer zipBuffer)
             throws IOException {
 
+        long nbWritten = 0;
+        if (nbEntries >= ZIP64_MAGIC_SHORT || cdLength >= ZIP64_MAGIC || cdOffset >= ZIP64_MAGIC)
+            nbWritten += writeZip64CentralDirectoryEnd(out, nbEntries, cdLength, cdOffset, zipBuffer);
+
         out.write(EOCD_SIG);
 
         // disk numbers
         out.write(LONG_0);      // 2x SHORT_0
 
-        // number of entries
-        ZipShort.getBytes(nbEntries, zipBuffer.shortBuffer);
+        // number of entries, the actual value is in the ZIP64 record if it doesn't fit
+        ZipShort.getBytes(Math.min(nbEntries, ZIP64_MAGIC_SHORT), zipBuffer.shortBuffer);
         out.write(zipBuffer.shortBuffer);
         out.write(zipBuffer.shortBuffer);
 
-        // length and location of CD
-        out.write(ZipLong.getBytes(cdLength, zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(cdOffset, zipBuffer.longBuffer));
+        // length and location of CD, the actual values are in the ZIP64 record if they don't fit
+        out.write(ZipLong.getBytes(Math.min(cdLength, ZIP64_MAGIC), zipBuffer.longBuffer));
+        out.write(ZipLong.getBytes(Math.min(cdOffset, ZIP64_MAGIC), zipBuffer.longBuffer));
 
         // ZIP file comment
         byte[] data = getBytes(comment, encoding);
         out.write(ZipShort.getBytes(data.length, zipBuffer.shortBuffer));
         out.write(data);
+
+        return nbWritten + 22 + data.length;
+    }
+
+    /**
+     * Writes the ZIP64 end of central directory record followed by the ZIP64 end of central directory locator.
+     * The record must be written right after the central directory.
+     *
+     * @param out the OutputStream to write the records to
+     * @param nbEntries number of entries the Zip file contains
+     * @param cdLength length (in bytes) of the central directory record
+     * @param cdOffset offset from the beginning of the Zip file to the start of the central directory record
+     * @param zipBuffer a ZipBuffer instance used to convert integer values to Zip variants
+     * @return the number of bytes that were written, i.e. 76
+     * @throws IOException if an I/O error occurred
+     */
+    private static long writeZip64CentralDirectoryEnd(OutputStream out, int nbEntries, long cdLength, long cdOffset, ZipBuffer zipBuffer) throws IOException {
+        long recordOffset = cdOffset + cdLength;
+
+        out.write(ZIP64_EOCD_SIG);
+
+        // size of the remainder of the record
+        out.write(ZipEightByteInteger.getBytes(44, zipBuffer.eightByteBuffer));
+
+        // version made by, version needed to extract
+        out.write(SHORT_45);
+        out.write(SHORT_45);
+
+        // disk numbers
+        out.write(LONG_0);
+        out.write(LONG_0);
+
+        // number of entries on this disk and in total
+        ZipEightByteInteger.getBytes(nbEntries, zipBuffer.eightByteBuffer);
+        out.write(zipBuffer.eightByteBuffer);
+        out.write(zipBuffer.eightByteBuffer);
+
+        // length and location of CD
+        out.write(ZipEightByteInteger.getBytes(cdLength, zipBuffer.eightByteBuffer));
+        out.write(ZipEightByteInteger.getBytes(cdOffset, zipBuffer.eightByteBuffer));
+
+        // Locator: disk with the ZIP64 record, offset of the record, total number of disks
+        out.write(ZIP64_EOCD_LOC_SIG);
+        out.write(LONG_0);
+        out.write(ZipEightByteInteger.getBytes(recordOffset, zipBuffer.eightByteBuffer));
+        out.write(ZipLong.getBytes(1, zipBuffer.longBuffer));
+
+        return 76;
     }
 
     /**
@@ -636,16 +808,6 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         }
     }
 
-    /**
-     * Returns a long that is the unsigned intepretation of the given (signed) int.
-     *
-     * @param i the value to treat as unsigned int
-     * @return the unsigned int as a long
-     */
-    protected static long adjustToLong(int i) {
-        return i & 0xFFFFFFFFl;
-    }
-
 
     /////////////////////////////////
     // OutputStream implementation //
@@ -4,6 +4,7 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.ui.main.table.SortOrder;
 import com.mucommander.ui.quicksearch.QuickSearch;
 
+import java.util.Arrays;
 import java.util.Comparator;
 
 /**
@@ -23,6 +24,10 @@ import java.util.Comparator;
  * <li>{@link #PERMISSIONS_CRITERION}: compares file permissions returned by {@link AbstractFile#getPermissions()}
  * </ul>
  *
+ * <p>Large arrays of files are better sorted with {@link #sort(SortKey[])}: the values compared by this comparator
+ * are then computed once per file by {@link #createSortKey(AbstractFile, int)} instead of once per comparison,
+ * and the sort runs in parallel. Both ways give the same order.</p>
+ *
  * @author Maxence Bernard
  */
 public class FileComparator implements Comparator<AbstractFile> {
@@ -353,6 +358,227 @@ public class FileComparator implements Comparator<AbstractFile> {
         return sortOrder.isAsc() ? intValue : -intValue; // Note: ascending is used more often, more efficient to negate for descending
     }
 
+    //////////////
+    // Sort keys //
+    //////////////
+
+    /**
+     * A string prepared for comparisons: its case-folded version and the position of its first number are computed once.
+     */
+    private static final class SortString {
+        final String value;
+        /** Every character converted to upper case and then to lower case, as {@link #compareStrings(String, String, boolean)} does */
+        final String folded;
+        /** Position of the first digit, -1 if there is none */
+        final int digitPos;
+        /** Number of consecutive digits starting at {@link #digitPos} */
+        final int digitCount;
+
+        SortString(String value) {
+            this.value = value;
+            int len = value.length();
+            char[] chars = new char[len];
+            for (int i = 0; i < len; i++) {
+                chars[i] = (char) Character.toLowerCase(Character.toUpperCase((int) value.charAt(i)));
+            }
+            this.folded = new String(chars);
+            this.digitPos = firstDigitPos(value);
+            int count = 0;
+            if (digitPos >= 0) {
+                while (digitPos + count < len && value.charAt(digitPos + count) >= '0' && value.charAt(digitPos + count) <= '9') {
+                    count++;
+                }
+            }
+            this.digitCount = count;
+        }
+
+        static SortString of(String value) {
+            return value == null ? null : new SortString(value);
+        }
+    }
+
+    /**
+     * The values of a file that are compared by a <code>FileComparator</code>, computed once by
+     * {@link #createSortKey(AbstractFile, int)}.
+     */
+    public static final class SortKey {
+        private final int index;
+        private final boolean directory;
+        private final boolean quickSearchMatch;
+        private final SortString name;
+        /** Size, date or permissions depending on the criterion */
+        private final long value;
+        /** Extension, owner or group depending on the criterion */
+        private final SortString stringValue;
+
+        private SortKey(int index, boolean directory, boolean quickSearchMatch, SortString name, long value, SortString stringValue) {
+            this.index = index;
+            this.directory = directory;
+            this.quickSearchMatch = quickSearchMatch;
+            this.name = name;
+            this.value = value;
+            this.stringValue = stringValue;
+        }
+
+        /**
+         * Returns the index that was given to {@link #createSortKey(AbstractFile, int)}.
+         *
+         * @return the index of the file
+         */
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    /**
+     * Computes the values of the given file that are compared by this comparator.
+     *
+     * @param file  the file
+     * @param index an index identifying the file, returned by {@link SortKey#getIndex()}
+     * @return the sort key of the file
+     */
+    public SortKey createSortKey(AbstractFile file, int index) {
+        boolean directory = file.isDirectory();
+        boolean quickSearchMatch = quickSearch != null && quickSearch.matches(file);
+        long value = 0;
+        SortString stringValue = null;
+        switch (criterion) {
+            case SIZE_CRITERION:
+                long size = directory ? 0 : file.getSize();
+                value = size == -1 ? Long.MAX_VALUE : size;
+                break;
+            case DATE_CRITERION:
+                value = file.getLastModifiedDate();
+                break;
+            case PERMISSIONS_CRITERION:
+                value = file.getPermissions().getIntValue();
+                break;
+            case EXTENSION_CRITERION:
+                stringValue = SortString.of(file.getExtension());
+                break;
+            case OWNER_CRITERION:
+                stringValue = SortString.of(file.getOwner());
+                break;
+            case GROUP_CRITERION:
+                stringValue = SortString.of(file.getGroup());
+                break;
+        }
+        return new SortKey(index, directory, quickSearchMatch, new SortString(file.getName()), value, stringValue);
+    }
+
+    /**
+     * Sorts the given keys in parallel, in the order {@link #compare(AbstractFile, AbstractFile)} would sort
+     * their files. The sort is stable.
+     *
+     * @param keys keys created by {@link #createSortKey(AbstractFile, int)}
+     */
+    public void sort(SortKey[] keys) {
+        Arrays.parallelSort(keys, this::compare);
+    }
+
+    /**
+     * Compares two sort keys like {@link #compare(AbstractFile, AbstractFile)} compares their files.
+     *
+     * @param k1 first key
+     * @param k2 second key
+     * @return a negative integer, zero, or a positive integer as the first key is less than, equal to, or greater
+     * than the second
+     */
+    public int compare(SortKey k1, SortKey k2) {
+        if (quickSearch != null) {
+            if (k1.quickSearchMatch && !k2.quickSearchMatch) {
+                return -1;
+            } else if (k2.quickSearchMatch && !k1.quickSearchMatch) {
+                return 1;
+            }
+        }
+
+        long diff;
+        if (directoriesFirst) {
+            if (k1.directory && !k2.directory) {
+                return -1;
+            } else if (k2.directory && !k1.directory) {
+                return 1;
+            }
+            if (foldersAlwaysAlphabetical && k1.directory) {
+                diff = compareStrings(k1.name, k2.name, true);
+                if (diff == 0) {
+                    diff = compareStrings(k1.name, k2.name, false);
+                }
+                return (int) diff;
+            }
+        }
+
+        switch (criterion) {
+            case SIZE_CRITERION:
+            case DATE_CRITERION:
+            case PERMISSIONS_CRITERION:
+                diff = k1.value - k2.value;
+                break;
+            case EXTENSION_CRITERION:
+            case OWNER_CRITERION:
+            case GROUP_CRITERION:
+                if (k1.stringValue == null || k2.stringValue == null) {
+                    diff = k1.stringValue == k2.stringValue ? 0 : (k1.stringValue == null ? -1 : 1);
+                } else {
+                    diff = compareStrings(k1.stringValue, k2.stringValue, true);
+                }
+                break;
+            default:    // NAME_CRITERION
+                diff = compareStrings(k1.name, k2.name, true);
+                if (diff == 0) {
+                    diff = compareStrings(k1.name, k2.name, false);
+                }
+        }
+
+        if (criterion != NAME_CRITERION && diff == 0) {
+            diff = compareStrings(k1.name, k2.name, true);
+        }
+
+        int intValue;
+        if (diff > Integer.MAX_VALUE) {
+            intValue = Integer.MAX_VALUE;
+        } else if (diff < Integer.MIN_VALUE + 1) {
+            intValue = Integer.MIN_VALUE + 1;
+        } else {
+            intValue = (int) diff;
+        }
+        return sortOrder.isAsc() ? intValue : -intValue;
+    }
+
+    /**
+     * Same as {@link #compareStrings(String, String, boolean)}, using the values precomputed by {@link SortString}.
+     */
+    private static int compareStrings(SortString s1, SortString s2, boolean ignoreCase) {
+        int digitIndex = s1.digitPos;
+        if (digitIndex >= 0 && digitIndex == s2.digitPos && s1.value.regionMatches(0, s2.value, 0, digitIndex)) {
+            if (s1.digitCount != s2.digitCount) {
+                return s1.digitCount - s2.digitCount;
+            }
+            for (int i = digitIndex; i < digitIndex + s1.digitCount; i++) {
+                int c1 = s1.value.charAt(i);
+                int c2 = s2.value.charAt(i);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+        }
+
+        String v1 = ignoreCase ? s1.folded : s1.value;
+        String v2 = ignoreCase ? s2.folded : s2.value;
+        int n1 = v1.length();
+        int n2 = v2.length();
+        for (int i = 0; i < n1 && i < n2; i++) {
+            int c1 = v1.charAt(i);
+            int c2 = v2.charAt(i);
+            if (c1 != c2) {
+                return getCharacterValue(c1) - getCharacterValue(c2);
+            }
+        }
+        return n1 - n2;
+    }
+
+
     /**
      * Returns true only if the given object is a FileComparator using the same criterion and ascending/descending order.
      */
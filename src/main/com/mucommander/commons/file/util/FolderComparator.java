@@ -0,0 +1,363 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the files of two folders in a fork-join pool, matching the files by name.
+ *
+ * <p>The files of the second folder are put in a hash map, so each file of the first folder is matched in constant
+ * time. Files can be compared by {@link Mode#DATE date} or by {@link Mode#CONTENT content}: sizes are compared first,
+ * then the bytes up to the first difference. Pairs of local files are compared in parallel and large local files are
+ * compared in chunks in parallel; files of other protocols are compared one at a time so as to not open many
+ * connections to the same server.</p>
+ *
+ * <p>When comparing recursively, a folder differs from the folder with the same name if any file located under them
+ * differs.</p>
+ */
+public class FolderComparator {
+
+    /**
+     * How the files with the same name are compared
+     */
+    public enum Mode {
+        /** A file differs if the file with the same name in the second folder is older */
+        DATE,
+        /** A file differs if the file with the same name in the second folder has a different size or content */
+        CONTENT
+    }
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Local files larger than twice this size are compared in chunks of this size in parallel */
+    private static final long CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final Mode mode;
+    private final boolean recursive;
+    private final long chunkSize;
+
+    /** The last comparison that has been started, whose progress is reported */
+    private volatile FolderTask currentTask;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new FolderComparator.
+     *
+     * @param mode how the files with the same name are compared
+     * @param recursive <code>true</code> to compare the sub-folders with the same name, <code>false</code> to ignore
+     * sub-folders
+     */
+    public FolderComparator(Mode mode, boolean recursive) {
+        this(mode, recursive, CHUNK_SIZE);
+    }
+
+    FolderComparator(Mode mode, boolean recursive, long chunkSize) {
+        this.mode = mode;
+        this.recursive = recursive;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Starts comparing the given files, usually the children of two folders. The result of the returned task is
+     * the set of the names of the files of the first array that are missing from the second array or differ from
+     * the file with the same name.
+     *
+     * @param first the files to compare
+     * @param second the files to compare them with
+     * @return the running comparison
+     */
+    public ForkJoinTask<Set<String>> compare(AbstractFile[] first, AbstractFile[] second) {
+        FolderTask task = new FolderTask(first, second, true);
+        currentTask = task;
+        return POOL.submit(task);
+    }
+
+    /**
+     * Stops the comparison as soon as possible, the files that haven't been compared yet are not reported as different.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns the percentage of the files of the first folder that have been compared so far by the last comparison
+     * that has been started.
+     *
+     * @return the progress of the comparison, between 0 and 100
+     */
+    public int getProgress() {
+        FolderTask task = currentTask;
+        int total = task == null ? 0 : task.first.length;
+        return total == 0 ? 100 : (int) (task.comparedFiles.sum() * 100 / total);
+    }
+
+
+    private static boolean isLocal(AbstractFile file) {
+        return FileProtocols.FILE.equals(file.getURL().getScheme());
+    }
+
+
+    /**
+     * Compares two arrays of files, returns the names of the files that differ
+     */
+    private class FolderTask extends RecursiveTask<Set<String>> {
+        private final AbstractFile[] first;
+        private final AbstractFile[] second;
+        /** <code>true</code> for the top-level folders, the files of sub-folders are not reported */
+        private final boolean topLevel;
+        /** Number of files of the first folder that have been compared, only counted for the top-level folders */
+        private final LongAdder comparedFiles = new LongAdder();
+
+        FolderTask(AbstractFile[] first, AbstractFile[] second, boolean topLevel) {
+            this.first = first;
+            this.second = second;
+            this.topLevel = topLevel;
+        }
+
+        @Override
+        protected Set<String> compute() {
+            Map<String, AbstractFile> secondByName = new HashMap<>(second.length * 4 / 3 + 1);
+            for (AbstractFile file : second) {
+                secondByName.put(file.getName(), file);
+            }
+            Set<String> result = new HashSet<>();
+            List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+            List<String> taskNames = new ArrayList<>();
+            for (AbstractFile file : first) {
+                if (cancelled || (!topLevel && !result.isEmpty())) {
+                    break;
+                }
+                AbstractFile other = secondByName.remove(file.getName());
+                ForkJoinTask<Boolean> task = null;
+                boolean differs = false;
+                if (file.isDirectory()) {
+                    if (recursive) {
+                        if (other == null || !other.isDirectory()) {
+                            differs = true;
+                        } else {
+                            task = new SubFolderTask(file, other);
+                        }
+                    }
+                } else if (other == null || other.isDirectory()) {
+                    differs = true;
+                } else if (mode == Mode.DATE) {
+                    differs = other.getLastModifiedDate() < file.getLastModifiedDate();
+                } else if (file.getSize() != other.getSize()) {
+                    differs = true;
+                } else {
+                    task = new ContentTask(file, other);
+                }
+
+                if (task != null && isLocal(file) && isLocal(other)) {
+                    task.fork();
+                    tasks.add(task);
+                    taskNames.add(file.getName());
+                    continue;
+                }
+                if (task != null) {
+                    differs = task.invoke();
+                }
+                if (differs) {
+                    result.add(file.getName());
+                }
+                fileCompared();
+            }
+            // In content mode, files that only exist in a sub-folder of the second folder make the sub-folders differ
+            if (!topLevel && mode == Mode.CONTENT) {
+                result.addAll(secondByName.keySet());
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                ForkJoinTask<Boolean> task = tasks.get(i);
+                if (cancelled || (!topLevel && !result.isEmpty())) {
+                    // The sub-folder already differs, no need to wait for the remaining files
+                    task.cancel(false);
+                    continue;
+                }
+                if (task.join()) {
+                    result.add(taskNames.get(i));
+                }
+                fileCompared();
+            }
+            return cancelled ? Collections.<String>emptySet() : result;
+        }
+
+        private void fileCompared() {
+            if (topLevel) {
+                comparedFiles.increment();
+            }
+        }
+    }
+
+
+    /**
+     * Compares two sub-folders with the same name, returns <code>true</code> if they differ
+     */
+    private class SubFolderTask extends RecursiveTask<Boolean> {
+        private final AbstractFile first;
+        private final AbstractFile second;
+
+        SubFolderTask(AbstractFile first, AbstractFile second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (cancelled) {
+                return false;
+            }
+            try {
+                return !new FolderTask(first.ls(), second.ls(), false).compute().isEmpty();
+            } catch (IOException e) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Compares the content of two files of the same size, returns <code>true</code> if they differ
+     */
+    private class ContentTask extends RecursiveTask<Boolean> {
+        private final AbstractFile first;
+        private final AbstractFile second;
+
+        ContentTask(AbstractFile first, AbstractFile second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        protected Boolean compute() {
+            long size = first.getSize();
+            try {
+                if (size >= 2 * chunkSize && isLocal(first) && isLocal(second)) {
+                    AtomicBoolean differs = new AtomicBoolean();
+                    List<ChunkTask> chunks = new ArrayList<>();
+                    for (long offset = 0; offset < size; offset += chunkSize) {
+                        chunks.add(new ChunkTask(first, second, offset, Math.min(chunkSize, size - offset), differs));
+                    }
+                    invokeAll(chunks);
+                    return differs.get();
+                }
+                try (InputStream in1 = first.getInputStream(); InputStream in2 = second.getInputStream()) {
+                    return !contentEquals(in1, in2, Long.MAX_VALUE, null);
+                }
+            } catch (IOException e) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Compares a range of two local files, sets the shared flag if they differ
+     */
+    private class ChunkTask extends RecursiveTask<Void> {
+        private final AbstractFile first;
+        private final AbstractFile second;
+        private final long offset;
+        private final long length;
+        private final AtomicBoolean differs;
+
+        ChunkTask(AbstractFile first, AbstractFile second, long offset, long length, AtomicBoolean differs) {
+            this.first = first;
+            this.second = second;
+            this.offset = offset;
+            this.length = length;
+            this.differs = differs;
+        }
+
+        @Override
+        protected Void compute() {
+            if (differs.get()) {
+                return null;
+            }
+            try (RandomAccessInputStream in1 = first.getRandomAccessInputStream();
+                 RandomAccessInputStream in2 = second.getRandomAccessInputStream()) {
+                in1.seek(offset);
+                in2.seek(offset);
+                if (!contentEquals(in1, in2, length, differs)) {
+                    differs.set(true);
+                }
+            } catch (IOException e) {
+                differs.set(true);
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Compares up to <code>length</code> bytes of two streams. Stops early if the comparison is cancelled or
+     * the given flag is set, in which case the return value is meaningless.
+     */
+    private boolean contentEquals(InputStream in1, InputStream in2, long length, AtomicBoolean stop) throws IOException {
+        byte[] buffer1 = BufferPool.getByteArray(BUFFER_SIZE);
+        byte[] buffer2 = BufferPool.getByteArray(BUFFER_SIZE);
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                if (cancelled || (stop != null && stop.get())) {
+                    return true;
+                }
+                int toRead = (int) Math.min(BUFFER_SIZE, remaining);
+                int read1 = StreamUtils.readUpTo(in1, buffer1, 0, toRead);
+                int read2 = StreamUtils.readUpTo(in2, buffer2, 0, toRead);
+                if (read1 != read2) {
+                    return false;
+                }
+                for (int i = 0; i < read1; i++) {
+                    if (buffer1[i] != buffer2[i]) {
+                        return false;
+                    }
+                }
+                if (read1 < toRead) {
+                    return true;
+                }
+                remaining -= read1;
+            }
+            return true;
+        } finally {
+            BufferPool.releaseByteArray(buffer1);
+            BufferPool.releaseByteArray(buffer2);
+        }
+    }
+}
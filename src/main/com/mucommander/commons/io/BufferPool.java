@@ -21,11 +21,16 @@ package com.mucommander.commons.io;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows to share and reuse byte buffers to avoid excessive memory allocation and garbage collection.
@@ -47,7 +52,12 @@ import java.util.List;
  * used again and from being garbage-collected.</li>
  * </ul>
  *
- * <p>Note: this class is thread safe and thus can safely be used by concurrent threads.
+ * <p>Note: this class is thread safe and thus can safely be used by concurrent threads. Buffers are kept in
+ * lock-free stacks, one per buffer class and length, so that concurrent threads don't wait for each other.
+ * <code>ByteBuffer</code> instances are direct, which makes them suitable for NIO channels.
+ *
+ * <p>Hits, misses and allocations are counted to help tuning buffer sizes, see {@link #getHitCount()},
+ * {@link #getMissCount()} and {@link #getAllocatedSize()}.
  *
  * @author Maxence Bernard, Nicolas Rinaudo
  * @see com.mucommander.commons.io.StreamUtils
@@ -56,23 +66,44 @@ public class BufferPool {
     /** Logger used by this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BufferPool.class);
 
-    /** List of BufferContainer instances that wraps available buffers */
-    private static List<BufferContainer> bufferContainers = new ArrayList<>();
+    /** Available buffers, by buffer class and length */
+    private static final Map<Class<?>, Map<Integer, BufferStack>> buffers = new ConcurrentHashMap<>();
+
+    /** Buffers that currently are in the pool, guards against releasing the same buffer twice */
+    private static final Set<BufferContainer> pooledBuffers = ConcurrentHashMap.newKeySet();
+
+    /** Factories used by the shorthand methods, factories are stateless */
+    private static final BufferFactory BYTE_ARRAY_FACTORY = new ByteArrayFactory();
+    private static final BufferFactory CHAR_ARRAY_FACTORY = new CharArrayFactory();
+    private static final BufferFactory BYTE_BUFFER_FACTORY = new ByteBufferFactory();
+    private static final BufferFactory CHAR_BUFFER_FACTORY = new CharBufferFactory();
 
     /** The initial default buffer size */
     final static int INITIAL_DEFAULT_BUFFER_SIZE = 65536;
 
     /** Size of buffers returned by get*Buffer methods without a size argument */
-    private static int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
+    private static volatile int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
 
     /** The initial max pool size */
     final static long INITIAL_POOL_LIMIT = 10485760;
 
     /** Maximum combined size of all pooled buffers, in bytes */
-    private static long maxPoolSize = INITIAL_POOL_LIMIT;
+    private static volatile long maxPoolSize = INITIAL_POOL_LIMIT;
 
     /** Current combined size of all pooled buffers, in bytes */
-    private static long poolSize;
+    private static final AtomicLong poolSize = new AtomicLong();
+
+    /** Number of buffers in the pool */
+    private static final AtomicInteger bufferCount = new AtomicInteger();
+
+    /** Number of buffers returned from the pool */
+    private static final LongAdder hitCount = new LongAdder();
+
+    /** Number of buffers created because none was available in the pool */
+    private static final LongAdder missCount = new LongAdder();
+
+    /** Combined size of the buffers created because none was available in the pool, in bytes */
+    private static final LongAdder allocatedSize = new LongAdder();
 
 
     /**
@@ -81,7 +112,7 @@ public class BufferPool {
      *
      * @return a byte array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized byte[] getByteArray() {
+    public static byte[] getByteArray() {
         return getByteArray(getDefaultBufferSize());
     }
 
@@ -99,8 +130,8 @@ public class BufferPool {
      * @param length length of the byte array
      * @return a byte array of the specified size
      */
-    public static synchronized byte[] getByteArray(int length) {
-        return (byte[])getBuffer(new ByteArrayFactory(), length);
+    public static byte[] getByteArray(int length) {
+        return (byte[])getBuffer(BYTE_ARRAY_FACTORY, length);
     }
 
     /**
@@ -109,7 +140,7 @@ public class BufferPool {
      *
      * @return a char array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized char[] getCharArray() {
+    public static char[] getCharArray() {
         return getCharArray(getDefaultBufferSize());
     }
 
@@ -127,8 +158,8 @@ public class BufferPool {
      * @param length length of the char array
      * @return a char array of the specified length
      */
-    public static synchronized char[] getCharArray(int length) {
-        return (char[])getBuffer(new CharArrayFactory(), length);
+    public static char[] getCharArray(int length) {
+        return (char[])getBuffer(CHAR_ARRAY_FACTORY, length);
     }
 
     /**
@@ -137,14 +168,14 @@ public class BufferPool {
      *
      * @return a ByteBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized ByteBuffer getByteBuffer() {
+    public static ByteBuffer getByteBuffer() {
         return getByteBuffer(getDefaultBufferSize());
     }
 
     /**
-     * Returns a ByteBuffer of the specified capacity. This method first checks if a ByteBuffer instance of the
-     * specified capacity exists in the pool. If one is found, it is removed from the pool and returned. If not,
-     * a new instance is created and returned.
+     * Returns a direct ByteBuffer of the specified capacity. This method first checks if a ByteBuffer instance of the
+     * specified capacity exists in the pool. If one is found, it is removed from the pool, cleared and returned.
+     * If not, a new instance is created and returned.
      *
      * <p>This method won't return the same buffer instance until it has been released with
      * {@link #releaseByteBuffer(ByteBuffer)}.
@@ -155,8 +186,8 @@ public class BufferPool {
      * @param capacity capacity of the ByteBuffer
      * @return a ByteBuffer with the specified capacity
      */
-    public static synchronized ByteBuffer getByteBuffer(int capacity) {
-        return (ByteBuffer)getBuffer(new ByteBufferFactory(), capacity);
+    public static ByteBuffer getByteBuffer(int capacity) {
+        return (ByteBuffer)getBuffer(BYTE_BUFFER_FACTORY, capacity);
     }
 
 
@@ -166,14 +197,14 @@ public class BufferPool {
      *
      * @return a CharBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized CharBuffer getCharBuffer() {
+    public static CharBuffer getCharBuffer() {
         return getCharBuffer(getDefaultBufferSize());
     }
 
     /**
      * Returns a CharBuffer of the specified capacity. This method first checks if a CharBuffer instance of the
-     * specified capacity exists in the pool. If one is found, it is removed from the pool and returned. If not,
-     * a new instance is created and returned.
+     * specified capacity exists in the pool. If one is found, it is removed from the pool, cleared and returned.
+     * If not, a new instance is created and returned.
      *
      * <p>This method won't return the same buffer instance until it has been released with
      * {@link #releaseCharBuffer(CharBuffer)}.
@@ -184,8 +215,8 @@ public class BufferPool {
      * @param capacity capacity of the CharBuffer
      * @return a CharBuffer with the specified capacity
      */
-    public static synchronized CharBuffer getCharBuffer(int capacity) {
-        return (CharBuffer)getBuffer(new CharBufferFactory(), capacity);
+    public static CharBuffer getCharBuffer(int capacity) {
+        return (CharBuffer)getBuffer(CHAR_BUFFER_FACTORY, capacity);
     }
 
 
@@ -196,7 +227,7 @@ public class BufferPool {
      * @param factory BufferFactory used to identify the target buffer class and create a new buffer (if necessary)
      * @return a buffer with a size equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized Object getBuffer(BufferFactory factory) {
+    public static Object getBuffer(BufferFactory factory) {
         return getBuffer(factory, getDefaultBufferSize());
     }
 
@@ -213,26 +244,29 @@ public class BufferPool {
      * @param size size of the buffer
      * @return a buffer of the specified size
      */
-    public static synchronized Object getBuffer(BufferFactory factory, int size) {
-        // Looks for a buffer container in the pool that matches the specified size and buffer class.
-        Iterator<BufferContainer> it = bufferContainers.iterator();
-        while (it.hasNext()) {
-            BufferContainer bufferContainer = it.next();
+    public static Object getBuffer(BufferFactory factory, int size) {
+        Map<Integer, BufferStack> sizeClasses = buffers.get(factory.getBufferClass());
+        BufferStack stack = sizeClasses == null ? null : sizeClasses.get(size);
+        BufferContainer bufferContainer = stack == null ? null : stack.pop();
+        if (bufferContainer != null) {
             Object buffer = bufferContainer.getBuffer();
-
-            // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
-            if (bufferContainer.getLength() == size && (factory.matchesBufferClass(buffer.getClass()))) {
-                it.remove();
-                //bufferContainers.removeElementAt(i);
-                poolSize -= bufferContainer.getSize();
-                return buffer;
+            pooledBuffers.remove(bufferContainer);
+            poolSize.addAndGet(-bufferContainer.getSize());
+            bufferCount.decrementAndGet();
+            hitCount.increment();
+            if (buffer instanceof Buffer) {
+                ((Buffer)buffer).clear();
             }
+            return buffer;
         }
 
-        LOGGER.trace("Creating new buffer with {} size=", factory, size);
+        LOGGER.trace("Creating new buffer with {} size={}", factory, size);
 
         // No buffer with the same class and size found in the pool, create a new one and return it
-        return factory.newBuffer(size);
+        Object buffer = factory.newBuffer(size);
+        missCount.increment();
+        allocatedSize.add(factory.newBufferContainer(buffer).getSize());
+        return buffer;
     }
 
 
@@ -248,8 +282,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteArray(byte buffer[]) {
-        return releaseBuffer(buffer, new ByteArrayFactory());
+    public static boolean releaseByteArray(byte buffer[]) {
+        return releaseBuffer(buffer, BYTE_ARRAY_FACTORY);
     }
 
     /**
@@ -264,8 +298,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharArray(char buffer[]) {
-        return releaseBuffer(buffer, new CharArrayFactory());
+    public static boolean releaseCharArray(char buffer[]) {
+        return releaseBuffer(buffer, CHAR_ARRAY_FACTORY);
     }
 
     /**
@@ -280,8 +314,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteBuffer(ByteBuffer buffer) {
-        return releaseBuffer(buffer, new ByteBufferFactory());
+    public static boolean releaseByteBuffer(ByteBuffer buffer) {
+        return releaseBuffer(buffer, BYTE_BUFFER_FACTORY);
     }
 
     /**
@@ -296,8 +330,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharBuffer(CharBuffer buffer) {
-        return releaseBuffer(buffer, new CharBufferFactory());
+    public static boolean releaseCharBuffer(CharBuffer buffer) {
+        return releaseBuffer(buffer, CHAR_BUFFER_FACTORY);
     }
 
     /**
@@ -314,27 +348,36 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool or the pool size limit has been reached
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseBuffer(Object buffer, BufferFactory factory) {
+    public static boolean releaseBuffer(Object buffer, BufferFactory factory) {
         if(buffer==null)
             throw new IllegalArgumentException("specified buffer is null");
 
         BufferContainer bufferContainer = factory.newBufferContainer(buffer);
+        BufferStack stack = getStack(factory.getBufferClass(), bufferContainer.getLength());
 
-        if(bufferContainers.contains(bufferContainer)) {
+        // Claiming the buffer is atomic, so that concurrent releases of the same buffer can't both add it
+        if(!pooledBuffers.add(bufferContainer)) {
             LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
             return false;
         }
 
         long bufferSize = bufferContainer.getSize();        // size in bytes (!= length)
 
-        if(maxPoolSize!=-1 && poolSize+bufferSize>maxPoolSize) {
-            LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool of type {}. Enable trace to get the buffer.", buffer.getClass());
-            LOGGER.trace("Warning: maximum pool size reached, buffer not added to the pool of type {} : {}", buffer.getClass(), buffer);
-            return false;
-        }
+        // Reserve room in the pool before making the buffer available
+        long currentPoolSize;
+        do {
+            currentPoolSize = poolSize.get();
+            long limit = maxPoolSize;
+            if(limit!=-1 && currentPoolSize+bufferSize>limit) {
+                LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool of type {}. Enable trace to get the buffer.", buffer.getClass());
+                LOGGER.trace("Warning: maximum pool size reached, buffer not added to the pool of type {} : {}", buffer.getClass(), buffer);
+                pooledBuffers.remove(bufferContainer);
+                return false;
+            }
+        } while (!poolSize.compareAndSet(currentPoolSize, currentPoolSize+bufferSize));
 
-        bufferContainers.add(bufferContainer);
-        poolSize += bufferSize;
+        bufferCount.incrementAndGet();
+        stack.push(bufferContainer);
 
         return true;
     }
@@ -342,7 +385,7 @@ public class BufferPool {
     /**
      * Returns <code>true</code> if the specified buffer is currently in the pool.
      *
-     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
+     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
      * calling <code>release*Buffer</code> as it already performs this test before adding a buffer to the pool.
      *
      * @param buffer the buffer to look for in the pool
@@ -350,9 +393,26 @@ public class BufferPool {
      * @return <code>true</code> if the specified buffer is already in the pool
      */
     public static boolean containsBuffer(Object buffer, BufferFactory factory) {
-        return bufferContainers.contains(factory.newBufferContainer(buffer));
+        return pooledBuffers.contains(factory.newBufferContainer(buffer));
     }
 
+    /**
+     * Returns the stack of available buffers of the given class and length, creating it if necessary.
+     */
+    private static BufferStack getStack(Class<?> bufferClass, int length) {
+        // Look up first, as computeIfAbsent locks existing mappings
+        Map<Integer, BufferStack> sizeClasses = buffers.get(bufferClass);
+        if (sizeClasses == null) {
+            sizeClasses = buffers.computeIfAbsent(bufferClass, key -> new ConcurrentHashMap<>());
+        }
+        BufferStack stack = sizeClasses.get(length);
+        if (stack == null) {
+            stack = sizeClasses.computeIfAbsent(length, key -> new BufferStack());
+        }
+        return stack;
+    }
+
+
 
     /**
      * Returns the number of buffers that currently are in the pool. This method is provided for debugging
@@ -361,7 +421,7 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount() {
-        return bufferContainers.size();
+        return bufferCount.get();
     }
 
     /**
@@ -373,15 +433,45 @@ public class BufferPool {
      */
     public static int getBufferCount(BufferFactory factory) {
         int count = 0;
-        for (BufferContainer bufferContainer : bufferContainers) {
-            if (factory.matchesBufferClass(bufferContainer.getBuffer().getClass())) {
-                count ++;
+        for (Map.Entry<Class<?>, Map<Integer, BufferStack>> sizeClasses : buffers.entrySet()) {
+            if (factory.matchesBufferClass(sizeClasses.getKey())) {
+                for (BufferStack stack : sizeClasses.getValue().values()) {
+                    count += stack.size();
+                }
             }
-
         }
         return count;
     }
 
+    /**
+     * Returns the number of buffers that have been returned from the pool since the application started.
+     *
+     * @return the number of buffers that have been returned from the pool
+     */
+    public static long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of buffers that have been created because none of the requested class and size was
+     * available in the pool.
+     *
+     * @return the number of buffers that have been created by the pool
+     */
+    public static long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the combined size in bytes of the buffers that have been created because none of the requested class
+     * and size was available in the pool.
+     *
+     * @return the combined size in bytes of the buffers that have been created by the pool
+     */
+    public static long getAllocatedSize() {
+        return allocatedSize.sum();
+    }
+
     /**
      * Returns the default size of buffers returned by <code>get*Buffer</code> methods without a <code>size</code>
      * argument.
@@ -399,7 +489,7 @@ public class BufferPool {
      *
      * @param bufferSize the new buffer size
      */
-    public static synchronized void setDefaultBufferSize(int bufferSize) {
+    public static void setDefaultBufferSize(int bufferSize) {
         BufferPool.defaultBufferSize = bufferSize;
     }
 
@@ -410,7 +500,7 @@ public class BufferPool {
      * @return the combined size in bytes of all buffers that are currenty in the pool
      */
     public static long getPoolSize() {
-        return poolSize;
+        return poolSize.get();
     }
 
     /**
@@ -433,7 +523,7 @@ public class BufferPool {
      *
      * @param maxPoolSize the maximum combined size in bytes for all buffers in the pool
      */
-    public static synchronized void setMaxPoolSize(long maxPoolSize) {
+    public static void setMaxPoolSize(long maxPoolSize) {
         BufferPool.maxPoolSize = maxPoolSize;
     }
 
@@ -442,6 +532,49 @@ public class BufferPool {
     // Inner classes //
     ///////////////////
 
+    /**
+     * Lock-free (Treiber) stack of available buffers of the same class and length.
+     */
+    private static final class BufferStack {
+
+        private static final class Node {
+            final BufferContainer buffer;
+            Node next;
+
+            Node(BufferContainer buffer) {
+                this.buffer = buffer;
+            }
+        }
+
+        private final AtomicReference<Node> head = new AtomicReference<>();
+
+        void push(BufferContainer buffer) {
+            Node node = new Node(buffer);
+            do {
+                node.next = head.get();
+            } while (!head.compareAndSet(node.next, node));
+        }
+
+        BufferContainer pop() {
+            Node node;
+            do {
+                node = head.get();
+                if (node == null) {
+                    return null;
+                }
+            } while (!head.compareAndSet(node, node.next));
+            return node.buffer;
+        }
+
+        int size() {
+            int size = 0;
+            for (Node node = head.get(); node != null; node = node.next) {
+                size++;
+            }
+            return size;
+        }
+    }
+
     /**
      * Wraps a buffer instance and provides information about the wrapped buffer.
      */
@@ -472,10 +605,17 @@ public class BufferPool {
          * Implements a shallow equal comparison.
          */
         public boolean equals(Object o) {
-            // Note: this method is used by Vector.contains()
+            // Note: buffers are compared by identity, as java.nio buffers implement equals by comparing their contents
             return (o instanceof BufferContainer) && buffer == ((BufferContainer)o).buffer;
         }
 
+        /**
+         * Returns the identity hash code of the wrapped buffer, consistently with {@link #equals(Object)}.
+         */
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+
         /**
          * Returns the length of the wrapped buffer instance.
          *
@@ -659,8 +799,19 @@ public class BufferPool {
         }
     }
 
-	public static synchronized void releaseAll() {
-		bufferContainers.clear();
-		poolSize = 0;
+	/**
+	 * Removes all buffers from the pool.
+	 */
+	public static void releaseAll() {
+		for (Map<Integer, BufferStack> sizeClasses : buffers.values()) {
+			for (BufferStack stack : sizeClasses.values()) {
+				BufferContainer bufferContainer;
+				while ((bufferContainer = stack.pop()) != null) {
+					pooledBuffers.remove(bufferContainer);
+					poolSize.addAndGet(-bufferContainer.getSize());
+					bufferCount.decrementAndGet();
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,120 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An InputStream that copies a source {@link FileChannel} to a destination one as it is consumed: every byte that is
+ * read or skipped from this stream is written to the destination channel.
+ *
+ * <p>{@link #skip(long)} is the method of choice: it transfers the bytes using
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets the operating
+ * system move them from one file to the other without copying them to user space. Wrapping this stream into
+ * a {@link CounterInputStream} or a {@link ThroughputLimitInputStream} and skipping it in chunks thus allows
+ * to count and limit a zero-copy transfer. The read methods are provided for completeness.</p>
+ *
+ * <p>Closing this stream closes both channels, which interrupts a transfer in progress.</p>
+ */
+public class ChannelTransferInputStream extends InputStream {
+
+    /** Maximum number of bytes transferred by a single call to {@link #skip(long)} */
+    private final static long MAX_TRANSFER_SIZE = 8 * 1024 * 1024;
+
+    private final FileChannel source;
+
+    private final FileChannel destination;
+
+    /**
+     * Creates a new ChannelTransferInputStream that copies the source channel, starting at its current position,
+     * to the destination channel at its current position.
+     *
+     * @param source the channel to read the bytes from
+     * @param destination the channel to write the bytes to
+     */
+    public ChannelTransferInputStream(FileChannel source, FileChannel destination) {
+        this.source = source;
+        this.destination = destination;
+    }
+
+    /**
+     * Returns the position of the next byte to be transferred from the source channel.
+     *
+     * @return the position of the next byte to be transferred from the source channel
+     * @throws IOException if an I/O error occurred
+     */
+    public long getSourcePosition() throws IOException {
+        return source.position();
+    }
+
+    /**
+     * Transfers up to the given number of bytes from the source channel to the destination channel.
+     *
+     * @param n maximum number of bytes to transfer
+     * @return the number of bytes transferred, <code>0</code> if the end of the source channel has been reached
+     * @throws IOException if an I/O error occurred, or if the stream was closed during the transfer
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long position = source.position();
+        long count = Math.min(n, Math.min(MAX_TRANSFER_SIZE, source.size() - position));
+        if (count <= 0) {
+            return 0;
+        }
+        long transferred = source.transferTo(position, count, destination);
+        source.position(position + transferred);
+        return transferred;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte b[] = new byte[1];
+        return read(b, 0, 1) <= 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+        int nbRead = source.read(bb);
+        if (nbRead > 0) {
+            bb.flip();
+            bb.position(off);
+            while (bb.hasRemaining()) {
+                destination.write(bb);
+            }
+        }
+        return nbRead;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(Integer.MAX_VALUE, Math.max(0, source.size() - source.position()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            destination.close();
+        }
+    }
+}
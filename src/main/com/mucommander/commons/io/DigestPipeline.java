@@ -0,0 +1,236 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates several digests of a stream in a single pass, reading the stream while the digests are calculated.
+ *
+ * <p>The calling thread reads the stream into buffers taken from the {@link BufferPool} and hands every buffer over
+ * to one thread per digest. A buffer goes back to the pool once all the digests have consumed it. The number of
+ * buffers waiting for a digest is bounded, so reading blocks when the digests can't keep up.</p>
+ */
+public class DigestPipeline {
+
+    /** Size of the buffers the stream is read into */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    /** Maximum number of buffers waiting for a digest thread */
+    private static final int QUEUE_CAPACITY = 8;
+
+    /** Time to wait for room in a digest queue before checking that the digest thread is still alive, in milliseconds */
+    private static final long QUEUE_POLL_PERIOD = 100;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "DigestPipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Marker telling a digest thread that the end of the stream has been reached */
+    private static final Chunk END_OF_STREAM = new Chunk(null, 0, 0);
+
+    private DigestPipeline() {
+    }
+
+    /**
+     * Reads the given stream until EOF and returns its checksum for each of the given digests, expressed as
+     * hexadecimal strings. The stream is not closed and the digests are not reset before use.
+     *
+     * @param in the stream to read
+     * @param digests the digests to calculate
+     * @return the checksums, in the order of the digests
+     * @throws IOException if an I/O error occurred while reading the stream
+     */
+    public static String[] calculateChecksums(InputStream in, MessageDigest... digests) throws IOException {
+        byte[] buffer = BufferPool.getByteArray(BUFFER_SIZE);
+        int len = read(in, buffer);
+        // Streams that fit in a single buffer are not worth handing over to other threads
+        if (len < BUFFER_SIZE) {
+            String[] checksums = new String[digests.length];
+            for (int i = 0; i < digests.length; i++) {
+                digests[i].update(buffer, 0, len);
+                checksums[i] = ByteUtils.toHexString(digests[i].digest());
+            }
+            BufferPool.releaseByteArray(buffer);
+            return checksums;
+        }
+
+        List<DigestTask> tasks = new ArrayList<>(digests.length);
+        for (MessageDigest digest : digests) {
+            DigestTask task = new DigestTask(digest);
+            task.future = EXECUTOR.submit(task);
+            tasks.add(task);
+        }
+        try {
+            while (len > 0) {
+                Chunk chunk = new Chunk(buffer, len, tasks.size());
+                for (DigestTask task : tasks) {
+                    task.put(chunk);
+                }
+                if (len < BUFFER_SIZE) {
+                    break;
+                }
+                buffer = BufferPool.getByteArray(BUFFER_SIZE);
+                len = read(in, buffer);
+                if (len == 0) {
+                    BufferPool.releaseByteArray(buffer);
+                }
+            }
+        } catch (IOException e) {
+            cancel(tasks);
+            throw e;
+        }
+        endOfStream(tasks);
+
+        String[] checksums = new String[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            try {
+                checksums[i] = ByteUtils.toHexString(tasks.get(i).future.get());
+            } catch (InterruptedException e) {
+                cancel(tasks);
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Fills the given buffer from the stream, releases the buffer if an error occurs.
+     */
+    private static int read(InputStream in, byte[] buffer) throws IOException {
+        try {
+            return StreamUtils.readUpTo(in, buffer);
+        } catch (IOException e) {
+            BufferPool.releaseByteArray(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * Tells the digest threads the end of the stream has been reached, ignoring the ones that have failed.
+     * If the calling thread is interrupted, the digest threads are cancelled.
+     */
+    private static void endOfStream(List<DigestTask> tasks) throws InterruptedIOException {
+        for (DigestTask task : tasks) {
+            try {
+                task.put(END_OF_STREAM);
+            } catch (InterruptedIOException e) {
+                cancel(tasks);
+                throw e;
+            } catch (IOException e) {
+                // The digest thread has failed, which is reported by its future
+            }
+        }
+    }
+
+    /**
+     * Interrupts the digest threads, which would otherwise wait forever for the end of a stream that won't come.
+     */
+    private static void cancel(List<DigestTask> tasks) {
+        for (DigestTask task : tasks) {
+            task.future.cancel(true);
+        }
+    }
+
+
+    /**
+     * A buffer shared by all the digests of a stream
+     */
+    private static class Chunk {
+        private final byte[] buffer;
+        private final int length;
+        /** Number of digests that have not consumed the buffer yet */
+        private final AtomicInteger references;
+
+        Chunk(byte[] buffer, int length, int references) {
+            this.buffer = buffer;
+            this.length = length;
+            this.references = new AtomicInteger(references);
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                BufferPool.releaseByteArray(buffer);
+            }
+        }
+    }
+
+
+    /**
+     * Feeds a digest with the chunks of a stream, in a thread of its own
+     */
+    private static class DigestTask implements Callable<byte[]> {
+        private final MessageDigest digest;
+        private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private Future<byte[]> future;
+
+        DigestTask(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        /**
+         * Queues a chunk, blocking while the queue is full.
+         *
+         * @throws IOException if the digest thread has failed or the calling thread was interrupted
+         */
+        void put(Chunk chunk) throws IOException {
+            try {
+                while (!queue.offer(chunk, QUEUE_POLL_PERIOD, TimeUnit.MILLISECONDS)) {
+                    if (future.isDone()) {
+                        throw new IOException("Digest calculation failed");
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public byte[] call() throws InterruptedException {
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk == END_OF_STREAM) {
+                    return digest.digest();
+                }
+                try {
+                    digest.update(chunk.buffer, 0, chunk.length);
+                } finally {
+                    chunk.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An <code>OutputStream</code> that compresses data in the raw DEFLATE format using several threads, the way
+ * <i>pigz</i> does.
+ *
+ * <p>Written data is cut into blocks of {@link #BLOCK_SIZE} bytes that are compressed independently by worker
+ * threads. Each block is primed with the last 32 KB of the previous one as a preset dictionary and ends with a sync
+ * flush, so that the compressed blocks put end to end form a single standard DEFLATE stream that compresses almost as
+ * well as a sequential one. Compressed blocks are written to the underlying stream in order by the calling thread.</p>
+ *
+ * <p>Several DEFLATE streams can be written one after another with {@link #finishDeflate()}, and arbitrary data can be
+ * interleaved with them using {@link #queue(Chunk)}: this allows container formats such as Zip or Gzip to write their
+ * headers without waiting for the blocks in progress.</p>
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+
+    /** Amount of uncompressed data in a block */
+    public static final int BLOCK_SIZE = 128 * 1024;
+
+    /** Size of the DEFLATE window, i.e. the amount of data the next block is primed with */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ParallelDeflater");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Data that is written to the underlying stream once everything queued before it has been written.
+     */
+    public interface Chunk {
+        /**
+         * Writes this chunk to the given stream. This method is called by the thread that writes to the
+         * <code>ParallelDeflaterOutputStream</code>.
+         *
+         * @param out the underlying stream
+         * @return the number of bytes written
+         * @throws IOException if an I/O error occurred
+         */
+        long write(OutputStream out) throws IOException;
+    }
+
+    /** The underlying stream */
+    protected final OutputStream out;
+
+    /** Compression level */
+    private final int level;
+
+    /** Maximum number of blocks being compressed at the same time */
+    private final int nbThreads;
+
+    /** Chunks waiting to be written, in order */
+    private final Deque<Future<Chunk>> chunks = new ArrayDeque<>();
+
+    /** Number of compressed blocks in {@link #chunks} */
+    private int pendingBlocks;
+
+    /** Block being filled */
+    private byte[] block = new byte[BLOCK_SIZE];
+
+    /** Amount of data in {@link #block} */
+    private int blockLen;
+
+    /** Tail of the previous block of the current DEFLATE stream, <code>null</code> for the first block */
+    private byte[] dictionary;
+
+    /** Checksum of the uncompressed data of the current DEFLATE stream */
+    private final CRC32 crc = new CRC32();
+
+    /** Amount of uncompressed data of the current DEFLATE stream */
+    private long totalIn;
+
+    /** <code>true</code> if data has been written since the last DEFLATE stream was finished */
+    private boolean deflateStarted;
+
+    /** Number of bytes written to the underlying stream so far */
+    private long written;
+
+
+    /**
+     * Creates a new <code>ParallelDeflaterOutputStream</code>.
+     *
+     * @param out the stream compressed data is written to
+     * @param level the compression level, see {@link Deflater#setLevel(int)}
+     * @param nbThreads maximum number of blocks compressed at the same time
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, int nbThreads) {
+        this.out = out;
+        this.level = level;
+        this.nbThreads = Math.max(nbThreads, 1);
+    }
+
+    /**
+     * Ends the current DEFLATE stream, which may be empty, and starts a new one. {@link #getCrc()} and
+     * {@link #getTotalIn()} must be called before this method to retrieve the checksum and size of the stream.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    public void finishDeflate() throws IOException {
+        submitBlock(true);
+        crc.reset();
+        totalIn = 0;
+        deflateStarted = false;
+    }
+
+    /**
+     * Returns the CRC-32 checksum of the uncompressed data of the current DEFLATE stream.
+     *
+     * @return the CRC-32 checksum of the current DEFLATE stream
+     */
+    public long getCrc() {
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the amount of uncompressed data of the current DEFLATE stream.
+     *
+     * @return the uncompressed size of the current DEFLATE stream
+     */
+    public long getTotalIn() {
+        return totalIn;
+    }
+
+    /**
+     * Returns the number of bytes written to the underlying stream so far. When called from {@link Chunk#write},
+     * this is the offset the chunk is written at.
+     *
+     * @return the number of bytes written to the underlying stream
+     */
+    public long getBytesWritten() {
+        return written;
+    }
+
+    /**
+     * Queues the given chunk, to be written once all the data written or queued before it has been written.
+     *
+     * @param chunk the chunk to write
+     * @throws IOException if an I/O error occurred while writing the chunks that are ready
+     */
+    public void queue(Chunk chunk) throws IOException {
+        chunks.add(CompletableFuture.completedFuture(chunk));
+        writeChunks(false);
+    }
+
+    /**
+     * Ends the current DEFLATE stream if data has been written to it, and writes all the queued chunks, waiting for
+     * the blocks in progress. The underlying stream is neither flushed nor closed.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    public void finish() throws IOException {
+        if (deflateStarted) {
+            finishDeflate();
+        }
+        writeChunks(true);
+    }
+
+    /**
+     * Hands the current block over to a worker thread and starts a new one.
+     *
+     * @param last <code>true</code> if this is the last block of the DEFLATE stream
+     */
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] data = block;
+        final int len = blockLen;
+        final byte[] dict = dictionary;
+
+        chunks.add(EXECUTOR.submit(() -> {
+            byte[] compressed = deflate(data, len, dict, level, last);
+            return output -> {
+                output.write(compressed);
+                return compressed.length;
+            };
+        }));
+        pendingBlocks++;
+
+        dictionary = last ? null : Arrays.copyOfRange(data, len - DICTIONARY_SIZE, len);
+        block = new byte[BLOCK_SIZE];
+        blockLen = 0;
+
+        // Wait for the oldest blocks if enough of them are in progress
+        writeChunks(false);
+        while (pendingBlocks >= nbThreads) {
+            writeChunk(chunks.peek());
+        }
+    }
+
+    /**
+     * Writes the chunks at the head of the queue, either all of them or as long as they are ready.
+     */
+    private void writeChunks(boolean all) throws IOException {
+        Future<Chunk> chunk;
+        while ((chunk = chunks.peek()) != null && (all || chunk.isDone())) {
+            writeChunk(chunk);
+        }
+    }
+
+    private void writeChunk(Future<Chunk> chunk) throws IOException {
+        try {
+            written += chunk.get().write(out);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        chunks.remove();
+        // Queued chunks are completed futures, blocks are not
+        if (!(chunk instanceof CompletableFuture)) {
+            pendingBlocks--;
+        }
+    }
+
+    /**
+     * Compresses a block in the raw DEFLATE format.
+     */
+    private static byte[] deflate(byte[] data, int len, byte[] dictionary, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data, 0, len);
+            if (last) {
+                deflater.finish();
+            }
+            // A sync flush is needed for the next block to start on a byte boundary
+            int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            byte[] buf = new byte[len + (len >> 3) + 64];
+            int n = 0;
+            do {
+                if (n == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                n += deflater.deflate(buf, n, buf.length - n, flush);
+            } while (last ? !deflater.finished() : n == buf.length);
+
+            return Arrays.copyOf(buf, n);
+        } finally {
+            deflater.end();
+        }
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        deflateStarted = true;
+        crc.update(b, off, len);
+        totalIn += len;
+
+        while (len > 0) {
+            int n = Math.min(len, BLOCK_SIZE - blockLen);
+            System.arraycopy(b, off, block, blockLen, n);
+            blockLen += n;
+            off += n;
+            len -= n;
+            if (blockLen == BLOCK_SIZE) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the chunks that are ready and flushes the underlying stream. Data that has not been compressed yet
+     * is not flushed.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeChunks(false);
+        out.flush();
+    }
+
+    /**
+     * Finishes writing the data and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * A {@link ParallelDeflaterOutputStream} that writes the Gzip format, compressing the data with several threads.
+ * The result is a regular single-member Gzip file that can be read by any Gzip decoder.
+ */
+public class ParallelGZIPOutputStream extends ParallelDeflaterOutputStream {
+
+    /** Gzip header: magic number, DEFLATE method, no flags, no modification time, no extra flags, OS unknown */
+    private static final byte[] HEADER = {0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private boolean finished;
+
+
+    /**
+     * Creates a new <code>ParallelGZIPOutputStream</code> that uses the default compression level, and writes the
+     * Gzip header to the given stream.
+     *
+     * @param out the stream compressed data is written to
+     * @param nbThreads maximum number of blocks compressed at the same time
+     * @throws IOException if an I/O error occurred while writing the header
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int nbThreads) throws IOException {
+        super(out, Deflater.DEFAULT_COMPRESSION, nbThreads);
+        queue(output -> {
+            output.write(HEADER);
+            return HEADER.length;
+        });
+    }
+
+    /**
+     * Finishes writing the compressed data and the Gzip trailer, without closing the underlying stream.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        final byte[] trailer = new byte[8];
+        writeIntLE(trailer, 0, getCrc());
+        writeIntLE(trailer, 4, getTotalIn());
+        finishDeflate();
+        queue(output -> {
+            output.write(trailer);
+            return trailer.length;
+        });
+        super.finish();
+    }
+
+    private static void writeIntLE(byte[] b, int off, long value) {
+        b[off] = (byte)value;
+        b[off+1] = (byte)(value >> 8);
+        b[off+2] = (byte)(value >> 16);
+        b[off+3] = (byte)(value >> 24);
+    }
+}
@@ -71,8 +71,13 @@ public enum MuPreference {
     RIGHT_CUSTOM_FOLDER(MuPreferences.RIGHT_CUSTOM_FOLDER),
     REFRESH_CHECK_PERIOD(MuPreferences.REFRESH_CHECK_PERIOD),
     WAIT_AFTER_REFRESH(MuPreferences.WAIT_AFTER_REFRESH),
+    REFRESH_NATIVE_NOTIFICATIONS(MuPreferences.REFRESH_NATIVE_NOTIFICATIONS),
     PROGRESS_DIALOG_EXPANDED(MuPreferences.PROGRESS_DIALOG_EXPANDED),
     PROGRESS_DIALOG_CLOSE_WHEN_FINISHED(MuPreferences.PROGRESS_DIALOG_CLOSE_WHEN_FINISHED),
+    FILE_TRANSFER_THREADS(MuPreferences.FILE_TRANSFER_THREADS),
+    CHECKSUM_THREADS(MuPreferences.CHECKSUM_THREADS),
+    UNPACK_THREADS(MuPreferences.UNPACK_THREADS),
+    MAX_CONNECTIONS_PER_SERVER(MuPreferences.MAX_CONNECTIONS_PER_SERVER),
     THEME_TYPE(MuPreferences.THEME_TYPE),
     THEME_NAME(MuPreferences.THEME_NAME),
     SYNTAX_THEME_NAME(MuPreferences.SYNTAX_THEME_NAME),
@@ -80,8 +85,12 @@ public enum MuPreference {
     LIST_HIDDEN_FILES(MuPreferences.LIST_HIDDEN_FILES),
     SMB_LM_COMPATIBILITY(MuPreferences.SMB_LM_COMPATIBILITY),
     SMB_USE_EXTENDED_SECURITY(MuPreferences.SMB_USE_EXTENDED_SECURITY),
+    S3_PART_SIZE(MuPreferences.S3_PART_SIZE),
+    S3_TRANSFER_THREADS(MuPreferences.S3_TRANSFER_THREADS),
     SHOW_TAB_HEADER(MuPreferences.SHOW_SINGLE_TAB_HEADER),
     CALCULATE_FOLDER_SIZE_ON_MARK(MuPreferences.CALCULATE_FOLDER_SIZE_ON_MARK),
+    PERSISTENT_FOLDER_SIZE_CACHE(MuPreferences.PERSISTENT_FOLDER_SIZE_CACHE),
+    ARCHIVE_ENTRY_CACHE_SIZE(MuPreferences.ARCHIVE_ENTRY_CACHE_SIZE),
     MARK_FOLDERS_WITH_FILES(MuPreferences.MARK_FOLDERS_WITH_FILES),
     MARK_FILES_CASE_SENSITIVE_FILTER(MuPreferences.MARK_FILES_CASE_SENSITIVE_FILTER),
     BLOCK_MARK_STEP_SIZE(MuPreferences.BLOCK_MARK_STEP_SIZE),
@@ -104,7 +113,9 @@ public enum MuPreference {
     FIND_FILE_ARCHIVES(MuPreferences.FIND_FILE_ARCHIVES),
     FIND_FILE_IGNORE_HIDDEN(MuPreferences.FIND_FILE_IGNORE_HIDDEN),
     FIND_FILE_CASE_SENSITIVE(MuPreferences.FIND_FILE_CASE_SENSITIVE),
-    FIND_FILE_SEARCH_HEX(MuPreferences.FIND_FILE_SEARCH_HEX);
+    FIND_FILE_SEARCH_HEX(MuPreferences.FIND_FILE_SEARCH_HEX),
+    FIND_FILE_THREADS(MuPreferences.FIND_FILE_THREADS),
+    FIND_FILE_INDEX_ROOTS(MuPreferences.FIND_FILE_INDEX_ROOTS);
 
     private final String label;
 
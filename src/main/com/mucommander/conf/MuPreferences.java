@@ -263,6 +263,14 @@ public class MuPreferences implements MuPreferencesAPI {
 	public static final String CALCULATE_FOLDER_SIZE_ON_MARK       = FILE_TABLE_SECTION + '.' + "calculate_folder_size_on_mark";
 	/** Default value for 'Calculate folder size on mark' */
 	public static final boolean DEFAULT_CALCULATE_FOLDER_SIZE_ON_MARK = false;
+	/** Whether calculated folder sizes are saved on shutdown and restored on startup */
+	public static final String PERSISTENT_FOLDER_SIZE_CACHE        = FILE_TABLE_SECTION + '.' + "persistent_folder_size_cache";
+	/** Default value for 'Persistent folder size cache' */
+	public static final boolean DEFAULT_PERSISTENT_FOLDER_SIZE_CACHE = true;
+	/** Maximum size in megabytes of the listings of read-only archives cached in the preferences folder, 0 to disable the cache */
+	public static final String ARCHIVE_ENTRY_CACHE_SIZE            = FILE_TABLE_SECTION + '.' + "archive_entry_cache_size";
+	/** Default value for 'Archive entry cache size' */
+	public static final int DEFAULT_ARCHIVE_ENTRY_CACHE_SIZE       = 32;
 	/** Whether to mark folders with files */
 	public static final String MARK_FOLDERS_WITH_FILES             = FILE_TABLE_SECTION + '.' + "mark_folders_with_files";
 	/** Default value for 'Mark folders with files' */
@@ -331,6 +339,10 @@ public class MuPreferences implements MuPreferencesAPI {
 	public static final String WAIT_AFTER_REFRESH                 = REFRESH_SECTION + '.' + "wait_after_refresh";
 	/** Default minimum amount of time between two refreshes. */
 	public static final long   DEFAULT_WAIT_AFTER_REFRESH         = 10000;
+	/** Whether local folders are refreshed upon change notifications from the operating system rather than polled. */
+	public static final String REFRESH_NATIVE_NOTIFICATIONS       = REFRESH_SECTION + '.' + "native_notifications";
+	/** Default native change notifications usage. */
+	public static final boolean DEFAULT_REFRESH_NATIVE_NOTIFICATIONS = true;
 
 
 	// - Quick search variables -----------------------------------------
@@ -364,6 +376,31 @@ public class MuPreferences implements MuPreferencesAPI {
 
 
 
+	// - File transfer variables ---------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing the behavior of copy and move operations. */
+	private static final String FILE_TRANSFER_SECTION             = "file_transfer";
+	/** Number of files copied concurrently by copy and move operations, 1 to copy files one after another. Limited to
+	 * {@link #MAX_CONNECTIONS_PER_SERVER} for transfers from or to a server, and to half of it within a server. */
+	public static final String  FILE_TRANSFER_THREADS             = FILE_TRANSFER_SECTION + '.' + "threads";
+	/** Default number of files copied concurrently. */
+	public static final int     DEFAULT_FILE_TRANSFER_THREADS     = 1;
+	/** Number of files whose checksum is calculated concurrently, 1 to calculate checksums one file after another. */
+	public static final String  CHECKSUM_THREADS                  = FILE_TRANSFER_SECTION + '.' + "checksum_threads";
+	/** Default number of files whose checksum is calculated concurrently. */
+	public static final int     DEFAULT_CHECKSUM_THREADS          = 2;
+	/** Number of archive entries extracted concurrently from archives that allow it, 1 to extract entries one after another. */
+	public static final String  UNPACK_THREADS                    = FILE_TRANSFER_SECTION + '.' + "unpack_threads";
+	/** Default number of archive entries extracted concurrently. */
+	public static final int     DEFAULT_UNPACK_THREADS            = 2;
+	/** Maximum number of simultaneous connections to a server (FTP, SFTP, vSphere) with the same credentials. A file
+	 * copied within a server locks two connections, so at most half as many files are copied concurrently. At least 2. */
+	public static final String  MAX_CONNECTIONS_PER_SERVER        = FILE_TRANSFER_SECTION + '.' + "max_connections_per_server";
+	/** Default maximum number of simultaneous connections to a server. */
+	public static final int     DEFAULT_MAX_CONNECTIONS_PER_SERVER = 8;
+
+
+
 	// - Variables used for themes -------------------------------------------
 	// -----------------------------------------------------------------------
 	/** Section controlling which theme should be applied to muCommander. */
@@ -423,6 +460,19 @@ public class MuPreferences implements MuPreferencesAPI {
 	/** Default value for {@link #SMB_USE_EXTENDED_SECURITY}. */
 	public static final boolean DEFAULT_SMB_USE_EXTENDED_SECURITY = false;
 
+	// - Variables used for S3 -----------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section containing all S3 variables. */
+	public static final String S3_SECTION                         = "s3";
+	/** Size in megabytes of the parts in which S3 objects are uploaded and downloaded. */
+	public static final String S3_PART_SIZE                       = S3_SECTION + '.' + "part_size";
+	/** Default value for {@link #S3_PART_SIZE}. */
+	public static final int DEFAULT_S3_PART_SIZE                  = 8;
+	/** Number of parts of an S3 object that are transferred concurrently, 1 to transfer them one after another. */
+	public static final String S3_TRANSFER_THREADS                = S3_SECTION + '.' + "transfer_threads";
+	/** Default value for {@link #S3_TRANSFER_THREADS}. */
+	public static final int DEFAULT_S3_TRANSFER_THREADS           = 4;
+
     // - File group masks ----------------------------------------------------
     // -----------------------------------------------------------------------
     private static final String FILE_GROUP_SECTION                 = "file_groups";
@@ -446,6 +496,14 @@ public class MuPreferences implements MuPreferencesAPI {
 	static final String FIND_FILE_IGNORE_HIDDEN            = FIND_FILE_SECTION + ".ignore_hidden";
 	static final String FIND_FILE_CASE_SENSITIVE           = FIND_FILE_SECTION + ".case_sensitive";
 	static final String FIND_FILE_SEARCH_HEX               = FIND_FILE_SECTION + ".search_hex";
+	/** Number of threads searching folders and file contents, 1 to search on the job's thread only. */
+	public static final String FIND_FILE_THREADS           = FIND_FILE_SECTION + ".threads";
+	/** Default number of threads searching folders and file contents. */
+	public static final int    DEFAULT_FIND_FILE_THREADS   = 1;
+	/** Local folders whose files are indexed for searches by name, separated by the platform's path separator. */
+	public static final String FIND_FILE_INDEX_ROOTS       = FIND_FILE_SECTION + ".index_roots";
+	/** Default indexed folders: none, the index is disabled. */
+	public static final String DEFAULT_FIND_FILE_INDEX_ROOTS = "";
 	
 	private static final String ROOT_ELEMENT = "preferences";
 
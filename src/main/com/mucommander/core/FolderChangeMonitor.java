@@ -27,6 +27,8 @@ import java.util.Vector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mucommander.cache.DirectorySizeCache;
+import com.mucommander.cache.FileNameIndex;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileProtocols;
 import com.mucommander.commons.file.filter.AbstractFileFilter;
@@ -43,12 +45,17 @@ import com.mucommander.ui.main.FolderPanel;
 /**
  * This file monitors changes in the current folder of a FolderPanel, checking periodically if the current folder's
  * date has changed. If a change has been detected, the FolderPanel will be asked to refresh its current folder.
+ *
+ * <p>Local folders are not polled: changes are notified by the operating system through {@link LocalFolderWatcher},
+ * and notifications received in a burst are coalesced into a single refresh. Polling remains the fallback for
+ * remote protocols, archives and folders that cannot be watched.
  * 
  * <p>If the MainFrame which contains the monitored FolderPanel becomes inactive (lies in the background), monitoring
  * on will be not happen until the MainFrame becomes active again.
  *
  * <p>Implementation note: the monitoring is done in one single thread for all folders, each folder being monitored
- * one after another. Current folder refreshes are performed in a separate thread.
+ * one after another. The thread sleeps as long as no folder needs to be polled and no notification is pending.
+ * Current folder refreshes are performed in a separate thread.
  *
  * @author Maxence Bernard
  * @see <a href="http://trac.mucommander.com/wiki/FolderAutoRefresh">FolderAutoRefresh wiki entry</a>
@@ -63,13 +70,25 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     private AbstractFile currentFolder;
 
     /** True when the current folder is currently being changed */
-    private boolean folderChanging;
+    private volatile boolean folderChanging;
+
+    /** Time at which the last folder change started */
+    private long folderChangingTime;
+
+    /** True when the current folder is watched by {@link LocalFolderWatcher} and doesn't need to be polled */
+    private volatile boolean watched;
+
+    /** Time of the first change notification that hasn't been handled yet, 0 if there is none */
+    private volatile long firstNotificationTime;
+
+    /** Time of the last change notification */
+    private volatile long lastNotificationTime;
 
     /** Current folder's date */
     private long currentFolderDate;
 
     /** Folder check/refresh while be skipped while this field is set to <code>true</code> */ 
-    private boolean paused;
+    private volatile boolean paused;
 
     /** Number of milliseconds to wait before next folder check */
     private long waitBeforeCheckTime;
@@ -92,7 +111,13 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     //////////////////////
 	
     /** Thread in which the actual monitoring is performed */
-    private static Thread monitorThread;
+    private static volatile Thread monitorThread;
+
+    /** Lock the monitor thread waits on between two checks */
+    private final static Object WAKE_UP_LOCK = new Object();
+
+    /** True when the monitor thread has been asked to check the folders without waiting */
+    private static boolean wakeUpRequested;
 
     /** FolderChangeMonitor instances */
     private static List<FolderChangeMonitor> instances;
@@ -111,12 +136,22 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Granularity of the thread check (number of milliseconds to sleep before next loop) */
     private final static int TICK = 300;
 
+    /** A folder is refreshed once no change has been notified for this number of milliseconds */
+    private final static int COALESCE_DELAY = 100;
+
+    /** Maximum number of milliseconds a refresh is delayed while change notifications keep coming */
+    private final static int MAX_COALESCE_DELAY = 1000;
+
+    /** Whether local folders are watched instead of being polled */
+    private static boolean nativeNotifications;
+
     static {
         instances = new Vector<>();
 
         // Retrieve configuration values
         checkPeriod = MuConfigurations.getPreferences().getVariable(MuPreference.REFRESH_CHECK_PERIOD, MuPreferences.DEFAULT_REFRESH_CHECK_PERIOD);
         waitAfterRefresh = MuConfigurations.getPreferences().getVariable(MuPreference.WAIT_AFTER_REFRESH, MuPreferences.DEFAULT_WAIT_AFTER_REFRESH);
+        nativeNotifications = MuConfigurations.getPreferences().getVariable(MuPreference.REFRESH_NATIVE_NOTIFICATIONS, MuPreferences.DEFAULT_REFRESH_NATIVE_NOTIFICATIONS);
 
         disableAutoRefreshFilter.addFileFilter(new AbstractFileFilter() {
             public boolean accept(AbstractFile file) {
@@ -145,6 +180,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
         this.currentFolder = folderPanel.getCurrentFolder();
         this.currentFolderDate = currentFolder.getLastModifiedDate();
+        updateWatch();
 
         // Folder contents is up-to-date let's wait before checking it for changes
         this.lastCheckTimestamp = System.currentTimeMillis();
@@ -164,16 +200,11 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
 
     public void run() {
-        // TODO: it would be more efficient to use a wait/notify scheme rather than sleeping. 
-        // It would also allow folders to be checked immediately upon certain conditions such as a window becoming activated.
-
         int needToClearRefreshQueueCounter = 0;
         while (monitorThread != null) {
 			
-            // Sleep for a while
-            try {
-                Thread.sleep(TICK);
-            } catch(InterruptedException ignore) {}
+            // Sleep until a folder needs to be checked
+            waitForNextCheck();
 			
             // Loop on instances
             try {
@@ -196,12 +227,65 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     }
 
 
+    /**
+     * Waits until a folder has to be polled or a change notification has to be handled.
+     * Waits indefinitely if all the current folders are watched and there is no pending notification,
+     * until {@link #wakeUp()} is called.
+     */
+    private static void waitForNextCheck() {
+        long timeout = forceRefreshFilePath.isEmpty() ? 0 : TICK;
+        synchronized (instances) {
+            for (FolderChangeMonitor instance : instances) {
+                if (instance.firstNotificationTime != 0 && instance.isCheckable()) {
+                    timeout = COALESCE_DELAY;
+                    break;
+                }
+                // Notifications pending in a background window are handled at the next tick after it is activated
+                if (!instance.watched || instance.firstNotificationTime != 0) {
+                    timeout = TICK;
+                }
+            }
+        }
+        synchronized (WAKE_UP_LOCK) {
+            if (!wakeUpRequested) {
+                try {
+                    WAKE_UP_LOCK.wait(timeout);
+                } catch (InterruptedException ignore) {}
+            }
+            wakeUpRequested = false;
+        }
+    }
+
+    /**
+     * Wakes the monitor thread up so that the folders get checked right away.
+     */
+    private static void wakeUp() {
+        synchronized (WAKE_UP_LOCK) {
+            wakeUpRequested = true;
+            WAKE_UP_LOCK.notifyAll();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the current folder can be checked for changes and refreshed, that is when
+     * the MainFrame is in the foreground, the monitor is not paused and the current folder is not being changed.
+     *
+     * @return <code>true</code> if the current folder can be checked for changes
+     */
+    private boolean isCheckable() {
+        return folderPanel.getMainFrame().isForegroundActive() && !folderChanging && !paused;
+    }
+
     private void checkForMonitor(FolderChangeMonitor monitor) {
         // Check for changes in current folder and refresh it only if :
         // - MainFrame is in the foreground
         // - monitor is not paused
         // - current folder is not being changed
-        if (!monitor.folderPanel.getMainFrame().isForegroundActive() || monitor.folderChanging || monitor.paused) {
+        if (!monitor.isCheckable()) {
+            return;
+        }
+        // Watched folders are refreshed upon notification only
+        if (monitor.checkNotifications() || monitor.watched) {
             return;
         }
         if (disableAutoRefreshFilter.match(monitor.currentFolder)) {
@@ -228,6 +312,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      */
     public void stop() {
         monitorThread = null;
+        wakeUp();
     }
 
 
@@ -244,6 +329,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         // Check folder for changes immediately as setPaused(false) is often called after a FileJob
         if (!paused) {
             this.waitBeforeCheckTime = 0;
+            wakeUp();
         }
     }
 	
@@ -258,10 +344,66 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         this.currentFolder = folder;
         this.currentFolderDate = currentFolder.getLastModifiedDate();
 
+        // Changes notified before the folder was listed are already displayed
+        if (lastNotificationTime < folderChangingTime) {
+            firstNotificationTime = 0;
+        }
+        updateWatch();
+
         // Reset time average
         totalCheckTime = 0;
         nbSamples = 0;
     }
+
+    /**
+     * Registers the current folder for change notifications, if it is a local folder and notifications are enabled.
+     */
+    private void updateWatch() {
+        LocalFolderWatcher watcher = nativeNotifications && checkPeriod >= 0 ? LocalFolderWatcher.getInstance() : null;
+        watched = watcher != null && watcher.watch(this, currentFolder);
+    }
+
+    /**
+     * Called by {@link LocalFolderWatcher} when the contents of the current folder has changed.
+     *
+     * @param stillWatched <code>false</code> if the folder can no longer be watched (e.g. it has been deleted),
+     *                     in which case it will be polled until the current folder changes
+     */
+    void folderChangeNotified(boolean stillWatched) {
+        if (!stillWatched) {
+            watched = false;
+        }
+        long now = System.currentTimeMillis();
+        lastNotificationTime = now;
+        if (firstNotificationTime == 0) {
+            firstNotificationTime = now;
+            wakeUp();
+        }
+    }
+
+    /**
+     * Refreshes the current folder if changes have been notified, once notifications have stopped coming for
+     * {@link #COALESCE_DELAY} milliseconds, or at the latest {@link #MAX_COALESCE_DELAY} milliseconds after the
+     * first one.
+     *
+     * @return <code>true</code> if changes have been notified, whether the folder has been refreshed yet or not
+     */
+    private boolean checkNotifications() {
+        long firstTime = firstNotificationTime;
+        if (firstTime == 0) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastNotificationTime >= COALESCE_DELAY || now - firstTime >= MAX_COALESCE_DELAY) {
+            // Reset before refreshing: changes notified from now on will trigger another refresh
+            firstNotificationTime = 0;
+            LOGGER.debug(this+" ("+currentFolder.getName()+") Notified of changes in current folder, refreshing table!");
+            folderPanel.tryRefreshCurrentFolder();
+            FileNameIndex.folderChanged(currentFolder);
+            DirectorySizeCache.folderChanged(currentFolder);
+        }
+        return true;
+    }
 	
 	
     /**
@@ -293,6 +435,8 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 			
             // Try and refresh current folder in a separate thread as to not lock monitor thread
             folderPanel.tryRefreshCurrentFolder();
+            FileNameIndex.folderChanged(currentFolder);
+            DirectorySizeCache.folderChanged(currentFolder);
             result = true;
         }
 
@@ -319,6 +463,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /////////////////////////////////////
 
     public void locationChanging(LocationEvent locationEvent) {
+        folderChangingTime = System.currentTimeMillis();
         folderChanging = true;
     }
 
@@ -327,14 +472,17 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         updateFolderInfo(locationEvent.getFolderPanel().getCurrentFolder());
 
         folderChanging = false;
+        wakeUp();
     }
 
     public void locationCancelled(LocationEvent locationEvent) {
         folderChanging = false;
+        wakeUp();
     }
 
     public void locationFailed(LocationEvent locationEvent) {
         folderChanging = false;
+        wakeUp();
     }
 
 
@@ -342,7 +490,10 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     // WindowListener implementation //
     ///////////////////////////////////
 
-    public void windowActivated(WindowEvent e) {}
+    public void windowActivated(WindowEvent e) {
+        // Handle the changes notified while the window was in the background
+        wakeUp();
+    }
 
     public void windowDeactivated(WindowEvent e) {}
 
@@ -357,6 +508,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     public void windowClosed(WindowEvent e) {
         // Remove the MainFrame from the list of monitored instances
         instances.remove(this);
+        if (watched) {
+            LocalFolderWatcher.getInstance().unwatch(this);
+        }
         LOGGER.debug("nbInstances="+instances.size());
     }
 
@@ -368,6 +522,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         synchronized (forceRefreshFilePath) {
             forceRefreshFilePath.add(path);
         }
+        wakeUp();
     }
 	
 }
@@ -0,0 +1,208 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.core;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives change notifications for local folders from the operating system (inotify on Linux, ...) through a
+ * {@link WatchService}, and forwards them to the {@link FolderChangeMonitor} instances displaying these folders.
+ *
+ * <p>A single thread serves all the watched folders. Several monitors may watch the same folder, in which case the
+ * folder is registered only once with the <code>WatchService</code>.</p>
+ *
+ * <p>Folders that are not on the local filesystem, or that cannot be registered for some reason (e.g. when the
+ * system limit for watched folders has been reached), are left to the polling performed by
+ * {@link FolderChangeMonitor}.</p>
+ */
+class LocalFolderWatcher implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalFolderWatcher.class);
+
+    /** Shared instance, created on first use */
+    private static LocalFolderWatcher instance;
+
+    /** True once the creation of the shared instance has been attempted */
+    private static boolean initialized;
+
+    private final WatchService watchService;
+
+    /** Monitors interested in each registered folder */
+    private final Map<WatchKey, List<FolderChangeMonitor>> monitorsByKey = new HashMap<>();
+
+    /** Registered folder of each monitor */
+    private final Map<FolderChangeMonitor, WatchKey> keysByMonitor = new HashMap<>();
+
+
+    private LocalFolderWatcher(WatchService watchService) {
+        this.watchService = watchService;
+        Thread thread = new Thread(this, getClass().getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the shared instance, or <code>null</code> if change notifications are not supported by the platform.
+     *
+     * @return the shared instance, <code>null</code> if not available
+     */
+    static synchronized LocalFolderWatcher getInstance() {
+        if (!initialized) {
+            initialized = true;
+            try {
+                instance = new LocalFolderWatcher(FileSystems.getDefault().newWatchService());
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.info("Folder change notifications are not available, falling back to polling", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns <code>true</code> if the given folder can be watched, i.e. if it is a plain folder of the local
+     * filesystem (not an archive or a folder inside an archive).
+     *
+     * @param folder the folder to test
+     * @return <code>true</code> if the folder can be watched
+     */
+    static boolean isWatchable(AbstractFile folder) {
+        return folder != null && FileProtocols.FILE.equals(folder.getURL().getScheme())
+                && folder.hasAncestor(LocalFile.class) && !folder.isArchive()
+                && folder.getParentArchive() == null;
+    }
+
+    /**
+     * Starts forwarding the changes of the given folder to the monitor, replacing the folder it watched previously
+     * if any.
+     *
+     * @param monitor the monitor to notify
+     * @param folder the folder to watch
+     * @return <code>true</code> if the folder is being watched, <code>false</code> if it could not be registered and
+     * has to be polled for changes
+     */
+    synchronized boolean watch(FolderChangeMonitor monitor, AbstractFile folder) {
+        if (!isWatchable(folder)) {
+            unwatch(monitor);
+            return false;
+        }
+        WatchKey key;
+        try {
+            Path path = Paths.get(folder.getAbsolutePath());
+            // Keep the registration when the folder is only refreshed, so that no change is missed meanwhile
+            WatchKey currentKey = keysByMonitor.get(monitor);
+            if (currentKey != null && currentKey.isValid() && path.equals(currentKey.watchable())) {
+                return true;
+            }
+            unwatch(monitor);
+            key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+            unwatch(monitor);
+            LOGGER.debug("Couldn't watch " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+            return false;
+        }
+        List<FolderChangeMonitor> monitors = monitorsByKey.computeIfAbsent(key, k -> new ArrayList<>(2));
+        monitors.add(monitor);
+        keysByMonitor.put(monitor, key);
+        return true;
+    }
+
+    /**
+     * Stops forwarding folder changes to the given monitor. The folder is unregistered when no other monitor
+     * watches it.
+     *
+     * @param monitor the monitor
+     */
+    synchronized void unwatch(FolderChangeMonitor monitor) {
+        WatchKey key = keysByMonitor.remove(monitor);
+        if (key == null) {
+            return;
+        }
+        List<FolderChangeMonitor> monitors = monitorsByKey.get(key);
+        if (monitors != null) {
+            monitors.remove(monitor);
+            if (monitors.isEmpty()) {
+                monitorsByKey.remove(key);
+                key.cancel();
+            }
+        }
+    }
+
+    private synchronized List<FolderChangeMonitor> getMonitors(WatchKey key) {
+        List<FolderChangeMonitor> monitors = monitorsByKey.get(key);
+        return monitors == null ? null : new ArrayList<>(monitors);
+    }
+
+    private synchronized List<FolderChangeMonitor> removeMonitors(WatchKey key) {
+        List<FolderChangeMonitor> monitors = monitorsByKey.remove(key);
+        if (monitors != null) {
+            for (FolderChangeMonitor monitor : monitors) {
+                keysByMonitor.remove(monitor);
+            }
+        }
+        return monitors;
+    }
+
+
+    /////////////////////////////
+    // Runnable implementation //
+    /////////////////////////////
+
+    public void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                continue;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            // The events themselves don't matter: any change triggers a refresh of the whole folder, and the
+            // monitors coalesce the notifications that arrive in a burst
+            key.pollEvents();
+            // An invalid key means the folder is no longer accessible (deleted, unmounted...): the refresh will
+            // move the panel to an existing folder
+            boolean valid = key.reset();
+
+            List<FolderChangeMonitor> monitors = valid ? getMonitors(key) : removeMonitors(key);
+            if (monitors == null) {
+                continue;
+            }
+            for (FolderChangeMonitor monitor : monitors) {
+                monitor.folderChangeNotified(valid);
+            }
+        }
+    }
+}
@@ -20,7 +20,13 @@ package com.mucommander.job;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractRWArchiveFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.connection.ConnectionPool;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.FileCollisionRenameDialog;
@@ -28,6 +34,11 @@ import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 /**
  * This class is the parent class of {@link com.mucommander.job.CopyJob} and {@link com.mucommander.job.MoveJob} and
@@ -59,6 +70,39 @@ public abstract class AbstractCopyJob extends TransferFileJob {
     /** True when an archive is being optimized */
     protected boolean isOptimizingArchive;
 
+    /** Maximum number of files waiting for a transfer worker, per worker */
+    private static final int TRANSFER_QUEUE_SIZE_PER_WORKER = 64;
+
+    /** Number of files transferred concurrently, 1 if files are transferred one after another by the job's thread */
+    private int nbTransferThreads = 1;
+
+    /** Transfers regular files concurrently, null if files are transferred by the job's thread */
+    private TransferWorkerPool transferPool;
+
+    /** Folder actions postponed until the files queued in {@link #transferPool} have been transferred */
+    private final List<Runnable> pendingFolderActions = new ArrayList<>();
+
+    /** Transfers queued in {@link #transferPool}, per top-level file. Guarded by itself. */
+    private final Map<AbstractFile, PendingTransfers> pendingTransfers = new HashMap<>();
+
+
+    /**
+     * Transfers queued for the files located under a top-level file, which is unmarked once they all succeeded.
+     */
+    private static class PendingTransfers {
+        /** Number of queued transfers not done yet */
+        private int count;
+
+        /** True if one of the transfers failed */
+        private boolean failed;
+
+        /** True once the job's thread is done with the top-level file */
+        private boolean processed;
+
+        /** Value returned by processFile for the top-level file */
+        private boolean success;
+    }
+
 
     /**
      * Creates a new <code>AbstractCopyJob</code>.
@@ -79,6 +123,132 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         this.defaultFileExistsAction = fileExistsAction;
     }
 
+    /**
+     * Sets the number of regular files transferred concurrently. With more than one thread, the job's thread walks
+     * the source files, resolves file collisions and queues transfers that are carried out by worker threads.
+     * Files located in archives are always transferred one after another.
+     *
+     * @param nbTransferThreads number of files transferred concurrently, 1 to transfer files one after another
+     */
+    public void setTransferThreads(int nbTransferThreads) {
+        this.nbTransferThreads = Math.max(1, nbTransferThreads);
+    }
+
+    /**
+     * Sets the number of regular files transferred concurrently to the value specified in the preferences, see
+     * {@link #setTransferThreads(int)}.
+     */
+    protected void setTransferThreadsFromPreferences() {
+        setTransferThreads(MuConfigurations.getPreferences().getVariable(MuPreference.FILE_TRANSFER_THREADS, MuPreferences.DEFAULT_FILE_TRANSFER_THREADS));
+    }
+
+    /**
+     * Returns <code>true</code> if regular files are being transferred concurrently by worker threads.
+     *
+     * @return true if regular files are being transferred concurrently
+     */
+    protected boolean isParallelTransfer() {
+        return transferPool != null;
+    }
+
+    /**
+     * Runs the transfer of a regular file, on a worker thread if files are transferred concurrently.
+     *
+     * When the transfer is queued, the top-level file it belongs to is only unmarked once all its queued transfers
+     * have succeeded, see {@link #topLevelFileProcessed(AbstractFile, boolean)}.
+     *
+     * @param file the file to transfer
+     * @param transfer transfers the file, returns <code>true</code> if the file has been transferred
+     * @return the transfer's result, <code>true</code> if the transfer has been queued
+     */
+    protected boolean transferRegularFile(AbstractFile file, BooleanSupplier transfer) {
+        if (transferPool == null) {
+            return transfer.getAsBoolean();
+        }
+        AbstractFile topLevelFile = files.elementAt(getCurrentFileIndex());
+        synchronized (pendingTransfers) {
+            pendingTransfers.computeIfAbsent(topLevelFile, f -> new PendingTransfers()).count++;
+        }
+        boolean queued = transferPool.submit(file, () -> transferDone(topLevelFile, transfer.getAsBoolean()));
+        if (!queued) {
+            transferDone(topLevelFile, false);
+        }
+        return queued;
+    }
+
+    /**
+     * Called when a queued transfer is done, unmarks its top-level file if it was the last one and all succeeded.
+     *
+     * @param topLevelFile the top-level file the transferred file belongs to
+     * @param success <code>true</code> if the file has been transferred
+     */
+    private void transferDone(AbstractFile topLevelFile, boolean success) {
+        PendingTransfers transfers;
+        synchronized (pendingTransfers) {
+            transfers = pendingTransfers.get(topLevelFile);
+            transfers.count--;
+            transfers.failed |= !success;
+            if (transfers.count > 0 || !transfers.processed) {
+                return;
+            }
+            pendingTransfers.remove(topLevelFile);
+        }
+        if (transfers.success && !transfers.failed) {
+            unmarkFile(topLevelFile);
+        }
+    }
+
+    /**
+     * Runs an action that requires the files of a folder to be transferred, such as setting the folder's date.
+     * If files are transferred concurrently, the action is postponed until all queued transfers are done.
+     *
+     * @param action the action to run on the folder
+     */
+    protected void runWhenFolderTransferred(Runnable action) {
+        if (transferPool == null) {
+            action.run();
+        } else {
+            pendingFolderActions.add(action);
+        }
+    }
+
+    /**
+     * Returns the maximum number of files that can be transferred concurrently without running out of connections
+     * to a server. A transfer locks a pooled connection to the source server and another one to the destination
+     * server, two connections to the same server when copying files within a server: with more workers than that
+     * allows, each worker could hold a connection and fail to get a second one in time.
+     *
+     * @return the maximum number of worker threads
+     */
+    private int getMaxTransferThreads() {
+        AbstractFile baseSourceFolder = getBaseSourceFolder();
+        FileURL destURL = baseDestFolder.getURL();
+        FileURL sourceURL = baseSourceFolder == null ? null : baseSourceFolder.getURL();
+        boolean destRemote = !FileProtocols.FILE.equals(destURL.getScheme());
+        boolean sourceRemote = sourceURL != null && !FileProtocols.FILE.equals(sourceURL.getScheme());
+        if (!destRemote && !sourceRemote) {
+            return nbTransferThreads;
+        }
+
+        int maxConnections = ConnectionPool.getMaxConnectionsPerRealm();
+        if (destRemote && sourceRemote && sourceURL.getRealm().equals(destURL.getRealm(), false, true)) {
+            return Math.max(1, maxConnections / 2);
+        }
+        return maxConnections;
+    }
+
+    /**
+     * Returns <code>true</code> if files can be transferred concurrently: neither the source nor the destination
+     * folder are located in an archive.
+     *
+     * @return true if files can be transferred concurrently
+     */
+    private boolean isParallelTransferSupported() {
+        AbstractFile baseSourceFolder = getBaseSourceFolder();
+        return baseDestFolder.getParentArchive() == null
+                && (baseSourceFolder == null || baseSourceFolder.getParentArchive() == null);
+    }
+
     /**
      * Creates a destination file given a destination folder and a new file name.
      * @param destFolder a destination folder
@@ -199,6 +369,69 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         return destFile;
     }
     
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        int nbThreads = Math.min(nbTransferThreads, getMaxTransferThreads());
+        if (nbThreads > 1 && isParallelTransferSupported()) {
+            transferPool = new TransferWorkerPool(this, nbThreads, nbThreads * TRANSFER_QUEUE_SIZE_PER_WORKER);
+        }
+    }
+
+    @Override
+    protected void processPendingFiles() {
+        super.processPendingFiles();
+
+        if (transferPool != null) {
+            transferPool.awaitCompletion();
+            // Folder actions are run in the order they were postponed: children folders come before their parent
+            for (Runnable action : pendingFolderActions) {
+                if (getState() == State.INTERRUPTED) {
+                    break;
+                }
+                action.run();
+            }
+            pendingFolderActions.clear();
+        }
+    }
+
+    /**
+     * Overridden to unmark top-level files whose files have been queued for transfer only once these transfers
+     * have all succeeded.
+     */
+    @Override
+    protected void topLevelFileProcessed(AbstractFile file, boolean success) {
+        boolean failed = false;
+        synchronized (pendingTransfers) {
+            PendingTransfers transfers = pendingTransfers.get(file);
+            if (transfers != null) {
+                if (transfers.count > 0) {
+                    // The last transfer will unmark the file
+                    transfers.processed = true;
+                    transfers.success = success;
+                    return;
+                }
+                pendingTransfers.remove(file);
+                failed = transfers.failed;
+            }
+        }
+        super.topLevelFileProcessed(file, success && !failed);
+    }
+
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+
+        if (transferPool != null) {
+            transferPool.shutdown();
+        }
+    }
+
     /**
      * Optimizes the given writable archive file and notifies the user in case of an error.
      *
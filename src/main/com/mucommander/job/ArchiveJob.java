@@ -59,6 +59,9 @@ public class ArchiveJob extends TransferFileJob {
 	
     /** Optional archive comment */
     private String archiveComment;
+
+    /** Maximum number of threads compressing the archive */
+    private int nbCompressionThreads;
 	
     /** Lock to avoid Archiver.close() to be called while data is being written */
     private final Object ioLock = new Object();
@@ -70,12 +73,17 @@ public class ArchiveJob extends TransferFileJob {
 
 
 
-    public ArchiveJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destFile, ArchiveFormat archiveFormat, String archiveComment) {
+    /**
+     * Creates a new ArchiveJob that compresses the archive with up to <code>nbCompressionThreads</code> threads, if
+     * the format supports it (see {@link Archiver#supportsParallelCompression(ArchiveFormat)}).
+     */
+    public ArchiveJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destFile, ArchiveFormat archiveFormat, String archiveComment, int nbCompressionThreads) {
         super(progressDialog, mainFrame, files);
 		
         this.destFile = destFile;
         this.archiveFormat = archiveFormat;
         this.archiveComment = archiveComment;
+        this.nbCompressionThreads = nbCompressionThreads;
 
         this.baseFolderPath = getBaseSourceFolder().getAbsolutePath(false);
 
@@ -142,7 +150,7 @@ public class ArchiveJob extends TransferFileJob {
                 // Retry loops
                 if (ret == RETRY_ACTION) {
                     // Reset processed bytes currentFileByteCounter
-                    getCurrentFileByteCounter().reset();
+                    resetTransferredFileByteCounter();
 
                     continue;
                 }
@@ -191,7 +199,7 @@ public class ArchiveJob extends TransferFileJob {
         do {
             try {
                 // Tries to get an Archiver instance.
-                this.archiver = Archiver.getArchiver(destFile, archiveFormat);
+                this.archiver = Archiver.getArchiver(destFile, archiveFormat, nbCompressionThreads);
                 this.archiver.setComment(archiveComment);
 
                 break;
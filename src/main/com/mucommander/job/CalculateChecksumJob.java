@@ -22,12 +22,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.DigestPipeline;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
@@ -36,7 +43,8 @@ import com.mucommander.ui.main.MainFrame;
 import com.mucommander.ui.viewer.ViewerRegistrar;
 
 /**
- * This job calculates a checksum for a list of files and stores the results in a checksum file.
+ * This job calculates a checksum for a list of files and stores the results in a checksum file. Several checksums
+ * can be calculated at once, each being stored in a checksum file of its own.
  *
  * <p>The format of this file is a de facto standard ; a line is created for each file and goes like this:
  * <pre>
@@ -57,32 +65,68 @@ import com.mucommander.ui.viewer.ViewerRegistrar;
  * ...
  * </pre>
  *
+ * <p>Each file is read once for all the checksums, see {@link DigestPipeline}. Unless the files are located in an
+ * archive, the checksums of several files are calculated concurrently by worker threads; lines are written to
+ * the checksum files in the order the files have been traversed nonetheless.</p>
+ *
  * @author Maxence Bernard
  */
 public class CalculateChecksumJob extends TransferFileJob {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CalculateChecksumJob.class);
-	
-    /** The checksum file where the checksum of each file is written */
-    private AbstractFile checksumFile;
-    /** The OutputStream of the checksum file */
-    private OutputStream checksumFileOut;
+
+    /** Maximum number of files waiting for a worker thread, per worker */
+    private static final int QUEUE_SIZE_PER_WORKER = 16;
+
+    /** The checksum files where the checksum of each file is written, one per digest */
+    private AbstractFile[] checksumFiles;
+    /** The OutputStreams of the checksum files */
+    private OutputStream[] checksumFileOuts;
 
     /** The path to the base source folder, i.e. the folder which contains all the files this job operates on */
     private String baseSourcePath;
 
-    /** True if the SFV format is used rather than the default 'SUMS' format */
-    private boolean useSfvFormat;
+    /** True for the digests whose checksums are written in the SFV format rather than the default 'SUMS' format */
+    private boolean[] useSfvFormat;
+
+    /** The MessageDigests that serve to calculate the checksums, used by the job's thread */
+    private MessageDigest[] digests;
+
+    /** Calculates checksums concurrently, null if checksums are calculated by the job's thread */
+    private TransferWorkerPool workerPool;
 
-    /** The MessageDigest that serves to calculate the checksum */
-    private MessageDigest digest;
+    /** Files whose checksums have not been written yet, in the order the files have been traversed */
+    private final Deque<ChecksumLine> pendingLines = new ArrayDeque<>();
+
+
+    /**
+     * The checksums of a file, written to the checksum files once the checksums of all the files that precede it
+     * have been written.
+     */
+    private static class ChecksumLine {
+        private final String relativePath;
+        /** The checksums, null if the file was skipped */
+        private String[] checksums;
+        private boolean done;
+
+        ChecksumLine(String relativePath) {
+            this.relativePath = relativePath;
+        }
+    }
 
 
     public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile checksumFile, MessageDigest digest) {
+        this(progressDialog, mainFrame, files, new AbstractFile[] {checksumFile}, new MessageDigest[] {digest});
+    }
+
+    public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile[] checksumFiles, MessageDigest[] digests) {
         super(progressDialog, mainFrame, files);
 
-        this.checksumFile = checksumFile;
-        this.digest = digest;
-        this.useSfvFormat = digest.getAlgorithm().equalsIgnoreCase("CRC32");
+        this.checksumFiles = checksumFiles;
+        this.digests = digests;
+        this.useSfvFormat = new boolean[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            useSfvFormat[i] = digests[i].getAlgorithm().equalsIgnoreCase("CRC32");
+        }
 
         this.baseSourcePath = getBaseSourceFolder().getAbsolutePath(true);
     }
@@ -120,34 +164,42 @@ public class CalculateChecksumJob extends TransferFileJob {
             } while(true);
         }
 
-        // Calculate the file's checksum
+        // Determine the path relative to the base source folder
+        String relativePath = file.getAbsolutePath();
+        relativePath = relativePath.substring(baseSourcePath.length(), relativePath.length());
+
+        ChecksumLine line = new ChecksumLine(relativePath);
+        synchronized (pendingLines) {
+            pendingLines.add(line);
+        }
+        if (workerPool == null) {
+            return calculateChecksums(file, line, digests);
+        }
+        return workerPool.submit(file, () -> calculateChecksums(file, line, createDigests()));
+    }
+
+    /**
+     * Calculates the checksums of a file and writes them, along with the ones of the preceding files that are
+     * done, to the checksum files.
+     *
+     * @param file the file to calculate the checksums of
+     * @param line receives the checksums
+     * @param digests the digests to use, not shared with other threads
+     * @return true if the checksums have been calculated
+     */
+    private boolean calculateChecksums(AbstractFile file, ChecksumLine line, MessageDigest[] digests) {
         do {		// Loop for retry
 
             try {
-                // Determine the path relative to the base source folder
-                String relativePath = file.getAbsolutePath();
-                relativePath = relativePath.substring(baseSourcePath.length(), relativePath.length());
-
-                // Resets the digest before use
-                digest.reset();
-                String checksum;
-                try (InputStream is = setCurrentInputStream(file.getInputStream())) {
-                    checksum = AbstractFile.calculateChecksum(is, digest);
+                // Resets the digests before use
+                for (MessageDigest digest : digests) {
+                    digest.reset();
                 }
-
-                // Write a new line in the checksum file, in the appropriate format
-                String line;
-                if (useSfvFormat) {
-                    // SFV format for CRC32 checksum
-                    line = relativePath + " " + checksum;     // 1 space character
-                } else {
-                    // 'SUMS' format for other checksum algorithms
-                    line = checksum + "  " + relativePath;    // 2 space characters, that's how the format is
+                String[] checksums;
+                try (InputStream is = setCurrentInputStream(file.getInputStream())) {
+                    checksums = DigestPipeline.calculateChecksums(is, digests);
                 }
-
-                line += '\n';
-
-                checksumFileOut.write(line.getBytes("utf-8"));
+                lineDone(line, checksums);
 
                 return true;
             } catch (IOException e) {
@@ -156,6 +208,7 @@ public class CalculateChecksumJob extends TransferFileJob {
                 // If that is the case, the exception should not be interpreted as an error.
                 // Same goes if the current file was skipped.
                 if (getState() == State.INTERRUPTED || wasCurrentFileSkipped()) {
+                    lineDone(line, null);
                     return false;
                 }
 
@@ -165,21 +218,92 @@ public class CalculateChecksumJob extends TransferFileJob {
                 // Retry loops
                 if (ret == RETRY_ACTION) {
                     // Reset processed bytes currentFileByteCounter
-                    getCurrentFileByteCounter().reset();
+                    resetTransferredFileByteCounter();
 
                     continue;
                 }
 
                 // Cancel, skip or close dialog return false
+                lineDone(line, null);
                 return false;
             }
         } while(true);
     }
 
+    /**
+     * Stores the checksums of a file, then writes the lines that are next in order to the checksum files.
+     *
+     * @param line the line of the file
+     * @param checksums the checksums of the file, null if the file was skipped
+     */
+    private void lineDone(ChecksumLine line, String[] checksums) {
+        synchronized (pendingLines) {
+            line.checksums = checksums;
+            line.done = true;
+            try {
+                while (!pendingLines.isEmpty() && pendingLines.peekFirst().done) {
+                    writeLine(pendingLines.pollFirst());
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Caught IOException", e);
+                pendingLines.clear();
+                if (getState() != State.INTERRUPTED) {
+                    showErrorDialog(Translator.get("error"), Translator.get("cannot_write_file", checksumFiles[0].getName()),
+                            new String[] {CANCEL_TEXT}, new int[] {CANCEL_ACTION});
+                    interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a new line in each checksum file, in the appropriate format.
+     */
+    private void writeLine(ChecksumLine line) throws IOException {
+        if (line.checksums == null) {
+            return;
+        }
+        for (int i = 0; i < checksumFileOuts.length; i++) {
+            String text;
+            if (useSfvFormat[i]) {
+                // SFV format for CRC32 checksum
+                text = line.relativePath + " " + line.checksums[i];     // 1 space character
+            } else {
+                // 'SUMS' format for other checksum algorithms
+                text = line.checksums[i] + "  " + line.relativePath;    // 2 space characters, that's how the format is
+            }
+
+            text += '\n';
+
+            checksumFileOuts[i].write(text.getBytes("utf-8"));
+        }
+    }
+
+    /**
+     * Returns new instances of the digests, for use by a worker thread.
+     */
+    private MessageDigest[] createDigests() {
+        MessageDigest[] result = new MessageDigest[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            try {
+                result[i] = MessageDigest.getInstance(digests[i].getAlgorithm(), digests[i].getProvider());
+            } catch (NoSuchAlgorithmException e) {
+                // Can't happen, the algorithm comes from an existing instance
+                throw new IllegalStateException(e);
+            }
+        }
+        return result;
+    }
+
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
-        // This job modifies the folder where the checksum file is
-        return folder.equalsCanonical(checksumFile.getParent());     // Note: parent may be null
+        // This job modifies the folders where the checksum files are
+        for (AbstractFile checksumFile : checksumFiles) {
+            if (folder.equalsCanonical(checksumFile.getParent())) {     // Note: parent may be null
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -191,6 +315,29 @@ public class CalculateChecksumJob extends TransferFileJob {
     protected void jobStarted() {
         super.jobStarted();
 
+        checksumFileOuts = new OutputStream[checksumFiles.length];
+        for (int i = 0; i < checksumFiles.length; i++) {
+            if (!openChecksumFile(i)) {
+                return;
+            }
+        }
+
+        int nbThreads = MuConfigurations.getPreferences().getVariable(MuPreference.CHECKSUM_THREADS, MuPreferences.DEFAULT_CHECKSUM_THREADS);
+        AbstractFile baseSourceFolder = getBaseSourceFolder();
+        if (nbThreads > 1 && (baseSourceFolder == null || baseSourceFolder.getParentArchive() == null)) {
+            workerPool = new TransferWorkerPool(this, nbThreads, nbThreads * QUEUE_SIZE_PER_WORKER);
+        }
+    }
+
+    /**
+     * Opens the given checksum file for writing, asking the user what to do if the file exists.
+     *
+     * @param index index of the checksum file
+     * @return false if the job has been interrupted
+     */
+    private boolean openChecksumFile(int index) {
+        AbstractFile checksumFile = checksumFiles[index];
+
         // Check for file collisions, i.e. if the file already exists in the destination
         int collision = FileCollisionChecker.checkForCollision(null, checksumFile);
         if (collision != FileCollisionChecker.NO_COLLOSION) {
@@ -205,7 +352,7 @@ public class CalculateChecksumJob extends TransferFileJob {
             // 'Cancel' or close dialog interrupts the job
             else {
                 interrupt();
-                return;
+                return false;
             }
         }
 
@@ -213,9 +360,9 @@ public class CalculateChecksumJob extends TransferFileJob {
         do {
             try {
                 // Tries to get an OutputStream on the destination file
-                this.checksumFileOut = checksumFile.getOutputStream();
+                checksumFileOuts[index] = checksumFile.getOutputStream();
 
-                break;
+                return true;
 
             } catch (Exception e) {
                 int choice = showErrorDialog(Translator.get("error"),
@@ -231,29 +378,51 @@ public class CalculateChecksumJob extends TransferFileJob {
 
                 // 'Cancel' or close dialog interrupts the job
                 interrupt();
-                return;
+                return false;
             }
         } while(true);
     }
 
+    @Override
+    protected void processPendingFiles() {
+        super.processPendingFiles();
+
+        if (workerPool != null) {
+            workerPool.awaitCompletion();
+        }
+    }
+
     @Override
     protected void jobCompleted() {
         super.jobCompleted();
 
-        // Open the checksum file in a viewer
-        ViewerRegistrar.createViewerFrame(getMainFrame(), checksumFile, IconManager.getImageIcon(checksumFile.getIcon()).getImage());
+        // Open the checksum files in a viewer
+        for (AbstractFile checksumFile : checksumFiles) {
+            ViewerRegistrar.createViewerFrame(getMainFrame(), checksumFile, IconManager.getImageIcon(checksumFile.getIcon()).getImage());
+        }
     }
 
     @Override
     protected void jobStopped() {
         super.jobStopped();
-        
-        // Close the checksum file's OutputStream
-        if (checksumFileOut != null) {
-            try {
-                checksumFileOut.close();
-            } catch (IOException ignore) {
-                // No need to inform the user
+
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+
+        // Close the checksum files' OutputStreams
+        if (checksumFileOuts != null) {
+            synchronized (pendingLines) {
+                for (OutputStream out : checksumFileOuts) {
+                    if (out == null) {
+                        continue;
+                    }
+                    try {
+                        out.close();
+                    } catch (IOException ignore) {
+                        // No need to inform the user
+                    }
+                }
             }
         }
     }
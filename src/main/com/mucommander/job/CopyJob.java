@@ -77,6 +77,7 @@ public class CopyJob extends AbstractCopyJob {
 
         this.mode = mode;
         this.errorDialogTitle = Translator.get(mode==Mode.DOWNLOAD ? "download_dialog.error_title" : "copy_dialog.error_title");
+        setTransferThreadsFromPreferences();
         scanDirectoryThread = new ScanDirectoryThread(files);
         scanDirectoryThread.start();
     }
@@ -192,14 +193,17 @@ public class CopyJob extends AbstractCopyJob {
                     currentDestFile = destFile;
 
                     // Only when finished with folder, set destination folder's date to match the original folder one
-                    if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.setLastModifiedDate(file.getLastModifiedDate());
-                        } catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
+                    final AbstractFile destFolderFile = destFile;
+                    runWhenFolderTransferred(() -> {
+                        if (destFolderFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+                            try {
+                                destFolderFile.setLastModifiedDate(file.getLastModifiedDate());
+                            } catch (IOException e) {
+                                LOGGER.debug("failed to change the date of "+destFolderFile, e);
+                                // Fail silently
+                            }
                         }
-                    }
+                    });
 
                     return true;
                 } catch (IOException e) {
@@ -216,8 +220,10 @@ public class CopyJob extends AbstractCopyJob {
         }
         // File is a regular file, copy it
         else  {
-            // Copy the file
-            return tryCopyFile(file, destFile, append, errorDialogTitle);
+            // Copy the file, possibly on a transfer worker thread
+            final AbstractFile regularDestFile = destFile;
+            final boolean appendFile = append;
+            return transferRegularFile(file, () -> tryCopyFile(file, regularDestFile, appendFile, errorDialogTitle));
         }
     }
 
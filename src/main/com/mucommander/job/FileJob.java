@@ -109,6 +109,9 @@ public abstract class FileJob implements Runnable {
 
     /** If set to true, processed files will be unmarked from current table */
     private boolean autoUnmark = true;
+
+    /** Table that was active when the job started, processed files are unmarked from it */
+    private FileTable activeTable;
 	
     /** File to be selected after job has finished (can be null if not set) */
     private AbstractFile fileToSelect;
@@ -141,7 +144,7 @@ public abstract class FileJob implements Runnable {
 
 
     /** Current state of this job */
-    private State jobState = State.NOT_STARTED;
+    private volatile State jobState = State.NOT_STARTED;
 
     /** List of registered FileJobListener stored as weak references */
     private WeakHashMap<FileJobListener, ?> listeners = new WeakHashMap<>();
@@ -150,7 +153,10 @@ public abstract class FileJob implements Runnable {
     private JobProgress jobProgress;
 
     /** True if the user asked to automatically skip errors */
-    private boolean autoSkipErrors;
+    private volatile boolean autoSkipErrors;
+
+    /** Serializes user input requests coming from the job thread and from transfer worker threads */
+    private final Object userInputLock = new Object();
 
 //    private int nbFilesProcessed;
 //    private int nbFilesDiscovered;
@@ -451,8 +457,8 @@ public abstract class FileJob implements Runnable {
                 // Call the jobResumed method to notify of the new job's state
                 jobResumed();
 
-                // Wake up the job's thread that is potentially waiting for pause to be over 
-                pauseLock.notify();
+                // Wake up the job's thread (and transfer workers, if any) potentially waiting for pause to be over
+                pauseLock.notifyAll();
 
                 // Switch to RUNNING state and notify listeners
                 setState(State.RUNNING);
@@ -484,7 +490,18 @@ public abstract class FileJob implements Runnable {
 //        // Notify ProgressDialog (if any) that a new file is being processed
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
-        
+
+        waitWhilePaused();
+//        if(this.currentFile!=null)
+//            this.nbFilesProcessed++;
+    }
+
+
+    /**
+     * Blocks the calling thread for as long as this job is paused. This method is called by {@link #nextFile(AbstractFile)}
+     * and may also be called by threads other than the job's thread that process files on behalf of this job.
+     */
+    protected void waitWhilePaused() {
         // Lock the pause lock
         synchronized(pauseLock) {
             // Loop while job is paused, there shouldn't normally be more than one loop
@@ -497,8 +514,6 @@ public abstract class FileJob implements Runnable {
                 }
             }
         }
-//        if(this.currentFile!=null)
-//            this.nbFilesProcessed++;
     }
 
 
@@ -540,6 +555,44 @@ public abstract class FileJob implements Runnable {
     }
 	
 
+    /**
+     * This method is called by {@link #run()} after the last top-level file has been passed to
+     * {@link #processFile(AbstractFile,Object)}, before the job is completed. Jobs that process files asynchronously
+     * must block here until all pending files have been processed.
+     * This method implementation does nothing.
+     */
+    protected void processPendingFiles() {
+    }
+
+    /**
+     * This method is called by {@link #run()} after a top-level file has been passed to
+     * {@link #processFile(AbstractFile,Object)}, unless the job was interrupted. This implementation unmarks the file
+     * if it was processed successfully, jobs that process files asynchronously may override it to unmark the file
+     * once it has actually been processed, see {@link #unmarkFile(AbstractFile)}.
+     *
+     * @param file the top-level file that was processed
+     * @param success the value returned by {@link #processFile(AbstractFile,Object)}
+     */
+    protected void topLevelFileProcessed(AbstractFile file, boolean success) {
+        if (success) {
+            unmarkFile(file);
+        }
+    }
+
+    /**
+     * Unmarks the given top-level file in the table that was active when the job started, if 'auto unmark' is
+     * enabled.
+     *
+     * @param file a top-level file that was processed successfully
+     */
+    protected void unmarkFile(AbstractFile file) {
+        if (autoUnmark) {
+            // Do not repaint rows individually as it would be too expensive
+            activeTable.setFileMarked(file, false, false);
+        }
+    }
+
+
     /**
      * This method is called when this job has completed normal execution : all files have been processed without any interruption
      * (without any call to {@link #interrupt()}).
@@ -688,15 +741,18 @@ public abstract class FileJob implements Runnable {
     }
     
     Object waitForUserResponseObject(DialogResult dialog) {
-        // Put this job in pause mode while waiting for user response
-        setPaused(true);
-        
-        UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
-        Object userInput = jobUserInput.getUserInput();
-        
-        // Back to work
-        setPaused(false);
-        return userInput;
+        // Only one question at a time: transfer workers may run into errors concurrently
+        synchronized (userInputLock) {
+            // Put this job in pause mode while waiting for user response
+            setPaused(true);
+
+            UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
+            Object userInput = jobUserInput.getUserInput();
+
+            // Back to work
+            setPaused(false);
+            return userInput;
+        }
     }
     
 	
@@ -842,7 +898,7 @@ public abstract class FileJob implements Runnable {
      * This method is public as a side-effect of this class implementing <code>Runnable</code>.
      */
     public final void run() {
-        FileTable activeTable = getMainFrame().getActiveTable();
+        activeTable = getMainFrame().getActiveTable();
 
         // Notify that this job has started
         jobStarted();
@@ -859,16 +915,18 @@ public abstract class FileJob implements Runnable {
             // Process current file
             boolean success = processFile(currentFile, null);
 
+            // Let files that were handed over to other threads be processed before the job completes
+            if (currentFileIndex >= nbFiles-1 && getState() != State.INTERRUPTED) {
+                processPendingFiles();
+            }
+
             // Stop if job was interrupted
             if (getState() == State.INTERRUPTED)
                 break;
 
             // Unmark file in active table if 'auto unmark' is enabled
             // and file was processed successfully
-            if (autoUnmark && success) {
-                // Do not repaint rows individually as it would be too expensive
-                activeTable.setFileMarked(currentFile, false, false);
-            }
+            topLevelFileProcessed(currentFile, success);
 
             // If last file was reached without any user interruption, all files have been processed with or
             // without errors, switch to FINISHED state and notify listeners
@@ -17,9 +17,15 @@
  */
 package com.mucommander.job;
 
+import com.mucommander.cache.FileNameIndex;
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.ui.main.MainFrame;
 import org.apache.commons.io.IOCase;
 import org.apache.commons.io.filefilter.AbstractFileFilter;
@@ -30,29 +36,90 @@ import ru.trolsoft.utils.search.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Job for directory scanning
+ * Job for directory scanning.
+ *
+ * <p>When more than one thread is configured (see {@link MuPreferences#FIND_FILE_THREADS}), folders are listed in
+ * parallel by a {@link ForkJoinPool} while file contents are searched by a separate, bounded pool, so that slow
+ * listings and slow reads overlap. Matches are reported to the {@link ResultListener} as soon as they are found.</p>
+ *
+ * <p>Searches by file name only are answered from the {@link FileNameIndex} when the start folder is indexed.</p>
  */
 public class FindFileJob extends FileJob {
 
+    /** Local files at least this large are read from their channel into a direct buffer instead of a stream */
+    private static final long CHANNEL_MIN_FILE_SIZE = 1024 * 1024;
+
+    /** Number of content searches that may wait for a thread, per thread */
+    private static final int CONTENT_QUEUE_SIZE_PER_THREAD = 4;
+
+    /** Time to wait for pending content searches before checking the job's state again, in milliseconds */
+    private static final long CONTENT_POLL_PERIOD = 100;
+
+    /**
+     * Receives the files matching the search criteria as soon as they are found.
+     * Calls are made from the job's threads.
+     */
+    public interface ResultListener {
+        void fileFound(AbstractFile file);
+    }
+
     private AbstractFile startDirectory;
     private String fileContent;
     private boolean searchSubdirectories;
     private boolean searchArchives;
     private boolean ignoreHidden;
-    private SearchPattern searchPattern;
+    private BlockSearcher searcher;
 
     private AbstractFileFilter fileFilter;
 
     private final List<AbstractFile> list = new ArrayList<>();
 
+    private ResultListener resultListener;
+
+    /** Number of threads searching folders and file contents */
+    private int threads;
+
+    /** Pool searching file contents in parallel mode, <code>null</code> otherwise */
+    private ThreadPoolExecutor contentPool;
+
     public FindFileJob(MainFrame mainFrame) {
         super(mainFrame);
         setAutoUnmark(false);
+        setThreads(MuConfigurations.getPreferences().getVariable(MuPreference.FIND_FILE_THREADS, MuPreferences.DEFAULT_FIND_FILE_THREADS));
+    }
+
+    /**
+     * Sets the number of threads searching folders and file contents. With a single thread, the search is performed
+     * on the job's thread only. This method must be called before the job is started.
+     *
+     * @param threads number of threads, values lower than 1 are treated as 1
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the listener that receives matches as soon as they are found. This method must be called before the job
+     * is started.
+     *
+     * @param resultListener the listener, may be <code>null</code>
+     */
+    public void setResultListener(ResultListener resultListener) {
+        this.resultListener = resultListener;
     }
 
 
@@ -67,6 +134,13 @@ public class FindFileJob extends FileJob {
         if (getState() == State.INTERRUPTED) {
             return false;
         }
+        if (file.equals(startDirectory) && searchInIndex(file)) {
+            return true;
+        }
+        if (threads > 1 && file.equals(startDirectory) && file.isDirectory()) {
+            searchInParallel(file);
+            return true;
+        }
         // If file is a directory, recurs
         if (file.isDirectory() && (!file.isSymlink() || file.equals(startDirectory))) {
             searchInFile(file);
@@ -76,7 +150,7 @@ public class FindFileJob extends FileJob {
             try {
                 AbstractFile subFiles[] = file.ls();
                 for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
-                    if (ignoreHidden && file.isHidden()) {
+                    if (ignoreHidden && subFiles[i].isHidden()) {
                         continue;
                     }
                     // Notify job that we're starting to process this file (needed for recursive calls to processFile)
@@ -96,7 +170,7 @@ public class FindFileJob extends FileJob {
             try {
                 AbstractFile subFiles[] = file.ls();
                 for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
-                    if (ignoreHidden && file.isHidden()) {
+                    if (ignoreHidden && subFiles[i].isHidden()) {
                         continue;
                     }
                     // Notify job that we're starting to process this file (needed for recursive calls to processFile)
@@ -112,11 +186,141 @@ public class FindFileJob extends FileJob {
     }
 
     private void searchInFile(AbstractFile file) {
-        File f = new File(file.toString());
-        if (fileFilter.accept(f) && fileContainsString(file)) {
-            synchronized (this) {
-                list.add(file);
+        if (nameMatches(file) && fileContainsString(file)) {
+            addResult(file);
+        }
+    }
+
+    private boolean nameMatches(AbstractFile file) {
+        return fileFilter.accept(new File(file.toString()));
+    }
+
+    private void addResult(AbstractFile file) {
+        synchronized (this) {
+            list.add(file);
+        }
+        if (resultListener != null) {
+            resultListener.fileFound(file);
+        }
+    }
+
+    /**
+     * Answers the search from the {@link FileNameIndex} if only file names are searched and the folder is indexed.
+     *
+     * @return <code>true</code> if the search has been answered from the index
+     */
+    private boolean searchInIndex(AbstractFile folder) {
+        if ((fileContent != null && !fileContent.isEmpty()) || searchArchives) {
+            return false;
+        }
+        FileNameIndex index = FileNameIndex.getInstance();
+        if (index == null) {
+            return false;
+        }
+        List<String> paths = index.find(folder, name -> fileFilter.accept(null, name), searchSubdirectories, ignoreHidden);
+        if (paths == null) {
+            return false;
+        }
+        if (nameMatches(folder)) {
+            addResult(folder);
+        }
+        for (String path : paths) {
+            if (getState() == State.INTERRUPTED) {
+                break;
+            }
+            AbstractFile file = FileFactory.getFile(path);
+            if (file != null) {
+                addResult(file);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches the given folder with {@link #threads} threads, returning when all its files have been searched or
+     * when the job is interrupted.
+     */
+    private void searchInParallel(AbstractFile folder) {
+        AtomicInteger threadCount = new AtomicInteger();
+        contentPool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * CONTENT_QUEUE_SIZE_PER_THREAD),
+                runnable -> {
+                    Thread thread = new Thread(runnable, getClass().getSimpleName() + " content search #" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // Searching on the traversal thread when the queue is full keeps the traversal from running ahead
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        ForkJoinPool traversalPool = new ForkJoinPool(threads);
+        try {
+            searchInFile(folder);
+            traversalPool.invoke(new FolderSearchTask(folder));
+            contentPool.shutdown();
+            while (!contentPool.awaitTermination(CONTENT_POLL_PERIOD, TimeUnit.MILLISECONDS)) {
+                if (getState() == State.INTERRUPTED) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Treated like an interruption of the job
+        } finally {
+            traversalPool.shutdownNow();
+            contentPool.shutdownNow();
+            contentPool = null;
+        }
+    }
+
+    /**
+     * Searches the files of a folder, forking a task for each subfolder to search and queuing content searches
+     * to {@link #contentPool}.
+     */
+    private class FolderSearchTask extends RecursiveAction {
+        private final AbstractFile folder;
+
+        FolderSearchTask(AbstractFile folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        protected void compute() {
+            if (getState() == State.INTERRUPTED) {
+                return;
             }
+            AbstractFile[] subFiles;
+            try {
+                subFiles = folder.ls();
+            } catch (Throwable e) {
+                // Should we tell the user?
+                return;
+            }
+
+            List<FolderSearchTask> subTasks = new ArrayList<>();
+            for (AbstractFile file : subFiles) {
+                if (getState() == State.INTERRUPTED) {
+                    break;
+                }
+                if (ignoreHidden && file.isHidden()) {
+                    continue;
+                }
+                nextFile(file);
+                if (nameMatches(file)) {
+                    if (fileContent == null || fileContent.isEmpty() || file.isDirectory()) {
+                        searchInFile(file);
+                    } else {
+                        contentPool.execute(() -> {
+                            if (getState() != State.INTERRUPTED) {
+                                waitWhilePaused();
+                                searchInFile(file);
+                            }
+                        });
+                    }
+                }
+                boolean browseFolder = searchSubdirectories && file.isDirectory() && !file.isSymlink();
+                if (browseFolder || (searchArchives && file.isArchive())) {
+                    subTasks.add(new FolderSearchTask(file));
+                }
+            }
+            invokeAll(subTasks);
         }
     }
 
@@ -130,11 +334,24 @@ public class FindFileJob extends FileJob {
             return false;
         }
 
-        try (SearchSourceStream source = new InputStreamSource(f.getInputStream())) {
-            long pos = SearchUtils.indexOf(source, searchPattern);
+        if (searcher == null) {
+            return false;
+        }
+
+        try {
+            long pos;
+            if (f instanceof LocalFile && f.getSize() >= CHANNEL_MIN_FILE_SIZE) {
+                try (FileChannel channel = FileChannel.open(((File)f.getUnderlyingFileObject()).toPath(), StandardOpenOption.READ)) {
+                    pos = searcher.indexOf(channel);
+                }
+            } else {
+                try (InputStream in = f.getInputStream()) {
+                    pos = searcher.indexOf(in);
+                }
+            }
             //Profiler.stop("check_new");
             return pos >= 0;
-        } catch (IOException | SearchException e) {
+        } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
@@ -178,12 +395,13 @@ public class FindFileJob extends FileJob {
         }
 
         if (hexMode) {
-            searchPattern = new BytesSearchPattern(bytes);
+            searcher = new BlockSearcher(bytes);
         } else {
             try {
-                searchPattern = caseSensitive ?
+                SearchPattern searchPattern = caseSensitive ?
                         new StringCaseSensitiveSearchPattern(fileContent, encoding) :
                         new StringCaseInsensitiveSearchPattern(fileContent, encoding);
+                searcher = new BlockSearcher(searchPattern);
             } catch (UnsupportedEncodingException e) {
                 e.printStackTrace();
             }
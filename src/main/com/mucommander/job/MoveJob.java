@@ -63,6 +63,9 @@ public class MoveJob extends AbstractCopyJob {
 
         this.errorDialogTitle = Translator.get("move_dialog.error_title");
         this.renameMode = renameMode;
+        if (!renameMode) {
+            setTransferThreadsFromPreferences();
+        }
     }
 
 
@@ -184,15 +187,18 @@ public class MoveJob extends AbstractCopyJob {
                     }
 
                     // Only when finished with folder, set destination folder's date to match the original folder one
-                    if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.setLastModifiedDate(file.getLastModifiedDate());
-                        }
-                        catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
+                    final AbstractFile destFolderFile = destFile;
+                    runWhenFolderTransferred(() -> {
+                        if (destFolderFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+                            try {
+                                destFolderFile.setLastModifiedDate(file.getLastModifiedDate());
+                            }
+                            catch (IOException e) {
+                                LOGGER.debug("failed to change the date of "+destFolderFile, e);
+                                // Fail silently
+                            }
                         }
-                    }
+                    });
 
                     // If one file failed to be moved, return false (failure) since this folder could not be moved totally
                     if (!isFolderEmpty) {
@@ -215,48 +221,84 @@ public class MoveJob extends AbstractCopyJob {
                 return false;
             }
 
-            // finally, delete the empty folder
+            // finally, delete the empty folder, once the files queued for transfer have been moved
+            if (isParallelTransfer()) {
+                runWhenFolderTransferred(() -> deleteMovedFolder(file));
+                return true;
+            }
+            return deleteMovedFolder(file);
+        }
+        // File is a regular file, move it by copying it to the destination and then deleting it
+        else  {
+            // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
+            // try the hard way by copying the file first, and then deleting the source file.
+            final AbstractFile regularDestFile = destFile;
+            final boolean appendFile = append;
+            return transferRegularFile(file, () -> moveRegularFile(file, regularDestFile, appendFile));
+        }
+    }
+
+    /**
+     * Moves a regular file by copying it to the destination and then deleting it.
+     *
+     * @param file the file to move
+     * @param destFile the destination file
+     * @param append true to resume the transfer
+     * @return <code>true</code> if the file has been moved
+     */
+    private boolean moveRegularFile(AbstractFile file, AbstractFile destFile, boolean append) {
+        if (tryCopyFile(file, destFile, append, errorDialogTitle) && getState() != State.INTERRUPTED) {
+            // Delete the source file
             do {		// Loop for retry
                 try  {
                     file.delete();
+                    // All OK
                     return true;
                 } catch(IOException e) {
-                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_folder", file.getAbsolutePath()));
+                    LOGGER.debug("IOException caught", e);
+
+                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
                     // Retry loops
-                    if (ret == RETRY_ACTION)
+                    if (ret == RETRY_ACTION) {
                         continue;
+                    }
                     // Cancel, skip or close dialog returns false
                     return false;
                 }
             } while(true);
         }
-        // File is a regular file, move it by copying it to the destination and then deleting it
-        else  {
-            // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
-            // try the hard way by copying the file first, and then deleting the source file.
-            if (tryCopyFile(file, destFile, append, errorDialogTitle) && getState() != State.INTERRUPTED) {
-                // Delete the source file
-                do {		// Loop for retry
-                    try  {
-                        file.delete();
-                        // All OK
-                        return true;
-                    } catch(IOException e) {
-                        LOGGER.debug("IOException caught", e);
 
-                        int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
-                        // Retry loops
-                        if (ret == RETRY_ACTION) {
-                            continue;
-                        }
-                        // Cancel, skip or close dialog returns false
-                        return false;
-                    }
-                } while(true);
-            }
+        return false;
+    }
 
+    /**
+     * Deletes a source folder whose files have been moved.
+     *
+     * @param folder the source folder to delete
+     * @return <code>true</code> if the folder has been deleted
+     */
+    private boolean deleteMovedFolder(AbstractFile folder) {
+        // Return now if the job was interrupted, so that we do not attempt to delete this folder
+        if (getState() == State.INTERRUPTED) {
             return false;
         }
+        do {		// Loop for retry
+            try  {
+                // Files that failed to be moved by a transfer worker are left in the folder: keep it silently
+                if (isParallelTransfer() && folder.ls().length > 0) {
+                    return false;
+                }
+                folder.delete();
+                return true;
+            } catch(IOException e) {
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_folder", folder.getAbsolutePath()));
+                // Retry loops
+                if (ret == RETRY_ACTION)
+                    continue;
+                // Cancel, skip or close dialog returns false
+                return false;
+            }
+        } while(true);
     }
 
     // This job modifies baseDestFolder and its subfolders
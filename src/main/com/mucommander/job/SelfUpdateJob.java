@@ -89,6 +89,8 @@ public class SelfUpdateJob extends CopyJob {
         this.destJar = destJar;
         this.tempDestJar = tempDestJar;
         this.classLoader = getClass().getClassLoader();
+        // The downloaded jar is extracted as soon as it has been processed
+        setTransferThreads(1);
 
         directoryOrClassFileFilter = new OrFileFilter(
             new AttributeFileFilter(FileAttribute.DIRECTORY),
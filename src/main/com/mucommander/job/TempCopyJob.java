@@ -48,6 +48,8 @@ public class TempCopyJob extends CopyJob {
      */
     public TempCopyJob(ProgressDialog progressDialog, MainFrame mainFrame, AbstractFile fileToCopy) {
         super(progressDialog, mainFrame, new FileSet(fileToCopy.getParent(), fileToCopy), FileFactory.getTemporaryFolder(), getTemporaryFileName(fileToCopy), Mode.COPY, FileCollisionDialog.OVERWRITE_ACTION);
+        // Subclasses work on the copied file as soon as it has been processed
+        setTransferThreads(1);
     }
 
     /**
@@ -59,6 +61,8 @@ public class TempCopyJob extends CopyJob {
      */
     public TempCopyJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet filesToCopy) {
         super(progressDialog, mainFrame, filesToCopy, getTemporaryFolder(filesToCopy), null, Mode.COPY, FileCollisionDialog.OVERWRITE_ACTION);
+        // Subclasses work on the copied files as soon as they have been processed
+        setTransferThreads(1);
     }
 
 
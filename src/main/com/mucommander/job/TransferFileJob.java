@@ -26,6 +26,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.adb.AdbFile;
@@ -36,6 +38,7 @@ import com.apple.eio.FileManager;
 import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.ChannelTransferInputStream;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.CounterInputStream;
 import com.mucommander.commons.io.FileTransferException;
@@ -58,11 +61,18 @@ import com.mucommander.ui.main.MainFrame;
 public abstract class TransferFileJob extends FileJob {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TransferFileJob.class);
 	
-    /** Contains the number of bytes processed in the current file so far, see {@link #getCurrentFileByteCounter()} ()} */
-    private ByteCounter currentFileByteCounter;
+    /** Transfer state of the job's thread */
+    private final TransferSlot jobSlot = new TransferSlot();
 
-    /** Contains the number of bytes skipped in the current file so far, see {@link #getCurrentFileSkippedByteCounter()} ()} */
-    private ByteCounter currentFileSkippedByteCounter;
+    /** Transfer state of the worker threads registered with {@link #registerTransferWorker()}, empty unless files
+     * are transferred in parallel */
+    private final List<TransferSlot> workerSlots = new ArrayList<>();
+
+    /** Transfer state of the calling worker thread, not set for the job's thread */
+    private final ThreadLocal<TransferSlot> currentWorkerSlot = new ThreadLocal<>();
+
+    /** Number of files started by worker threads so far, orders their transfers. Guarded by workerSlots. */
+    private long nbWorkerFilesStarted;
 
     /** Contains the number of bytes processed so far, see {@link #getTotalByteCounter()} */
     private ByteCounter totalByteCounter;
@@ -70,30 +80,52 @@ public abstract class TransferFileJob extends FileJob {
     /** Contains the number of bytes skipped so far (resumed files), see {@link #getTotalSkippedByteCounter()} */
     private ByteCounter totalSkippedByteCounter;
 
-    /** InputStream currently being processed, may be null */
-    private ThroughputLimitInputStream tlin;
-
     /** ThroughputLimit in bytes per second, -1 initially (no limit) */
     private long throughputLimit = -1;
 
-    /** Has the file currently being processed been skipped ? */
-    private boolean currentFileSkipped;
-
     /** If true, all transfers will be checked for integrity: the checksum of the source and destination file will
      *  be calculated and compared to verify they match. */
     private boolean integrityCheckEnabled;
 
-    /** True when the checksum of the source or destination file is being calculated. */
-    private boolean isCheckingIntegrity;
-
     /** The checksum algorithm used for checking the integrity of transferred files. The algorithm has to be the fastest
      * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
     private final static String CHECKSUM_VERIFICATION_ALGORITHM = "Adler32";
 
+    /** Number of bytes copied at once from a local file to another, see {@link #copyLocalFile(TransferSlot, LocalFile, LocalFile, boolean)} */
+    private final static long LOCAL_TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
     /**
      * If user changed "Overwrite all readonly" in the question dialog
      */
-    private boolean overwriteAllReadonly = false;
+    private volatile boolean overwriteAllReadonly = false;
+
+
+    /**
+     * State of a single file transfer. The job's thread has one, and so has every worker thread when files
+     * are transferred in parallel.
+     */
+    private static class TransferSlot {
+        /** Contains the number of bytes processed in the file being transferred */
+        private final ByteCounter fileByteCounter = new ByteCounter();
+
+        /** Contains the number of bytes skipped in the file being transferred (resumed files) */
+        private final ByteCounter fileSkippedByteCounter = new ByteCounter();
+
+        /** InputStream currently being processed, may be null */
+        private ThroughputLimitInputStream tlin;
+
+        /** The file being transferred by a worker thread, null for the job's thread */
+        private AbstractFile file;
+
+        /** Order in which the worker thread started transferring its file */
+        private long fileSequence;
+
+        /** Has the file being transferred been skipped ? */
+        private boolean fileSkipped;
+
+        /** True when the checksum of the source or destination file is being calculated. */
+        private boolean checkingIntegrity;
+    }
 
 
     static {
@@ -111,12 +143,146 @@ public abstract class TransferFileJob extends FileJob {
     public TransferFileJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files) {
         super(progressDialog, mainFrame, files);
 
-        this.currentFileByteCounter = new ByteCounter();
-        this.currentFileSkippedByteCounter = new ByteCounter();
+        // Account the current file's byte counter in the total byte counter, as well as the ones of the files being
+        // transferred by worker threads
+        this.totalByteCounter = new ByteCounter(jobSlot.fileByteCounter) {
+            @Override
+            public synchronized long getByteCount() {
+                return super.getByteCount() + getWorkersByteCount(false);
+            }
+        };
+        this.totalSkippedByteCounter = new ByteCounter(jobSlot.fileSkippedByteCounter) {
+            @Override
+            public synchronized long getByteCount() {
+                return super.getByteCount() + getWorkersByteCount(true);
+            }
+        };
+    }
 
-        // Account the current file's byte counter in the total byte counter
-        this.totalByteCounter = new ByteCounter(currentFileByteCounter);
-        this.totalSkippedByteCounter = new ByteCounter(currentFileSkippedByteCounter);
+    /**
+     * Returns the number of bytes processed (or skipped) in the files that worker threads are currently transferring.
+     *
+     * @param skipped true to count skipped bytes, false to count processed bytes
+     * @return the number of bytes processed or skipped by worker threads in their current file
+     */
+    private long getWorkersByteCount(boolean skipped) {
+        long count = 0;
+        synchronized (workerSlots) {
+            for (TransferSlot slot : workerSlots) {
+                count += (skipped ? slot.fileSkippedByteCounter : slot.fileByteCounter).getByteCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the transfer state of the calling thread.
+     *
+     * @return the transfer state of the calling thread
+     */
+    private TransferSlot getTransferSlot() {
+        TransferSlot slot = currentWorkerSlot.get();
+        return slot == null ? jobSlot : slot;
+    }
+
+    /**
+     * Returns the transfer state of the file reported as the current one by the progress dialog and skipped by
+     * {@link #skipCurrentFile()}. When files are transferred in parallel, the job's thread traverses the files ahead
+     * of the workers, so this is the worker slot that has been transferring its file for the longest time, and
+     * the job's thread one only if no worker is transferring a file.
+     *
+     * @return the transfer state of the current file
+     */
+    private TransferSlot getCurrentFileSlot() {
+        TransferSlot currentSlot = jobSlot;
+        synchronized (workerSlots) {
+            for (TransferSlot slot : workerSlots) {
+                if (slot.file != null && (currentSlot == jobSlot || slot.fileSequence < currentSlot.fileSequence)) {
+                    currentSlot = slot;
+                }
+            }
+        }
+        return currentSlot;
+    }
+
+    /**
+     * Returns the file whose transfer state is returned by {@link #getCurrentFileSlot()}.
+     *
+     * @param slot the transfer state returned by {@link #getCurrentFileSlot()}
+     * @return the file being transferred, may be <code>null</code>
+     */
+    private AbstractFile getSlotFile(TransferSlot slot) {
+        AbstractFile file = slot.file;
+        return slot == jobSlot || file == null ? getCurrentFile() : file;
+    }
+
+    /**
+     * Overridden to return the name of the file being transferred by a worker thread, when files are transferred in
+     * parallel.
+     */
+    @Override
+    String getCurrentFilename() {
+        TransferSlot slot = getCurrentFileSlot();
+        AbstractFile file = slot.file;
+        return slot == jobSlot || file == null ? super.getCurrentFilename() : "'" + file.getName() + "'";
+    }
+
+    /**
+     * Registers the calling thread as a worker thread that transfers files on behalf of this job, see
+     * {@link TransferWorkerPool}. Byte counters, pause, throughput limit and stop requests then apply to the
+     * streams opened by the worker as they do to the job's thread ones.
+     */
+    void registerTransferWorker() {
+        TransferSlot slot = new TransferSlot();
+        currentWorkerSlot.set(slot);
+        synchronized (workerSlots) {
+            workerSlots.add(slot);
+        }
+    }
+
+    /**
+     * Unregisters the calling worker thread, see {@link #registerTransferWorker()}.
+     */
+    void unregisterTransferWorker() {
+        TransferSlot slot = currentWorkerSlot.get();
+        if (slot == null) {
+            return;
+        }
+        transferWorkerFileDone();
+        synchronized (this) {
+            closeInputStream(slot);
+        }
+        synchronized (workerSlots) {
+            workerSlots.remove(slot);
+        }
+        currentWorkerSlot.remove();
+    }
+
+    /**
+     * Notifies that the calling worker thread starts transferring the given file.
+     *
+     * @param file the file about to be transferred
+     */
+    void transferWorkerFileStarted(AbstractFile file) {
+        TransferSlot slot = getTransferSlot();
+        synchronized (workerSlots) {
+            slot.fileSequence = nbWorkerFilesStarted++;
+            slot.file = file;
+        }
+    }
+
+    /**
+     * Notifies that the calling worker thread is done with its current file: the file's byte counters are
+     * added to the total ones.
+     */
+    void transferWorkerFileDone() {
+        TransferSlot slot = getTransferSlot();
+        totalByteCounter.add(slot.fileByteCounter, true);
+        totalSkippedByteCounter.add(slot.fileSkippedByteCounter, true);
+        synchronized (workerSlots) {
+            slot.file = null;
+        }
+        slot.fileSkipped = false;
     }
 
     void copyToReadonlyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
@@ -141,8 +307,9 @@ public abstract class TransferFileJob extends FileJob {
      * @throws FileTransferException on transfer error
      */
     private void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        TransferSlot slot = getTransferSlot();
         // Reset this field in case it was set to true for the previous file
-        isCheckingIntegrity = false;
+        slot.checkingIntegrity = false;
 
         // Throw a specific FileTransferException if source and destination files are identical
         if (sourceFile.equalsCanonical(destFile)) {
@@ -163,6 +330,14 @@ public abstract class TransferFileJob extends FileJob {
             }
         }
 
+        // Local files are copied by the operating system, without bringing the bytes to user space.
+        // Integrity checks use a stream copy, which calculates the source checksum on the fly.
+        if (!copied && !integrityCheckEnabled
+                && sourceFile.getTopAncestor() instanceof LocalFile && destFile.getTopAncestor() instanceof LocalFile) {
+            copyLocalFile(slot, (LocalFile)sourceFile.getTopAncestor(), (LocalFile)destFile.getTopAncestor(), append);
+            copied = true;
+        }
+
         // If the file wasn't copied using copyRemotelyTo(), or if copyRemotelyTo() failed
         InputStream in = null;
         if (!copied) {
@@ -179,9 +354,9 @@ public abstract class TransferFileJob extends FileJob {
 
                         inLength -= destFileSize;
                         // Increase current file ByteCounter by the number of bytes skipped
-                        currentFileByteCounter.add(destFileSize);
+                        slot.fileByteCounter.add(destFileSize);
                         // Increase skipped ByteCounter by the number of bytes skipped
-                        currentFileSkippedByteCounter.add(destFileSize);
+                        slot.fileSkippedByteCounter.add(destFileSize);
                     } else {
                         in = sourceFile.getInputStream();
                         if (integrityCheckEnabled) {
@@ -207,7 +382,7 @@ public abstract class TransferFileJob extends FileJob {
                     return;
                 }
                 // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
+                destFile.copyStream(slot.tlin, append, inLength);
             } finally {
                 // This block will always be executed, even if an exception
                 // was thrown in the catch block
@@ -253,7 +428,7 @@ public abstract class TransferFileJob extends FileJob {
         // This block is executed only if integrity check has been enabled (disabled by default)
         if (integrityCheckEnabled) {
             // Indicate that integrity is being checked, the value is reset when the next file starts
-            isCheckingIntegrity = true;
+            slot.checkingIntegrity = true;
 
             String sourceChecksum;
             if (in != null && (in instanceof ChecksumInputStream)) {
@@ -289,8 +464,40 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
+    /**
+     * Copies a local file to another local file using {@link LocalFile#getTransferInputStream(LocalFile, boolean)}.
+     * The returned stream is registered with {@link #setCurrentInputStream(InputStream)} and skipped in chunks, so
+     * that bytes are counted, the throughput is limited and pause, skip and stop requests are honoured as they are
+     * for a stream copy.
+     *
+     * @param slot the transfer state of the calling thread
+     * @param sourceFile source file
+     * @param destFile destination file
+     * @param append append or overwrite
+     * @throws FileTransferException on transfer error
+     */
+    private void copyLocalFile(TransferSlot slot, LocalFile sourceFile, LocalFile destFile, boolean append) throws FileTransferException {
+        ChannelTransferInputStream transferIn = sourceFile.getTransferInputStream(destFile, append);
+        try {
+            long destFileSize = transferIn.getSourcePosition();
+            // Increase current file ByteCounter and skipped ByteCounter by the number of bytes skipped (resumed file)
+            slot.fileByteCounter.add(destFileSize);
+            slot.fileSkippedByteCounter.add(destFileSize);
+
+            InputStream in = setCurrentInputStream(transferIn);
+            while (in.skip(LOCAL_TRANSFER_CHUNK_SIZE) > 0) {
+                // Bytes are counted and throttled chunk by chunk
+            }
+        } catch (IOException e) {
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferException.WRITING_DESTINATION, e);
+        } finally {
+            closeCurrentInputStream();
+        }
+    }
+
     private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
-        currentFileByteCounter.reset();
+        getTransferSlot().fileByteCounter.reset();
         InputStream in = setCurrentInputStream(file.getInputStream());
         try {
             return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
@@ -380,8 +587,9 @@ public abstract class TransferFileJob extends FileJob {
                 // Retry action (append or retry)
                 if (choice == RETRY_ACTION || choice == APPEND_ACTION || choice == OVERWRITE_READONLY_ACTION || choice == OVERWRITE_READONLY_ALL_ACTION) {
                     // Reset current file byte counters
-                    currentFileByteCounter.reset();
-                    currentFileSkippedByteCounter.reset();
+                    TransferSlot slot = getTransferSlot();
+                    slot.fileByteCounter.reset();
+                    slot.fileSkippedByteCounter.reset();
                     // Append resumes transfer
                     append = choice == APPEND_ACTION;
                     overwriteReadonly = choice == OVERWRITE_READONLY_ACTION || choice == OVERWRITE_READONLY_ALL_ACTION;
@@ -413,28 +621,69 @@ public abstract class TransferFileJob extends FileJob {
      * @return the 'augmented' InputStream using the given stream as the underlying InputStream
      */
     synchronized InputStream setCurrentInputStream(InputStream in) {
-        if (tlin == null) {
-            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), throughputLimit);
+        TransferSlot slot = getTransferSlot();
+        if (slot.tlin == null) {
+            slot.tlin = new ThroughputLimitInputStream(new CounterInputStream(in, slot.fileByteCounter), getSlotThroughputLimit());
         } else {
-            tlin.setUnderlyingInputStream(new CounterInputStream(in, currentFileByteCounter));
+            slot.tlin.setUnderlyingInputStream(new CounterInputStream(in, slot.fileByteCounter));
         }
 
-        return tlin;
+        return slot.tlin;
     }
 
     /**
      * Closes the currently registered source InputStream.
      */
     synchronized void closeCurrentInputStream() {
-        if (tlin != null) {
+        closeInputStream(getTransferSlot());
+    }
+
+    /**
+     * Closes the source InputStream registered by the given transfer slot, if any.
+     *
+     * @param slot the transfer state whose InputStream is to be closed
+     */
+    private void closeInputStream(TransferSlot slot) {
+        if (slot.tlin != null) {
             try {
-                tlin.close();
+                slot.tlin.close();
             } catch(IOException e) {
                 e.printStackTrace();
             }
         }
     }
 
+    /**
+     * Returns the transfer slots whose stream is subject to pause, throughput limit and stop requests.
+     *
+     * @return the job's thread slot and the worker ones
+     */
+    private List<TransferSlot> getAllSlots() {
+        List<TransferSlot> slots = new ArrayList<>();
+        slots.add(jobSlot);
+        synchronized (workerSlots) {
+            slots.addAll(workerSlots);
+        }
+        return slots;
+    }
+
+    /**
+     * Returns the throughput limit that applies to each registered InputStream: the limit is shared evenly by
+     * worker threads when files are transferred in parallel.
+     *
+     * @return the throughput limit of a single InputStream, -1 if there is no limit
+     */
+    private long getSlotThroughputLimit() {
+        if (throughputLimit <= 0) {
+            return -1;
+        }
+        int nbWorkers;
+        synchronized (workerSlots) {
+            nbWorkers = workerSlots.size();
+        }
+        return nbWorkers <= 1 ? throughputLimit : Math.max(1, throughputLimit / nbWorkers);
+    }
+
 
     /**
      * Returns <code>true</code> if file transfers need to be checked for data integrity. In this case, the checksum of
@@ -462,7 +711,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the integrity of the current file is being verified
      */
     boolean isCheckingIntegrity() {
-        return isCheckingIntegrity;
+        return getCurrentFileSlot().checkingIntegrity;
     }
 
 
@@ -470,14 +719,15 @@ public abstract class TransferFileJob extends FileJob {
      * Interrupts the current file transfer and advance to the next one.
      */
     public synchronized void skipCurrentFile() {
-        if (tlin != null) {
-            LOGGER.debug("skipping current file, closing "+ tlin);
+        TransferSlot slot = getCurrentFileSlot();
+        if (slot.tlin != null) {
+            LOGGER.debug("skipping current file, closing "+ slot.tlin);
 
             // Prevents an error from being reported when the current InputStream is closed
-            currentFileSkipped = true;
+            slot.fileSkipped = true;
 
             // Close the current input stream to interrupt the transfer
-            closeCurrentInputStream();
+            closeInputStream(slot);
         }
 
         // Resume job if currently paused 
@@ -492,7 +742,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the file that is currently being processed has been skipped
      */
     synchronized boolean wasCurrentFileSkipped() {
-        return currentFileSkipped;
+        return getTransferSlot().fileSkipped;
     }
 
     /**
@@ -502,8 +752,10 @@ public abstract class TransferFileJob extends FileJob {
      * @return the percentage of the current file that has been processed
      */
     public float getFilePercentDone() {
-        long currentFileSize = getCurrentFileSize();
-        return currentFileSize <= 0 ? 0 : getCurrentFileByteCounter().getByteCount()/(float)currentFileSize;
+        TransferSlot slot = getCurrentFileSlot();
+        AbstractFile file = getSlotFile(slot);
+        long currentFileSize = file == null ? -1 : file.getSize();
+        return currentFileSize <= 0 ? 0 : slot.fileByteCounter.getByteCount()/(float)currentFileSize;
     }
 
     /**
@@ -512,7 +764,15 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been processed in the current file
      */
     public ByteCounter getCurrentFileByteCounter() {
-        return currentFileByteCounter;
+        return getCurrentFileSlot().fileByteCounter;
+    }
+
+    /**
+     * Resets the number of bytes processed in the file transferred by the calling thread, before retrying its
+     * transfer.
+     */
+    void resetTransferredFileByteCounter() {
+        getTransferSlot().fileByteCounter.reset();
     }
 
     /**
@@ -522,7 +782,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been skipped in the current file
      */
     private ByteCounter getCurrentFileSkippedByteCounter() {
-        return currentFileSkippedByteCounter;
+        return getCurrentFileSlot().fileSkippedByteCounter;
     }
 
     /**
@@ -531,7 +791,8 @@ public abstract class TransferFileJob extends FileJob {
      * @return the size of the file currently being processed, -1 if this information is not available.
      */
     public long getCurrentFileSize() {
-        return getCurrentFile() == null ? -1 : getCurrentFile().getSize();
+        AbstractFile file = getSlotFile(getCurrentFileSlot());
+        return file == null ? -1 : file.getSize();
     }
 
 
@@ -572,8 +833,13 @@ public abstract class TransferFileJob extends FileJob {
         this.throughputLimit = bytesPerSecond <= 0 ? -1 : bytesPerSecond;
 
         synchronized(this) {
-            if (getState() != State.PAUSED && tlin != null) {
-                tlin.setThroughputLimit(throughputLimit);
+            if (getState() != State.PAUSED) {
+                long slotThroughputLimit = getSlotThroughputLimit();
+                for (TransferSlot slot : getAllSlots()) {
+                    if (slot.tlin != null) {
+                        slot.tlin.setThroughputLimit(slotThroughputLimit);
+                    }
+                }
             }
         }
     }
@@ -601,10 +867,12 @@ public abstract class TransferFileJob extends FileJob {
         super.jobStopped();
 
         synchronized(this) {
-            if (tlin !=null) {
-                LOGGER.debug("closing current InputStream "+ tlin);
+            for (TransferSlot slot : getAllSlots()) {
+                if (slot.tlin != null) {
+                    LOGGER.debug("closing current InputStream "+ slot.tlin);
 
-                closeCurrentInputStream();
+                    closeInputStream(slot);
+                }
             }
         }
     }
@@ -619,8 +887,10 @@ public abstract class TransferFileJob extends FileJob {
         super.jobPaused();
 
         synchronized(this) {
-            if (tlin != null)
-                tlin.setThroughputLimit(0);
+            for (TransferSlot slot : getAllSlots()) {
+                if (slot.tlin != null)
+                    slot.tlin.setThroughputLimit(0);
+            }
         }
     }
 
@@ -635,8 +905,11 @@ public abstract class TransferFileJob extends FileJob {
 
         synchronized(this) {
             // Restore previous throughput limit (if any, -1 by default)
-            if (tlin != null) {
-                tlin.setThroughputLimit(throughputLimit);
+            long slotThroughputLimit = getSlotThroughputLimit();
+            for (TransferSlot slot : getAllSlots()) {
+                if (slot.tlin != null) {
+                    slot.tlin.setThroughputLimit(slotThroughputLimit);
+                }
             }
         }
     }
@@ -648,11 +921,11 @@ public abstract class TransferFileJob extends FileJob {
      */
     @Override
     protected void nextFile(AbstractFile file) {
-        totalByteCounter.add(currentFileByteCounter, true);
-        totalSkippedByteCounter.add(currentFileSkippedByteCounter, true);
+        totalByteCounter.add(jobSlot.fileByteCounter, true);
+        totalSkippedByteCounter.add(jobSlot.fileSkippedByteCounter, true);
 
         // Reset some fields that need it
-        currentFileSkipped = false;
+        jobSlot.fileSkipped = false;
 
         super.nextFile(file);
     }
@@ -666,8 +939,10 @@ public abstract class TransferFileJob extends FileJob {
         float nbFilesProcessed = getCurrentFileIndex();
         int nbFiles = getNbFiles();
 
-        // If file is in base folder and is not a directory...
-        if (getCurrentFile() != null && nbFilesProcessed != nbFiles && files.indexOf(getCurrentFile()) >= 0 && !getCurrentFile().isDirectory()) {
+        // If file is in base folder and is not a directory, and is not transferred by a worker thread whose
+        // progress doesn't follow the current file index...
+        if (getCurrentFile() != null && nbFilesProcessed != nbFiles && files.indexOf(getCurrentFile()) >= 0 && !getCurrentFile().isDirectory()
+                && getCurrentFileSlot() == jobSlot) {
             // Add current file's progress
             long currentFileSize = getCurrentFile().getSize();
             if (currentFileSize > 0)
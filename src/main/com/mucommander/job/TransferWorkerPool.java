@@ -0,0 +1,171 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed set of worker threads transferring files on behalf of a {@link TransferFileJob}.
+ *
+ * <p>The job's thread keeps traversing the source files and feeds a bounded queue of transfer tasks, blocking when
+ * the queue is full. Each worker registers itself with the job (see {@link TransferFileJob#registerTransferWorker()})
+ * so that byte counters, pause, throughput limit, skip and stop requests apply to all transfers in progress.</p>
+ */
+class TransferWorkerPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferWorkerPool.class);
+
+    /** Time to wait for a free slot in the queue before checking the job's state again, in milliseconds */
+    private static final long QUEUE_POLL_PERIOD = 100;
+
+    /** Marker telling a worker thread to terminate */
+    private static final Runnable END_OF_TASKS = () -> {};
+
+    private final TransferFileJob job;
+
+    private final BlockingQueue<Runnable> queue;
+
+    /** Number of submitted tasks that have not been processed yet */
+    private int pendingTasks;
+
+
+    /**
+     * Creates and starts a new pool of worker threads.
+     *
+     * @param job the job the files are transferred for
+     * @param nbWorkers number of worker threads
+     * @param queueCapacity maximum number of tasks waiting for a worker
+     */
+    TransferWorkerPool(TransferFileJob job, int nbWorkers, int queueCapacity) {
+        this.job = job;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        for (int i = 0; i < nbWorkers; i++) {
+            Thread worker = new Thread(this::processTasks, job.getClass().getSimpleName() + " worker #" + (i+1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+
+    /**
+     * Queues the transfer of a file, blocking while the queue is full.
+     * The task is not run if the job is interrupted by the time a worker picks it up.
+     *
+     * @param file the file to transfer, reported as the worker's current file
+     * @param task the transfer
+     * @return <code>true</code> if the task has been queued, <code>false</code> if the job was interrupted meanwhile
+     */
+    boolean submit(AbstractFile file, Runnable task) {
+        synchronized (this) {
+            pendingTasks++;
+        }
+        Runnable transfer = () -> {
+            if (job.getState() == FileJob.State.INTERRUPTED) {
+                return;
+            }
+            job.waitWhilePaused();
+            job.transferWorkerFileStarted(file);
+            try {
+                task.run();
+            } finally {
+                job.transferWorkerFileDone();
+            }
+        };
+        try {
+            while (!queue.offer(transfer, QUEUE_POLL_PERIOD, TimeUnit.MILLISECONDS)) {
+                if (job.getState() == FileJob.State.INTERRUPTED) {
+                    taskDone();
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            taskDone();
+            return false;
+        }
+    }
+
+    /**
+     * Blocks until all the submitted tasks have been processed.
+     */
+    synchronized void awaitCompletion() {
+        while (pendingTasks > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Discards the tasks that have not been started yet and terminates the worker threads once they are done
+     * with their current task.
+     */
+    void shutdown() {
+        List<Runnable> discarded = new ArrayList<>();
+        queue.drainTo(discarded);
+        for (int i = 0; i < discarded.size(); i++) {
+            taskDone();
+        }
+        // Each worker passes the marker on to the next one before terminating
+        queue.offer(END_OF_TASKS);
+    }
+
+    private synchronized void taskDone() {
+        pendingTasks--;
+        if (pendingTasks <= 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Worker thread loop.
+     */
+    private void processTasks() {
+        job.registerTransferWorker();
+        try {
+            while (true) {
+                Runnable task = queue.take();
+                if (task == END_OF_TASKS) {
+                    queue.offer(END_OF_TASKS);
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unexpected exception while transferring a file", e);
+                } finally {
+                    taskDone();
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("transfer worker interrupted", e);
+        } finally {
+            job.unregisterTransferWorker();
+        }
+    }
+
+}
@@ -23,6 +23,9 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.ProxyFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.file.util.PathUtils;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.action.ActionManager;
 import com.mucommander.ui.action.impl.UnmarkAllAction;
@@ -39,6 +42,10 @@ import java.util.List;
  * This job unpacks a set of archive files to a base destination folder. Archive entries are extracted in their natural
  * order using {@link com.mucommander.commons.file.AbstractArchiveFile#getEntryIterator()}, to traverse the archive only once
  * and achieve optimal performance.
+ * <p>
+ * Entries of archives that can be read concurrently (see {@link AbstractArchiveFile#isConcurrentEntryReadSupported()})
+ * are extracted by several transfer worker threads, each entry being read through its own stream. The job's thread
+ * still traverses the archive, creates folders and resolves file collisions.
  *
  * @author Maxence Bernard
  */
@@ -53,8 +60,8 @@ public class UnpackJob extends AbstractCopyJob {
     private long totalFilesSize;
     private int totalFilesCount;
 
-    private int processedFilesCount;
-    private long processedFilesSize;
+    private volatile int processedFilesCount;
+    private volatile long processedFilesSize;
     private boolean preparingFinished;
 
     /**
@@ -73,6 +80,7 @@ public class UnpackJob extends AbstractCopyJob {
 
         this.errorDialogTitle = Translator.get("unpack_dialog.error_title");
         this.baseArchiveDepth = 0;
+        setUnpackThreadsFromPreferences();
     }
 
     /**
@@ -94,6 +102,14 @@ public class UnpackJob extends AbstractCopyJob {
         this.errorDialogTitle = Translator.get("unpack_dialog.error_title");
         this.baseArchiveDepth = baseArchiveDepth;
         this.selectedEntries = selectedEntries;
+        setUnpackThreadsFromPreferences();
+    }
+
+    /**
+     * Sets the number of entries extracted concurrently to the value specified in the preferences.
+     */
+    private void setUnpackThreadsFromPreferences() {
+        setTransferThreads(MuConfigurations.getPreferences().getVariable(MuPreference.UNPACK_THREADS, MuPreferences.DEFAULT_UNPACK_THREADS));
     }
 
 
@@ -187,6 +203,9 @@ public class UnpackJob extends AbstractCopyJob {
         // calculate total size and files count
         calculateTotalSize(archiveFile);
 
+        // Regular file entries are extracted by the transfer workers if the archive's entries can be read concurrently
+        boolean concurrentEntries = isParallelTransfer() && archiveFile.isConcurrentEntryReadSupported();
+
         ArchiveEntry entry;
         String entryPath;
         AbstractFile entryFile;
@@ -233,8 +252,10 @@ public class UnpackJob extends AbstractCopyJob {
                     continue;
                 }
 
-                processedFilesCount++;
-                processedFilesSize += entry.getSize();
+                // Entries extracted by a transfer worker are accounted for when the worker starts extracting them
+                if (!concurrentEntries || entry.isDirectory()) {
+                    entryStarted(entry);
+                }
 
                 // Resolve the entry file
                 entryFile = archiveFile.getArchiveEntryFile(entryPath);
@@ -310,10 +331,20 @@ System.out.println(file.getAbsolutePath() + " -> " + file.getCanonicalPath());
                         destParentFile.mkdirs();
                     }
 
+                    if (concurrentEntries) {
+                        // The entry is read without the iterator, through a stream of its own
+                        final ArchiveEntry regularEntry = entry;
+                        final AbstractFile regularDestFile = destFile;
+                        final AbstractFile proxiedEntryFile = new ProxiedEntryFile(entryFile, entry, archiveFile, null);
+                        transferRegularFile(entryFile, () -> {
+                            entryStarted(regularEntry);
+                            return tryCopyFile(proxiedEntryFile, regularDestFile, append, errorDialogTitle);
+                        });
+                    }
                     // The entry is wrapped in a ProxyFile to override #getInputStream() and delegate it to
                     // ArchiveFile#getEntryInputStream in order to take advantage of the ArchiveEntryIterator, which for
                     // some archive file implementations (such as TAR) can speed things by an order of magnitude.
-                    if (!tryCopyFile(new ProxiedEntryFile(entryFile, entry, archiveFile, iterator), destFile, append, errorDialogTitle)) {
+                    else if (!tryCopyFile(new ProxiedEntryFile(entryFile, entry, archiveFile, iterator), destFile, append, errorDialogTitle)) {
                         // !!! we don't need to break the process in this case
 //                        return false;
                     }
@@ -377,6 +408,16 @@ System.out.println(file.getAbsolutePath() + " -> " + file.getCanonicalPath());
     }
 
 
+    /**
+     * Accounts for an entry whose extraction is starting, either on the job's thread or on a transfer worker.
+     *
+     * @param entry the entry being extracted
+     */
+    private synchronized void entryStarted(ArchiveEntry entry) {
+        processedFilesCount++;
+        processedFilesSize += entry.getSize();
+    }
+
     private void calculateTotalSize(AbstractArchiveFile archiveFile) {
         totalFilesSize = 0;
         totalFilesCount = 0;
@@ -17,25 +17,21 @@
  */
 package com.mucommander.ui.action.impl;
 
-import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FolderComparator;
 import com.mucommander.ui.action.AbstractActionDescriptor;
 import com.mucommander.ui.action.ActionCategory;
 import com.mucommander.ui.action.ActionDescriptor;
 import com.mucommander.ui.action.MuAction;
 import com.mucommander.ui.main.MainFrame;
-import com.mucommander.ui.main.table.FileTable;
-import com.mucommander.ui.main.table.views.BaseFileTableModel;
 
 import javax.swing.KeyStroke;
 import java.awt.event.KeyEvent;
-import java.io.IOException;
-import java.io.InputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 
 /**
  * This action compares the content of the 2 MainFrame's file tables and marks the files with different size or content.
+ * Sub-folders are compared recursively and marked if any file they contain differs. The comparison runs in background,
+ * see {@link CompareFoldersWorker}.
  * <p>
  * Created on 10/07/17.
  *
@@ -44,77 +40,21 @@ import java.util.Map;
 
 public class CompareFolderFilesAction extends MuAction {
 
+    /** The running comparison, cancelled when the action is performed again */
+    private CompareFoldersWorker worker;
+
     CompareFolderFilesAction(MainFrame mainFrame, Map<String, Object> properties) {
         super(mainFrame, properties);
     }
 
     @Override
     public void performAction() {
-        FileTable activeTable = mainFrame.getActiveTable();
-        FileTable inactiveTableTable = mainFrame.getInactiveTable();
-
-        BaseFileTableModel activeTableModel = activeTable.getFileTableModel();
-        BaseFileTableModel inactiveTableModel = inactiveTableTable.getFileTableModel();
-
-        if (compare(activeTableModel, inactiveTableModel)) {
-            activeTable.repaint();
-        }
-
-        // Notify registered listeners that currently marked files have changed on the file tables
-        activeTable.fireMarkedFilesChangedEvent();
-    }
-
-    private boolean compare(BaseFileTableModel firstTableModel, BaseFileTableModel secondTableModel) {
-        boolean result = false;
-        int nbFilesFirst = firstTableModel.getFileCount();
-        int nbFilesSecond = secondTableModel.getFileCount();
-
-        MessageDigest digest;
-        try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            return false;
-        }
-        for (int i = 0; i < nbFilesFirst; i++) {
-            AbstractFile tempFile = firstTableModel.getFileAt(i);
-            if (tempFile.isDirectory()) {
-                continue;
-            }
-
-            String tempFileName = tempFile.getName();
-            int fileIndex = -1;
-            for (int j = 0; j < nbFilesSecond; j++) {
-                if (secondTableModel.getFileAt(j).getName().equals(tempFileName)) {
-                    fileIndex = j;
-                    break;
-                }
-            }
-            if (fileIndex < 0 || !checkEqual(digest, secondTableModel.getFileAt(fileIndex), tempFile)) {
-                firstTableModel.setFileMarked(tempFile, true);
-                result = true;
-            }
-        }
-        return result;
-    }
-
-    private boolean checkEqual(MessageDigest digest, AbstractFile file1, AbstractFile file2) {
-        if (file1.getSize() != file2.getSize()) {
-            return false;
-        }
-        String checksum1 = getChecksum(digest, file1);
-        String checksum2 = getChecksum(digest, file2);
-        return checksum1 != null && checksum1.equals(checksum2);
-    }
-
-    private String getChecksum(MessageDigest digest, AbstractFile file) {
-        digest.reset();
-        try (InputStream is = file.getInputStream()) {
-            return AbstractFile.calculateChecksum(is, digest);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+        if (worker != null) {
+            worker.cancelComparison();
         }
+        FolderComparator comparator = new FolderComparator(FolderComparator.Mode.CONTENT, true);
+        worker = new CompareFoldersWorker(mainFrame, getLabel(), comparator, mainFrame.getActiveTable());
+        worker.execute();
     }
 
     @Override
@@ -18,14 +18,13 @@
 
 package com.mucommander.ui.action.impl;
 
-import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FolderComparator;
 import com.mucommander.ui.action.AbstractActionDescriptor;
 import com.mucommander.ui.action.ActionCategory;
 import com.mucommander.ui.action.ActionDescriptor;
 import com.mucommander.ui.action.MuAction;
 import com.mucommander.ui.main.MainFrame;
 import com.mucommander.ui.main.table.FileTable;
-import com.mucommander.ui.main.table.views.BaseFileTableModel;
 
 import javax.swing.KeyStroke;
 import java.awt.event.KeyEvent;
@@ -33,11 +32,15 @@ import java.util.Map;
 
 /**
  * This action compares the content of the 2 MainFrame's file tables and marks the files that are different.
+ * The comparison runs in background, see {@link CompareFoldersWorker}.
  *
  * @author Maxence Bernard
  */
 public class CompareFoldersAction extends MuAction {
 
+    /** The running comparison, cancelled when the action is performed again */
+    private CompareFoldersWorker worker;
+
     CompareFoldersAction(MainFrame mainFrame, Map<String, Object> properties) {
         super(mainFrame, properties);
     }
@@ -47,45 +50,12 @@ public class CompareFoldersAction extends MuAction {
         FileTable leftTable = mainFrame.getLeftPanel().getFileTable();
         FileTable rightTable = mainFrame.getRightPanel().getFileTable();
 
-        BaseFileTableModel leftTableModel = leftTable.getFileTableModel();
-        BaseFileTableModel rightTableModel = rightTable.getFileTableModel();
-        if (compare(leftTableModel, rightTableModel)) {
-            leftTable.repaint();
-        }
-        if (compare(rightTableModel, leftTableModel)) {
-            rightTable.repaint();
-        }
-
-        // Notify registered listeners that currently marked files have changed on the file tables
-        leftTable.fireMarkedFilesChangedEvent();
-        rightTable.fireMarkedFilesChangedEvent();
-    }
-
-    private boolean compare(BaseFileTableModel firstTableModel, BaseFileTableModel secondTableModel) {
-        boolean result = false;
-        int nbFilesFirst = firstTableModel.getFileCount();
-        int nbFilesSecond = secondTableModel.getFileCount();
-
-        for (int i = 0; i < nbFilesFirst; i++) {
-            AbstractFile tempFile = firstTableModel.getFileAt(i);
-            if (tempFile.isDirectory()) {
-                continue;
-            }
-
-            String tempFileName = tempFile.getName();
-            int fileIndex = -1;
-            for (int j = 0; j < nbFilesSecond; j++) {
-                if (secondTableModel.getFileAt(j).getName().equals(tempFileName)) {
-                    fileIndex = j;
-                    break;
-                }
-            }
-            if (fileIndex < 0 || secondTableModel.getFileAt(fileIndex).getLastModifiedDate() < tempFile.getLastModifiedDate()) {
-                firstTableModel.setFileMarked(tempFile, true);
-                result = true;
-            }
+        if (worker != null) {
+            worker.cancelComparison();
         }
-        return result;
+        FolderComparator comparator = new FolderComparator(FolderComparator.Mode.DATE, false);
+        worker = new CompareFoldersWorker(mainFrame, getLabel(), comparator, leftTable, rightTable);
+        worker.execute();
     }
 
     @Override
@@ -0,0 +1,154 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.action.impl;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FolderComparator;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.statusbar.TaskWidget;
+import com.mucommander.ui.main.table.FileTable;
+import com.mucommander.ui.main.table.views.BaseFileTableModel;
+
+import javax.swing.SwingWorker;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Compares the files of a file table with the files of the opposite table in background, then marks the files that
+ * differ. The progress is shown in the status bar.
+ *
+ * <p>The tables are left untouched if their folder has changed by the time the comparison is over.</p>
+ */
+class CompareFoldersWorker extends SwingWorker<Void, Void> {
+
+    /** Interval between two progress updates, in milliseconds */
+    private static final int PROGRESS_INTERVAL = 300;
+
+    private final MainFrame mainFrame;
+    private final FolderComparator comparator;
+    private final TaskWidget taskWidget;
+    private boolean taskWidgetAttached;
+
+    private final FileTable[] tables;
+    private final AbstractFile[] folders;
+    private final AbstractFile[][] files;
+    private final AbstractFile[][] otherFiles;
+    private final List<Set<String>> differentFiles;
+
+    /**
+     * Creates a new worker, must be called from the event dispatch thread.
+     *
+     * @param mainFrame the frame containing the tables
+     * @param label the text shown in the status bar
+     * @param comparator compares the files of the tables
+     * @param tables the tables whose different files are marked
+     */
+    CompareFoldersWorker(MainFrame mainFrame, String label, FolderComparator comparator, FileTable... tables) {
+        this.mainFrame = mainFrame;
+        this.comparator = comparator;
+        this.tables = tables;
+        this.taskWidget = new TaskWidget();
+        taskWidget.setText(label);
+
+        FileTable leftTable = mainFrame.getLeftPanel().getFileTable();
+        FileTable rightTable = mainFrame.getRightPanel().getFileTable();
+        folders = new AbstractFile[tables.length];
+        files = new AbstractFile[tables.length][];
+        otherFiles = new AbstractFile[tables.length][];
+        differentFiles = new ArrayList<>(Collections.nCopies(tables.length, null));
+        for (int i = 0; i < tables.length; i++) {
+            FileTable otherTable = tables[i] == leftTable ? rightTable : leftTable;
+            BaseFileTableModel model = tables[i].getFileTableModel();
+            folders[i] = model.getCurrentFolder();
+            files[i] = model.getFiles();
+            otherFiles[i] = otherTable.getFileTableModel().getFiles();
+        }
+    }
+
+    /**
+     * Stops the comparison, no file will be marked.
+     */
+    void cancelComparison() {
+        comparator.cancel();
+        cancel(false);
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        for (int i = 0; i < tables.length && !isCancelled(); i++) {
+            ForkJoinTask<Set<String>> task = comparator.compare(files[i], otherFiles[i]);
+            while (true) {
+                try {
+                    differentFiles.set(i, task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS));
+                    break;
+                } catch (TimeoutException e) {
+                    publish();
+                } catch (ExecutionException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void process(List<Void> chunks) {
+        if (!taskWidgetAttached) {
+            mainFrame.getStatusBar().getTaskPanel().addTask(taskWidget);
+            mainFrame.getStatusBar().revalidate();
+            mainFrame.getStatusBar().repaint();
+            taskWidgetAttached = true;
+        }
+        taskWidget.setProgress(comparator.getProgress());
+    }
+
+    @Override
+    protected void done() {
+        taskWidget.removeFromPanel();
+        if (isCancelled()) {
+            return;
+        }
+        for (int i = 0; i < tables.length; i++) {
+            BaseFileTableModel model = tables[i].getFileTableModel();
+            Set<String> different = differentFiles.get(i);
+            if (different == null || !folders[i].equals(model.getCurrentFolder())) {
+                continue;
+            }
+            boolean marked = false;
+            int nbFiles = model.getFileCount();
+            for (int index = 0; index < nbFiles; index++) {
+                AbstractFile file = model.getFileAt(index);
+                if (file != null && different.contains(file.getName())) {
+                    model.setFileMarked(index, true);
+                    marked = true;
+                }
+            }
+            if (marked) {
+                tables[i].repaint();
+            }
+            // Notify registered listeners that currently marked files have changed on the file table
+            tables[i].fireMarkedFilesChangedEvent();
+        }
+    }
+}
@@ -65,7 +65,7 @@ public class InternalViewAction extends AbstractViewerAction {
         if (file.isDirectory()) {
             FileTable activeTable = mainFrame.getActiveTable();
             BaseFileTableModel fileTableModel = (BaseFileTableModel) activeTable.getModel();
-            fileTableModel.startDirectorySizeCalculation(activeTable, file);
+            fileTableModel.startDirectorySizeCalculation(activeTable, file, true);
         } else {
             ViewerRegistrar.createViewerFrame(mainFrame, file, getIcon().getImage());
         }
@@ -26,13 +26,14 @@ import com.mucommander.commons.io.security.MuProvider;
 import com.mucommander.job.CalculateChecksumJob;
 import com.mucommander.ui.action.ActionProperties;
 import com.mucommander.ui.action.impl.CalculateChecksumAction;
-import com.mucommander.ui.combobox.MuComboBox;
 import com.mucommander.ui.dialog.DialogToolkit;
 import com.mucommander.ui.layout.YBoxPanel;
 import com.mucommander.ui.main.MainFrame;
 import com.mucommander.ui.text.FilePathField;
 
 import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
@@ -44,19 +45,23 @@ import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
- * This dialog prepares a {@link com.mucommander.job.CalculateChecksumJob} and lets the user choose a checksum
- * algorithm, and a destination for the checksum file.
+ * This dialog prepares a {@link com.mucommander.job.CalculateChecksumJob} and lets the user choose one or several
+ * checksum algorithms, and a destination for the checksum files. When several algorithms are chosen, the destination
+ * is a folder where checksum files are created under their standard names.
  *
  * @author Maxence Bernard
  */
-public class CalculateChecksumDialog extends JobDialog implements ActionListener, ItemListener {
+public class CalculateChecksumDialog extends JobDialog implements ActionListener, ItemListener, ListSelectionListener {
 
-    private MuComboBox<String> algorithmComboBox = new MuComboBox<>();
+    private JList<String> algorithmList;
     private JRadioButton specificLocationRadioButton;
     private JTextField specificLocationTextField;
     private JButton okButton;
@@ -67,8 +72,11 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
     /** Default checksum algorithm (most commonly used) */
     private final static String DEFAULT_ALGORITHM = "MD5";
 
-    /** Last algorithm used, saved after validation of this dialog */
-    private static String lastUsedAlgorithm = DEFAULT_ALGORITHM;
+    /** Number of algorithms visible at once in the list */
+    private final static int VISIBLE_ALGORITHMS = 8;
+
+    /** Last algorithms used, saved after validation of this dialog */
+    private static List<String> lastUsedAlgorithms = Collections.singletonList(DEFAULT_ALGORITHM);
 
     /** Dialog size constraints */
     private final static Dimension MINIMUM_DIALOG_DIMENSION = new Dimension(320,0);
@@ -103,21 +111,31 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         messageDigests = new MessageDigest[algorithmSortedSet.size()];
         algorithmSortedSet.toArray(messageDigests);
 
-        // Add the sorted list of algorithms to a combo box to let the user choose one
-        for (MessageDigest messageDigest : messageDigests) {
-            algorithmComboBox.addItem(messageDigest.getAlgorithm());
+        // Add the sorted list of algorithms to a list to let the user choose one or several
+        String[] algorithms = new String[messageDigests.length];
+        for (int i = 0; i < messageDigests.length; i++) {
+            algorithms[i] = messageDigests[i].getAlgorithm();
         }
-
-        // Select the last used algorithm (if any), or the default algorithm
-        algorithmComboBox.setSelectedItem(lastUsedAlgorithm);
-        algorithmComboBox.addItemListener(this);
+        algorithmList = new JList<>(algorithms);
+        algorithmList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        algorithmList.setVisibleRowCount(VISIBLE_ALGORITHMS);
+
+        // Select the last used algorithms (if any), or the default algorithm
+        for (int i = 0; i < algorithms.length; i++) {
+            if (lastUsedAlgorithms.contains(algorithms[i])) {
+                algorithmList.addSelectionInterval(i, i);
+            }
+        }
+        algorithmList.ensureIndexIsVisible(Math.max(0, algorithmList.getMinSelectionIndex()));
+        algorithmList.addListSelectionListener(this);
 
         FlowLayout flowLayout = new FlowLayout(FlowLayout.LEADING, 0, 0);
         JPanel tempPanel = new JPanel(flowLayout);
-        tempPanel.add(new JLabel(i18n("calculate_checksum_dialog.checksum_algorithm")+" : "));
-        tempPanel.add(algorithmComboBox);
+        tempPanel.add(new JLabel(i18n("calculate_checksum_dialog.checksum_algorithm")+" :"));
 
         mainPanel.add(tempPanel);
+        mainPanel.addSpace(5);
+        mainPanel.add(new JScrollPane(algorithmList));
         mainPanel.addSpace(10);
 
         // create the components that allow to choose where the checksum file should be created
@@ -134,7 +152,7 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         specificLocationRadioButton.addItemListener(this);
         
         // create a path field with auto-completion capabilities
-        specificLocationTextField = new FilePathField(getChecksumFilename(lastUsedAlgorithm));
+        specificLocationTextField = new FilePathField(getDestinationText());
         specificLocationTextField.setEnabled(false);
         tempPanel.add(specificLocationTextField, BorderLayout.CENTER);
 
@@ -165,7 +183,7 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         getContentPane().add(mainPanel);
 
         // Give initial keyboard focus to the 'Delete' button
-        setInitialFocusComponent(algorithmComboBox);
+        setInitialFocusComponent(algorithmList);
 
         // Call dispose() when dialog is closed
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
@@ -176,12 +194,28 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
     }
 
     /**
-     * Returns the MessageDigest instance corresponding to the currently selected algorithm.
+     * Returns the MessageDigest instances corresponding to the currently selected algorithms.
+     *
+     * @return the MessageDigest instances corresponding to the currently selected algorithms.
+     */
+    private MessageDigest[] getSelectedMessageDigests() {
+        int[] indices = algorithmList.getSelectedIndices();
+        MessageDigest[] result = new MessageDigest[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            result[i] = messageDigests[indices[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the default destination for the currently selected algorithms: the standard checksum filename if
+     * a single algorithm is selected, an empty path, i.e. the current folder, otherwise.
      *
-     * @return the MessageDigest instance corresponding to the currently selected algorithm.
+     * @return the default destination for the selected algorithms
      */
-    private MessageDigest getSelectedMessageDigest() {
-        return messageDigests[algorithmComboBox.getSelectedIndex()];
+    private String getDestinationText() {
+        MessageDigest[] digests = getSelectedMessageDigests();
+        return digests.length == 1 ? getChecksumFilename(digests[0].getAlgorithm()) : "";
     }
 
     /**
@@ -227,11 +261,17 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
             return;
         }
         try {
-            MessageDigest digest = getSelectedMessageDigest();
-            String algorithm = digest.getAlgorithm();
-            AbstractFile checksumFile;
+            MessageDigest[] digests = getSelectedMessageDigests();
+            if (digests.length == 0) {
+                return;
+            }
+            List<String> algorithms = new ArrayList<>();
+            for (MessageDigest digest : digests) {
+                algorithms.add(digest.getAlgorithm());
+            }
+            AbstractFile[] checksumFiles = new AbstractFile[digests.length];
 
-            // Resolve the destination checksum file
+            // Resolve the destination checksum files
 
             if (specificLocationRadioButton.isSelected()) {
                 // User-defined checksum file
@@ -244,21 +284,31 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
                     return;
                 }
 
-                checksumFile = resolvedDest.getDestinationFile();
-                if (resolvedDest.getDestinationType()==PathUtils.ResolvedDestination.EXISTING_FOLDER) {
-                    checksumFile = checksumFile.getDirectChild(getChecksumFilename(algorithm));
+                boolean existingFolder = resolvedDest.getDestinationType()==PathUtils.ResolvedDestination.EXISTING_FOLDER;
+                if (existingFolder) {
+                    for (int i = 0; i < digests.length; i++) {
+                        checksumFiles[i] = resolvedDest.getDestinationFile().getDirectChild(getChecksumFilename(algorithms.get(i)));
+                    }
+                } else if (digests.length == 1) {
+                    checksumFiles[0] = resolvedDest.getDestinationFile();
+                } else {
+                    // Several checksum files can only be created in a folder
+                    showErrorDialog(i18n("invalid_path", enteredPath));
+                    return;
                 }
             } else {
-                // Temporary file
-                checksumFile = FileFactory.getTemporaryFile(getChecksumFilename(algorithm), true);
+                // Temporary files
+                for (int i = 0; i < digests.length; i++) {
+                    checksumFiles[i] = FileFactory.getTemporaryFile(getChecksumFilename(algorithms.get(i)), true);
+                }
             }
 
-            // Save the algorithm that was used for the next time this dialog is invoked
-            lastUsedAlgorithm = algorithm;
+            // Save the algorithms that were used for the next time this dialog is invoked
+            lastUsedAlgorithms = algorithms;
 
             // Start processing files
             ProgressDialog progressDialog = new ProgressDialog(mainFrame, i18n("properties_dialog.calculating"));
-            CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFile, digest);
+            CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFiles, digests);
             progressDialog.start(job);
         } catch (IOException ex) {
             // Note: FileFactory.getTemporaryFile() should never throw an IOException
@@ -279,8 +329,19 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
             // Enables/disables the text field when the corresponding radio button's selected state has changed.
             specificLocationTextField.setEnabled(specificLocationRadioButton.isSelected());
             specificLocationTextField.requestFocus();
-        } else if (source == algorithmComboBox) {
-            specificLocationTextField.setText(getChecksumFilename(getSelectedMessageDigest().getAlgorithm()));
         }
     }
+
+
+    //////////////////////////////////////////
+    // ListSelectionListener implementation //
+    //////////////////////////////////////////
+
+    public void valueChanged(ListSelectionEvent e) {
+        if (e.getValueIsAdjusting()) {
+            return;
+        }
+        specificLocationTextField.setText(getDestinationText());
+        okButton.setEnabled(!algorithmList.isSelectionEmpty());
+    }
 }
@@ -99,22 +99,29 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
     private ListDataIntelliHints textHints, hexHints;
     private UpdateRunner updateRunner;
 
-    private class UpdateRunner extends SwingWorker<List<AbstractFile>, AbstractFile> {
+    /**
+     * Receives the matches from the job's threads and adds them to the list on the event dispatch thread,
+     * until the job is finished.
+     */
+    private class UpdateRunner extends SwingWorker<List<AbstractFile>, AbstractFile> implements FindFileJob.ResultListener {
 
         @Override
         protected List<AbstractFile> doInBackground() throws Exception {
             btnNewSearch.setEnabled(false);
             while (job != null && job.getState() != FileJob.State.FINISHED) {
-                checkUpdates();
                 try {
                     Thread.sleep(REFRESH_RATE);
                 } catch(InterruptedException ignore) {}
             }
-            checkUpdates();
             job = null;
             return null;
         }
 
+        @Override
+        public void fileFound(AbstractFile file) {
+            publish(file);
+        }
+
         @Override
         protected void done() {
             showProgress(false);
@@ -124,26 +131,14 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
 
         @Override
         protected void process(List<AbstractFile> chunks) {
-            for (AbstractFile f : chunks) {
-                if (isCancelled()) {
-                    break;
-                }
-                listModel.addElement(f);
-                updateResultLabel();
-            }
-        }
-
-        private void checkUpdates() {
-            if (job == null) {
+            // Ignore the matches of a stopped search that arrive after a new search was started
+            if (isCancelled() || listModel == null || updateRunner != this) {
                 return;
             }
-            final List<AbstractFile> jobResults = job.getResults();
-            synchronized (job) {
-                for (int i = listModel.size(); i < jobResults.size(); i++) {
-                    AbstractFile f = jobResults.get(i);
-                    publish(f);
-                }
+            for (AbstractFile f : chunks) {
+                listModel.addElement(f);
             }
+            updateResultLabel();
         }
 
     }
@@ -386,9 +381,10 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
                 cbCaseSensitive.isSelected(), cbIgnoreHidden.isSelected(), cbEncoding.getSelectedItem().toString(),
                 cbSearchHex.isSelected(), cbSearchHex.isSelected() ? edtText.getBytes() : null);
         updateResultLabel();
+        updateRunner = new UpdateRunner();
+        job.setResultListener(updateRunner);
         job.start();
         updateButtons();
-        updateRunner = new UpdateRunner();
         updateRunner.execute();
     }
 
@@ -46,7 +46,7 @@ public class FindFileResultRenderer implements ListCellRenderer<AbstractFile> {
         final int selectedIndex = isSelected ? ThemeCache.SELECTED : ThemeCache.NORMAL;
         final int colorIndex = getColorIndex(value);
 
-        cellLabel.setIcon(FileIconsCache.getInstance().getIcon(value));
+        cellLabel.setIcon(FileIconsCache.getInstance().getIcon(value, list));
 
         String text = value.getAbsolutePath();
         Color foregroundColor;
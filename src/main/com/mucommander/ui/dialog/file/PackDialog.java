@@ -53,12 +53,17 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
 	
     private JTextArea commentArea;
 
+    private JCheckBox cbParallelCompression;
+
     /** Used to keep track of the last selected archive format. */
     private int lastFormatIndex;
 
     /** Last archive format used (Zip initially), selected by default when this dialog is created */
     private static ArchiveFormat lastFormat = ArchiveFormat.ZIP;
 
+    /** Whether the last archive was compressed using all processor cores, selected by default when this dialog is created */
+    private static boolean lastParallelCompression = true;
+
 
     public PackDialog(MainFrame mainFrame, FileSet files) {
         super(mainFrame, files, ActionProperties.getActionLabel(PackAction.Descriptor.ACTION_ID), i18n("pack_dialog_description"), i18n("pack"), i18n("pack_dialog.error_title"), false);
@@ -105,6 +110,11 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
         commentArea.setRows(4);
         mainPanel.add(commentArea);
 
+        cbParallelCompression = new JCheckBox(i18n("pack_dialog.parallel_compression"));
+        cbParallelCompression.setSelected(lastParallelCompression);
+        cbParallelCompression.setEnabled(Archiver.supportsParallelCompression(lastFormat));
+        mainPanel.add(cbParallelCompression);
+
         cbBackgroundMode = new JCheckBox(i18n("destination_dialog.background_mode"));
         cbBackgroundMode.setSelected(enableBackgroundMode);
         mainPanel.add(cbBackgroundMode);
@@ -140,8 +150,10 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
     protected TransferFileJob createTransferFileJob(ProgressDialog progressDialog, PathUtils.ResolvedDestination resolvedDest, int defaultFileExistsAction) {
         // Remember last format used, for next time this dialog is invoked
         lastFormat = formats[formatsComboBox.getSelectedIndex()];
+        lastParallelCompression = cbParallelCompression.isSelected();
 
-        return new ArchiveJob(progressDialog, mainFrame, files, resolvedDest.getDestinationFile(), lastFormat, Archiver.formatSupportsComment(lastFormat)?commentArea.getText():null);
+        int nbCompressionThreads = lastParallelCompression ? Runtime.getRuntime().availableProcessors() : 1;
+        return new ArchiveJob(progressDialog, mainFrame, files, resolvedDest.getDestinationFile(), lastFormat, Archiver.formatSupportsComment(lastFormat)?commentArea.getText():null, nbCompressionThreads);
     }
 
     @Override
@@ -198,6 +210,7 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
             }
 
             commentArea.setEnabled(Archiver.formatSupportsComment(formats[formatsComboBox.getSelectedIndex()]));
+            cbParallelCompression.setEnabled(Archiver.supportsParallelCompression(formats[formatsComboBox.getSelectedIndex()]));
             lastFormatIndex = newFormatIndex;
         }
 
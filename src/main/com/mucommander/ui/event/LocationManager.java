@@ -20,6 +20,7 @@ package com.mucommander.ui.event;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.impl.CachedFile;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.GlobalLocationHistory;
 import com.mucommander.ui.main.ConfigurableFolderFilter;
@@ -80,7 +81,8 @@ public class LocationManager {
         LOGGER.trace("calling ls()");
         AbstractFile[] children;
         try {
-            children = folder.ls(configurableFolderFilter);
+            // Children are listed as CachedFile instances, local ones being pre-populated with their attributes
+            children = CachedFile.ls(folder, configurableFolderFilter);
         } catch (Exception e) {
             LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
             children = new AbstractFile[0];
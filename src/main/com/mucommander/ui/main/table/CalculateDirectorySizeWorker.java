@@ -21,12 +21,18 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.ui.main.table.views.BaseFileTableModel;
 
 import javax.swing.SwingWorker;
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Oleg Trifonov
  * Created on 09/01/14.
+ *
+ * Calculates the size of a folder with the {@link DirectorySizeCalculator} and reports it to the table model.
  */
 public class CalculateDirectorySizeWorker extends SwingWorker<Long, Long> {
     /** Refresh rate in milliseconds  */
@@ -35,29 +41,42 @@ public class CalculateDirectorySizeWorker extends SwingWorker<Long, Long> {
     private final BaseFileTableModel fileTableModel;
     private final AbstractFile path;
     private final FileTable table;
-    private long size;
-    private long lastRefreshTime;
+    private final boolean useCache;
+    private volatile long size;
 
-    public CalculateDirectorySizeWorker(BaseFileTableModel fileTableModel, FileTable table, AbstractFile path) {
+    public CalculateDirectorySizeWorker(BaseFileTableModel fileTableModel, FileTable table, AbstractFile path, boolean useCache) {
         this.fileTableModel = fileTableModel;
         this.table = table;
         this.path = path;
+        this.useCache = useCache;
     }
 
     @Override
     protected Long doInBackground() throws Exception {
         size = 0;
-        try {
-            calcDirectorySize(path);
-        } catch (Exception e) {
-            e.printStackTrace();
-            size = -1;
+        LongAdder progress = new LongAdder();
+        ForkJoinTask<Long> task = DirectorySizeCalculator.calculate(path, useCache, progress, this::isCancelled);
+        while (true) {
+            try {
+                size = task.get(REFRESH_RATE_MS, TimeUnit.MILLISECONDS);
+                return size;
+            } catch (TimeoutException e) {
+                size = progress.sum();
+                publish(size);
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                size = -1;
+                return size;
+            }
         }
-        return size;
     }
 
     @Override
     protected void done() {
+        if (isCancelled()) {
+            // The calculation has been stopped by the table model, which doesn't expect a result anymore
+            return;
+        }
         fileTableModel.addProcessedDirectory(path, table, size, true);
         fileTableModel.fillCellCache();
         table.repaint();
@@ -71,37 +90,6 @@ public class CalculateDirectorySizeWorker extends SwingWorker<Long, Long> {
         table.updateSelectedFilesStatusBar();
     }
 
-    private void calcDirectorySize(AbstractFile path) throws IOException {
-        if (isCancelled()) {
-            return;
-        }
-        long tm = System.currentTimeMillis();
-        if (tm - lastRefreshTime > REFRESH_RATE_MS) {
-            lastRefreshTime = tm;
-            publish(size);
-        }
-        if (path.isSymlink() && path != this.path) {
-            return;
-        }
-        AbstractFile[] childs;
-        try {
-            childs = path.ls();
-        } catch (IOException e) {
-            return;
-        }
-        for (AbstractFile f : childs) {
-            if (isCancelled()) {
-                return;
-            }
-            if (f.isDirectory()) {
-                calcDirectorySize(f);
-            } else if (!f.isSymlink()) {
-                size += f.getSize();
-            }
-        }
-
-    }
-
 
     public AbstractFile getFile() {
         return path;
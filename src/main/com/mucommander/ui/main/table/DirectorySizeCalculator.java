@@ -0,0 +1,153 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.main.table;
+
+import com.mucommander.cache.DirectorySizeCache;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Calculates the size of folders in a fork-join pool shared by all the file panels.
+ *
+ * <p>The sub-folders of local folders are traversed in parallel, the ones of other folders are traversed one at a time
+ * so as to not open many connections to the same server. The size of every traversed folder is stored in
+ * the {@link DirectorySizeCache}, and cached sizes are used instead of traversing folders again.</p>
+ */
+public class DirectorySizeCalculator {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    private DirectorySizeCalculator() {
+    }
+
+    /**
+     * Starts calculating the total size of the files located under the given folder. Symbolic links found in
+     * the folder are not followed.
+     *
+     * @param folder the folder to calculate the size of
+     * @param useCache <code>false</code> to ignore cached sizes and traverse the whole tree
+     * @param progress receives the size of the files as they're counted
+     * @param cancelled checked before a folder is listed, the calculation stops once it returns <code>true</code>
+     * @return the running calculation, whose result is the size of the folder
+     */
+    public static ForkJoinTask<Long> calculate(AbstractFile folder, boolean useCache, LongAdder progress, BooleanSupplier cancelled) {
+        boolean parallel = FileProtocols.FILE.equals(folder.getURL().getScheme());
+        return POOL.submit(new SizeTask(folder, new Context(useCache, parallel, progress, cancelled)));
+    }
+
+
+    /**
+     * State shared by the tasks of a calculation
+     */
+    private static class Context {
+        final boolean useCache;
+        final boolean parallel;
+        final LongAdder progress;
+        final BooleanSupplier cancelled;
+
+        Context(boolean useCache, boolean parallel, LongAdder progress, BooleanSupplier cancelled) {
+            this.useCache = useCache;
+            this.parallel = parallel;
+            this.progress = progress;
+            this.cancelled = cancelled;
+        }
+    }
+
+
+    /**
+     * Calculates the size of a folder, forking a task for each sub-folder
+     */
+    private static class SizeTask extends RecursiveTask<Long> {
+        private final AbstractFile folder;
+        private final Context context;
+
+        /** <code>true</code> if all the sub-folders could be listed, only complete sizes are cached */
+        private boolean complete;
+
+        SizeTask(AbstractFile folder, Context context) {
+            this.folder = folder;
+            this.context = context;
+        }
+
+        @Override
+        protected Long compute() {
+            if (context.cancelled.getAsBoolean()) {
+                return 0L;
+            }
+            DirectorySizeCache cache = DirectorySizeCache.getInstance();
+            if (context.useCache) {
+                Long cachedSize = cache.get(folder);
+                if (cachedSize != null) {
+                    context.progress.add(cachedSize);
+                    complete = true;
+                    return cachedSize;
+                }
+            }
+            AbstractFile[] children;
+            try {
+                children = folder.ls();
+            } catch (IOException e) {
+                return 0L;
+            }
+            long size = 0;
+            List<SizeTask> subtasks = new ArrayList<>();
+            for (AbstractFile child : children) {
+                if (child.isSymlink()) {
+                    continue;
+                }
+                if (child.isDirectory()) {
+                    subtasks.add(new SizeTask(child, context));
+                } else {
+                    long fileSize = child.getSize();
+                    if (fileSize > 0) {
+                        size += fileSize;
+                    }
+                }
+            }
+            context.progress.add(size);
+
+            boolean allComplete = true;
+            if (context.parallel) {
+                invokeAll(subtasks);
+                for (SizeTask subtask : subtasks) {
+                    size += subtask.join();
+                    allComplete &= subtask.complete;
+                }
+            } else {
+                for (SizeTask subtask : subtasks) {
+                    size += subtask.compute();
+                    allComplete &= subtask.complete;
+                }
+            }
+            if (allComplete && !context.cancelled.getAsBoolean()) {
+                cache.put(folder, size);
+                complete = true;
+            }
+            return size;
+        }
+    }
+}
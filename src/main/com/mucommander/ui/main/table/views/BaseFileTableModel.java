@@ -17,6 +17,7 @@
  */
 package com.mucommander.ui.main.table.views;
 
+import com.mucommander.cache.DirectorySizeCache;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.impl.CachedFile;
@@ -57,6 +58,9 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     /** SizeFormat format used to create the size column's string */
     protected static int sizeFormat;
 
+    /** Listings with at least that many files have their sort keys computed in parallel */
+    private static final int PARALLEL_SORT_THRESHOLD = 10000;
+
     /** Contains sort-related variables */
     private SortInfo sortInfo;
 
@@ -93,6 +97,9 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     /** Tasks queue for directory size calculate */
     protected final List<AbstractFile> calculateSizeQueue = new LinkedList<>();
 
+    /** Queued directories whose size must be calculated again instead of being taken from the cache */
+    private final Set<AbstractFile> recalculatedDirectories = new HashSet<>();
+
     /** Worker to calculate directories sizes */
     private CalculateDirectorySizeWorker calculateDirectorySizeWorker;
 
@@ -105,8 +112,6 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     /** Here will be stored sizes of directories calculated by F3 command */
     protected final Map<AbstractFile, Long> directorySizes = new HashMap<>();
 
-    private FileComparator fileComparator;
-
     /*
      * First visible row
      */
@@ -161,6 +166,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         this.nbFilesMarked = model.nbFilesMarked;
         this.fileMarked = model.fileMarked;
         stopSizeCalculation();
+        loadCachedDirectorySizes();
     }
 
     /**
@@ -285,11 +291,39 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
 
     /**
      * Sorts rows by the current criterion, ascending/descending order and 'folders first' value.
-     */
-    public synchronized void sortRows() {
-        this.fileComparator = createFileComparator(sortInfo);
-        sort(0, fileArrayIndex.length - 1);
-        this.fileComparator = null;
+     *
+     * <p>The sort keys of the files are computed and sorted without holding the lock of this model, which is only
+     * taken to read the current files and to store the new order.</p>
+     */
+    public void sortRows() {
+        while (true) {
+            AbstractFile[] files;
+            int[] indexes;
+            FileComparator comparator;
+            synchronized (this) {
+                files = cachedFiles;
+                indexes = fileArrayIndex.clone();
+                comparator = createFileComparator(sortInfo);
+            }
+
+            FileComparator.SortKey[] keys = new FileComparator.SortKey[indexes.length];
+            if (indexes.length < PARALLEL_SORT_THRESHOLD) {
+                Arrays.setAll(keys, i -> comparator.createSortKey(files[indexes[i]], indexes[i]));
+            } else {
+                Arrays.parallelSetAll(keys, i -> comparator.createSortKey(files[indexes[i]], indexes[i]));
+            }
+            comparator.sort(keys);
+
+            synchronized (this) {
+                // Sort again if the folder has changed in the meantime
+                if (files == cachedFiles && indexes.length == fileArrayIndex.length) {
+                    for (int i = 0; i < keys.length; i++) {
+                        fileArrayIndex[i] = keys[i].getIndex();
+                    }
+                    return;
+                }
+            }
+        }
     }
 
 
@@ -304,73 +338,6 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     }
 
 
-    /**
-     * Quick sort implementation, based on James Gosling's implementation.
-     */
-    protected void sort(int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
-
-        if (lo >= hi) {
-            return;
-        } else if (lo == hi - 1) {
-            // sort a two element list by swapping if necessary
-            int loIndex = fileArrayIndex[lo];
-            int hiIndex = fileArrayIndex[hi];
-            if (compare(loIndex, hiIndex) > 0) {
-                fileArrayIndex[lo] = hiIndex;
-                fileArrayIndex[hi] = loIndex;
-            }
-            return;
-        }
-
-        // Pick a pivot and move it out of the way
-        int pivotIndex = fileArrayIndex[(lo + hi) / 2];
-        fileArrayIndex[(lo + hi) / 2] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        while (lo < hi) {
-            // Search forward from files[lo] until an element is found that
-            // is greater than the pivot or lo >= hi
-            //while (compare(cachedFiles[fileArrayIndex[lo]], pivot)<=0 && lo < hi) {
-            while (compare(fileArrayIndex[lo], pivotIndex) <= 0 && lo < hi) {
-                lo++;
-            }
-
-            // Search backward from files[hi] until element is found that
-            // is less than the pivot, or lo >= hi
-            //while (compare(pivot, cachedFiles[fileArrayIndex[hi]])<=0 && lo < hi ) {
-            while (compare(pivotIndex, fileArrayIndex[hi]) <= 0 && lo < hi ) {
-                hi--;
-            }
-
-            // Swap elements files[lo] and files[hi]
-            if (lo < hi) {
-                int temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
-            }
-        }
-
-        // Put the median in the "center" of the list
-        fileArrayIndex[hi0] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        // Recursive calls, elements files[lo0] to files[lo-1] are less than or
-        // equal to pivot, elements files[hi+1] to files[hi0] are greater than pivot.
-        sort(lo0, lo-1);
-        sort(hi+1, hi0);
-    }
-
-
-    private int compare(int index1, int index2) {
-        if (index1 == index2) {
-            return 0;
-        }
-        return fileComparator.compare(cachedFiles[index1], cachedFiles[index2]);
-    }
-
-
 
     /**
      * Returns the current folder, i.e. the last folder set using {@link #setCurrentFolder(com.mucommander.commons.file.AbstractFile, com.mucommander.commons.file.AbstractFile[])}.
@@ -420,7 +387,12 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
 
         // we needn't prefetch local files for performance optimization purposes
         // in the case of local files the lazy initialization will be enough
-        boolean needPrefetch = nbFiles > 0 && !(children[0] instanceof LocalFile);
+        // (children of local folders usually are CachedFile instances already populated while listing)
+        AbstractFile firstChild = nbFiles > 0 ? children[0] : null;
+        if (firstChild instanceof CachedFile) {
+            firstChild = ((CachedFile)firstChild).getProxiedFile();
+        }
+        boolean needPrefetch = firstChild != null && !(firstChild instanceof LocalFile);
 
         for (int i = 0; i < nbFiles; i++) {
             AbstractFile child = children[i];
@@ -434,6 +406,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
             cachedFiles[i] = file;
             fileArrayIndex[i] = i;
         }
+        loadCachedDirectorySizes();
 
         // Reset marked files
         //this.rowMarked = new boolean[getRowCount()];
@@ -816,12 +789,24 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
      * @param file directory to add
      */
     public void startDirectorySizeCalculation(FileTable table, AbstractFile file) {
+        startDirectorySizeCalculation(table, file, false);
+    }
+
+    /**
+     * Add directory to size calculation and start calculation worker if it doesn't busy
+     * @param table file table
+     * @param file directory to add
+     * @param recalculate true to calculate the size again even if it is known
+     */
+    public void startDirectorySizeCalculation(FileTable table, AbstractFile file, boolean recalculate) {
         if (!file.isDirectory()) {
             return;
         }
         hasCalculatedDirectories = true;
         synchronized (directorySizes) {
-            if (directorySizes.containsKey(file)) {
+            if (recalculate) {
+                directorySizes.remove(file);
+            } else if (directorySizes.containsKey(file)) {
                 return;
             }
         }
@@ -830,6 +815,9 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
                 return;
             }
             calculateSizeQueue.add(file);
+            if (recalculate) {
+                recalculatedDirectories.add(file);
+            }
         }
         if (calculateDirectorySizeWorker == null) {
             processNextQueuedFile(table);
@@ -844,14 +832,16 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
      */
     private void processNextQueuedFile(FileTable table) {
         AbstractFile nextFile;
+        boolean useCache;
         synchronized (calculateSizeQueue) {
             nextFile = calculateSizeQueue.isEmpty() ? null : calculateSizeQueue.remove(0);
-            }
+            useCache = !recalculatedDirectories.remove(nextFile);
+        }
         if (nextFile == null) {
             calculateDirectorySizeWorker = null;
             table.getParent().setCursor(Cursor.getDefaultCursor());
         } else {
-            calculateDirectorySizeWorker = new CalculateDirectorySizeWorker(this, table, nextFile);
+            calculateDirectorySizeWorker = new CalculateDirectorySizeWorker(this, table, nextFile, useCache);
             table.getParent().setCursor(WAIT_CURSOR);
             calculateDirectorySizeWorker.execute();
         }
@@ -888,6 +878,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         }
         synchronized (calculateSizeQueue) {
             calculateSizeQueue.clear();
+            recalculatedDirectories.clear();
         }
         if (calculateDirectorySizeWorker != null) {
             try {
@@ -902,6 +893,29 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     }
 
 
+    /**
+     * Fills the sizes of the directories of the current folder that are known by the {@link DirectorySizeCache},
+     * so that sizes calculated before are shown as soon as the folder is displayed again
+     */
+    private void loadCachedDirectorySizes() {
+        DirectorySizeCache cache = DirectorySizeCache.getInstance();
+        if (cache.isEmpty() || cachedFiles == null) {
+            return;
+        }
+        synchronized (directorySizes) {
+            for (AbstractFile file : cachedFiles) {
+                if (file.isDirectory()) {
+                    Long size = cache.get(file);
+                    if (size != null) {
+                        directorySizes.put(file, size);
+                        hasCalculatedDirectories = true;
+                    }
+                }
+            }
+        }
+    }
+
+
     private long calcMarkedDirectoriesSize() {
         if (!hasCalculatedDirectories) {
             return 0;
@@ -95,7 +95,7 @@ public class CompactFileTableCellRenderer extends BaseCellRenderer {
 
         label.setIcon(fileIndex == 0 && tableModel.hasParentFolder()
                 ? IconManager.getIcon(IconManager.IconSet.FILE, CustomFileIconProvider.PARENT_FOLDER_ICON_NAME, FileIcons.getScaleFactor())
-                : FileIconsCache.getInstance().getIcon(file));
+                : FileIconsCache.getInstance().getIcon(file, table));
 
 
         String text = (String)value;
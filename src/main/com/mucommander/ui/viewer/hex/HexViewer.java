@@ -27,6 +27,7 @@ import com.mucommander.ui.theme.ThemeId;
 import com.mucommander.ui.viewer.FileViewer;
 import ru.trolsoft.calculator.CalculatorDialog;
 import ru.trolsoft.hexeditor.data.AbstractByteBuffer;
+import ru.trolsoft.hexeditor.data.MappedFileByteBuffer;
 import ru.trolsoft.hexeditor.data.MuCommanderByteBuffer;
 import ru.trolsoft.hexeditor.events.OnOffsetChangeListener;
 import ru.trolsoft.hexeditor.search.ByteBufferSearchUtils;
@@ -37,6 +38,7 @@ import javax.swing.*;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
@@ -101,10 +103,20 @@ public class HexViewer extends FileViewer implements ThemeId {
     };
 
 
+    private static AbstractByteBuffer createByteBuffer(AbstractFile file) {
+        // Local files are memory-mapped, the other ones are read through their (random access) input stream
+        Object fileObject = file.getUnderlyingFileObject();
+        if (fileObject instanceof File && ((File) fileObject).isFile()) {
+            return new MappedFileByteBuffer((File) fileObject);
+        }
+        return new MuCommanderByteBuffer(file);
+    }
+
+
     @Override
     protected void show(AbstractFile file) throws IOException {
         try {
-            byteBuffer = new MuCommanderByteBuffer(file);
+            byteBuffer = createByteBuffer(file);
             model = new ViewerHexTableModel(byteBuffer);
             model.load();
             hexTable = new HexTable(model);
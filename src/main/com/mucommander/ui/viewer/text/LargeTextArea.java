@@ -0,0 +1,440 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.ui.theme.ThemeId;
+import com.mucommander.ui.theme.ThemeManager;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.Scrollable;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+
+/**
+ * Read-only text area showing the lines of a {@link TextLineIndex}. Only the visible lines are decoded and painted,
+ * and scrolling is done by line through its own scroll bars, so that the size of the file doesn't matter.
+ */
+class LargeTextArea extends JPanel implements Scrollable, ThemeId {
+
+    private static final int GUTTER_PADDING = 4;
+
+    /** Lines scrolled by a mouse wheel notch */
+    private static final int WHEEL_LINES = 3;
+
+    private final TextView view = new TextView();
+    private final JScrollBar verticalScrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JScrollBar horizontalScrollBar = new JScrollBar(JScrollBar.HORIZONTAL);
+
+    private TextLineIndex index;
+
+    /** First visible line */
+    private long firstLine;
+
+    /** Current line */
+    private long caretLine;
+
+    /** Highlighted search match, <code>matchLine</code> is <code>-1</code> if there's none */
+    private long matchLine = -1;
+    private int matchStart;
+    private int matchEnd;
+
+    /** Horizontal scroll, in pixels */
+    private int scrollX;
+
+    /** Width of the widest line painted so far, in pixels */
+    private int maxLineWidth;
+
+    private boolean lineNumbers;
+
+    /** Lines per vertical scroll bar unit, greater than 1 if the number of lines doesn't fit in an int */
+    private long scrollScale = 1;
+
+    /** <code>true</code> while scroll bars are being updated from the view */
+    private boolean updatingScrollBars;
+
+    private Runnable caretListener;
+
+
+    LargeTextArea() {
+        super(new BorderLayout());
+        add(view, BorderLayout.CENTER);
+        add(verticalScrollBar, BorderLayout.EAST);
+        add(horizontalScrollBar, BorderLayout.SOUTH);
+
+        view.setFont(ThemeManager.getCurrentFont(EDITOR_FONT));
+        view.setForeground(ThemeManager.getCurrentColor(EDITOR_FOREGROUND_COLOR));
+        view.setBackground(ThemeManager.getCurrentColor(EDITOR_BACKGROUND_COLOR));
+        view.setFocusable(true);
+        view.setFocusTraversalKeysEnabled(false);
+
+        verticalScrollBar.addAdjustmentListener(e -> {
+            if (!updatingScrollBars) {
+                setFirstLine(e.getValue() * scrollScale);
+            }
+        });
+        horizontalScrollBar.addAdjustmentListener(e -> {
+            if (!updatingScrollBars) {
+                scrollX = e.getValue();
+                view.repaint();
+            }
+        });
+        view.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                processKey(e);
+            }
+        });
+        MouseAdapter mouseAdapter = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                view.requestFocus();
+                setCaretLine(firstLine + e.getY() / getLineHeight());
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                setFirstLine(firstLine + e.getWheelRotation() * WHEEL_LINES);
+            }
+        };
+        view.addMouseListener(mouseAdapter);
+        view.addMouseWheelListener(mouseAdapter);
+    }
+
+    /**
+     * Returns the component that paints the text and receives the keyboard input.
+     *
+     * @return the text component
+     */
+    JComponent getView() {
+        return view;
+    }
+
+    /**
+     * Shows the lines of the given index, keeping the current position.
+     *
+     * @param index the index to show
+     */
+    void setIndex(TextLineIndex index) {
+        this.index = index;
+        this.maxLineWidth = 0;
+        this.matchLine = -1;
+        indexUpdated();
+    }
+
+    /**
+     * Updates the scroll bars and repaints the text after more lines have been indexed.
+     */
+    void indexUpdated() {
+        long lineCount = index == null ? 0 : index.getLineCount();
+        scrollScale = lineCount / (Integer.MAX_VALUE / 2) + 1;
+        updateScrollBars();
+        view.repaint();
+    }
+
+    void setCaretListener(Runnable caretListener) {
+        this.caretListener = caretListener;
+    }
+
+    void setLineNumbers(boolean lineNumbers) {
+        this.lineNumbers = lineNumbers;
+        view.repaint();
+    }
+
+    long getCaretLine() {
+        return caretLine;
+    }
+
+    long getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * Moves the caret to the given line and scrolls so that it is visible.
+     *
+     * @param line the line, starting at 0
+     */
+    void gotoLine(long line) {
+        setCaretLine(line);
+        if (caretLine < firstLine || caretLine >= firstLine + getVisibleLines()) {
+            setFirstLine(caretLine - getVisibleLines() / 2);
+        }
+    }
+
+    /**
+     * Highlights a search match and scrolls so that it is visible.
+     *
+     * @param line the line of the match
+     * @param start the column where the match starts
+     * @param end the column where the match ends
+     */
+    void showMatch(long line, int start, int end) {
+        matchLine = line;
+        matchStart = start;
+        matchEnd = end;
+        gotoLine(line);
+        String text = index.getLine(line);
+        if (text != null) {
+            FontMetrics fm = view.getFontMetrics(view.getFont());
+            int x = fm.stringWidth(text.substring(0, Math.min(start, text.length())));
+            int width = view.getWidth() - getGutterWidth(fm);
+            if (x < scrollX || x > scrollX + width - fm.charWidth('m')) {
+                scrollX = Math.max(0, x - width / 2);
+                maxLineWidth = Math.max(maxLineWidth, fm.stringWidth(text));
+                updateScrollBars();
+            }
+        }
+        view.repaint();
+    }
+
+    /**
+     * Returns the column where the highlighted match starts on the caret line, <code>-1</code> if there's none.
+     *
+     * @return the column of the current match
+     */
+    int getMatchStart() {
+        return matchLine == caretLine ? matchStart : -1;
+    }
+
+    private void setCaretLine(long line) {
+        long lineCount = index == null ? 0 : index.getLineCount();
+        caretLine = Math.max(0, Math.min(line, lineCount - 1));
+        if (caretLine < firstLine) {
+            setFirstLine(caretLine);
+        } else if (caretLine >= firstLine + getVisibleLines()) {
+            setFirstLine(caretLine - getVisibleLines() + 1);
+        }
+        view.repaint();
+        if (caretListener != null) {
+            caretListener.run();
+        }
+    }
+
+    private void setFirstLine(long line) {
+        long lineCount = index == null ? 0 : index.getLineCount();
+        firstLine = Math.max(0, Math.min(line, lineCount - getVisibleLines()));
+        updateScrollBars();
+        view.repaint();
+    }
+
+    private void updateScrollBars() {
+        long lineCount = index == null ? 0 : index.getLineCount();
+        updatingScrollBars = true;
+        try {
+            int extent = (int)Math.max(1, getVisibleLines() / scrollScale);
+            verticalScrollBar.setValues((int)(firstLine / scrollScale), extent, 0, (int)Math.max(extent, (lineCount + scrollScale - 1) / scrollScale));
+            verticalScrollBar.setBlockIncrement(extent);
+            int width = Math.max(1, view.getWidth() - getGutterWidth(view.getFontMetrics(view.getFont())));
+            scrollX = Math.max(0, Math.min(scrollX, maxLineWidth - width));
+            horizontalScrollBar.setValues(scrollX, width, 0, Math.max(width, maxLineWidth));
+            horizontalScrollBar.setBlockIncrement(width);
+            horizontalScrollBar.setUnitIncrement(view.getFontMetrics(view.getFont()).charWidth('m'));
+        } finally {
+            updatingScrollBars = false;
+        }
+    }
+
+    private int getLineHeight() {
+        return view.getFontMetrics(view.getFont()).getHeight();
+    }
+
+    private int getVisibleLines() {
+        return Math.max(1, view.getHeight() / getLineHeight());
+    }
+
+    private int getGutterWidth(FontMetrics fm) {
+        if (!lineNumbers || index == null) {
+            return 0;
+        }
+        return fm.stringWidth(Long.toString(Math.max(1, index.getLineCount()))) + 2 * GUTTER_PADDING;
+    }
+
+    private void processKey(KeyEvent e) {
+        boolean ctrl = OsFamily.MAC_OS_X.isCurrent() ? e.isMetaDown() : e.isControlDown();
+        int charWidth = view.getFontMetrics(view.getFont()).charWidth('m');
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_UP:
+                setCaretLine(caretLine - 1);
+                break;
+            case KeyEvent.VK_DOWN:
+                setCaretLine(caretLine + 1);
+                break;
+            case KeyEvent.VK_PAGE_UP:
+                setFirstLine(firstLine - getVisibleLines());
+                setCaretLine(caretLine - getVisibleLines());
+                break;
+            case KeyEvent.VK_PAGE_DOWN:
+                setFirstLine(firstLine + getVisibleLines());
+                setCaretLine(caretLine + getVisibleLines());
+                break;
+            case KeyEvent.VK_HOME:
+                if (ctrl) {
+                    setCaretLine(0);
+                }
+                horizontalScrollBar.setValue(0);
+                break;
+            case KeyEvent.VK_END:
+                if (ctrl) {
+                    setCaretLine(Long.MAX_VALUE);
+                } else {
+                    horizontalScrollBar.setValue(horizontalScrollBar.getMaximum());
+                }
+                break;
+            case KeyEvent.VK_LEFT:
+                horizontalScrollBar.setValue(scrollX - charWidth * 4);
+                break;
+            case KeyEvent.VK_RIGHT:
+                horizontalScrollBar.setValue(scrollX + charWidth * 4);
+                break;
+            case KeyEvent.VK_C:
+            case KeyEvent.VK_INSERT:
+                if (ctrl && index != null) {
+                    String line = index.getLine(caretLine);
+                    if (line != null) {
+                        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(line), null);
+                    }
+                }
+                return;
+            default:
+                return;
+        }
+        e.consume();
+    }
+
+
+    ////////////////////////////
+    // Scrollable implementation
+    ////////////////////////////
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 1;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 1;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return true;
+    }
+
+
+    /**
+     * Paints the visible lines.
+     */
+    private class TextView extends JComponent {
+
+        TextView() {
+            setOpaque(true);
+            addComponentListener(new ComponentAdapter() {
+                @Override
+                public void componentResized(ComponentEvent e) {
+                    setFirstLine(firstLine);
+                }
+            });
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            FontMetrics fm = g.getFontMetrics(getFont());
+            int lineHeight = fm.getHeight();
+            int gutterWidth = getGutterWidth(fm);
+            int width = getWidth();
+
+            g.setColor(getBackground());
+            g.fillRect(0, 0, width, getHeight());
+            if (gutterWidth > 0) {
+                g.setColor(Color.LIGHT_GRAY);
+                g.fillRect(0, 0, gutterWidth, getHeight());
+            }
+            if (index == null) {
+                return;
+            }
+            g.setFont(getFont());
+            Color currentLineColor = ThemeManager.getCurrentColor(EDITOR_CURRENT_BACKGROUND_COLOR);
+            Color selectionColor = ThemeManager.getCurrentColor(EDITOR_SELECTED_BACKGROUND_COLOR);
+            int visibleLines = getHeight() / lineHeight + 1;
+            boolean widthChanged = false;
+            for (int i = 0; i < visibleLines; i++) {
+                long line = firstLine + i;
+                String text = index.getLine(line);
+                if (text == null) {
+                    break;
+                }
+                int y = i * lineHeight;
+                Graphics textGraphics = g.create(gutterWidth, 0, width - gutterWidth, getHeight());
+                textGraphics.translate(-scrollX, 0);
+                if (line == caretLine) {
+                    textGraphics.setColor(currentLineColor);
+                    textGraphics.fillRect(scrollX, y, width, lineHeight);
+                }
+                if (line == matchLine && matchStart <= text.length()) {
+                    int x1 = fm.stringWidth(text.substring(0, matchStart));
+                    int x2 = fm.stringWidth(text.substring(0, Math.min(matchEnd, text.length())));
+                    textGraphics.setColor(selectionColor);
+                    textGraphics.fillRect(x1, y, Math.max(1, x2 - x1), lineHeight);
+                }
+                textGraphics.setColor(getForeground());
+                textGraphics.drawString(text, 0, y + fm.getAscent());
+                textGraphics.dispose();
+
+                int lineWidth = fm.stringWidth(text);
+                if (lineWidth > maxLineWidth) {
+                    maxLineWidth = lineWidth;
+                    widthChanged = true;
+                }
+                if (gutterWidth > 0) {
+                    g.setColor(Color.BLACK);
+                    String number = Long.toString(line + 1);
+                    g.drawString(number, gutterWidth - GUTTER_PADDING - fm.stringWidth(number), y + fm.getAscent());
+                }
+            }
+            if (widthChanged) {
+                updateScrollBars();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.BinaryDetector;
+import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.ui.viewer.FileViewer;
+import com.mucommander.ui.viewer.ViewerFactory;
+import com.mucommander.ui.viewer.WarnUserException;
+import com.mucommander.utils.text.Translator;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+
+/**
+ * <code>ViewerFactory</code> implementation for creating {@link LargeTextViewer large text viewers}. It handles the
+ * text files that {@link TextFactory} would warn about because of their size, if they can be read randomly.
+ * It has the same name as {@link TextFactory}, so that choosing the text viewer picks this one for large files.
+ */
+public class LargeTextFactory implements ViewerFactory {
+
+    /** Files larger than this are viewed by {@link LargeTextViewer} */
+    static final long LARGE_FILE_SIZE = TextFactory.FILE_SIZE_WARNING_THRESHOLD;
+
+    @Override
+    public boolean canViewFile(AbstractFile file) throws WarnUserException {
+        if (file.isDirectory() || file.getSize() <= LARGE_FILE_SIZE || !TextLineIndex.canIndex(file)) {
+            return false;
+        }
+        try {
+            PushbackInputStream is = file.getPushBackInputStream(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE);
+            return !BinaryDetector.guessBinary(is);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public FileViewer createFileViewer() {
+        return new LargeTextViewer();
+    }
+
+    @Override
+    public String getName() {
+        return Translator.get("viewer_type.text");
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.cache.TextHistory;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.ui.dialog.DialogOwner;
+import com.mucommander.ui.dialog.InformationDialog;
+import com.mucommander.ui.encoding.EncodingListener;
+import com.mucommander.ui.encoding.EncodingMenu;
+import com.mucommander.ui.helper.MenuToolkit;
+import com.mucommander.ui.helper.MnemonicHelper;
+import com.mucommander.ui.viewer.FileViewer;
+import com.mucommander.ui.viewer.text.search.FindDialog;
+import com.mucommander.ui.viewer.text.search.SearchEvent;
+import com.mucommander.ui.viewer.text.search.SearchListener;
+import org.fife.ui.rtextarea.SearchContext;
+
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Read-only viewer for text files too large to be loaded in memory. Lines are indexed in the background by a
+ * {@link TextLineIndex} and decoded only when they are displayed or searched, so the first lines are shown
+ * immediately whatever the size of the file.
+ *
+ * @see LargeTextFactory
+ */
+public class LargeTextViewer extends FileViewer implements EncodingListener {
+
+    /** Delay between two refreshes of the view while lines are being indexed, in milliseconds */
+    private static final int INDEX_REFRESH_DELAY = 250;
+
+    private final LargeTextArea textArea = new LargeTextArea();
+    private TextLineIndex index;
+    private String encoding;
+    private StatusBar statusBar;
+    private TextFilesHistory.FileRecord historyRecord;
+
+    /** File being opened, set by {@link #show(AbstractFile)} before {@link #getCurrentFile()} is */
+    private AbstractFile openedFile;
+
+    /** Refreshes the view until the whole file has been indexed */
+    private final Timer indexTimer;
+
+    /** Line to go to once it has been indexed, <code>-1</code> if none */
+    private long pendingLine = -1;
+
+    private SearchContext searchContext;
+    private SwingWorker<long[], Void> searchWorker;
+
+    private final JMenu menuSearch;
+    private final JMenu menuView;
+    private final JMenuItem miFind;
+    private final JMenuItem miFindNext;
+    private final JMenuItem miFindPrevious;
+    private final JMenuItem miGotoLine;
+    private final JCheckBoxMenuItem miToggleLineNumbers;
+
+
+    LargeTextViewer() {
+        setVerticalScrollBarPolicy(VERTICAL_SCROLLBAR_NEVER);
+        setHorizontalScrollBarPolicy(HORIZONTAL_SCROLLBAR_NEVER);
+        setComponentToPresent(textArea);
+        textArea.setLineNumbers(TextViewer.isLineNumbers());
+        textArea.setCaretListener(this::updatePosition);
+
+        indexTimer = new Timer(INDEX_REFRESH_DELAY, e -> indexUpdated());
+
+        MnemonicHelper menuItemMnemonicHelper = new MnemonicHelper();
+        menuSearch = new JMenu(i18n("text_editor.search"));
+        miFind = MenuToolkit.addMenuItem(menuSearch, i18n("text_editor.find"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F, getCtrlOrMetaMask()), this);
+        miFindNext = MenuToolkit.addMenuItem(menuSearch, i18n("text_editor.find_next"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), this);
+        miFindPrevious = MenuToolkit.addMenuItem(menuSearch, i18n("text_editor.find_previous"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, KeyEvent.SHIFT_DOWN_MASK), this);
+        menuSearch.addSeparator();
+        miGotoLine = MenuToolkit.addMenuItem(menuSearch, i18n("text_viewer.goto_line"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_G, getCtrlOrMetaMask()), this);
+
+        menuView = new JMenu(i18n("text_editor.view"));
+        miToggleLineNumbers = MenuToolkit.addCheckBoxMenuItem(menuView, i18n("text_editor.line_numbers"), menuItemMnemonicHelper, null, this);
+        miToggleLineNumbers.setSelected(TextViewer.isLineNumbers());
+    }
+
+    private static int getCtrlOrMetaMask() {
+        return OsFamily.MAC_OS_X.isCurrent() ? KeyEvent.META_MASK : KeyEvent.CTRL_MASK;
+    }
+
+    /**
+     * Replaces the index by a new one built with the given encoding, keeping the current line.
+     */
+    private void openIndex(String encoding, long line) throws IOException {
+        // If the given encoding is invalid (null or not supported), default to "UTF-8"
+        encoding = encoding == null || !Charset.isSupported(encoding) ? "UTF-8" : encoding;
+        TextLineIndex newIndex = new TextLineIndex(getCurrentFileOrPending(), encoding);
+        closeIndex();
+        this.index = newIndex;
+        this.encoding = encoding;
+        getStatusBar().setEncoding(encoding);
+        textArea.setIndex(newIndex);
+        pendingLine = line;
+        indexTimer.start();
+        indexUpdated();
+    }
+
+    private void closeIndex() {
+        cancelSearch();
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Refreshes the view with the lines indexed so far.
+     */
+    private void indexUpdated() {
+        textArea.indexUpdated();
+        if (pendingLine >= 0 && (pendingLine < index.getLineCount() || index.isComplete())) {
+            textArea.gotoLine(pendingLine);
+            pendingLine = -1;
+        }
+        if (index.isComplete()) {
+            indexTimer.stop();
+            if (searchWorker == null) {
+                getStatusBar().setStatusMessage("");
+            }
+        } else if (searchWorker == null) {
+            getStatusBar().setStatusMessage(i18n("text_viewer.indexing", Integer.toString(index.getProgress())));
+        }
+    }
+
+    private void updatePosition() {
+        int column = textArea.getMatchStart();
+        getStatusBar().setPosition((int)Math.min(Integer.MAX_VALUE, textArea.getCaretLine() + 1), column < 0 ? 1 : column + 1);
+    }
+
+    private AbstractFile getCurrentFileOrPending() {
+        return getCurrentFile() != null ? getCurrentFile() : openedFile;
+    }
+
+
+    ////////////
+    // Search //
+    ////////////
+
+    private void find() {
+        SearchListener searchListener = new SearchListener() {
+            @Override
+            public void searchEvent(SearchEvent e) {
+                searchContext = e.getSearchContext();
+                TextHistory.getInstance().add(TextHistory.Type.TEXT_SEARCH, searchContext.getSearchFor(), true);
+                findMore(searchContext.getSearchForward());
+                textArea.getView().requestFocus();
+            }
+
+            @Override
+            public String getSelectedText() {
+                return null;
+            }
+        };
+        FindDialog dlg = new FindDialog(getFrame(), searchListener);
+        dlg.setSearchString(searchContext != null ? searchContext.getSearchFor() : "");
+        dlg.showDialog();
+    }
+
+    private void findMore(boolean forward) {
+        if (searchContext == null) {
+            String last = FindDialog.getLastSearchStr();
+            if (last == null) {
+                find();
+                return;
+            }
+            searchContext = new SearchContext(last);
+        }
+        Pattern pattern;
+        try {
+            pattern = createPattern(searchContext);
+        } catch (PatternSyntaxException e) {
+            getStatusBar().setStatusMessage(e.getDescription());
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+        cancelSearch();
+
+        long line = textArea.getCaretLine();
+        int matchStart = textArea.getMatchStart();
+        int column = forward ? matchStart + 1 : (matchStart < 0 ? Integer.MAX_VALUE : matchStart);
+        TextLineIndex searchedIndex = index;
+        getStatusBar().setStatusMessage(i18n("text_viewer.searching"));
+        searchWorker = new SwingWorker<long[], Void>() {
+            @Override
+            protected long[] doInBackground() throws Exception {
+                return searchedIndex.find(pattern, line, Math.max(0, column), forward, this::isCancelled);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || searchWorker != this) {
+                    return;
+                }
+                searchWorker = null;
+                long[] match = null;
+                try {
+                    match = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+                if (match == null) {
+                    getStatusBar().setStatusMessage(i18n("text_editor.text_not_found"));
+                    Toolkit.getDefaultToolkit().beep();
+                } else {
+                    getStatusBar().setStatusMessage("");
+                    textArea.showMatch(match[0], (int)match[1], (int)match[2]);
+                }
+            }
+        };
+        searchWorker.execute();
+    }
+
+    private static Pattern createPattern(SearchContext context) {
+        String regex = context.isRegularExpression() ? context.getSearchFor() : Pattern.quote(context.getSearchFor());
+        if (context.getWholeWord()) {
+            regex = "\\b(?:" + regex + ")\\b";
+        }
+        return Pattern.compile(regex, context.getMatchCase() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    private void cancelSearch() {
+        if (searchWorker != null) {
+            searchWorker.cancel(false);
+            searchWorker = null;
+        }
+    }
+
+    private void gotoLine() {
+        int maxLines = (int)Math.min(Integer.MAX_VALUE, index.getLineCount());
+        new GotoLineDialog(getFrame(), maxLines, (line) -> textArea.gotoLine(line - 1)).showDialog();
+    }
+
+
+    ///////////////////////////////
+    // FileViewer implementation //
+    ///////////////////////////////
+
+    @Override
+    protected void show(AbstractFile file) throws IOException {
+        openedFile = file;
+        historyRecord = TextFilesHistory.getInstance().get(file);
+        String detectedEncoding = historyRecord.getEncoding();
+        if (detectedEncoding == null) {
+            try (PushbackInputStream in = file.getPushBackInputStream(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE)) {
+                detectedEncoding = EncodingDetector.detectEncoding(in);
+            }
+        }
+        openIndex(detectedEncoding, Math.max(0, historyRecord.getLine() - 1));
+    }
+
+    @Override
+    public JMenuBar getMenuBar() {
+        JMenuBar menuBar = super.getMenuBar();
+        EncodingMenu encodingMenu = new EncodingMenu(new DialogOwner(getFrame()), encoding);
+        encodingMenu.addEncodingListener(this);
+        menuBar.add(menuSearch);
+        menuBar.add(menuView);
+        menuBar.add(encodingMenu);
+        setMainKeyListener(textArea.getView(), menuBar);
+        return menuBar;
+    }
+
+    @Override
+    protected StatusBar getStatusBar() {
+        if (statusBar == null) {
+            statusBar = new StatusBar();
+        }
+        return statusBar;
+    }
+
+    @Override
+    protected void saveStateOnClose() {
+        indexTimer.stop();
+        closeIndex();
+        historyRecord.setLine((int)Math.min(Integer.MAX_VALUE, textArea.getCaretLine() + 1));
+        historyRecord.setColumn(0);
+        historyRecord.setScrollPosition(0);
+        historyRecord.setEncoding(encoding);
+        TextFilesHistory.getInstance().updateRecord(historyRecord).save();
+        try {
+            getCurrentFile().closePushbackInputStream();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void restoreStateOnStartup() {
+        textArea.getView().requestFocus();
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        Object source = e.getSource();
+        if (source == miFind) {
+            find();
+        } else if (source == miFindNext) {
+            findMore(true);
+        } else if (source == miFindPrevious) {
+            findMore(false);
+        } else if (source == miGotoLine) {
+            gotoLine();
+        } else if (source == miToggleLineNumbers) {
+            TextViewer.setLineNumbers(miToggleLineNumbers.isSelected());
+            textArea.setLineNumbers(miToggleLineNumbers.isSelected());
+        } else {
+            super.actionPerformed(e);
+        }
+    }
+
+    @Override
+    public void setSearchedText(String searchedText) {
+        searchContext = new SearchContext(searchedText);
+    }
+
+    @Override
+    public void setSearchedBytes(byte[] searchedBytes) {
+        if (index != null) {
+            setSearchedText(new String(searchedBytes, index.getCharset()));
+        }
+    }
+
+
+    /////////////////////////////////////
+    // EncodingListener implementation //
+    /////////////////////////////////////
+
+    @Override
+    public void encodingChanged(Object source, String oldEncoding, String newEncoding) {
+        try {
+            openIndex(newEncoding, textArea.getCaretLine());
+        } catch (IOException e) {
+            InformationDialog.showErrorDialog(getFrame(), i18n("read_error"), i18n("file_editor.cannot_read_file", getCurrentFile().getName()));
+        }
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.bom.BOM;
+import com.mucommander.commons.io.bom.BOMConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the lines of a text file too large to be loaded in memory.
+ *
+ * <p>The file is scanned by a background thread which records the offset of every {@link #LINES_PER_PAGE}th line.
+ * Lines are decoded a page at a time on demand, and only the last {@link #MAX_CACHED_PAGES} pages are kept. Lines
+ * longer than {@link #MAX_LINE_BYTES} are split so that the size of a page is bounded. Local files are read through
+ * memory-mapped windows, other files through their random access stream.</p>
+ *
+ * <p>Line ends are searched in the encoded bytes, which works for any encoding where the encoded line feed can't
+ * be part of another character: single byte encodings, UTF-8 and most multi-byte encodings, and UTF-16/32 when
+ * aligned on their code unit.</p>
+ */
+class TextLineIndex implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TextLineIndex.class);
+
+    /** Number of lines decoded at once */
+    static final int LINES_PER_PAGE = 128;
+
+    /** Lines longer than this number of bytes are split */
+    static final int MAX_LINE_BYTES = 4096;
+
+    /** Maximum number of decoded pages kept in memory */
+    private static final int MAX_CACHED_PAGES = 32;
+
+    /** Number of bytes read at once by the indexing thread */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /** Size of the memory-mapped windows of local files */
+    private static final int MAP_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    private static final int TAB_SIZE = 4;
+
+    private final AbstractFile file;
+    private final long fileSize;
+    private final String encoding;
+    private final Charset charset;
+
+    /** Encoded line feed, its length is the size of the code units that are scanned */
+    private final byte[] newLine;
+    private final boolean utf8;
+
+    /** Offset of the first line, after the byte order mark if any */
+    private final long dataStart;
+
+    /** Source used to decode pages */
+    private final Source source;
+
+    /** Offsets of the first line of each page. Guarded by this. */
+    private long[] pageOffsets = new long[1024];
+    private int pageCount;
+
+    /** Number of lines indexed so far. Guarded by this. */
+    private long lineCount;
+
+    /** Offset of the end of the last indexed line. Guarded by this. */
+    private long indexedEnd;
+
+    private volatile boolean complete;
+    private volatile boolean closed;
+
+    /** Decoded pages, least recently used first. Guarded by this. */
+    private final Map<Integer, String[]> pages = new LinkedHashMap<Integer, String[]>(MAX_CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+
+    /**
+     * Opens the given file and starts indexing its lines in the background.
+     *
+     * @param file the file to index
+     * @param encoding the encoding of the file
+     * @throws IOException if the file could not be opened
+     */
+    TextLineIndex(AbstractFile file, String encoding) throws IOException {
+        this.file = file;
+        this.fileSize = file.getSize();
+        this.encoding = encoding;
+        this.source = openSource();
+
+        byte[] head = new byte[4];
+        int headLength = source.read(0, head, 0, head.length);
+        BOM bom = getBOM(head, headLength, encoding);
+        if (bom != null) {
+            dataStart = bom.getSignature().length;
+            charset = Charset.forName(bom.getEncoding());
+        } else {
+            dataStart = 0;
+            charset = Charset.forName(getUnmarkedEncoding(encoding));
+        }
+        newLine = encodeNewLine(charset);
+        utf8 = charset.equals(StandardCharsets.UTF_8);
+        pageOffsets[0] = dataStart;
+        pageCount = 1;
+        indexedEnd = dataStart;
+
+        Thread thread = new Thread(this::index, getClass().getSimpleName() + " " + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns <code>true</code> if the given file can be read by this class, i.e. if it is local or can be read
+     * randomly.
+     *
+     * @param file a file
+     * @return <code>true</code> if the file can be indexed
+     */
+    static boolean canIndex(AbstractFile file) {
+        return file.getUnderlyingFileObject() instanceof File || file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+    }
+
+    private Source openSource() throws IOException {
+        if (file.getUnderlyingFileObject() instanceof File) {
+            return new MappedSource((File)file.getUnderlyingFileObject());
+        }
+        return new RandomAccessSource(file.getRandomAccessInputStream());
+    }
+
+    private static BOM getBOM(byte[] head, int length, String encoding) {
+        String family = getUnicodeFamily(encoding);
+        if (family == null) {
+            return null;
+        }
+        BOM result = null;
+        for (BOM bom : BOMConstants.SUPPORTED_BOMS) {
+            byte[] signature = bom.getSignature();
+            if (signature.length <= length && Arrays.equals(signature, Arrays.copyOf(head, signature.length))
+                    && family.equals(getUnicodeFamily(bom.getEncoding()))) {
+                result = bom;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the given encoding with its byte order made explicit, as the BOM has been skipped.
+     */
+    private static String getUnmarkedEncoding(String encoding) {
+        String family = getUnicodeFamily(encoding);
+        if ("UTF16".equals(family) || "UTF32".equals(family)) {
+            String upperCase = encoding.toUpperCase();
+            return upperCase.endsWith("LE") || upperCase.endsWith("BE") ? encoding : family.substring(0, 3) + '-' + family.substring(3) + "BE";
+        }
+        return encoding;
+    }
+
+    /**
+     * Returns <code>UTF8</code>, <code>UTF16</code> or <code>UTF32</code> for Unicode encodings, <code>null</code>
+     * for other encodings.
+     */
+    private static String getUnicodeFamily(String encoding) {
+        String name = encoding.toUpperCase().replace("-", "").replace("_", "");
+        for (String family : new String[] {"UTF8", "UTF16", "UTF32"}) {
+            if (name.startsWith(family)) {
+                return family;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] encodeNewLine(Charset charset) throws IOException {
+        try {
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap("\n"));
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return bytes;
+        } catch (CharacterCodingException | UnsupportedOperationException e) {
+            throw new IOException("Unsupported encoding: " + charset, e);
+        }
+    }
+
+
+    //////////////
+    // Indexing //
+    //////////////
+
+    /**
+     * Returns the end of the line starting at <code>start</code>, line feed included, or <code>-1</code> if it doesn't
+     * end before <code>end</code>. Lines longer than {@link #MAX_LINE_BYTES} end before the next character that
+     * starts after this limit. The same rules are applied when indexing and when decoding, which keeps both in sync.
+     */
+    private int findLineEnd(byte[] buffer, int start, int end) {
+        int unit = newLine.length;
+        for (int i = start; i + unit <= end; i += unit) {
+            if (buffer[i] == newLine[0] && (unit == 1 || matchesNewLine(buffer, i))) {
+                return i + unit;
+            }
+            if (i - start >= MAX_LINE_BYTES && (!utf8 || (buffer[i] & 0xC0) != 0x80)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matchesNewLine(byte[] buffer, int offset) {
+        for (int i = 1; i < newLine.length; i++) {
+            if (buffer[offset + i] != newLine[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the whole file, publishing the lines found after each chunk.
+     */
+    private void index() {
+        try (Source indexSource = openSource()) {
+            byte[] buffer = new byte[CHUNK_SIZE + MAX_LINE_BYTES + 8];
+            // buffer holds the bytes located at [bufferStart, bufferStart + length)
+            long bufferStart = dataStart;
+            int length = 0;
+            long lines = 0;
+            // Every byte of the buffer may end a line
+            long[] newPages = new long[buffer.length / LINES_PER_PAGE + 1];
+            while (!closed) {
+                int read = indexSource.read(bufferStart + length, buffer, length, buffer.length - length);
+                boolean eof = read <= 0;
+                length += Math.max(read, 0);
+
+                int newPageCount = 0;
+                int position = 0;
+                int lineEnd;
+                while ((lineEnd = findLineEnd(buffer, position, length)) >= 0) {
+                    position = lineEnd;
+                    if (++lines % LINES_PER_PAGE == 0) {
+                        newPages[newPageCount++] = bufferStart + position;
+                    }
+                }
+                if (eof && position < length) {
+                    // Last line has no line feed
+                    position = length;
+                    lines++;
+                }
+                publish(newPages, newPageCount, lines, bufferStart + position);
+                if (eof) {
+                    break;
+                }
+
+                // Keep the beginning of the last line for the next chunk
+                System.arraycopy(buffer, position, buffer, 0, length - position);
+                bufferStart += position;
+                length -= position;
+            }
+            complete = true;
+        } catch (IOException e) {
+            LOGGER.info("Error while indexing lines of " + file, e);
+            complete = true;
+        }
+    }
+
+    private synchronized void publish(long[] newPages, int newPageCount, long lines, long end) {
+        if (pageCount + newPageCount > pageOffsets.length) {
+            pageOffsets = Arrays.copyOf(pageOffsets, Math.max(pageOffsets.length * 2, pageCount + newPageCount));
+        }
+        System.arraycopy(newPages, 0, pageOffsets, pageCount, newPageCount);
+        pageCount += newPageCount;
+        lineCount = lines;
+        indexedEnd = end;
+        // The last page may have grown
+        pages.remove(pageCount - 1);
+        if (newPageCount > 0) {
+            pages.remove(pageCount - 1 - newPageCount);
+        }
+    }
+
+
+    ///////////
+    // Lines //
+    ///////////
+
+    /**
+     * Returns the number of lines indexed so far.
+     *
+     * @return the number of lines indexed so far
+     */
+    synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns <code>true</code> if the whole file has been indexed.
+     *
+     * @return <code>true</code> if the whole file has been indexed
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the percentage of the file that has been indexed.
+     *
+     * @return the percentage of the file that has been indexed
+     */
+    synchronized int getProgress() {
+        return complete || fileSize <= 0 ? 100 : (int)(indexedEnd * 100 / fileSize);
+    }
+
+    String getEncoding() {
+        return encoding;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the given line, with tabs expanded and without its line terminator, <code>null</code> if the line
+     * has not been indexed or could not be read.
+     *
+     * @param line the line number, starting at 0
+     * @return the line, <code>null</code> if it is not available
+     */
+    String getLine(long line) {
+        if (line < 0 || line >= getLineCount()) {
+            return null;
+        }
+        int page = (int)(line / LINES_PER_PAGE);
+        String[] lines;
+        synchronized (this) {
+            lines = pages.get(page);
+        }
+        if (lines == null) {
+            boolean wasComplete = complete;
+            try {
+                lines = readPage(source, page);
+            } catch (IOException e) {
+                LOGGER.debug("Could not read page " + page + " of " + file, e);
+                return null;
+            }
+            // The last page grows until the whole file has been indexed
+            if (lines.length == LINES_PER_PAGE || wasComplete) {
+                synchronized (this) {
+                    pages.put(page, lines);
+                }
+            }
+        }
+        int index = (int)(line % LINES_PER_PAGE);
+        return index < lines.length ? lines[index] : null;
+    }
+
+    /**
+     * Reads and decodes the lines of the given page.
+     */
+    private String[] readPage(Source pageSource, int page) throws IOException {
+        long start;
+        long end;
+        long lines;
+        synchronized (this) {
+            if (page >= pageCount) {
+                return new String[0];
+            }
+            start = pageOffsets[page];
+            end = page + 1 < pageCount ? pageOffsets[page + 1] : indexedEnd;
+            lines = Math.min(LINES_PER_PAGE, lineCount - (long)page * LINES_PER_PAGE);
+        }
+        byte[] buffer = new byte[(int)(end - start)];
+        int length = Math.max(0, pageSource.read(start, buffer, 0, buffer.length));
+
+        String[] result = new String[(int)Math.max(0, lines)];
+        int position = 0;
+        for (int i = 0; i < result.length; i++) {
+            int lineEnd = findLineEnd(buffer, position, length);
+            if (lineEnd < 0) {
+                // Last line of the file, without line feed
+                lineEnd = length;
+            }
+            result[i] = decodeLine(buffer, position, lineEnd);
+            position = lineEnd;
+        }
+        return result;
+    }
+
+    private String decodeLine(byte[] buffer, int start, int end) {
+        int length = end - start;
+        if (length >= newLine.length && buffer[end - newLine.length] == newLine[0] && matchesNewLine(buffer, end - newLine.length)) {
+            length -= newLine.length;
+        }
+        String line = new String(buffer, start, length, charset);
+        if (line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        if (line.indexOf('\t') < 0) {
+            return line;
+        }
+        StringBuilder expanded = new StringBuilder(line.length() + TAB_SIZE * 4);
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                do {
+                    expanded.append(' ');
+                } while (expanded.length() % TAB_SIZE != 0);
+            } else {
+                expanded.append(c);
+            }
+        }
+        return expanded.toString();
+    }
+
+
+    ////////////
+    // Search //
+    ////////////
+
+    /**
+     * Searches the indexed lines for the given pattern, starting at the given position. Pages are read through a
+     * separate source and are not cached, so that searching doesn't evict the pages being displayed.
+     *
+     * @param pattern the pattern to search for
+     * @param fromLine the line to start from
+     * @param fromColumn the column to start from: matches must start at or after it when searching forward, before it
+     *                   when searching backward
+     * @param forward the search direction
+     * @param cancelled returns <code>true</code> when the search must be stopped
+     * @return the line, start column and end column of the match, <code>null</code> if not found or cancelled
+     * @throws IOException if the file could not be read
+     */
+    long[] find(Pattern pattern, long fromLine, int fromColumn, boolean forward, BooleanSupplier cancelled) throws IOException {
+        try (Source searchSource = openSource()) {
+            long lines = getLineCount();
+            if (lines == 0) {
+                return null;
+            }
+            fromLine = Math.max(0, Math.min(fromLine, lines - 1));
+            int page = (int)(fromLine / LINES_PER_PAGE);
+            int lastPage = (int)((lines - 1) / LINES_PER_PAGE);
+            while (page >= 0 && page <= lastPage) {
+                if (cancelled.getAsBoolean()) {
+                    return null;
+                }
+                String[] pageLines;
+                synchronized (this) {
+                    pageLines = pages.get(page);
+                }
+                if (pageLines == null) {
+                    pageLines = readPage(searchSource, page);
+                }
+                long pageStart = (long)page * LINES_PER_PAGE;
+                int first = forward ? (int)Math.max(0, fromLine - pageStart) : Math.min(pageLines.length - 1, (int)(fromLine - pageStart));
+                for (int i = first; i >= 0 && i < pageLines.length; i += forward ? 1 : -1) {
+                    long line = pageStart + i;
+                    Matcher matcher = pattern.matcher(pageLines[i]);
+                    if (forward) {
+                        if (matcher.find(line == fromLine ? Math.min(fromColumn, pageLines[i].length()) : 0)) {
+                            return new long[] {line, matcher.start(), matcher.end()};
+                        }
+                    } else {
+                        long[] last = null;
+                        int limit = line == fromLine ? fromColumn : Integer.MAX_VALUE;
+                        while (matcher.find() && matcher.start() < limit) {
+                            last = new long[] {line, matcher.start(), matcher.end()};
+                        }
+                        if (last != null) {
+                            return last;
+                        }
+                    }
+                }
+                page += forward ? 1 : -1;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        source.close();
+    }
+
+
+    /////////////
+    // Sources //
+    /////////////
+
+    /**
+     * Random access to the bytes of the file.
+     */
+    private static abstract class Source implements Closeable {
+        /**
+         * Reads up to <code>length</code> bytes located at the given offset, fewer only at the end of the file.
+         *
+         * @return the number of bytes read, <code>-1</code> at the end of the file
+         */
+        abstract int read(long offset, byte[] buffer, int bufferOffset, int length) throws IOException;
+    }
+
+    /**
+     * Reads local files through a memory-mapped window, moved as needed.
+     */
+    private static class MappedSource extends Source {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedSource(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath());
+            this.size = channel.size();
+        }
+
+        @Override
+        synchronized int read(long offset, byte[] buffer, int bufferOffset, int length) throws IOException {
+            if (offset >= size) {
+                return -1;
+            }
+            int total = 0;
+            while (total < length && offset < size) {
+                if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+                    windowStart = offset & ~0xffffL;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(MAP_WINDOW_SIZE, size - windowStart));
+                }
+                int count = (int)Math.min(length - total, windowStart + window.limit() - offset);
+                window.position((int)(offset - windowStart));
+                window.get(buffer, bufferOffset + total, count);
+                total += count;
+                offset += count;
+            }
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads files through their random access stream.
+     */
+    private static class RandomAccessSource extends Source {
+        private final RandomAccessInputStream in;
+
+        RandomAccessSource(RandomAccessInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        synchronized int read(long offset, byte[] buffer, int bufferOffset, int length) throws IOException {
+            if (offset >= in.getLength()) {
+                return -1;
+            }
+            in.seek(offset);
+            int total = 0;
+            while (total < length) {
+                int read = in.read(buffer, bufferOffset + total, length - total);
+                if (read < 0) {
+                    break;
+                }
+                total += read;
+            }
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -17,10 +17,13 @@
  */
 package com.mucommander.utils;
 
+import com.mucommander.cache.FastLRUCache;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.ui.icon.CustomFileIconProvider;
 import com.mucommander.ui.icon.FileIcons;
+import com.mucommander.ui.icon.IconManager;
 import ru.trolsoft.macosx.RetinaImageIcon;
 
 import javax.swing.*;
@@ -28,12 +31,18 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created on 07.01.15.
  * @author Oleg trifonov
  *
- * Cache of system file icons
+ * Cache of system file icons.
+ *
+ * Regular files that share an extension share a cache entry, other files are cached by path. Icons can be requested
+ * asynchronously with {@link #getIcon(AbstractFile, Component)}: the icons that are not cached are then loaded by
+ * a background thread and the component is repainted when they are available, so that painting never waits for the OS.
  */
 public class FileIconsCache {
 
@@ -42,13 +51,62 @@ public class FileIconsCache {
      */
     private static final int CACHE_SIZE = 1000;
 
-    private final Map<String, Icon> icons = new HashMap<>();
-    private final LinkedList<String> files = new LinkedList<>();
+    /**
+     * Maximum number of pending asynchronous requests, the oldest ones are dropped first
+     */
+    private static final int MAX_PENDING_REQUESTS = 1000;
+
+    /**
+     * Minimum delay in milliseconds between two repaints of the components while icons are being loaded
+     */
+    private static final long REPAINT_DELAY = 100;
+
+    /**
+     * Extensions of the files that may have their own icon
+     */
+    private static final Set<String> PER_FILE_ICON_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "exe", "lnk", "ico", "icns", "url", "scr", "cpl", "app", "pif"));
+
+    private final FastLRUCache<String, Icon> icons = new FastLRUCache<>(CACHE_SIZE);
+
+    /**
+     * Asynchronous requests, the last one is processed first as it is the most likely to still be visible
+     */
+    private final Deque<IconRequest> requests = new ArrayDeque<>();
+
+    /**
+     * Keys of the icons being loaded
+     */
+    private final Set<String> pendingKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * Incremented by {@link #clear()}, so that icons loaded before it are dropped
+     */
+    private volatile int generation;
+
+    private Thread loaderThread;
 
 
     private static FileIconsCache instance;
 
 
+    /**
+     * An icon to load in background
+     */
+    private static class IconRequest {
+        final AbstractFile file;
+        final String key;
+        final Component component;
+        final int generation;
+
+        IconRequest(AbstractFile file, String key, Component component, int generation) {
+            this.file = file;
+            this.key = key;
+            this.component = component;
+            this.generation = generation;
+        }
+    }
+
 
     public static FileIconsCache getInstance() {
         if (instance == null) {
@@ -67,32 +125,59 @@ public class FileIconsCache {
      * @return
      */
     public Icon getIcon(AbstractFile file) {
-        String path = file.getAbsolutePath();
-        Icon result = icons.get(path);
+        String key = getCacheKey(file);
+        Icon result = icons.get(key);
         if (result != null) {
-            // move record to top
-            files.remove(path);
-            files.addFirst(path);
             return result;
         }
-        return addIcon(file, path);
+        return addIcon(file, key);
     }
 
-    public Icon getIcon(String path) {
-        Icon result = icons.get(path);
+    /**
+     * Returns the icon of the file if it's cached, otherwise requests it to be loaded in background and returns
+     * a generic file or folder icon. The component is repainted once the icon is loaded.
+     *
+     * @param file the file
+     * @param component the component that displays the icon
+     * @return the icon of the file or a placeholder
+     */
+    public Icon getIcon(AbstractFile file, Component component) {
+        String key = getCacheKey(file);
+        Icon result = icons.get(key);
         if (result != null) {
-            // move record to top
-            files.remove(path);
-            files.addFirst(path);
             return result;
         }
+        if (pendingKeys.add(key)) {
+            synchronized (requests) {
+                requests.addLast(new IconRequest(file, key, component, generation));
+                if (requests.size() > MAX_PENDING_REQUESTS) {
+                    // The file is probably not visible anymore, the icon will be requested again if needed
+                    pendingKeys.remove(requests.removeFirst().key);
+                }
+                if (loaderThread == null) {
+                    loaderThread = new Thread(this::loadRequestedIcons, "FileIconsCache loader");
+                    loaderThread.setDaemon(true);
+                    loaderThread.start();
+                }
+                requests.notify();
+            }
+        }
+        return getPlaceholderIcon(file);
+    }
+
+    public Icon getIcon(String path) {
         AbstractFile file = null;
         try {
             file = FileFactory.getFile(FileURL.getFileURL(path));
         } catch (MalformedURLException e) {
             e.printStackTrace();
         }
-        return addIcon(file, path);
+        String key = file == null ? path : getCacheKey(file);
+        Icon result = icons.get(key);
+        if (result != null) {
+            return result;
+        }
+        return addIcon(file, key);
     }
 
 
@@ -117,6 +202,32 @@ public class FileIconsCache {
     }
 
 
+    /**
+     * Returns the key of the file icon in the cache: regular files with the same extension and protocol
+     * share their icon, unless the extension is one of the {@link #PER_FILE_ICON_EXTENSIONS}.
+     *
+     * @param file the file
+     * @return the cache key
+     */
+    private static String getCacheKey(AbstractFile file) {
+        String extension = file.getExtension();
+        if (extension == null || file.isDirectory() || file.isSymlink() || file.isBrowsable()) {
+            return file.getAbsolutePath();
+        }
+        extension = extension.toLowerCase();
+        if (PER_FILE_ICON_EXTENSIONS.contains(extension)) {
+            return file.getAbsolutePath();
+        }
+        return file.getURL().getScheme() + ":*." + extension;
+    }
+
+
+    private static Icon getPlaceholderIcon(AbstractFile file) {
+        String iconName = file.isDirectory() ? CustomFileIconProvider.FOLDER_ICON_NAME : CustomFileIconProvider.FILE_ICON_NAME;
+        return IconManager.getIcon(IconManager.IconSet.FILE, iconName, FileIcons.getScaleFactor());
+    }
+
+
     /**
      * Request file icon from OS
      * @param file
@@ -129,25 +240,70 @@ public class FileIconsCache {
 
     /**
      * Loads icon and adds it to cache
-     * @param path absolute path of file
+     * @param key cache key of the icon
      * @return loaded icon
      */
-    private Icon addIcon(AbstractFile file, String path) {
+    private Icon addIcon(AbstractFile file, String key) {
         Icon icon = loadIcon(file);
-        icons.put(path, icon);
-        files.addFirst(path);
+        icons.add(key, icon);
+        return icon;
+    }
 
-        // remove oldest record if the cache is full
-        if (files.size() > CACHE_SIZE) {
-            icons.remove(files.removeLast());
+
+    /**
+     * Body of the loader thread, processes the asynchronous requests
+     */
+    private void loadRequestedIcons() {
+        List<Component> components = new ArrayList<>();
+        long lastRepaint = 0;
+        while (true) {
+            IconRequest request;
+            synchronized (requests) {
+                while (requests.isEmpty()) {
+                    try {
+                        requests.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                request = requests.removeLast();
+            }
+            try {
+                Icon icon = loadIcon(request.file);
+                if (request.generation == generation) {
+                    icons.add(request.key, icon);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                pendingKeys.remove(request.key);
+            }
+            if (!components.contains(request.component)) {
+                components.add(request.component);
+            }
+            // Repaints once a batch of icons has been loaded
+            boolean idle;
+            synchronized (requests) {
+                idle = requests.isEmpty();
+            }
+            long now = System.currentTimeMillis();
+            if (idle || now - lastRepaint >= REPAINT_DELAY) {
+                lastRepaint = now;
+                final Component[] toRepaint = components.toArray(new Component[components.size()]);
+                components.clear();
+                SwingUtilities.invokeLater(() -> {
+                    for (Component component : toRepaint) {
+                        component.repaint();
+                    }
+                });
+            }
         }
-        return icon;
     }
 
 
     public void clear() {
-        icons.clear();
-        files.clear();
+        generation++;
+        icons.clearAll();
     }
 
 }
@@ -18,58 +18,88 @@
 package ru.trolsoft.hexeditor.data;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Buffered file reader
+ * Buffered file reader.
+ *
+ * The data is read by pages of {@link #PAGE_SIZE} bytes. Up to <code>capacity</code> bytes of the most recently used
+ * pages are kept in memory, so that scrolling back and forth over the data doesn't read it again.
  */
 public abstract class AbstractByteBuffer {
 
     /**
-     * Стратегия кеширования при чтении
+     * Size of the cached pages, the file is read by blocks of this size aligned on it
      */
-    public enum CacheStrategy {
-        FORWARD,
-        BACKWARD,
-        CENTER
-    }
+    public static final int PAGE_SIZE = 64*1024;
 
     /**
-     *
+     * Default size of the page cache
      */
-    static final int DEFAULT_CAPACITY = 1024*256;
+    static final int DEFAULT_CAPACITY = 1024*1024*4;
 
 
     /**
-     * Size of buffer
+     * Cached data of the file
      */
-    protected int capacity;
+    private static class Page {
+        final byte[] data;
+        /** Number of bytes of the page, lower than {@link #PAGE_SIZE} only for the last page of the file */
+        int size;
+        long index = -1;
+
+        Page(int size) {
+            this.data = new byte[size];
+        }
+    }
+
 
     /**
-     * Number of bytes in buffer
+     * Maximal size of the page cache
      */
-    protected int size;
-    protected long offset;
-    protected byte[] buffer;
+    protected int capacity;
 
     /**
      * Size of file
      */
     protected long streamSize;
 
+    /**
+     * Recently used pages, in access order
+     */
+    private final Map<Long, Page> pages;
+
+    /**
+     * Last accessed page, checked before looking the cache up
+     */
+    private Page currentPage;
+
+    /**
+     * Page evicted from the cache, reused to load the next one
+     */
+    private Page freePage;
+
+    /**
+     * Page used by {@link #getBytes(long, byte[], int, int)} for the data that isn't cached
+     */
+    private Page streamPage;
 
-    private CacheStrategy cacheStrategy = CacheStrategy.CENTER;
 
     public AbstractByteBuffer(int capacity) {
         this.capacity = capacity;
-        buffer = new byte[capacity];
-        this.offset = 0;
-        this.size = 0;
         this.streamSize = -1;
-    }
-
-
-    public long getOffset() {
-        return offset;
+        final int maxPages = Math.max(capacity / PAGE_SIZE, 2);
+        this.pages = new LinkedHashMap<Long, Page>(maxPages + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Page> eldest) {
+                if (size() > maxPages) {
+                    freePage = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
     }
 
 
@@ -81,46 +111,89 @@ public abstract class AbstractByteBuffer {
      * @throws IndexOutOfBoundsException
      */
     public byte getByte(long fileOffset) throws IOException {
-        long index = fileOffset - offset;
-        if (index < 0 || index >= size) {
+        Page page = currentPage;
+        long pageIndex = fileOffset / PAGE_SIZE;
+        if (page == null || page.index != pageIndex || fileOffset < 0) {
             if (fileOffset < 0 || fileOffset >= getFileSize()) {
                 throw new IndexOutOfBoundsException("Position: " + fileOffset + ", file size = " + getFileSize());
             }
-            offset = calcOffset(fileOffset, supportRandomAccess());
-            // FIXME if offset > size
-            if (offset < 0) {
-                offset = 0;
-            }
-            loadBuffer();
-            index = fileOffset - offset;
+            page = getPage(pageIndex);
+            currentPage = page;
+        }
+        int index = (int)(fileOffset - pageIndex * PAGE_SIZE);
+        if (index >= page.size) {
+            throw new IndexOutOfBoundsException("Position: " + fileOffset + ", file size = " + getFileSize());
         }
-        return buffer[(int)index];
+        return page.data[index];
     }
 
 
-    private long calcOffset(long fileOffset, boolean randomAccessStream) {
-        if (randomAccessStream) {
-            switch (cacheStrategy) {
-                case FORWARD:
-                    return fileOffset;
-                case BACKWARD:
-                    return fileOffset - buffer.length;
-                case CENTER:
-                    return fileOffset - buffer.length / 2;
+    /**
+     * Copies bytes starting at the given file offset. The cached pages are used when available, the other data
+     * is read without being cached, so that a scan over the whole file doesn't evict the pages being viewed.
+     *
+     * @param fileOffset offset of the first byte to copy
+     * @param dest destination array
+     * @param destOffset offset in the destination array
+     * @param len maximum number of bytes to copy
+     * @return the number of bytes copied, which is lower than <code>len</code> only at the end of the file
+     * @throws IOException
+     */
+    public int getBytes(long fileOffset, byte[] dest, int destOffset, int len) throws IOException {
+        long fileSize = getFileSize();
+        int copied = 0;
+        while (copied < len && fileOffset + copied < fileSize) {
+            long pos = fileOffset + copied;
+            long pageIndex = pos / PAGE_SIZE;
+            Page page = pages.get(pageIndex);
+            if (page == null) {
+                page = streamPage;
+                if (page == null) {
+                    page = streamPage = new Page(PAGE_SIZE);
+                }
+                if (page.index != pageIndex) {
+                    loadPage(page, pageIndex);
+                }
             }
-        } else {
-            switch (cacheStrategy) {
-                case FORWARD:
-                    return fileOffset;
-                case BACKWARD:
-                    return fileOffset - buffer.length;
-                case CENTER:
-                    return fileOffset;
+            int index = (int)(pos - pageIndex * PAGE_SIZE);
+            if (index >= page.size) {
+                break;
             }
+            int n = Math.min(len - copied, page.size - index);
+            System.arraycopy(page.data, index, dest, destOffset + copied, n);
+            copied += n;
         }
-        return fileOffset;
+        return copied;
+    }
+
+
+    private Page getPage(long pageIndex) throws IOException {
+        Page page = pages.get(pageIndex);
+        if (page != null) {
+            return page;
+        }
+        if (streamPage != null && streamPage.index == pageIndex) {
+            // The page has just been read by getBytes(), it is moved to the cache
+            page = streamPage;
+            streamPage = null;
+        } else {
+            page = freePage != null ? freePage : new Page(PAGE_SIZE);
+            freePage = null;
+            loadPage(page, pageIndex);
+        }
+        pages.put(pageIndex, page);
+        return page;
+    }
+
+
+    private void loadPage(Page page, long pageIndex) throws IOException {
+        long pageOffset = pageIndex * PAGE_SIZE;
+        page.index = -1;
+        page.size = readData(pageOffset, page.data, (int)Math.min(PAGE_SIZE, getFileSize() - pageOffset));
+        page.index = pageIndex;
     }
 
+
     /**
      *
      * @return
@@ -139,8 +212,10 @@ public abstract class AbstractByteBuffer {
      * @throws IOException
      */
     public void close() throws IOException {
-        size = 0;
-        buffer = null;
+        pages.clear();
+        currentPage = null;
+        freePage = null;
+        streamPage = null;
         closeStream();
     }
 
@@ -160,29 +235,14 @@ public abstract class AbstractByteBuffer {
 
 
     /**
-     * Load file data from #offset and fills #buffer
+     * Reads file data. The offset is always a multiple of {@link #PAGE_SIZE} and <code>len</code> doesn't exceed it.
      *
+     * @param offset file offset of the data
+     * @param buffer buffer to fill from its start
+     * @param len number of bytes to read
+     * @return the number of bytes read, lower than <code>len</code> only if the end of file has been reached
      * @throws IOException
-     *
-     * @see #offset
-     * @see #buffer
-     * @see #size
-     */
-    abstract protected void loadBuffer() throws IOException;
-
-    /**
-     *
-     * @return
      */
-    abstract protected boolean supportRandomAccess();
-
-    public CacheStrategy getCacheStrategy() {
-        return cacheStrategy;
-    }
-
-    public void setCacheStrategy(CacheStrategy cacheStrategy) {
-        this.cacheStrategy = cacheStrategy;
-    }
-
+    abstract protected int readData(long offset, byte[] buffer, int len) throws IOException;
 
 }
@@ -58,14 +58,18 @@ public class FileByteBuffer extends AbstractByteBuffer {
     }
 
     @Override
-    protected void loadBuffer() throws IOException {
-        getFile().seek(offset);
-        size = getFile().read(buffer);
-    }
-
-    @Override
-    protected boolean supportRandomAccess() {
-        return true;
+    protected int readData(long offset, byte[] buffer, int len) throws IOException {
+        RandomAccessFile file = getFile();
+        file.seek(offset);
+        int size = 0;
+        while (size < len) {
+            int read = file.read(buffer, size, len - size);
+            if (read < 0) {
+                break;
+            }
+            size += read;
+        }
+        return size;
     }
 
 
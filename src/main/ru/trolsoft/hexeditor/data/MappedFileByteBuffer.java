@@ -0,0 +1,87 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.hexeditor.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a local file through a memory-mapped window, which avoids a system call and a copy from the OS cache for
+ * each page. The window is moved along the file, so that files of any size can be read by 32-bit JVMs too.
+ */
+public class MappedFileByteBuffer extends AbstractByteBuffer {
+
+    /**
+     * Size of the mapped window, a multiple of {@link #PAGE_SIZE} so that a page never spans two windows
+     */
+    private static final long WINDOW_SIZE = 64L*1024*1024;
+
+    private final File file;
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowOffset;
+
+
+    public MappedFileByteBuffer(File file) {
+        super(DEFAULT_CAPACITY);
+        this.file = file;
+    }
+
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+
+    @Override
+    protected void closeStream() throws IOException {
+        window = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    protected long getStreamSize() throws IOException {
+        return getChannel().size();
+    }
+
+    @Override
+    protected int readData(long offset, byte[] buffer, int len) throws IOException {
+        if (window == null || offset < windowOffset || offset >= windowOffset + window.capacity()) {
+            long size = getChannel().size();
+            if (offset >= size) {
+                return 0;
+            }
+            windowOffset = offset - offset % WINDOW_SIZE;
+            window = getChannel().map(FileChannel.MapMode.READ_ONLY, windowOffset, Math.min(WINDOW_SIZE, size - windowOffset));
+        }
+        int index = (int)(offset - windowOffset);
+        int n = Math.min(len, window.capacity() - index);
+        window.position(index);
+        window.get(buffer, 0, n);
+        return n;
+    }
+
+}
@@ -24,9 +24,11 @@ import java.io.IOException;
  * Created on 08/02/17.
  */
 public class MemoryByteBuffer extends AbstractByteBuffer {
+    private final byte[] buffer;
+
     public MemoryByteBuffer(int capacity) {
         super(capacity);
-        size = capacity;
+        buffer = new byte[capacity];
         streamSize = capacity;
     }
 
@@ -41,12 +43,9 @@ public class MemoryByteBuffer extends AbstractByteBuffer {
     }
 
     @Override
-    protected void loadBuffer() throws IOException {
-    }
-
-    @Override
-    protected boolean supportRandomAccess() {
-        return true;
+    protected int readData(long offset, byte[] buffer, int len) {
+        System.arraycopy(this.buffer, (int)offset, buffer, 0, len);
+        return len;
     }
 
     @Override
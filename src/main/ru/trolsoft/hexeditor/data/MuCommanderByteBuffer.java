@@ -20,6 +20,7 @@ package ru.trolsoft.hexeditor.data;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.StreamUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -50,44 +51,38 @@ public class MuCommanderByteBuffer extends AbstractByteBuffer {
     }
 
     @Override
-    protected void loadBuffer() throws IOException {
+    protected int readData(long offset, byte[] buffer, int len) throws IOException {
         getInputStream();
         if (is instanceof RandomAccessInputStream) {
             RandomAccessInputStream rndIs = ((RandomAccessInputStream) is);
             // Seek and reuse the stream
-            rndIs.seek(offset);
-//System.out.println("RANDOM ACCESS " + offset);
+            if (lastOffset != offset) {
+                rndIs.seek(offset);
+            }
         } else {
             // TODO: it would be more efficient to use some sort of PushBackInputStream, though we can't use PushBackInputStream because we don't want to keep pushing back for the whole InputStream lifetime
             // Close the InputStream and open a new one
             // Note: we could use mark/reset if the InputStream supports it, but it is almost never implemented by
             // InputStream subclasses and a broken by design anyway.
+            // This only happens for the pages that have been evicted from the cache.
             if (lastOffset > offset) {
-//System.out.println("GENERAL ACCESS WITH RECREATE " + offset + "   " + lastOffset + "    " + (lastOffset - offset));
                 is.close();
                 is = file.getInputStream();
-                is.skip(offset);
+                StreamUtils.skipFully(is, offset);
             } else if (lastOffset != offset) {
-//System.out.println("GENERAL ACCESS WITH SKIP " + offset + "   " + (offset - lastOffset));
-                is.skip(offset - lastOffset);
+                StreamUtils.skipFully(is, offset - lastOffset);
             }
         }
-        int bufPos = 0;
-        size = 0;
-        while (size < capacity) {
-            int read = is.read(buffer, bufPos, capacity-size);
+        int size = 0;
+        while (size < len) {
+            int read = is.read(buffer, size, len - size);
             if (read < 0) {
                 break;
             }
-            bufPos += read;
             size += read;
         }
         lastOffset = offset + size;
-    }
-
-    @Override
-    protected boolean supportRandomAccess() {
-        return file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+        return size;
     }
 
 
@@ -18,6 +18,7 @@
 package ru.trolsoft.hexeditor.search;
 
 import ru.trolsoft.hexeditor.data.AbstractByteBuffer;
+import ru.trolsoft.utils.search.BlockSearcher;
 
 import java.io.IOException;
 
@@ -39,24 +40,18 @@ public class ByteBufferSearchUtils {
         if (fileSize <= 0 || pattern.length == 0) {
             return -1;
         }
-        int[] failure = computeFailure(pattern);
-        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
-        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.FORWARD);
-
-        int j = 0;
-        for (long i = fromOffset; i < fileSize; i++) {
-            while (j > 0 && pattern[j] != data.getByte(i)) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data.getByte(i)) {
-                j++;
-            }
-            if (j == pattern.length) {
-                data.setCacheStrategy(cacheStrategy);
-                return i - pattern.length + 1;
+        BlockSearcher searcher = new BlockSearcher(pattern);
+        byte[] block = new byte[Math.max(BlockSearcher.BLOCK_SIZE, 2 * pattern.length)];
+        long start = Math.max(fromOffset, 0);
+        while (fileSize - start >= pattern.length) {
+            int n = data.getBytes(start, block, 0, block.length);
+            int found = searcher.indexOf(block, 0, n);
+            if (found >= 0) {
+                return start + found;
             }
+            // Blocks overlap so that occurrences that cross their boundaries are found
+            start += n - (pattern.length - 1);
         }
-        data.setCacheStrategy(cacheStrategy);
         return -1;
     }
 
@@ -69,9 +64,6 @@ public class ByteBufferSearchUtils {
         for (int i = 0; i < patterns.length; i++) {
             failures[i] = computeFailure(patterns[i]);
         }
-        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
-        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.FORWARD);
-
         int[] j = new int[patterns.length];
         for (int i = 0; i < j.length; i++) {
             j[i] = 0;
@@ -90,63 +82,50 @@ public class ByteBufferSearchUtils {
             }
         }
         */
-        data.setCacheStrategy(cacheStrategy);
         return -1;
     }
 
 
+    /**
+     * Returns the offset within the ByteBuffer of the last occurrence of the specified data that starts at or before
+     * the specified offset.
+     *
+     * @param data buffer for search
+     * @param pattern the data to search for
+     * @param fromOffset the offset from which to start the backward search
+     * @return the offset of the last occurrence of the specified data, or -1 if there is no such occurrence
+     */
     public static long indexOfBackward(AbstractByteBuffer data, byte[] pattern, long fromOffset) throws IOException {
-        byte[] patternInvert = new byte[pattern.length];
-        for (int i = 0; i < pattern.length; i++) {
-            patternInvert[i] = pattern[pattern.length-i-1];
+        long fileSize = data.getFileSize();
+        if (fileSize <= 0 || pattern.length == 0 || fromOffset < 0) {
+            return -1;
         }
-        int[] failure = computeFailure(patternInvert);
-        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
-        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.BACKWARD);
-
-        int j = 0;
-        for (long i = fromOffset; i >= 0; i--) {
-            while (j > 0 && patternInvert[j] != data.getByte(i)) {
-                j = failure[j - 1];
+        BlockSearcher searcher = new BlockSearcher(pattern);
+        // Blocks are read from the end of the file to its start
+        byte[] block = new byte[Math.max(BlockSearcher.BLOCK_SIZE, 2 * pattern.length)];
+        long end = Math.min(fileSize, fromOffset + pattern.length);
+        while (end >= pattern.length) {
+            long start = Math.max(0, end - block.length);
+            int n = data.getBytes(start, block, 0, (int)(end - start));
+            int found = searcher.lastIndexOf(block, 0, n);
+            if (found >= 0) {
+                return start + found;
             }
-            if (pattern[j] == data.getByte(i)) {
-                j++;
-            }
-            if (j == pattern.length) {
-                data.setCacheStrategy(cacheStrategy);
-                return i - pattern.length + 1;
+            if (start == 0) {
+                break;
             }
+            end = start + pattern.length - 1;
         }
-        data.setCacheStrategy(cacheStrategy);
         return -1;
     }
 
 
 
     /**
-     * Knuth-Morris-Pratt Algorithm for Pattern Matching
-     * Finds the first occurrence of the pattern in the text.
+     * Finds the first occurrence of the pattern in the data.
      */
     public static int indexOf(byte[] data, byte[] pattern) {
-        int[] failure = computeFailure(pattern);
-
-        int j = 0;
-        if (data.length == 0) {
-            return -1;
-        }
-
-        for (int i = 0; i < data.length; i++) {
-            while (j > 0 && pattern[j] != data[i]) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data[i]) {
-                j++;
-            }
-            if (j == pattern.length) {
-                return i - pattern.length + 1;
-            }
-        }
-        return -1;
+        return new BlockSearcher(pattern).indexOf(data, 0, data.length);
     }
 
     /**
@@ -0,0 +1,251 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import com.mucommander.commons.io.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Searches a {@link SearchPattern} in blocks of data using the Boyer-Moore-Horspool algorithm.
+ *
+ * <p>The pattern is compiled once into a table of the bytes accepted at each of its positions, so case-insensitive
+ * and hex patterns are matched the same way, without calling the pattern for each byte. Horspool's shift table lets
+ * the search skip up to <code>length()</code> bytes after a mismatch, which makes searching a block cheaper than
+ * reading it.</p>
+ *
+ * <p>Instances are immutable and may be shared between threads.</p>
+ */
+public class BlockSearcher {
+
+    /** Size of the blocks that are read from streams and file channels */
+    public static final int BLOCK_SIZE = 256 * 1024;
+
+    private final int length;
+
+    /** Bytes accepted at each position of the pattern, indexed by <code>(position << 8) | byte</code> */
+    private final boolean[] accept;
+
+    /** Shift of the search window, indexed by the last byte of the window, when searching forward */
+    private final int[] forwardShift = new int[256];
+
+    /** Shift of the search window, indexed by the first byte of the window, when searching backward */
+    private final int[] backwardShift = new int[256];
+
+    public BlockSearcher(SearchPattern pattern) {
+        this.length = pattern.length();
+        this.accept = new boolean[length << 8];
+        for (int i = 0; i < length; i++) {
+            for (int b = 0; b < 256; b++) {
+                accept[(i << 8) | b] = pattern.checkByte(i, b);
+            }
+        }
+
+        for (int b = 0; b < 256; b++) {
+            forwardShift[b] = length;
+            for (int i = length - 2; i >= 0; i--) {
+                if (accept[(i << 8) | b]) {
+                    forwardShift[b] = length - 1 - i;
+                    break;
+                }
+            }
+            backwardShift[b] = length;
+            for (int i = 1; i < length; i++) {
+                if (accept[(i << 8) | b]) {
+                    backwardShift[b] = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    public BlockSearcher(byte[] pattern) {
+        this(new BytesSearchPattern(pattern));
+    }
+
+    /**
+     *
+     * @return length of the search pattern
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the pattern in <code>data[from, to)</code>.
+     *
+     * @param data the data to search
+     * @param from index of the first byte to search
+     * @param to index following the last byte to search
+     * @return the index of the first occurrence, or -1 if there is no such occurrence
+     */
+    public int indexOf(byte[] data, int from, int to) {
+        if (length == 0) {
+            return -1;
+        }
+        int last = length - 1;
+        for (int s = from; s <= to - length; ) {
+            int j = last;
+            while (accept[(j << 8) | (data[s + j] & 0xff)]) {
+                if (j == 0) {
+                    return s;
+                }
+                j--;
+            }
+            s += forwardShift[data[s + last] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the pattern between the absolute positions <code>from</code>
+     * (inclusive) and <code>to</code> (exclusive) of a buffer. The buffer's position and limit are not used.
+     *
+     * @param data the data to search
+     * @param from index of the first byte to search
+     * @param to index following the last byte to search
+     * @return the index of the first occurrence, or -1 if there is no such occurrence
+     */
+    public int indexOf(ByteBuffer data, int from, int to) {
+        if (data.hasArray()) {
+            int found = indexOf(data.array(), data.arrayOffset() + from, data.arrayOffset() + to);
+            return found < 0 ? -1 : found - data.arrayOffset();
+        }
+        if (length == 0) {
+            return -1;
+        }
+        int last = length - 1;
+        for (int s = from; s <= to - length; ) {
+            int j = last;
+            while (accept[(j << 8) | (data.get(s + j) & 0xff)]) {
+                if (j == 0) {
+                    return s;
+                }
+                j--;
+            }
+            s += forwardShift[data.get(s + last) & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the pattern in <code>data[from, to)</code>.
+     *
+     * @param data the data to search
+     * @param from index of the first byte to search
+     * @param to index following the last byte to search
+     * @return the index of the last occurrence, or -1 if there is no such occurrence
+     */
+    public int lastIndexOf(byte[] data, int from, int to) {
+        if (length == 0) {
+            return -1;
+        }
+        int last = length - 1;
+        for (int s = to - length; s >= from; ) {
+            int j = 0;
+            while (accept[(j << 8) | (data[s + j] & 0xff)]) {
+                if (j == last) {
+                    return s;
+                }
+                j++;
+            }
+            s -= backwardShift[data[s] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the pattern in a stream, which is read by blocks.
+     * The stream is not closed.
+     *
+     * @param in the stream to search
+     * @return the offset of the first occurrence, or -1 if there is no such occurrence
+     * @throws IOException if an error occurred while reading the stream
+     */
+    public long indexOf(InputStream in) throws IOException {
+        if (length == 0) {
+            return -1;
+        }
+        byte[] block = new byte[Math.max(BLOCK_SIZE, 2 * length)];
+        int filled = 0;
+        long blockOffset = 0;
+        int read;
+        while ((read = in.read(block, filled, block.length - filled)) != -1) {
+            filled += read;
+            if (filled < block.length) {
+                continue;
+            }
+            int found = indexOf(block, 0, filled);
+            if (found >= 0) {
+                return blockOffset + found;
+            }
+            // Keep the end of the block, which may be the start of an occurrence
+            int keep = length - 1;
+            System.arraycopy(block, filled - keep, block, 0, keep);
+            blockOffset += filled - keep;
+            filled = keep;
+        }
+        int found = indexOf(block, 0, filled);
+        return found < 0 ? -1 : blockOffset + found;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the pattern in a file channel, which is read by blocks into a
+     * direct buffer from the {@link BufferPool}. Unlike memory-mapped windows, which are only unmapped when they are
+     * garbage-collected, the buffer holds neither address space nor a lock on the file once the search is over.
+     * The channel's position is not used.
+     *
+     * @param channel the channel to search
+     * @return the offset of the first occurrence, or -1 if there is no such occurrence
+     * @throws IOException if an error occurred while reading the channel
+     */
+    public long indexOf(FileChannel channel) throws IOException {
+        if (length == 0) {
+            return -1;
+        }
+        ByteBuffer block = BufferPool.getByteBuffer(Math.max(BLOCK_SIZE, 2 * length));
+        try {
+            long blockOffset = 0;
+            long position = 0;
+            int read;
+            while ((read = channel.read(block, position)) != -1) {
+                position += read;
+                if (block.hasRemaining()) {
+                    continue;
+                }
+                int filled = block.position();
+                int found = indexOf(block, 0, filled);
+                if (found >= 0) {
+                    return blockOffset + found;
+                }
+                // Keep the end of the block, which may be the start of an occurrence
+                int keep = length - 1;
+                block.position(filled - keep);
+                block.compact();
+                blockOffset += filled - keep;
+            }
+            int found = indexOf(block, 0, block.position());
+            return found < 0 ? -1 : blockOffset + found;
+        } finally {
+            BufferPool.releaseByteBuffer(block);
+        }
+    }
+}
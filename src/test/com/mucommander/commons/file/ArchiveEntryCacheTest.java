@@ -0,0 +1,133 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.archiver.ArchiveFormat;
+import com.mucommander.commons.file.archiver.Archiver;
+import com.mucommander.commons.file.impl.tar.TarArchiveFile;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * A test case for {@link ArchiveEntryCache}.
+ */
+public class ArchiveEntryCacheTest {
+
+    private File cacheFolder;
+    private File tempFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        cacheFolder = Files.createTempDirectory("archive_entries").toFile();
+        tempFile = File.createTempFile("archiveentrycache", null);
+        ArchiveEntryCache.setCacheFolder(cacheFolder);
+        ArchiveEntryCache.setMaxSize(1024 * 1024);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ArchiveEntryCache.setMaxSize(0);
+        ArchiveEntryCache.setCacheFolder(null);
+        cacheFolder.delete();
+        tempFile.delete();
+    }
+
+    private AbstractFile writeArchive(String... entries) throws IOException {
+        AbstractFile file = FileFactory.getFile(tempFile.getAbsolutePath());
+        Archiver archiver = Archiver.getArchiver(file, ArchiveFormat.TAR);
+        try {
+            for (String entry : entries) {
+                byte[] data = entry.getBytes(StandardCharsets.UTF_8);
+                SimpleFileAttributes attributes = new SimpleFileAttributes();
+                attributes.setPath(entry);
+                attributes.setSize(data.length);
+                attributes.setDate(1500000000000L);
+                attributes.setExists(true);
+                attributes.setPermissions(FilePermissions.DEFAULT_FILE_PERMISSIONS);
+                archiver.createEntry(entry, attributes).write(data);
+            }
+        } finally {
+            archiver.close();
+        }
+        return file;
+    }
+
+    private static String read(AbstractFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            StreamUtils.copyStream(in, bout);
+            return new String(bout.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static ArchiveEntry getEntry(AbstractArchiveFile archive, String path) throws IOException {
+        return ((AbstractArchiveEntryFile)archive.getArchiveEntryFile(path)).getEntry();
+    }
+
+    /**
+     * Asserts that an archive that hasn't changed is listed from the cache, that the entries of a cached listing can
+     * be read, and that the listing isn't used anymore once the archive has changed.
+     */
+    @Test
+    public void testCachedListing() throws IOException {
+        AbstractFile file = writeArchive("a/b.txt", "c.txt");
+        file.setLastModifiedDate(1500000000000L);
+
+        AbstractArchiveFile archive = new TarArchiveFile(file);
+        assert archive.ls().length == 2;
+        assert !(getEntry(archive, "a/b.txt") instanceof ArchiveEntryCache.CachedEntry);
+
+        archive = new TarArchiveFile(FileFactory.getFile(tempFile.getAbsolutePath()));
+        assert archive.ls().length == 2;
+        ArchiveEntry entry = getEntry(archive, "a/b.txt");
+        assert entry instanceof ArchiveEntryCache.CachedEntry;
+        assert entry.getSize() == 7;
+        assert entry.getLastModifiedDate() == 1500000000000L;
+        assert read(archive.getArchiveEntryFile("a/b.txt")).equals("a/b.txt");
+        assert read(archive.getArchiveEntryFile("c.txt")).equals("c.txt");
+
+        file = writeArchive("d.txt");
+        file.setLastModifiedDate(1600000000000L);
+        archive = new TarArchiveFile(file);
+        assert archive.ls().length == 1;
+        assert !(getEntry(archive, "d.txt") instanceof ArchiveEntryCache.CachedEntry);
+    }
+
+    /**
+     * Asserts that lowering the maximum size of the cache evicts listings.
+     */
+    @Test
+    public void testEviction() throws IOException {
+        AbstractFile file = writeArchive("a.txt");
+        file.setLastModifiedDate(1500000000000L);
+        new TarArchiveFile(file).ls();
+        assert cacheFolder.list().length == 1;
+
+        ArchiveEntryCache.setMaxSize(1);
+        assert cacheFolder.list().length == 0;
+    }
+}
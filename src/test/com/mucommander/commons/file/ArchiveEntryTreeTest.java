@@ -0,0 +1,90 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link ArchiveEntryTree}.
+ */
+public class ArchiveEntryTreeTest {
+
+    private static ArchiveEntry addEntry(ArchiveEntryTree tree, String path, boolean directory) {
+        ArchiveEntry entry = new ArchiveEntry(path, directory, 0, 0, true);
+        tree.addArchiveEntry(entry);
+        return entry;
+    }
+
+    /**
+     * Asserts that parent folders are created for entries whose folder has no entry, and replaced when the folder's
+     * entry comes after, and that lookups ignore trailing slashes.
+     */
+    @Test
+    public void testImplicitFolders() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        ArchiveEntry file = addEntry(tree, "a/b/file.txt", false);
+
+        assert tree.getChildCount() == 1;
+        ArchiveEntryNode folderNode = tree.findEntryNode("a/b");
+        assert folderNode != null;
+        assert folderNode == tree.findEntryNode("a/b/");
+        assert folderNode.getEntry().isDirectory();
+        assert folderNode.getParent() == tree.findEntryNode("a");
+        assert tree.findEntryNode("a/b/file.txt").getEntry() == file;
+        assert tree.findEntryNode("a/c") == null;
+        assert tree.findEntryNode("a/b/file.txt/x") == null;
+
+        ArchiveEntry folder = addEntry(tree, "a/b/", true);
+        assert tree.findEntryNode("a/b") == folderNode;
+        assert folderNode.getEntry() == folder;
+        assert folderNode.getChildCount() == 1;
+    }
+
+    /**
+     * Asserts that entries are found in folders large enough to be indexed, that their order is preserved, and that
+     * the first of two entries with the same path is the one found.
+     */
+    @Test
+    public void testLargeFolder() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        int nbEntries = 1000;
+        for (int i = 0; i < nbEntries; i++) {
+            addEntry(tree, "dir/file" + i, false);
+        }
+        ArchiveEntry duplicate = addEntry(tree, "dir/file5", false);
+
+        ArchiveEntryNode folderNode = tree.findEntryNode("dir");
+        assert folderNode.getChildCount() == nbEntries + 1;
+        for (int i = 0; i < nbEntries; i++) {
+            assert folderNode.getChildAt(i).getEntry().getPath().equals("dir/file" + i);
+            assert tree.findEntryNode("dir/file" + i) == folderNode.getChildAt(i);
+        }
+        assert folderNode.getChildAt(nbEntries).getEntry() == duplicate;
+
+        // Removing the first entry makes the duplicate visible
+        ArchiveEntryNode first = tree.findEntryNode("dir/file5");
+        assert first.getEntry() != duplicate;
+        folderNode.remove(first);
+        assert folderNode.getChildCount() == nbEntries;
+        assert tree.findEntryNode("dir/file5").getEntry() == duplicate;
+
+        folderNode.remove(tree.findEntryNode("dir/file5"));
+        assert tree.findEntryNode("dir/file5") == null;
+        assert tree.findEntryNode("dir/file6") != null;
+    }
+}
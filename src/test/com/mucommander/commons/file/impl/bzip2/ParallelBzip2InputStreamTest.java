@@ -0,0 +1,146 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.bzip2;
+
+import com.mucommander.commons.io.StreamUtils;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A test case for {@link ParallelBzip2InputStream}.
+ */
+public class ParallelBzip2InputStreamTest {
+
+    /**
+     * Returns data that alternates incompressible and compressible parts, so that blocks have various compressed
+     * sizes and end at various bit offsets.
+     */
+    private static byte[] createData(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        for (int off = 0; off < length; ) {
+            int len = Math.min(length - off, 1000 + random.nextInt(50000));
+            if (random.nextBoolean()) {
+                for (int i = off; i < off + len; i++) {
+                    data[i] = (byte)random.nextInt();
+                }
+            } else {
+                Arrays.fill(data, off, off + len / 2, (byte)'x');
+                for (int i = off + len / 2; i < off + len; i++) {
+                    data[i] = (byte)('a' + random.nextInt(3));
+                }
+            }
+            off += len;
+        }
+        return data;
+    }
+
+    /**
+     * Compresses the given data into a Bzip2 stream, including the 'BZ' magic bytes.
+     */
+    private static byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        bout.write('B');
+        bout.write('Z');
+        try (CBZip2OutputStream out = new CBZip2OutputStream(bout, blockSize)) {
+            out.write(data);
+        }
+        return bout.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, int nbThreads, ParallelBzip2InputStream.BlockListener listener) throws IOException {
+        InputStream in = new ByteArrayInputStream(compressed, 2, compressed.length - 2);
+        try (InputStream bzIn = new ParallelBzip2InputStream(in, nbThreads, listener)) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            StreamUtils.copyStream(bzIn, bout);
+            return bout.toByteArray();
+        }
+    }
+
+    @Test
+    public void testBlocks() throws IOException {
+        for (int length : new int[] {0, 1, 1000, 450000, 2000000}) {
+            byte[] data = createData(length, length);
+            for (int nbThreads : new int[] {1, 3}) {
+                assert Arrays.equals(data, decompress(compress(data, 1), nbThreads, null)) : length + " bytes, " + nbThreads + " threads";
+            }
+        }
+        byte[] data = createData(3000000, 9);
+        assert Arrays.equals(data, decompress(compress(data, 9), 2, null));
+    }
+
+    /**
+     * Concatenated streams with different block sizes, as written by parallel compressors, are decompressed as one.
+     */
+    @Test
+    public void testConcatenatedStreams() throws IOException {
+        byte[] first = createData(700000, 1);
+        byte[] second = createData(300000, 2);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        bout.write(compress(first, 2));
+        bout.write(compress(second, 5));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        assert Arrays.equals(expected.toByteArray(), decompress(bout.toByteArray(), 4, null));
+    }
+
+    /**
+     * Decompression can be resumed at any of the offsets reported to the listener.
+     */
+    @Test
+    public void testResumeAtBlock() throws IOException {
+        byte[] data = createData(1500000, 3);
+        byte[] compressed = compress(data, 1);
+        List<long[]> starts = new ArrayList<>();
+        decompress(compressed, 2, (compressedOffset, uncompressedOffset) -> starts.add(new long[] {compressedOffset, uncompressedOffset}));
+
+        assert starts.size() > 10;
+        assert starts.get(0)[1] == 0;
+        for (long[] start : starts) {
+            int off = (int)start[0] + 2;
+            InputStream in = new ParallelBzip2InputStream(new ByteArrayInputStream(compressed, off, compressed.length - off), 2, null);
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            StreamUtils.copyStream(in, bout);
+            assert Arrays.equals(Arrays.copyOfRange(data, (int)start[1], data.length), bout.toByteArray());
+        }
+    }
+
+    @Test
+    public void testCorruptedBlock() throws IOException {
+        byte[] data = createData(500000, 4);
+        byte[] compressed = compress(data, 1);
+        compressed[compressed.length / 2] ^= 0x10;
+        try {
+            decompress(compressed, 2, null);
+            assert false : "corruption not detected";
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -47,6 +47,7 @@ public class FTPFileTest extends AbstractFileTest {
     public FileOperation[] getSupportedOperations() {
         return new FileOperation[] {
             FileOperation.READ_FILE,
+            FileOperation.RANDOM_READ_FILE,
             FileOperation.WRITE_FILE,
             FileOperation.APPEND_FILE,
             FileOperation.CREATE_DIRECTORY,
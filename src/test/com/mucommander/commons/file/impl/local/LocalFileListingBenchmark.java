@@ -0,0 +1,103 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.local;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.CachedFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compares the two ways {@link CachedFile} lists local folders: reading the attributes of the children in the same
+ * pass as the listing, or reading them on demand. For each mode, the folder is listed and the attributes displayed by
+ * the file table are retrieved for every child.
+ *
+ * <p>This is not a unit test, run it manually:
+ * <code>LocalFileListingBenchmark [number of files] [number of runs] [folder]</code>. The folder, a temporary one by
+ * default, is populated with the given number of files (100000 by default) if it does not contain that many yet.</p>
+ */
+public class LocalFileListingBenchmark {
+
+    public static void main(String args[]) throws IOException {
+        int nbFiles = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        AbstractFile folder = args.length > 2 ? FileFactory.getFile(args[2], true)
+                : FileFactory.getTemporaryFile(LocalFileListingBenchmark.class.getName(), false);
+
+        populate(folder, nbFiles);
+        System.out.println("Listing " + folder.getAbsolutePath() + " (" + folder.ls().length + " files), " + nbRuns + " runs");
+
+        boolean prefetch = CachedFile.isLocalAttributesPrefetch();
+        try {
+            // Warm up the file system cache and the JIT
+            runMode(folder, false, 1);
+            runMode(folder, true, 1);
+
+            long onDemand = runMode(folder, false, nbRuns);
+            long prefetched = runMode(folder, true, nbRuns);
+            System.out.println("Attributes read on demand: " + onDemand + " ms per listing");
+            System.out.println("Attributes read while listing: " + prefetched + " ms per listing");
+        } finally {
+            CachedFile.setLocalAttributesPrefetch(prefetch);
+        }
+    }
+
+    private static void populate(AbstractFile folder, int nbFiles) throws IOException {
+        if (!folder.exists()) {
+            folder.mkdir();
+        }
+        int nbDirs = nbFiles / 10;
+        for (int i = folder.ls().length; i < nbFiles; i++) {
+            AbstractFile file = folder.getDirectChild(String.format("file%07d", i));
+            if (i < nbDirs) {
+                file.mkdir();
+            } else {
+                try (OutputStream out = file.getOutputStream()) {
+                    out.write(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the folder the given number of times and returns the average duration of a listing, in milliseconds.
+     */
+    private static long runMode(AbstractFile folder, boolean prefetch, int nbRuns) throws IOException {
+        CachedFile.setLocalAttributesPrefetch(prefetch);
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int run = 0; run < nbRuns; run++) {
+            for (AbstractFile file : CachedFile.ls(folder, null)) {
+                // Attributes used by the file table renderer and the default sort
+                checksum += file.getSize() + file.getLastModifiedDate();
+                checksum += file.isDirectory() ? 1 : 0;
+                checksum += file.isHidden() ? 1 : 0;
+                checksum += file.isSymlink() ? 1 : 0;
+                checksum += file.exists() ? 1 : 0;
+            }
+        }
+        long duration = (System.nanoTime() - start) / 1000000 / nbRuns;
+        // Prevents the loop from being optimized away
+        if (checksum == 42) {
+            System.out.println();
+        }
+        return duration;
+    }
+}
@@ -4,9 +4,13 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractFileTest;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.impl.CachedFile;
+import com.mucommander.commons.runtime.OsFamily;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.util.regex.Matcher;
 
@@ -158,4 +162,39 @@ public class LocalFileTest extends AbstractFileTest {
         matcher = LocalFile.DRIVE_ROOT_PATTERN.matcher("/blah/C:\\");
         assert !matcher.matches();
     }
+
+    /**
+     * Asserts that the attributes read by {@link LocalFile#lsWithAttributes} and cached by
+     * {@link CachedFile#ls(AbstractFile, com.mucommander.commons.file.filter.FileFilter)} match those returned by
+     * the children's own methods.
+     *
+     * @throws IOException should not happen
+     * @throws NoSuchAlgorithmException should not happen
+     */
+    @Test
+    public void testLsWithAttributes() throws IOException, NoSuchAlgorithmException {
+        tempFile.mkdir();
+        createFile(tempFile.getDirectChild("file"), 1000);
+        createFile(tempFile.getDirectChild(".hidden"), 10);
+        tempFile.getDirectChild("dir").mkdir();
+        if (OsFamily.getCurrent().isUnixBased()) {
+            String path = tempFile.getAbsolutePath();
+            Files.createSymbolicLink(Paths.get(path, "link"), Paths.get(path, "file"));
+            Files.createSymbolicLink(Paths.get(path, "broken_link"), Paths.get(path, "missing"));
+        }
+
+        AbstractFile children[] = CachedFile.ls(tempFile, null);
+        assert children.length == tempFile.ls().length;
+        for (AbstractFile child : children) {
+            assert child instanceof CachedFile;
+            AbstractFile file = ((CachedFile)child).getProxiedFile();
+
+            assert child.getSize() == file.getSize();
+            assert child.getLastModifiedDate() == file.getLastModifiedDate();
+            assert child.isDirectory() == file.isDirectory();
+            assert child.isSymlink() == file.isSymlink();
+            assert child.isHidden() == file.isHidden();
+            assert child.exists() == file.exists();
+        }
+    }
 }
@@ -0,0 +1,489 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.s3;
+
+import com.mucommander.commons.file.Credentials;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.StreamUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.S3ObjectsChunk;
+import org.jets3t.service.S3Service;
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.acl.AccessControlList;
+import org.jets3t.service.model.S3Bucket;
+import org.jets3t.service.model.S3BucketLoggingStatus;
+import org.jets3t.service.model.S3Owner;
+import org.jets3t.service.security.AWSCredentials;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests the multipart uploads and ranged downloads of {@link S3Object} against a local S3 stand-in: an in-memory
+ * {@link S3Service} for the requests that go through JetS3t, and an HTTP server for the multipart upload requests.
+ */
+public class S3ObjectTransferTest {
+
+    private static final String BUCKET = "bucket";
+    private static final int PART_SIZE = (int)S3MultipartUpload.MIN_PART_SIZE;
+
+    /** Objects of the stand-in, by key */
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    /** Parts of the multipart uploads in progress, by upload ID */
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger aborted = new AtomicInteger();
+
+    private HttpServer server;
+    private S3Service service;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        Jets3tProperties props = new Jets3tProperties();
+        props.setProperty("s3service.s3-endpoint", "localhost");
+        props.setProperty("s3service.s3-endpoint-http-port", Integer.toString(server.getAddress().getPort()));
+        props.setProperty("s3service.https-only", "false");
+        props.setProperty("s3service.disable-dns-buckets", "true");
+        service = new LocalS3Service(props);
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        objects.clear();
+        uploads.clear();
+        completed.set(0);
+        aborted.set(0);
+        S3ProtocolProvider.setPartSize(PART_SIZE);
+        S3ProtocolProvider.setTransferThreads(3);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        S3ProtocolProvider.setPartSize(S3ProtocolProvider.DEFAULT_PART_SIZE);
+        S3ProtocolProvider.setTransferThreads(S3ProtocolProvider.DEFAULT_TRANSFER_THREADS);
+    }
+
+    @Test
+    public void testUploadUnknownLength() throws Exception {
+        byte[] data = createData(2 * PART_SIZE + 12345);
+        getFile("dir/object").copyStream(new ByteArrayInputStream(data), false, -1);
+        assert Arrays.equals(data, objects.get("dir/object"));
+        assert completed.get() == 1;
+        assert uploads.isEmpty();
+    }
+
+    @Test
+    public void testUploadKnownLength() throws Exception {
+        byte[] data = createData(3 * PART_SIZE);
+        S3Object file = getFile("object");
+        file.copyStream(new ByteArrayInputStream(data), false, data.length);
+        assert Arrays.equals(data, objects.get("object"));
+        assert completed.get() == 1;
+        assert file.getSize() == data.length;
+    }
+
+    @Test
+    public void testUploadSingleRequest() throws Exception {
+        // Streams that fit in a single part do not need a multipart upload, whether their length is known or not
+        byte[] data = createData(1000);
+        getFile("known").copyStream(new ByteArrayInputStream(data), false, data.length);
+        getFile("unknown").copyStream(new ByteArrayInputStream(data), false, -1);
+        assert Arrays.equals(data, objects.get("known"));
+        assert Arrays.equals(data, objects.get("unknown"));
+        assert completed.get() == 0;
+    }
+
+    @Test
+    public void testAppendToSmallObject() throws Exception {
+        byte[] existing = createData(1000);
+        byte[] data = createData(PART_SIZE + 10);
+        objects.put("object", existing);
+        getFile("object").copyStream(new ByteArrayInputStream(data), true, data.length);
+        assert Arrays.equals(concat(existing, data), objects.get("object"));
+    }
+
+    @Test
+    public void testAppendToLargeObject() throws Exception {
+        // The current object is copied server-side rather than downloaded
+        byte[] existing = createData(PART_SIZE + 10);
+        byte[] data = createData(1000);
+        objects.put("object", existing);
+        getFile("object").copyStream(new ByteArrayInputStream(data), true, data.length);
+        assert Arrays.equals(concat(existing, data), objects.get("object"));
+        assert completed.get() == 1;
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        byte[] data = createData(3 * PART_SIZE + 10);
+        S3Object file = getFile("object");
+        try {
+            // Fail while the third part is being read
+            file.copyStream(new FailingInputStream(data, 2 * PART_SIZE + 100), false, data.length);
+            assert false;
+        } catch (FileTransferException e) {
+            assert e.getReason() == FileTransferException.READING_SOURCE;
+        }
+        // The parts uploaded before the failure are kept
+        assert aborted.get() == 0;
+        assert Arrays.equals(Arrays.copyOf(data, 2 * PART_SIZE), objects.get("object"));
+        assert file.getSize() == 2 * PART_SIZE;
+
+        InputStream remaining = new ByteArrayInputStream(data, 2 * PART_SIZE, data.length - 2 * PART_SIZE);
+        file.copyStream(remaining, true, data.length - 2 * PART_SIZE);
+        assert Arrays.equals(data, objects.get("object"));
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        byte[] data = createData(3 * PART_SIZE + 7);
+        objects.put("object", data);
+        S3Object file = getFile("object");
+
+        InputStream in = file.getInputStream();
+        assert in instanceof S3ParallelInputStream;
+        assert Arrays.equals(data, readAll(in));
+
+        int offset = PART_SIZE / 2 + 3;
+        assert Arrays.equals(Arrays.copyOfRange(data, offset, data.length), readAll(file.getInputStream(offset)));
+
+        // Closing the stream before the end cancels the ranges being fetched
+        in = file.getInputStream();
+        assert in.read() == (data[0] & 0xFF);
+        in.close();
+    }
+
+    private S3Object getFile(String key) throws IOException {
+        FileURL url = FileURL.getFileURL("s3://localhost/" + BUCKET + "/" + key);
+        url.setCredentials(new Credentials("key", "secret"));
+        return (S3Object)new S3ProtocolProvider().getFile(url, service);
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            StreamUtils.copyStream(in, out);
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+
+    ////////////////////////////////
+    // Multipart upload requests  //
+    ////////////////////////////////
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String query = exchange.getRequestURI().getRawQuery();
+            String key = exchange.getRequestURI().getPath().substring(BUCKET.length() + 2);
+            String method = exchange.getRequestMethod();
+            String auth = exchange.getRequestHeaders().getFirst("Authorization");
+            if (auth == null || !auth.startsWith("AWS key:")) {
+                respond(exchange, 403, "<Error><Code>AccessDenied</Code><Message>Missing signature</Message></Error>");
+            } else if (method.equals("POST") && query.equals("uploads")) {
+                String uploadId = "upload" + uploadIds.incrementAndGet();
+                uploads.put(uploadId, new ConcurrentHashMap<>());
+                respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+            } else if (method.equals("PUT")) {
+                Matcher m = Pattern.compile("partNumber=(\\d+)&uploadId=(\\w+)").matcher(query);
+                m.matches();
+                byte[] part;
+                String copySource = exchange.getRequestHeaders().getFirst("x-amz-copy-source");
+                if (copySource != null) {
+                    Matcher range = Pattern.compile("bytes=(\\d+)-(\\d+)").matcher(exchange.getRequestHeaders().getFirst("x-amz-copy-source-range"));
+                    range.matches();
+                    byte[] source = objects.get(copySource.substring(BUCKET.length() + 2));
+                    part = Arrays.copyOfRange(source, Integer.parseInt(range.group(1)), Integer.parseInt(range.group(2)) + 1);
+                } else {
+                    part = readAll(exchange.getRequestBody());
+                }
+                uploads.get(m.group(2)).put(Integer.parseInt(m.group(1)), part);
+                String etag = "\"etag" + m.group(1) + "\"";
+                if (copySource != null) {
+                    respond(exchange, 200, "<CopyPartResult><ETag>" + etag.replace("\"", "&quot;") + "</ETag></CopyPartResult>");
+                } else {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    respond(exchange, 200, "");
+                }
+            } else if (method.equals("POST")) {
+                Map<Integer, byte[]> parts = uploads.remove(query.substring("uploadId=".length()));
+                String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+                Matcher m = Pattern.compile("<Part><PartNumber>(\\d+)</PartNumber><ETag>&quot;etag(\\d+)&quot;</ETag></Part>").matcher(body);
+                ByteArrayOutputStream object = new ByteArrayOutputStream();
+                int expected = 1;
+                byte[] previous = null;
+                while (m.find()) {
+                    if (Integer.parseInt(m.group(1)) != expected++ || !m.group(1).equals(m.group(2))) {
+                        respond(exchange, 400, "<Error><Code>InvalidPartOrder</Code><Message></Message></Error>");
+                        return;
+                    }
+                    // Only the last part may be smaller than the minimum part size
+                    if (previous != null && previous.length < PART_SIZE) {
+                        respond(exchange, 400, "<Error><Code>EntityTooSmall</Code><Message></Message></Error>");
+                        return;
+                    }
+                    previous = parts.get(Integer.parseInt(m.group(1)));
+                    object.write(previous);
+                }
+                objects.put(key, object.toByteArray());
+                completed.incrementAndGet();
+                respond(exchange, 200, "<CompleteMultipartUploadResult></CompleteMultipartUploadResult>");
+            } else if (method.equals("DELETE")) {
+                uploads.remove(query.substring("uploadId=".length()));
+                aborted.incrementAndGet();
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                respond(exchange, 400, "<Error><Code>InvalidRequest</Code><Message></Message></Error>");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Throws an exception once a given number of bytes have been read.
+     */
+    private static class FailingInputStream extends FilterInputStream {
+        private int remaining;
+
+        private FailingInputStream(byte[] data, int failAt) {
+            super(new ByteArrayInputStream(data));
+            this.remaining = failAt;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                throw new IOException("Read error");
+            }
+            int n = super.read(b, off, Math.min(len, remaining));
+            remaining -= n;
+            return n;
+        }
+    }
+
+
+    ////////////////////////////////////
+    // Requests that go through JetS3t //
+    ////////////////////////////////////
+
+    /**
+     * The requests issued with JetS3t, served from {@link #objects}.
+     */
+    private class LocalS3Service extends S3Service {
+
+        private LocalS3Service(Jets3tProperties props) throws S3ServiceException {
+            super(new AWSCredentials("key", "secret"), "test", props);
+        }
+
+        private org.jets3t.service.model.S3Object getObject(String key, Long start, Long end) throws S3ServiceException {
+            byte[] data = objects.get(key);
+            if (data == null) {
+                S3ServiceException e = new S3ServiceException("NoSuchKey");
+                e.setResponseCode(404);
+                throw e;
+            }
+            int from = start == null ? 0 : start.intValue();
+            int to = end == null ? data.length : end.intValue() + 1;
+            org.jets3t.service.model.S3Object object = new org.jets3t.service.model.S3Object(key);
+            object.setContentLength(data.length);
+            object.setLastModifiedDate(new Date());
+            object.setDataInputStream(new ByteArrayInputStream(data, from, to - from));
+            return object;
+        }
+
+        @Override
+        protected org.jets3t.service.model.S3Object getObjectImpl(String bucketName, String objectKey, Calendar ifModifiedSince, Calendar ifUnmodifiedSince, String[] ifMatchTags, String[] ifNoneMatchTags, Long byteRangeStart, Long byteRangeEnd) throws S3ServiceException {
+            return getObject(objectKey, byteRangeStart, byteRangeEnd);
+        }
+
+        @Override
+        protected org.jets3t.service.model.S3Object getObjectDetailsImpl(String bucketName, String objectKey, Calendar ifModifiedSince, Calendar ifUnmodifiedSince, String[] ifMatchTags, String[] ifNoneMatchTags) throws S3ServiceException {
+            return getObject(objectKey, null, null);
+        }
+
+        @Override
+        protected org.jets3t.service.model.S3Object putObjectImpl(String bucketName, org.jets3t.service.model.S3Object object) throws S3ServiceException {
+            try {
+                objects.put(object.getKey(), readAll(object.getDataInputStream()));
+            } catch (IOException e) {
+                throw new S3ServiceException(e);
+            }
+            object.setLastModifiedDate(new Date());
+            return object;
+        }
+
+        @Override
+        protected void deleteObjectImpl(String bucketName, String objectKey) {
+            objects.remove(objectKey);
+        }
+
+        @Override
+        public boolean isBucketAccessible(String bucketName) {
+            return true;
+        }
+
+        @Override
+        public int checkBucketStatus(String bucketName) {
+            return BUCKET_STATUS__MY_BUCKET;
+        }
+
+        @Override
+        protected String getBucketLocationImpl(String bucketName) {
+            return null;
+        }
+
+        @Override
+        protected S3BucketLoggingStatus getBucketLoggingStatusImpl(String bucketName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void setBucketLoggingStatusImpl(String bucketName, S3BucketLoggingStatus status) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void setRequesterPaysBucketImpl(String bucketName, boolean requesterPays) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected boolean isRequesterPaysBucketImpl(String bucketName) {
+            return false;
+        }
+
+        @Override
+        protected S3Bucket[] listAllBucketsImpl() {
+            return new S3Bucket[] {new S3Bucket(BUCKET)};
+        }
+
+        @Override
+        protected S3Owner getAccountOwnerImpl() {
+            return null;
+        }
+
+        @Override
+        protected org.jets3t.service.model.S3Object[] listObjectsImpl(String bucketName, String prefix, String delimiter, long maxListingLength) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected S3ObjectsChunk listObjectsChunkedImpl(String bucketName, String prefix, String delimiter, long maxListingLength, String priorLastKey, boolean completeListing) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected S3Bucket createBucketImpl(String bucketName, String location, AccessControlList acl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void deleteBucketImpl(String bucketName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Map copyObjectImpl(String sourceBucketName, String sourceObjectKey, String destinationBucketName, String destinationObjectKey, AccessControlList acl, Map destinationMetadata, Calendar ifModifiedSince, Calendar ifUnmodifiedSince, String[] ifMatchTags, String[] ifNoneMatchTags) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void putBucketAclImpl(String bucketName, AccessControlList acl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void putObjectAclImpl(String bucketName, String objectKey, AccessControlList acl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected AccessControlList getObjectAclImpl(String bucketName, String objectKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected AccessControlList getBucketAclImpl(String bucketName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void shutdownImpl() {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.bzip2.ParallelBzip2InputStream;
+import com.mucommander.commons.io.StreamUtils;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A test case for {@link GzipSeekPointIndex} and {@link Bzip2SeekPointIndex}.
+ */
+public class SeekPointIndexTest {
+
+    private byte[] data;
+    private File tempFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        // Alternate incompressible and compressible data, so that the gzip stream has both stored and Huffman blocks,
+        // and checkpoints that do and don't start on a byte boundary
+        Random random = new Random(42);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        for (int i = 0; i < 16; i++) {
+            byte[] chunk = new byte[50000 + random.nextInt(100000)];
+            if (i % 2 == 0) {
+                random.nextBytes(chunk);
+            } else {
+                for (int j = 0; j < chunk.length; j++) {
+                    chunk[j] = (byte)('a' + random.nextInt(4));
+                }
+            }
+            bout.write(chunk);
+        }
+        data = bout.toByteArray();
+        tempFile = File.createTempFile("seekindex", null);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        tempFile.delete();
+    }
+
+    private AbstractFile writeTempFile(OutputStream out) throws IOException {
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return FileFactory.getFile(tempFile.getAbsolutePath());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            StreamUtils.copyStream(in, bout);
+            return bout.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Asserts that reading the stream that is being indexed returns the original data, and that a stream opened at
+     * any offset past the first checkpoint returns the data that follows it.
+     */
+    private void assertIndexedStreams(AbstractFile file, SeekPointIndex<?> index, InputStream indexingStream) throws IOException {
+        assert Arrays.equals(readFully(indexingStream), data);
+        assert index.getCheckpointCount() > 2;
+
+        assert index.openStream(file, 0) == null;
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            int offset = random.nextInt(data.length);
+            InputStream in = index.openStream(file, offset);
+            if (in == null) {
+                assert index.findCheckpoint(offset) == null;
+                continue;
+            }
+            assert Arrays.equals(readFully(in), Arrays.copyOfRange(data, offset, data.length));
+        }
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        AbstractFile file = writeTempFile(new GZIPOutputStream(new FileOutputStream(tempFile)));
+        GzipSeekPointIndex index = new GzipSeekPointIndex();
+        assertIndexedStreams(file, index, new GzipBlockInputStream(file.getInputStream(), index, 16 * 1024));
+    }
+
+    @Test
+    public void testBzip2() throws IOException {
+        OutputStream out = new FileOutputStream(tempFile);
+        out.write('B');
+        out.write('Z');
+        AbstractFile file = writeTempFile(new CBZip2OutputStream(out, 1));
+        InputStream in = file.getInputStream();
+        StreamUtils.skipFully(in, 2);
+        Bzip2SeekPointIndex index = new Bzip2SeekPointIndex();
+        assertIndexedStreams(file, index, new ParallelBzip2InputStream(in, index));
+    }
+}
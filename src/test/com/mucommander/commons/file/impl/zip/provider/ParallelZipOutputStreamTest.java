@@ -0,0 +1,128 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.zip.provider;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.BufferedRandomOutputStream;
+import com.mucommander.commons.io.ParallelDeflaterOutputStream;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Tests {@link ParallelZipOutputStream} by reading the archives it writes with the JDK's Zip decoders.
+ */
+public class ParallelZipOutputStreamTest {
+
+    private static final int[] LENGTHS = {0, 10, 1000, ParallelDeflaterOutputStream.BLOCK_SIZE + 1,
+            10 * ParallelDeflaterOutputStream.BLOCK_SIZE + 777, 3};
+
+    private static byte[] createData(int index) {
+        Random random = new Random(index);
+        byte[] data = new byte[LENGTHS[index]];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static void writeEntries(ZipOutputStream zos) throws IOException {
+        zos.putNextEntry(new ZipEntry("folder/"));
+        for (int i = 0; i < LENGTHS.length; i++) {
+            ZipEntry entry = new ZipEntry("folder/file" + i);
+            if (i == LENGTHS.length - 1) {
+                entry.setMethod(ZipConstants.STORED);
+            }
+            zos.putNextEntry(entry);
+            zos.write(createData(i));
+        }
+        zos.setComment("comment");
+        zos.close();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        StreamUtils.copyStream(in, bout);
+        return bout.toByteArray();
+    }
+
+    /**
+     * Entries written to a regular stream are followed by a data descriptor.
+     */
+    @Test
+    public void testDataDescriptors() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        writeEntries(new ParallelZipOutputStream(bout, 4));
+
+        try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+            assert zin.getNextEntry().getName().equals("folder/");
+            for (int i = 0; i < LENGTHS.length - 1; i++) {
+                java.util.zip.ZipEntry entry = zin.getNextEntry();
+                assert entry.getName().equals("folder/file" + i);
+                assert Arrays.equals(createData(i), readFully(zin)) : entry.getName();
+            }
+        }
+    }
+
+    /**
+     * Entries written to a random access stream have their local headers updated, and the archive can be read through
+     * its central directory.
+     */
+    @Test
+    public void testRandomAccess() throws IOException {
+        File tempFile = File.createTempFile("ParallelZipOutputStreamTest", ".zip");
+        try {
+            AbstractFile file = FileFactory.getFile(tempFile.getAbsolutePath());
+            file.delete();
+            OutputStream out = new BufferedRandomOutputStream(file.getRandomAccessOutputStream());
+            writeEntries(new ParallelZipOutputStream(out, 4));
+
+            try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(tempFile)) {
+                assert "comment".equals(zipFile.getComment());
+                assert zipFile.size() == LENGTHS.length + 1;
+                for (int i = 0; i < LENGTHS.length; i++) {
+                    java.util.zip.ZipEntry entry = zipFile.getEntry("folder/file" + i);
+                    assert entry.getSize() == LENGTHS[i];
+                    assert Arrays.equals(createData(i), readFully(zipFile.getInputStream(entry))) : entry.getName();
+                }
+            }
+
+            // Sizes and CRCs are in the local headers, so the entries can be read sequentially as well
+            try (ZipInputStream zin = new ZipInputStream(file.getInputStream())) {
+                zin.getNextEntry();
+                for (int i = 0; i < LENGTHS.length; i++) {
+                    java.util.zip.ZipEntry entry = zin.getNextEntry();
+                    assert entry.getCompressedSize() >= 0;
+                    assert Arrays.equals(createData(i), readFully(zin)) : entry.getName();
+                }
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.zip.provider;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Tests the ZIP64 structures written by {@link ZipOutputStream} and read by {@link ZipFile}.
+ */
+public class Zip64Test {
+
+    /** More entries than the end of central directory record can count */
+    private static final int NB_ENTRIES = 70000;
+
+    private static String readString(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try {
+            StreamUtils.copyStream(in, bout);
+        } finally {
+            in.close();
+        }
+        return bout.toString("UTF-8");
+    }
+
+    /**
+     * An archive with more than 65,535 entries has a ZIP64 end of central directory record, which is kept up to date
+     * when an entry is added in place.
+     */
+    @Test
+    public void testManyEntries() throws IOException {
+        File tempFile = File.createTempFile("Zip64Test", ".zip");
+        try {
+            try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(tempFile))) {
+                zos.setMethod(ZipConstants.STORED);
+                for (int i = 0; i < NB_ENTRIES; i++) {
+                    zos.putNextEntry(new ZipEntry("file" + i));
+                    zos.write(String.valueOf(i).getBytes("UTF-8"));
+                }
+            }
+
+            AbstractFile file = FileFactory.getFile(tempFile.getAbsolutePath());
+            ZipFile zipFile = new ZipFile(file);
+            assert zipFile.getNbEntries() == NB_ENTRIES;
+            assert "69999".equals(readString(zipFile.getInputStream(zipFile.getEntry("file69999"))));
+
+            ZipEntry entry = new ZipEntry("added");
+            entry.setMethod(ZipConstants.DEFLATED);
+            entry.setTime(System.currentTimeMillis());
+            try (OutputStream out = zipFile.addEntry(entry)) {
+                out.write("added".getBytes("UTF-8"));
+            }
+
+            zipFile = new ZipFile(file);
+            assert zipFile.getNbEntries() == NB_ENTRIES + 1;
+            assert "added".equals(readString(zipFile.getInputStream(zipFile.getEntry("added"))));
+
+            try (java.util.zip.ZipFile jdkZipFile = new java.util.zip.ZipFile(tempFile)) {
+                assert jdkZipFile.size() == NB_ENTRIES + 1;
+                assert "12345".equals(readString(jdkZipFile.getInputStream(jdkZipFile.getEntry("file12345"))));
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Only the values that do not fit in the central file header are stored in the ZIP64 extra field.
+     */
+    @Test
+    public void testCentralFileHeader() throws IOException {
+        ZipEntry entry = new ZipEntry("large");
+        entry.setMethod(ZipConstants.DEFLATED);
+        entry.setTime(System.currentTimeMillis());
+        entry.setCrc(0);
+        entry.setSize(5000000000L);
+        entry.setCompressedSize(1000);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ZipOutputStream.writeCentralFileHeader(entry, bout, ZipConstants.UTF_8, 6000000000L, false, new ZipBuffer());
+        byte[] cfh = bout.toByteArray();
+
+        assert ZipShort.getValue(cfh, 6) == 45;
+        assert ZipLong.getValue(cfh, 20) == 1000;
+        assert ZipLong.getValue(cfh, 24) == ZipConstants.ZIP64_MAGIC;
+        assert ZipLong.getValue(cfh, 42) == ZipConstants.ZIP64_MAGIC;
+
+        int nameLength = ZipShort.getValue(cfh, 28);
+        int extraLength = ZipShort.getValue(cfh, 30);
+        assert extraLength == 4 + 16;
+
+        byte[] extra = new byte[extraLength];
+        System.arraycopy(cfh, 46 + nameLength, extra, 0, extraLength);
+        ZipExtraField[] fields = ExtraFieldUtils.parse(extra);
+        assert fields.length == 1 && fields[0] instanceof Zip64ExtendedInformationExtraField;
+
+        Zip64ExtendedInformationExtraField zip64 = (Zip64ExtendedInformationExtraField)fields[0];
+        zip64.parseCentralDirectoryData(true, false, true);
+        assert zip64.getSize() == 5000000000L;
+        assert zip64.getCompressedSize() == -1;
+        assert zip64.getHeaderOffset() == 6000000000L;
+    }
+}
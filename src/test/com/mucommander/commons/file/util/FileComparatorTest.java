@@ -8,6 +8,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
 
 /**
  * A test case for {@link FileComparator}.
@@ -180,4 +183,56 @@ public class FileComparatorTest {
         assert A.equals(files[3]);
     }
 
+    /**
+     * Checks that sort keys are compared like the files they were created from, for every comparator setting.
+     */
+    @Test
+    public void testSortKeys() throws Exception {
+        Random random = new Random(1);
+        String chars = "aAbBzZ09_ .-\u0436\u0416";
+        AbstractFile[] randomFiles = new AbstractFile[200];
+        for (int i = 0; i < randomFiles.length; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                name.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            long size = random.nextInt(4) == 0 ? -1 : random.nextInt(3) * 1000L;
+            randomFiles[i] = new TestFile(FileFactory.getTemporaryFolder() + name.toString().trim() + i % 7, random.nextBoolean(), size, random.nextInt(3), null);
+        }
+        int[] criteria = {FileComparator.NAME_CRITERION, FileComparator.SIZE_CRITERION, FileComparator.DATE_CRITERION, FileComparator.EXTENSION_CRITERION};
+        for (int criterion : criteria) {
+            for (SortOrder order : SortOrder.values()) {
+                for (int flags = 0; flags < 4; flags++) {
+                    FileComparator comparator = new FileComparator(criterion, order, (flags & 1) != 0, (flags & 2) != 0);
+                    FileComparator.SortKey[] keys = new FileComparator.SortKey[randomFiles.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = comparator.createSortKey(randomFiles[i], i);
+                    }
+                    for (int i = 0; i < keys.length; i++) {
+                        for (int j = 0; j < keys.length; j++) {
+                            int expected = Integer.signum(comparator.compare(randomFiles[i], randomFiles[j]));
+                            assertEquals(Integer.signum(comparator.compare(keys[i], keys[j])), expected,
+                                    randomFiles[i].getName() + " / " + randomFiles[j].getName());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSortKeysOrder() {
+        FileComparator comparator = new FileComparator(FileComparator.EXTENSION_CRITERION, SortOrder.ASC, false, false);
+        FileComparator.SortKey[] keys = new FileComparator.SortKey[files.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = comparator.createSortKey(files[i], i);
+        }
+        comparator.sort(keys);
+        assert A.equals(files[keys[0].getIndex()]);
+        assert B.equals(files[keys[1].getIndex()]);
+        assert D.equals(files[keys[2].getIndex()]);
+        assert C.equals(files[keys[3].getIndex()]);
+    }
+
 }
@@ -0,0 +1,100 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.TestFile;
+import com.mucommander.ui.main.table.SortOrder;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the two ways {@link FileComparator} sorts a large synthetic listing: comparing the files themselves, which
+ * derives the compared values on every comparison, or creating sort keys once and sorting them in parallel, as
+ * the file table does.
+ *
+ * <p>This is not a unit test, run it manually:
+ * <code>FileSortBenchmark [number of files] [number of runs]</code>. The listing has 200000 files by default.</p>
+ */
+public class FileSortBenchmark {
+
+    private static final String[] PREFIXES = {"IMG_", "Report ", "track", "backup-2018-", "README", "Документ ", "data_v"};
+    private static final String[] EXTENSIONS = {"jpg", "docx", "mp3", "tar.gz", "", "txt", "JPG"};
+
+    public static void main(String args[]) throws MalformedURLException {
+        int nbFiles = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        AbstractFile[] files = createListing(nbFiles);
+        System.out.println("Sorting " + nbFiles + " files, " + nbRuns + " runs, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+
+        int[] criteria = {FileComparator.NAME_CRITERION, FileComparator.EXTENSION_CRITERION, FileComparator.SIZE_CRITERION, FileComparator.DATE_CRITERION};
+        String[] criteriaNames = {"name", "extension", "size", "date"};
+        for (int c = 0; c < criteria.length; c++) {
+            FileComparator comparator = new FileComparator(criteria[c], SortOrder.ASC, true, false);
+            // Warm up the JIT
+            sortFiles(files, comparator, 1);
+            sortKeys(files, comparator, 1);
+
+            long filesDuration = sortFiles(files, comparator, nbRuns);
+            long keysDuration = sortKeys(files, comparator, nbRuns);
+            System.out.println("By " + criteriaNames[c] + ": comparing files " + filesDuration + " ms, sort keys " + keysDuration + " ms");
+        }
+    }
+
+    private static AbstractFile[] createListing(int nbFiles) throws MalformedURLException {
+        Random random = new Random(1);
+        String folder = FileFactory.getTemporaryFolder().getAbsolutePath(true);
+        AbstractFile[] files = new AbstractFile[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            String extension = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            String name = PREFIXES[random.nextInt(PREFIXES.length)] + random.nextInt(nbFiles) + (extension.isEmpty() ? "" : "." + extension);
+            boolean directory = random.nextInt(10) == 0;
+            files[i] = new TestFile(folder + name, directory, directory ? 0 : random.nextInt(1 << 24), random.nextInt(1 << 30), null);
+        }
+        return files;
+    }
+
+    /**
+     * Sorts copies of the listing by comparing files, returns the average duration of a sort in milliseconds.
+     */
+    private static long sortFiles(AbstractFile[] files, FileComparator comparator, int nbRuns) {
+        long start = System.nanoTime();
+        for (int run = 0; run < nbRuns; run++) {
+            AbstractFile[] copy = files.clone();
+            Arrays.sort(copy, comparator);
+        }
+        return (System.nanoTime() - start) / 1000000 / nbRuns;
+    }
+
+    /**
+     * Sorts the listing by creating and sorting sort keys, returns the average duration of a sort in milliseconds.
+     */
+    private static long sortKeys(AbstractFile[] files, FileComparator comparator, int nbRuns) {
+        long start = System.nanoTime();
+        for (int run = 0; run < nbRuns; run++) {
+            FileComparator.SortKey[] keys = new FileComparator.SortKey[files.length];
+            Arrays.parallelSetAll(keys, i -> comparator.createSortKey(files[i], i));
+            comparator.sort(keys);
+        }
+        return (System.nanoTime() - start) / 1000000 / nbRuns;
+    }
+}
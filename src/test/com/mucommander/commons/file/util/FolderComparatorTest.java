@@ -0,0 +1,123 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A test case for {@link FolderComparator}.
+ */
+public class FolderComparatorTest {
+
+    private AbstractFile first;
+    private AbstractFile second;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        first = FileFactory.getTemporaryFile(getClass().getName() + "1", true);
+        second = FileFactory.getTemporaryFile(getClass().getName() + "2", true);
+        first.mkdir();
+        second.mkdir();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        first.deleteRecursively();
+        second.deleteRecursively();
+    }
+
+    @Test
+    public void testContent() throws Exception {
+        byte[] data = createData(100000);
+        write(first, "same", data);
+        write(second, "same", data);
+        write(first, "longer", data);
+        write(second, "longer", Arrays.copyOf(data, data.length + 1));
+        write(first, "modified", data);
+        data[data.length - 1]++;
+        write(second, "modified", data);
+        write(first, "missing", data);
+        write(second, "only_second", data);
+        write(first, "chunked", data);
+        write(second, "chunked", data);
+        // Lots of small chunks
+        Set<String> different = compare(new FolderComparator(FolderComparator.Mode.CONTENT, false, 1000));
+        assert different.equals(new HashSet<>(Arrays.asList("longer", "modified", "missing"))) : different;
+    }
+
+    @Test
+    public void testRecursive() throws Exception {
+        byte[] data = createData(1000);
+        write(first.getChild("same").getChild("sub"), "file", data);
+        write(second.getChild("same").getChild("sub"), "file", data);
+        write(first.getChild("deep").getChild("sub"), "file", data);
+        data[0]++;
+        write(second.getChild("deep").getChild("sub"), "file", data);
+        write(first.getChild("extra"), "file", data);
+        write(second.getChild("extra"), "file", data);
+        write(second.getChild("extra"), "only_second", data);
+        write(first.getChild("not_folder"), "file", data);
+        write(second, "not_folder", data);
+
+        Set<String> different = compare(new FolderComparator(FolderComparator.Mode.CONTENT, true));
+        assert different.equals(new HashSet<>(Arrays.asList("deep", "extra", "not_folder"))) : different;
+
+        different = compare(new FolderComparator(FolderComparator.Mode.CONTENT, false));
+        assert different.isEmpty() : different;
+    }
+
+    @Test
+    public void testDate() throws Exception {
+        byte[] data = createData(10);
+        write(first, "newer", data);
+        write(second, "newer", data);
+        write(first, "older", data);
+        write(second, "older", data);
+        write(first, "missing", data);
+        first.getChild("newer").setLastModifiedDate(200000000000L);
+        second.getChild("newer").setLastModifiedDate(100000000000L);
+        first.getChild("older").setLastModifiedDate(100000000000L);
+        second.getChild("older").setLastModifiedDate(200000000000L);
+
+        FolderComparator comparator = new FolderComparator(FolderComparator.Mode.DATE, false);
+        Set<String> different = compare(comparator);
+        assert different.equals(new HashSet<>(Arrays.asList("newer", "missing"))) : different;
+
+        // The same comparator then compares the other way round, as when marking the files of both panels
+        different = comparator.compare(second.ls(), first.ls()).get();
+        assert different.equals(new HashSet<>(Arrays.asList("older"))) : different;
+        assert comparator.getProgress() == 100 : comparator.getProgress();
+    }
+
+
+    private Set<String> compare(FolderComparator comparator) throws Exception {
+        Set<String> different = comparator.compare(first.ls(), second.ls()).get();
+        assert comparator.getProgress() == 100;
+        return different;
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private static void write(AbstractFile folder, String name, byte[] data) throws IOException {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        try (OutputStream out = folder.getChild(name).getOutputStream()) {
+            out.write(data);
+        }
+    }
+}
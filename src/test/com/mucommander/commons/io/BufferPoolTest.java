@@ -22,6 +22,9 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * This class is a TestNG test case for {@link BufferPool}.
  *
@@ -81,6 +84,66 @@ public class BufferPoolTest {
         testBuffer(new BufferPool.CharBufferFactory());
     }
 
+    /**
+     * Tests that hits, misses and allocations are counted, and that pooled <code>ByteBuffer</code> instances are
+     * direct and cleared when they are returned.
+     */
+    @Test
+    public void testCounters() {
+        long hits = BufferPool.getHitCount();
+        long misses = BufferPool.getMissCount();
+        long allocated = BufferPool.getAllocatedSize();
+
+        java.nio.ByteBuffer buffer = BufferPool.getByteBuffer(TEST_BUFFER_SIZE_2 + 1);
+        assert buffer.isDirect();
+        assert BufferPool.getMissCount() == misses + 1;
+        assert BufferPool.getAllocatedSize() == allocated + TEST_BUFFER_SIZE_2 + 1;
+
+        buffer.position(3);
+        buffer.limit(5);
+        assert BufferPool.releaseByteBuffer(buffer);
+        assert buffer == BufferPool.getByteBuffer(TEST_BUFFER_SIZE_2 + 1);
+        assert BufferPool.getHitCount() == hits + 1;
+        assert BufferPool.getMissCount() == misses + 1;
+        assert buffer.position() == 0 && buffer.limit() == buffer.capacity();
+    }
+
+    /**
+     * Asserts that a buffer released by several threads at once is added to the pool only once, and thus can't be
+     * returned twice.
+     */
+    @Test
+    public void testConcurrentRelease() throws InterruptedException {
+        final int length = TEST_BUFFER_SIZE_2 + 2;
+        for (int i = 0; i < 200; i++) {
+            final byte[] buffer = BufferPool.getByteArray(length);
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicInteger released = new AtomicInteger();
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (BufferPool.releaseByteArray(buffer)) {
+                        released.incrementAndGet();
+                    }
+                });
+                threads[t].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            Assert.assertEquals(released.get(), 1);
+            assert buffer == BufferPool.getByteArray(length);
+            assert buffer != BufferPool.getByteArray(length);
+        }
+    }
+
     /**
      * Tests <code>BufferPool</code> with <code>ByteBuffer</code> buffers.
      *
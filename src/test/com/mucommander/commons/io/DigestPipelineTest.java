@@ -0,0 +1,123 @@
+package com.mucommander.commons.io;
+
+import com.mucommander.commons.io.security.MuProvider;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.Random;
+
+/**
+ * A test case for {@link DigestPipeline}.
+ */
+public class DigestPipelineTest {
+
+    private static final String[] ALGORITHMS = {"MD5", "SHA-256", "CRC32"};
+
+    @BeforeClass
+    public void setUp() {
+        MuProvider.registerProvider();
+    }
+
+    /**
+     * Checks the checksums against the ones calculated directly, for streams that fit in a buffer or span several.
+     */
+    @Test
+    public void testChecksums() throws Exception {
+        int[] lengths = {0, 1, DigestPipeline.BUFFER_SIZE - 1, DigestPipeline.BUFFER_SIZE, DigestPipeline.BUFFER_SIZE + 1,
+                5 * DigestPipeline.BUFFER_SIZE + 12345};
+        Random random = new Random(0);
+        for (int length : lengths) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            MessageDigest[] digests = createDigests();
+            String[] checksums = DigestPipeline.calculateChecksums(new ByteArrayInputStream(data), digests);
+            for (int i = 0; i < ALGORITHMS.length; i++) {
+                String expected = ByteUtils.toHexString(MessageDigest.getInstance(ALGORITHMS[i]).digest(data));
+                assert expected.equals(checksums[i]) : ALGORITHMS[i] + " of " + length + " bytes";
+            }
+        }
+    }
+
+    /**
+     * Checks that a read error is reported once the digest threads have been stopped.
+     */
+    @Test
+    public void testReadError() throws Exception {
+        InputStream in = new InputStream() {
+            private int remaining = 3 * DigestPipeline.BUFFER_SIZE;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining-- == 0) {
+                    throw new IOException("read error");
+                }
+                return 0;
+            }
+        };
+        try {
+            DigestPipeline.calculateChecksums(in, createDigests());
+            assert false : "IOException expected";
+        } catch (IOException e) {
+            assert "read error".equals(e.getMessage());
+        }
+    }
+
+    /**
+     * Checks that the digest threads are stopped when the calling thread is interrupted, as when the user stops
+     * a checksum job.
+     */
+    @Test
+    public void testInterrupted() throws Exception {
+        InputStream in = new InputStream() {
+            private int remaining = 2 * DigestPipeline.BUFFER_SIZE;
+
+            @Override
+            public int read() {
+                if (remaining-- == 0) {
+                    // Interrupted while the end of the stream is being notified
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+                return 0;
+            }
+        };
+        try {
+            DigestPipeline.calculateChecksums(in, createDigests());
+            assert false : "InterruptedIOException expected";
+        } catch (InterruptedIOException e) {
+            // Expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        for (int i = 0; i < 50 && isDigestTaskRunning(); i++) {
+            Thread.sleep(100);
+        }
+        assert !isDigestTaskRunning();
+    }
+
+    private static boolean isDigestTaskRunning() {
+        for (StackTraceElement[] stackTrace : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement element : stackTrace) {
+                if (element.getClassName().endsWith("DigestPipeline$DigestTask")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static MessageDigest[] createDigests() throws Exception {
+        MessageDigest[] digests = new MessageDigest[ALGORITHMS.length];
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            digests[i] = MessageDigest.getInstance(ALGORITHMS[i]);
+        }
+        return digests;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Tests {@link ParallelDeflaterOutputStream} and {@link ParallelGZIPOutputStream} by decompressing their output with
+ * the JDK's decoders.
+ */
+public class ParallelDeflaterOutputStreamTest {
+
+    private static final int[] LENGTHS = {0, 1, ParallelDeflaterOutputStream.BLOCK_SIZE - 1, ParallelDeflaterOutputStream.BLOCK_SIZE,
+            ParallelDeflaterOutputStream.BLOCK_SIZE + 1, 20 * ParallelDeflaterOutputStream.BLOCK_SIZE + 12345};
+
+    /**
+     * Returns data that compresses, with repetitions that span block boundaries. Repetitions are copied from a pool
+     * smaller than the 32 KB window of DEFLATE, so that they can be found by the compressor.
+     */
+    private static byte[] createData(int length) {
+        Random random = new Random(length);
+        byte[] words = new byte[16 * 1024];
+        random.nextBytes(words);
+        byte[] data = new byte[length];
+        for (int off = 0; off < length; ) {
+            int len = Math.min(length - off, 16 + random.nextInt(200));
+            System.arraycopy(words, random.nextInt(words.length - len), data, off, len);
+            off += len;
+        }
+        return data;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        StreamUtils.copyStream(in, bout);
+        return bout.toByteArray();
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        for (int length : LENGTHS) {
+            byte[] data = createData(length);
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            try (ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(bout, 4)) {
+                // Odd-sized writes so that blocks are filled by several of them
+                for (int off = 0; off < length; off += 1000) {
+                    out.write(data, off, Math.min(1000, length - off));
+                }
+            }
+
+            byte[] decompressed = readFully(new GZIPInputStream(new ByteArrayInputStream(bout.toByteArray())));
+            assert Arrays.equals(data, decompressed) : length + " bytes";
+            if (length > ParallelDeflaterOutputStream.BLOCK_SIZE) {
+                assert bout.size() < length / 2 : "poor compression of " + length + " bytes: " + bout.size();
+            }
+        }
+    }
+
+    /**
+     * Checks several raw DEFLATE streams written one after another, along with the checksums and sizes reported for
+     * each of them.
+     */
+    @Test
+    public void testConsecutiveStreams() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(bout, 6, 3);
+        long[] offsets = new long[LENGTHS.length + 1];
+        for (int i = 0; i < LENGTHS.length; i++) {
+            byte[] data = createData(LENGTHS[i]);
+            out.write(data);
+
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            assert out.getCrc() == crc.getValue();
+            assert out.getTotalIn() == data.length;
+            out.finishDeflate();
+
+            final int index = i + 1;
+            out.queue(output -> {
+                offsets[index] = out.getBytesWritten();
+                return 0;
+            });
+        }
+        out.close();
+
+        byte[] compressed = bout.toByteArray();
+        for (int i = 0; i < LENGTHS.length; i++) {
+            int off = (int)offsets[i];
+            int len = (int)(offsets[i+1] - offsets[i]);
+            Inflater inflater = new Inflater(true);
+            byte[] decompressed = readFully(new InflaterInputStream(new ByteArrayInputStream(compressed, off, len), inflater));
+            assert Arrays.equals(createData(LENGTHS[i]), decompressed) : LENGTHS[i] + " bytes";
+            assert inflater.finished();
+        }
+    }
+}
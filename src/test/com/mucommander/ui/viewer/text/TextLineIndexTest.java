@@ -0,0 +1,73 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.file.FileFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A test case for {@link TextLineIndex}.
+ */
+public class TextLineIndexTest {
+
+    private File tempFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        tempFile = File.createTempFile("textlineindex", null);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        tempFile.delete();
+    }
+
+    private static void waitForIndex(TextLineIndex index) throws InterruptedException {
+        for (int i = 0; i < 600 && !index.isComplete(); i++) {
+            Thread.sleep(50);
+        }
+        assert index.isComplete();
+    }
+
+    /**
+     * Asserts that a file made only of line feeds, where every byte of a chunk ends a line, is fully indexed.
+     */
+    @Test
+    public void testOnlyNewLines() throws IOException, InterruptedException {
+        int lines = 11 * 1024 * 1024;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+            for (int i = 0; i < lines; i++) {
+                out.write('\n');
+            }
+        }
+
+        try (TextLineIndex index = new TextLineIndex(FileFactory.getFile(tempFile.getAbsolutePath()), "UTF-8")) {
+            waitForIndex(index);
+            assert index.getLineCount() == lines;
+            assert "".equals(index.getLine(lines - 1));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.hexeditor.data;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import ru.trolsoft.hexeditor.search.ByteBufferSearchUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * A test case for the paged {@link AbstractByteBuffer} implementations.
+ */
+public class AbstractByteBufferTest {
+
+    private File file;
+    private byte[] data;
+
+    @BeforeClass
+    public void createFile() throws IOException {
+        // More pages than the cache holds, the last one being incomplete
+        data = new byte[AbstractByteBuffer.DEFAULT_CAPACITY * 3 + 12345];
+        new Random(1).nextBytes(data);
+        file = File.createTempFile("bytebuffer", ".bin");
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+    }
+
+    @AfterClass
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private void testBuffer(AbstractByteBuffer buffer) throws IOException {
+        try {
+            assertEquals(buffer.getFileSize(), data.length);
+            Random random = new Random(2);
+            for (int i = 0; i < 10000; i++) {
+                int offset = random.nextInt(data.length);
+                assertEquals(buffer.getByte(offset), data[offset]);
+            }
+            for (int offset = data.length - 1; offset >= 0; offset -= 1001) {
+                assertEquals(buffer.getByte(offset), data[offset]);
+            }
+
+            byte[] block = new byte[AbstractByteBuffer.PAGE_SIZE * 3];
+            for (int i = 0; i < 100; i++) {
+                int offset = random.nextInt(data.length);
+                int n = buffer.getBytes(offset, block, 1, block.length - 1);
+                assertEquals(n, Math.min(block.length - 1, data.length - offset));
+                for (int j = 0; j < n; j++) {
+                    assertEquals(block[j + 1], data[offset + j]);
+                }
+            }
+
+            // A pattern that crosses a page boundary
+            int offset = AbstractByteBuffer.PAGE_SIZE * 5 - 3;
+            byte[] pattern = new byte[8];
+            System.arraycopy(data, offset, pattern, 0, pattern.length);
+            assertEquals(ByteBufferSearchUtils.indexOf(buffer, pattern, offset - 1000), offset);
+            assertEquals(ByteBufferSearchUtils.indexOfBackward(buffer, pattern, offset + 1000), offset);
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void testMappedFileByteBuffer() throws IOException {
+        testBuffer(new MappedFileByteBuffer(file));
+    }
+
+    @Test
+    public void testFileByteBuffer() throws IOException {
+        testBuffer(new FileByteBuffer(file.getAbsolutePath(), "r"));
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() throws IOException {
+        AbstractByteBuffer buffer = new MappedFileByteBuffer(file);
+        try {
+            buffer.getByte(data.length);
+        } finally {
+            buffer.close();
+        }
+    }
+}
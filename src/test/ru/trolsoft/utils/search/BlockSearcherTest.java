@@ -0,0 +1,132 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2018 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * A test case for {@link BlockSearcher}.
+ */
+public class BlockSearcherTest {
+
+    private static int naiveIndexOf(byte[] data, byte[] pattern, int from) {
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            if (matches(data, pattern, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int naiveLastIndexOf(byte[] data, byte[] pattern, int to) {
+        for (int i = to - pattern.length; i >= 0; i--) {
+            if (matches(data, pattern, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] data, byte[] pattern, int offset) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (data[offset + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the results of the searcher with a naive search, on data made of a small alphabet so that partial
+     * matches are frequent.
+     */
+    @Test
+    public void testArraySearch() {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            byte[] data = new byte[random.nextInt(300)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte)random.nextInt(3);
+            }
+            byte[] pattern = new byte[1 + random.nextInt(6)];
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = (byte)random.nextInt(3);
+            }
+            BlockSearcher searcher = new BlockSearcher(pattern);
+
+            int from = data.length == 0 ? 0 : random.nextInt(data.length);
+            int found = searcher.indexOf(data, from, data.length);
+            assert found == naiveIndexOf(data, pattern, from);
+
+            int to = data.length == 0 ? 0 : random.nextInt(data.length + 1);
+            assert searcher.lastIndexOf(data, 0, to) == naiveLastIndexOf(data, pattern, to);
+        }
+        assert new BlockSearcher(new byte[0]).indexOf(new byte[10], 0, 10) == -1;
+    }
+
+    /**
+     * Asserts that occurrences that cross block boundaries are found in streams and in file channels.
+     */
+    @Test
+    public void testBlockBoundaries() throws IOException {
+        byte[] pattern = "boundary".getBytes("US-ASCII");
+        BlockSearcher searcher = new BlockSearcher(pattern);
+        for (int offset : new int[] {0, BlockSearcher.BLOCK_SIZE - 3, BlockSearcher.BLOCK_SIZE + 1, 3 * BlockSearcher.BLOCK_SIZE - pattern.length}) {
+            byte[] data = new byte[3 * BlockSearcher.BLOCK_SIZE];
+            System.arraycopy(pattern, 0, data, offset, pattern.length);
+
+            InputStream in = new ByteArrayInputStream(data);
+            assert searcher.indexOf(in) == offset;
+
+            File file = File.createTempFile("blocksearcher", null);
+            try {
+                try (OutputStream out = new FileOutputStream(file)) {
+                    out.write(data);
+                }
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    assert searcher.indexOf(channel) == offset;
+                }
+            } finally {
+                file.delete();
+            }
+        }
+        assert searcher.indexOf(new ByteArrayInputStream(new byte[BlockSearcher.BLOCK_SIZE])) == -1;
+    }
+
+    @Test
+    public void testCaseInsensitive() throws IOException {
+        BlockSearcher searcher = new BlockSearcher(new StringCaseInsensitiveSearchPattern("Hello", "UTF-8"));
+        byte[] data = "say hELLo world".getBytes("UTF-8");
+        assert searcher.indexOf(data, 0, data.length) == 4;
+        assert searcher.lastIndexOf(data, 0, data.length) == 4;
+
+        searcher = new BlockSearcher(new StringCaseInsensitiveSearchPattern("straße", "UTF-8"));
+        data = "STRAßE".getBytes("UTF-8");
+        assert searcher.indexOf(data, 0, data.length) == 0;
+    }
+}